@@ -0,0 +1,105 @@
+/******************************************************************************
+ * JBoss, a division of Red Hat                                               *
+ * Copyright 2009, Red Hat Middleware, LLC, and individual                    *
+ * contributors as indicated by the @authors tag. See the                     *
+ * copyright.txt in the distribution for a full listing of                    *
+ * individual contributors.                                                   *
+ *                                                                            *
+ * This is free software; you can redistribute it and/or modify it            *
+ * under the terms of the GNU Lesser General Public License as                *
+ * published by the Free Software Foundation; either version 2.1 of           *
+ * the License, or (at your option) any later version.                        *
+ *                                                                            *
+ * This software is distributed in the hope that it will be useful,           *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of             *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU           *
+ * Lesser General Public License for more details.                            *
+ *                                                                            *
+ * You should have received a copy of the GNU Lesser General Public           *
+ * License along with this software; if not, write to the Free                *
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA         *
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.                   *
+ ******************************************************************************/
+package org.gatein.common.http;
+
+import org.gatein.common.text.FastURLByteDecoder;
+import org.gatein.common.text.FastURLEncoder;
+import org.gatein.common.text.Inputs;
+import org.gatein.common.util.ParameterMap;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures {@link QueryStringParser} on an encoded query string with the eager, lazy and byte parsing, the lazy
+ * parsing reads two parameters and the other parsings read the same parameters for a fair comparison.
+ *
+ * @author <a href="mailto:agent@local">agent</a>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class QueryStringParserBenchmark
+{
+
+   @Param({Inputs.ASCII, Inputs.LATIN1, Inputs.CJK})
+   public String flavor;
+
+   /** . */
+   private String queryString;
+
+   /** . */
+   private byte[] bytes;
+
+   @Setup
+   public void setup() throws Exception
+   {
+      StringBuilder sb = new StringBuilder();
+      String[] words = Inputs.words(flavor);
+      FastURLEncoder encoder = FastURLEncoder.getUTF8Instance();
+      for (int i = 0; i < 30; i++)
+      {
+         if (i > 0)
+         {
+            sb.append('&');
+         }
+         sb.append("navigationalstate").append(i % 20).append('=').append(encoder.encode(words[i % words.length] + " " + i));
+      }
+      queryString = sb.toString();
+      bytes = queryString.getBytes("ISO-8859-1");
+   }
+
+   @Benchmark
+   public int parse()
+   {
+      ParameterMap parameters = QueryStringParser.getInstance().parseQueryString(queryString);
+      return parameters.getValue("navigationalstate3").length() + parameters.getValues("navigationalstate5").length;
+   }
+
+   @Benchmark
+   public int parseLazy()
+   {
+      ParameterMap parameters = QueryStringParser.getInstance().parseQueryString(queryString, true);
+      return parameters.getValue("navigationalstate3").length() + parameters.getValues("navigationalstate5").length;
+   }
+
+   @Benchmark
+   public int parseBytes()
+   {
+      ParameterMap parameters = QueryStringParser.getInstance().parseQueryString(bytes, 0, bytes.length, FastURLByteDecoder.getUTF8Instance());
+      return parameters.getValue("navigationalstate3").length() + parameters.getValues("navigationalstate5").length;
+   }
+}
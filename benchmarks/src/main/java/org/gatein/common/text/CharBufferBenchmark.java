@@ -0,0 +1,113 @@
+/******************************************************************************
+ * JBoss, a division of Red Hat                                               *
+ * Copyright 2009, Red Hat Middleware, LLC, and individual                    *
+ * contributors as indicated by the @authors tag. See the                     *
+ * copyright.txt in the distribution for a full listing of                    *
+ * individual contributors.                                                   *
+ *                                                                            *
+ * This is free software; you can redistribute it and/or modify it            *
+ * under the terms of the GNU Lesser General Public License as                *
+ * published by the Free Software Foundation; either version 2.1 of           *
+ * the License, or (at your option) any later version.                        *
+ *                                                                            *
+ * This software is distributed in the hope that it will be useful,           *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of             *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU           *
+ * Lesser General Public License for more details.                            *
+ *                                                                            *
+ * You should have received a copy of the GNU Lesser General Public           *
+ * License along with this software; if not, write to the Free                *
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA         *
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.                   *
+ ******************************************************************************/
+package org.gatein.common.text;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares {@link CharBuffer} with {@link StringBuilder} for building a string from small pieces, and measures the
+ * {@link CharBufferPool} leases against a new buffer.
+ *
+ * @author <a href="mailto:agent@local">agent</a>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class CharBufferBenchmark
+{
+
+   @Param({Inputs.ASCII, Inputs.LATIN1, Inputs.CJK})
+   public String flavor;
+
+   /** . */
+   private String[] words;
+
+   /** . */
+   private char[][] chars;
+
+   @Setup
+   public void setup()
+   {
+      words = Inputs.words(flavor);
+      chars = new char[words.length][];
+      for (int i = 0; i < words.length; i++)
+      {
+         chars[i] = words[i].toCharArray();
+      }
+   }
+
+   @Benchmark
+   public String newCharBuffer()
+   {
+      CharBuffer buffer = new CharBuffer();
+      for (int i = 0; i < words.length; i++)
+      {
+         buffer.append(words[i]).append('/').append(chars[i]).append(',');
+      }
+      return buffer.asString();
+   }
+
+   @Benchmark
+   public String pooledCharBuffer()
+   {
+      CharBufferPool.Lease lease = CharBufferPool.DEFAULT.acquire();
+      try
+      {
+         for (int i = 0; i < words.length; i++)
+         {
+            lease.append(words[i]).append('/').append(chars[i]).append(',');
+         }
+         return lease.asString();
+      }
+      finally
+      {
+         lease.release();
+      }
+   }
+
+   @Benchmark
+   public String stringBuilder()
+   {
+      StringBuilder sb = new StringBuilder();
+      for (int i = 0; i < words.length; i++)
+      {
+         sb.append(words[i]).append('/').append(chars[i]).append(',');
+      }
+      return sb.toString();
+   }
+}
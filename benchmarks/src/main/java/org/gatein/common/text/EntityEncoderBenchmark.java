@@ -0,0 +1,149 @@
+/******************************************************************************
+ * JBoss, a division of Red Hat                                               *
+ * Copyright 2009, Red Hat Middleware, LLC, and individual                    *
+ * contributors as indicated by the @authors tag. See the                     *
+ * copyright.txt in the distribution for a full listing of                    *
+ * individual contributors.                                                   *
+ *                                                                            *
+ * This is free software; you can redistribute it and/or modify it            *
+ * under the terms of the GNU Lesser General Public License as                *
+ * published by the Free Software Foundation; either version 2.1 of           *
+ * the License, or (at your option) any later version.                        *
+ *                                                                            *
+ * This software is distributed in the hope that it will be useful,           *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of             *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU           *
+ * Lesser General Public License for more details.                            *
+ *                                                                            *
+ * You should have received a copy of the GNU Lesser General Public           *
+ * License along with this software; if not, write to the Free                *
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA         *
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.                   *
+ ******************************************************************************/
+package org.gatein.common.text;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures {@link EntityEncoder} on markup and on plain text, the full table escapes the non ASCII chars and
+ * the basic table only escapes the markup chars. The scalar baseline looks up every char without the scanner, the
+ * encoder should not be slower than it on markup.
+ *
+ * @author <a href="mailto:agent@local">agent</a>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class EntityEncoderBenchmark
+{
+
+   @Param({Inputs.ASCII, Inputs.LATIN1, Inputs.CJK})
+   public String flavor;
+
+   /** . */
+   private String markup;
+
+   /** . */
+   private char[] markupChars;
+
+   /** The entities of the full table in pages of 256 chars like the encoder tables, a page without entity is null. */
+   private char[][][] fullEntities;
+
+   /** . */
+   private String text;
+
+   /** . */
+   private CharBuffer buffer;
+
+   @Setup
+   public void setup()
+   {
+      markup = Inputs.markup(flavor);
+      markupChars = markup.toCharArray();
+      fullEntities = new char[0x100][][];
+      for (int c = 0; c < 0x10000; c++)
+      {
+         String name = EntityEncoder.FULL.lookup((char)c);
+         if (name != null)
+         {
+            if (fullEntities[c >> 8] == null)
+            {
+               fullEntities[c >> 8] = new char[0x100][];
+            }
+            fullEntities[c >> 8][c & 0xFF] = ("&" + name + ";").toCharArray();
+         }
+      }
+      text = Inputs.path(flavor).replace('/', ' ');
+      buffer = new CharBuffer(4096);
+   }
+
+   @Benchmark
+   public String fullMarkup()
+   {
+      return EntityEncoder.FULL.encode(markup);
+   }
+
+   @Benchmark
+   public String basicMarkup()
+   {
+      return EntityEncoder.BASIC.encode(markup);
+   }
+
+   @Benchmark
+   public int fullMarkupToBuffer()
+   {
+      buffer.reset();
+      EntityEncoder.FULL.encode(markup, buffer);
+      return buffer.getLength();
+   }
+
+   @Benchmark
+   public int fullMarkupCharsToBuffer()
+   {
+      buffer.reset();
+      EntityEncoder.FULL.encode(markupChars, buffer);
+      return buffer.getLength();
+   }
+
+   @Benchmark
+   public int fullMarkupCharsToBufferScalar()
+   {
+      buffer.reset();
+      char[] chars = markupChars;
+      int previous = 0;
+      for (int i = 0; i < chars.length; i++)
+      {
+         char c = chars[i];
+         char[][] page = fullEntities[c >> 8];
+         if (page != null && page[c & 0xFF] != null)
+         {
+            buffer.append(chars, previous, i - previous);
+            buffer.append(page[c & 0xFF]);
+            previous = i + 1;
+         }
+      }
+      buffer.append(chars, previous, chars.length - previous);
+      return buffer.getLength();
+   }
+
+   @Benchmark
+   public String basicText()
+   {
+      return EntityEncoder.BASIC.encode(text);
+   }
+}
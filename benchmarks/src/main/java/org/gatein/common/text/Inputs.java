@@ -0,0 +1,143 @@
+/******************************************************************************
+ * JBoss, a division of Red Hat                                               *
+ * Copyright 2009, Red Hat Middleware, LLC, and individual                    *
+ * contributors as indicated by the @authors tag. See the                     *
+ * copyright.txt in the distribution for a full listing of                    *
+ * individual contributors.                                                   *
+ *                                                                            *
+ * This is free software; you can redistribute it and/or modify it            *
+ * under the terms of the GNU Lesser General Public License as                *
+ * published by the Free Software Foundation; either version 2.1 of           *
+ * the License, or (at your option) any later version.                        *
+ *                                                                            *
+ * This software is distributed in the hope that it will be useful,           *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of             *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU           *
+ * Lesser General Public License for more details.                            *
+ *                                                                            *
+ * You should have received a copy of the GNU Lesser General Public           *
+ * License along with this software; if not, write to the Free                *
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA         *
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.                   *
+ ******************************************************************************/
+package org.gatein.common.text;
+
+/**
+ * The inputs shared by the benchmarks, modelled after the URLs, query strings and markup produced by a portal. Each
+ * input comes in three flavors: ASCII only, Latin-1 heavy and CJK heavy.
+ *
+ * @author <a href="mailto:agent@local">agent</a>
+ */
+public final class Inputs
+{
+
+   /** The ASCII flavor. */
+   public static final String ASCII = "ascii";
+
+   /** The Latin-1 flavor. */
+   public static final String LATIN1 = "latin1";
+
+   /** The CJK flavor. */
+   public static final String CJK = "cjk";
+
+   private Inputs()
+   {
+   }
+
+   /**
+    * Returns the words used to build an input of the specified flavor.
+    *
+    * @param flavor the flavor
+    * @return the words
+    * @throws IllegalArgumentException if the flavor is not known
+    */
+   public static String[] words(String flavor) throws IllegalArgumentException
+   {
+      if (ASCII.equals(flavor))
+      {
+         return new String[]{"portal", "classic", "home", "navigation", "page", "sitemap", "application", "search", "user", "group"};
+      }
+      else if (LATIN1.equals(flavor))
+      {
+         return new String[]{"accueil", "résumé", "société", "préférences", "straße", "señor", "élève", "garçon", "naïve", "über"};
+      }
+      else if (CJK.equals(flavor))
+      {
+         return new String[]{"首页", "导航", "页面", "搜索", "用户", "ポータル", "ホーム", "포털", "사용자", "应用"};
+      }
+      else
+      {
+         throw new IllegalArgumentException("Unknown flavor " + flavor);
+      }
+   }
+
+   /**
+    * Returns a portal URL path such as <code>/portal/classic/home/navigation</code>.
+    *
+    * @param flavor the flavor
+    * @return the path
+    */
+   public static String path(String flavor)
+   {
+      String[] words = words(flavor);
+      StringBuilder sb = new StringBuilder("/portal");
+      for (int i = 0; i < 6; i++)
+      {
+         sb.append('/').append(words[i]);
+      }
+      return sb.toString();
+   }
+
+   /**
+    * Returns a query string with navigational state parameters, it is not encoded.
+    *
+    * @param flavor the flavor
+    * @return the query string
+    */
+   public static String query(String flavor)
+   {
+      String[] words = words(flavor);
+      StringBuilder sb = new StringBuilder("portal:componentId=UIPortlet&portal:type=action&interactionstate=JBPNS_");
+      for (int i = 0; i < words.length; i++)
+      {
+         sb.append('&').append("navigationalstate").append(i).append('=').append(words[i]).append(' ').append(words[(i + 3) % words.length]);
+      }
+      return sb.toString();
+   }
+
+   /**
+    * Returns a markup fragment, it contains tags, attributes and text.
+    *
+    * @param flavor the flavor
+    * @return the markup
+    */
+   public static String markup(String flavor)
+   {
+      String[] words = words(flavor);
+      StringBuilder sb = new StringBuilder();
+      for (int i = 0; i < words.length; i++)
+      {
+         sb.append("<li class=\"item\"><a href=\"/portal/classic/").append(words[i]).append("?a=1&b=2\" title=\"");
+         sb.append(words[(i + 1) % words.length]).append("\">").append(words[i]).append(" &amp; ").append(words[(i + 2) % words.length]);
+         sb.append(" » more</a></li>\n");
+      }
+      return sb.toString();
+   }
+
+   /**
+    * Returns a template with <code>${</code> <code>}</code> bounded placeholders.
+    *
+    * @param flavor the flavor
+    * @return the template
+    */
+   public static String template(String flavor)
+   {
+      String[] words = words(flavor);
+      StringBuilder sb = new StringBuilder();
+      for (int i = 0; i < words.length; i++)
+      {
+         sb.append("<div id=\"${portletId}_").append(i).append("\">").append(words[i]).append(" ${").append("key").append(i).append("} </div>");
+      }
+      return sb.toString();
+   }
+}
@@ -0,0 +1,179 @@
+/******************************************************************************
+ * JBoss, a division of Red Hat                                               *
+ * Copyright 2009, Red Hat Middleware, LLC, and individual                    *
+ * contributors as indicated by the @authors tag. See the                     *
+ * copyright.txt in the distribution for a full listing of                    *
+ * individual contributors.                                                   *
+ *                                                                            *
+ * This is free software; you can redistribute it and/or modify it            *
+ * under the terms of the GNU Lesser General Public License as                *
+ * published by the Free Software Foundation; either version 2.1 of           *
+ * the License, or (at your option) any later version.                        *
+ *                                                                            *
+ * This software is distributed in the hope that it will be useful,           *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of             *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU           *
+ * Lesser General Public License for more details.                            *
+ *                                                                            *
+ * You should have received a copy of the GNU Lesser General Public           *
+ * License along with this software; if not, write to the Free                *
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA         *
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.                   *
+ ******************************************************************************/
+package org.gatein.common.text;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the {@link TextTools} replacements, the {@link MultiReplacer} and the {@link CharScanner}, the scanner is
+ * compared with a scalar loop testing one char at a time against the same table.
+ *
+ * @author <a href="mailto:agent@local">agent</a>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class TextToolsBenchmark
+{
+
+   @Param({Inputs.ASCII, Inputs.LATIN1, Inputs.CJK})
+   public String flavor;
+
+   /** . */
+   private String template;
+
+   /** . */
+   private CompiledTemplate compiledTemplate;
+
+   /** . */
+   private String markup;
+
+   /** . */
+   private char[] markupChars;
+
+   /** . */
+   private TextTools.StringReplacementGenerator generator;
+
+   /** . */
+   private MultiReplacer replacer;
+
+   /** The plain chars indexed by ASCII code. */
+   private boolean[] plain;
+
+   /** . */
+   private CharScanner scanner;
+
+   @Setup
+   public void setup()
+   {
+      template = Inputs.template(flavor);
+      compiledTemplate = CompiledTemplate.compile(template, "${", "}", true, false, false);
+      markup = Inputs.markup(flavor);
+      markupChars = markup.toCharArray();
+      generator = new TextTools.StringReplacementGenerator()
+      {
+         public String getReplacementFor(String match, String prefix, String suffix, boolean matchedPrefixOnly)
+         {
+            return match;
+         }
+      };
+      Map<String, String> replacements = new HashMap<String, String>();
+      replacements.put("portal", "site");
+      replacements.put("class", "styleClass");
+      replacements.put("&amp;", "&#38;");
+      replacements.put("href", "src");
+      replacer = new MultiReplacer(replacements);
+      plain = new boolean[0x80];
+      for (char c = ' '; c < 0x7F; c++)
+      {
+         plain[c] = "<>&\"'".indexOf(c) == -1;
+      }
+      scanner = new CharScanner(plain);
+   }
+
+   @Benchmark
+   public String replaceBoundedString()
+   {
+      return TextTools.replaceBoundedString(template, "${", "}", generator, true, false);
+   }
+
+   @Benchmark
+   public String renderCompiledTemplate()
+   {
+      return compiledTemplate.render(generator);
+   }
+
+   @Benchmark
+   public String replace()
+   {
+      return TextTools.replace(markup, "portal", "site");
+   }
+
+   @Benchmark
+   public String multiReplace()
+   {
+      return replacer.replace(markup);
+   }
+
+   @Benchmark
+   public String chainedReplace()
+   {
+      String s = markup;
+      s = TextTools.replace(s, "portal", "site");
+      s = TextTools.replace(s, "class", "styleClass");
+      s = TextTools.replace(s, "&amp;", "&#38;");
+      return TextTools.replace(s, "href", "src");
+   }
+
+   @Benchmark
+   public int scan()
+   {
+      int count = 0;
+      for (int i = 0; i < markupChars.length; i = scanner.scan(markupChars, i, markupChars.length) + 1)
+      {
+         count++;
+      }
+      return count;
+   }
+
+   @Benchmark
+   public int scanScalar()
+   {
+      int count = 0;
+      for (int i = 0; i < markupChars.length; i = scanScalar(markupChars, i, markupChars.length) + 1)
+      {
+         count++;
+      }
+      return count;
+   }
+
+   private int scanScalar(char[] chars, int from, int to)
+   {
+      for (int i = from; i < to; i++)
+      {
+         char c = chars[i];
+         if (c >= 0x80 || !plain[c])
+         {
+            return i;
+         }
+      }
+      return to;
+   }
+}
@@ -0,0 +1,113 @@
+/******************************************************************************
+ * JBoss, a division of Red Hat                                               *
+ * Copyright 2009, Red Hat Middleware, LLC, and individual                    *
+ * contributors as indicated by the @authors tag. See the                     *
+ * copyright.txt in the distribution for a full listing of                    *
+ * individual contributors.                                                   *
+ *                                                                            *
+ * This is free software; you can redistribute it and/or modify it            *
+ * under the terms of the GNU Lesser General Public License as                *
+ * published by the Free Software Foundation; either version 2.1 of           *
+ * the License, or (at your option) any later version.                        *
+ *                                                                            *
+ * This software is distributed in the hope that it will be useful,           *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of             *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU           *
+ * Lesser General Public License for more details.                            *
+ *                                                                            *
+ * You should have received a copy of the GNU Lesser General Public           *
+ * License along with this software; if not, write to the Free                *
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA         *
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.                   *
+ ******************************************************************************/
+package org.gatein.common.text;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the footprint of the {@link FastURLEncoder} escape tables. Each operation creates an encoder and encodes
+ * a query, so only the pages of the chars of the query are built, and is compared with the creation of the flat
+ * table of 65534 escape sequences that the encoder used to build up front. Run it with the gc profiler, the
+ * gc.alloc.rate.norm column gives the bytes allocated per operation.
+ *
+ * @author <a href="mailto:agent@local">agent</a>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 20)
+@Measurement(iterations = 20)
+@Fork(2)
+public class URLEncoderFootprintBenchmark
+{
+
+   @Param({Inputs.ASCII, Inputs.LATIN1, Inputs.CJK})
+   public String flavor;
+
+   /** . */
+   private String query;
+
+   /** . */
+   private CharBuffer buffer;
+
+   @Setup
+   public void setup()
+   {
+      query = Inputs.query(flavor);
+      buffer = new CharBuffer(1024);
+   }
+
+   @Benchmark
+   public FastURLEncoder pagedTable()
+   {
+      FastURLEncoder encoder = new FastURLEncoder(CharToByteEncoder.UTF8.INSTANCE);
+      buffer.reset();
+      encoder.encode(query, buffer);
+      return encoder;
+   }
+
+   @Benchmark
+   public char[][] flatTable()
+   {
+      char[][] table = new char[0xFFFE][];
+      for (char c = 0; c < table.length; c++)
+      {
+         if (TextTools.isAlphaNumeric(c) || c == '.' || c == '-' || c == '*' || c == '_')
+         {
+            table[c] = new char[]{c};
+         }
+         else if (c == ' ')
+         {
+            table[c] = new char[]{'+'};
+         }
+         else
+         {
+            byte[] bytes = CharToByteEncoder.UTF8.INSTANCE.encode(c);
+            if (bytes.length > 0)
+            {
+               char[] z = new char[bytes.length * 3];
+               for (int i = 0; i < bytes.length; i++)
+               {
+                  z[i * 3] = '%';
+                  z[i * 3 + 1] = TextTools.toHex((bytes[i] & 0xF0) >> 4);
+                  z[i * 3 + 2] = TextTools.toHex(bytes[i] & 0x0F);
+               }
+               table[c] = z;
+            }
+         }
+      }
+      return table;
+   }
+}
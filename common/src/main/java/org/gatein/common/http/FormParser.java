@@ -0,0 +1,374 @@
+/******************************************************************************
+ * JBoss, a division of Red Hat                                               *
+ * Copyright 2009, Red Hat Middleware, LLC, and individual                    *
+ * contributors as indicated by the @authors tag. See the                     *
+ * copyright.txt in the distribution for a full listing of                    *
+ * individual contributors.                                                   *
+ *                                                                            *
+ * This is free software; you can redistribute it and/or modify it            *
+ * under the terms of the GNU Lesser General Public License as                *
+ * published by the Free Software Foundation; either version 2.1 of           *
+ * the License, or (at your option) any later version.                        *
+ *                                                                            *
+ * This software is distributed in the hope that it will be useful,           *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of             *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU           *
+ * Lesser General Public License for more details.                            *
+ *                                                                            *
+ * You should have received a copy of the GNU Lesser General Public           *
+ * License along with this software; if not, write to the Free                *
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA         *
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.                   *
+ ******************************************************************************/
+package org.gatein.common.http;
+
+import org.gatein.common.logging.Logger;
+import org.gatein.common.logging.LoggerFactory;
+import org.gatein.common.text.EncodingException;
+import org.gatein.common.text.FastURLByteDecoder;
+import org.gatein.common.util.ParameterMap;
+import org.gatein.common.util.ParameterValidation;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.SelectableChannel;
+
+/**
+ * A streaming parser for <code>application/x-www-form-urlencoded</code> bodies. The body is read by chunks of a fixed
+ * size and only the bytes of the current parameter are retained, they are decoded with a {@link FastURLByteDecoder}
+ * when the parameter ends. The parsing rules are the same than for
+ * {@link QueryStringParser#parseQueryString(byte[], int, int, FastURLByteDecoder)}.
+ *
+ * The parser enforces a maximum number of parameters, a maximum length for the encoded names and values and a
+ * maximum size for the body. A {@link FormLimitExceededException} is thrown as soon as a limit is exceeded, before
+ * the rest of the body is read. This class is thread safe.
+ *
+ * @author <a href="mailto:agent@local">agent</a>
+ */
+public class FormParser
+{
+
+   /** . */
+   private static final Logger log = LoggerFactory.getLogger(FormParser.class);
+
+   /** . */
+   public static final int DEFAULT_MAX_PARAMETERS = 10000;
+
+   /** . */
+   public static final int DEFAULT_MAX_NAME_LENGTH = 1024;
+
+   /** . */
+   public static final int DEFAULT_MAX_VALUE_LENGTH = 1024 * 1024;
+
+   /** . */
+   public static final long DEFAULT_MAX_BYTES = 2 * 1024 * 1024;
+
+   /** . */
+   private static final int BUFFER_SIZE = 4096;
+
+   /** . */
+   private static final int NAME = 0;
+
+   /** . */
+   private static final int VALUE = 1;
+
+   /** . */
+   private static final int INVALID_CHUNK = 2;
+
+   /** . */
+   private final FastURLByteDecoder decoder;
+
+   /** . */
+   private final int maxParameters;
+
+   /** . */
+   private final int maxNameLength;
+
+   /** . */
+   private final int maxValueLength;
+
+   /** . */
+   private final long maxBytes;
+
+   /**
+    * Creates a parser decoding UTF-8 with the default limits.
+    */
+   public FormParser()
+   {
+      this(FastURLByteDecoder.getUTF8Instance(), DEFAULT_MAX_PARAMETERS, DEFAULT_MAX_NAME_LENGTH, DEFAULT_MAX_VALUE_LENGTH, DEFAULT_MAX_BYTES);
+   }
+
+   /**
+    * Creates a parser.
+    *
+    * @param decoder        the decoder
+    * @param maxParameters  the maximum number of parameters, a multi valued parameter counts for each value
+    * @param maxNameLength  the maximum length of an encoded name in bytes
+    * @param maxValueLength the maximum length of an encoded value in bytes
+    * @param maxBytes       the maximum size of the body in bytes
+    * @throws IllegalArgumentException if the decoder is null or a limit is not positive
+    */
+   public FormParser(FastURLByteDecoder decoder, int maxParameters, int maxNameLength, int maxValueLength, long maxBytes) throws IllegalArgumentException
+   {
+      ParameterValidation.throwIllegalArgExceptionIfNull(decoder, "FastURLByteDecoder");
+      if (maxParameters < 1 || maxNameLength < 1 || maxValueLength < 1 || maxBytes < 1)
+      {
+         throw new IllegalArgumentException("Limits must be positive");
+      }
+
+      //
+      this.decoder = decoder;
+      this.maxParameters = maxParameters;
+      this.maxNameLength = maxNameLength;
+      this.maxValueLength = maxValueLength;
+      this.maxBytes = maxBytes;
+   }
+
+   public FastURLByteDecoder getDecoder()
+   {
+      return decoder;
+   }
+
+   public int getMaxParameters()
+   {
+      return maxParameters;
+   }
+
+   public int getMaxNameLength()
+   {
+      return maxNameLength;
+   }
+
+   public int getMaxValueLength()
+   {
+      return maxValueLength;
+   }
+
+   public long getMaxBytes()
+   {
+      return maxBytes;
+   }
+
+   /**
+    * Parses a form body until the end of the stream, the stream is not closed.
+    *
+    * @param in the stream
+    * @return a <String,String[]> map
+    * @throws IllegalArgumentException    if the stream is null
+    * @throws FormLimitExceededException if a limit is exceeded
+    * @throws IOException                 if the stream cannot be read
+    */
+   public ParameterMap parse(InputStream in) throws IllegalArgumentException, IOException
+   {
+      ParameterValidation.throwIllegalArgExceptionIfNull(in, "InputStream");
+
+      //
+      Parsing parsing = new Parsing();
+      byte[] buffer = new byte[BUFFER_SIZE];
+      for (int len = in.read(buffer); len != -1; len = in.read(buffer))
+      {
+         parsing.feed(buffer, 0, len);
+      }
+      return parsing.end();
+   }
+
+   /**
+    * Parses a form body until the end of the channel, the channel is not closed. The channel must be blocking, a
+    * selectable channel in non blocking mode is rejected.
+    *
+    * @param channel the channel
+    * @return a <String,String[]> map
+    * @throws IllegalArgumentException    if the channel is null or is a selectable channel in non blocking mode
+    * @throws FormLimitExceededException if a limit is exceeded
+    * @throws IOException                 if the channel cannot be read
+    */
+   public ParameterMap parse(ReadableByteChannel channel) throws IllegalArgumentException, IOException
+   {
+      ParameterValidation.throwIllegalArgExceptionIfNull(channel, "ReadableByteChannel");
+      if (channel instanceof SelectableChannel && !((SelectableChannel)channel).isBlocking())
+      {
+         throw new IllegalArgumentException("The channel must be in blocking mode");
+      }
+
+      //
+      Parsing parsing = new Parsing();
+      ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+      for (int len = channel.read(buffer); len != -1; len = channel.read(buffer))
+      {
+         parsing.feed(buffer.array(), 0, buffer.position());
+         buffer.clear();
+      }
+      return parsing.end();
+   }
+
+   /** The state of a parsing. */
+   private class Parsing
+   {
+
+      /** . */
+      private final QueryStringParser.Parameters parameters = new QueryStringParser.Parameters();
+
+      /** The bytes of the current name followed by the bytes of the current value. */
+      private byte[] token = new byte[64];
+
+      /** . */
+      private int length;
+
+      /** . */
+      private int nameLength;
+
+      /** . */
+      private int state = NAME;
+
+      /** . */
+      private long bytes;
+
+      /** . */
+      private int count;
+
+      void feed(byte[] bytes, int off, int len) throws FormLimitExceededException
+      {
+         this.bytes += len;
+         if (this.bytes > maxBytes)
+         {
+            throw new FormLimitExceededException("Form body exceeds " + maxBytes + " bytes");
+         }
+
+         //
+         int to = off + len;
+         while (off < to)
+         {
+            int end = off;
+            switch (state)
+            {
+               case NAME:
+                  while (end < to && bytes[end] != '&' && bytes[end] != '=')
+                  {
+                     end++;
+                  }
+                  if (length + end - off > maxNameLength)
+                  {
+                     throw new FormLimitExceededException("Parameter name exceeds " + maxNameLength + " bytes");
+                  }
+                  append(bytes, off, end);
+                  if (end < to)
+                  {
+                     if (bytes[end] == '&')
+                     {
+                        nameLength = length;
+                        parameter();
+                     }
+                     else if (length == 0)
+                     {
+                        // A chunk starting with '=' is invalid
+                        state = INVALID_CHUNK;
+                     }
+                     else
+                     {
+                        nameLength = length;
+                        state = VALUE;
+                     }
+                     end++;
+                  }
+                  break;
+               case VALUE:
+                  while (end < to && bytes[end] != '&')
+                  {
+                     end++;
+                  }
+                  if (length - nameLength + end - off > maxValueLength)
+                  {
+                     throw new FormLimitExceededException("Parameter value exceeds " + maxValueLength + " bytes");
+                  }
+                  append(bytes, off, end);
+                  if (end < to)
+                  {
+                     parameter();
+                     end++;
+                  }
+                  break;
+               case INVALID_CHUNK:
+                  while (end < to && bytes[end] != '&')
+                  {
+                     end++;
+                  }
+                  if (end < to)
+                  {
+                     state = NAME;
+                     end++;
+                  }
+                  break;
+            }
+            off = end;
+         }
+      }
+
+      ParameterMap end() throws FormLimitExceededException
+      {
+         if (state == VALUE)
+         {
+            parameter();
+         }
+         else if (state == NAME)
+         {
+            nameLength = length;
+            parameter();
+         }
+         return parameters.toParameterMap();
+      }
+
+      private void append(byte[] bytes, int from, int to)
+      {
+         int len = to - from;
+         if (length + len > token.length)
+         {
+            byte[] tmp = new byte[Math.max(token.length * 2, length + len)];
+            System.arraycopy(token, 0, tmp, 0, length);
+            token = tmp;
+         }
+         System.arraycopy(bytes, from, token, length, len);
+         length += len;
+      }
+
+      /**
+       * Ends the current parameter, the name is empty when the chunk was empty.
+       *
+       * @throws FormLimitExceededException if there are too many parameters
+       */
+      private void parameter() throws FormLimitExceededException
+      {
+         if (nameLength > 0)
+         {
+            if (++count > maxParameters)
+            {
+               throw new FormLimitExceededException("Form body exceeds " + maxParameters + " parameters");
+            }
+            String name = null;
+            try
+            {
+               name = decoder.decode(token, 0, nameLength);
+            }
+            catch (EncodingException e)
+            {
+               log.debug("Could not decode parameter name", e);
+            }
+            if (name != null)
+            {
+               try
+               {
+                  parameters.add(name, decoder.decode(token, nameLength, length - nameLength));
+               }
+               catch (EncodingException e)
+               {
+                  log.debug("Could not decode parameter value of " + name, e);
+               }
+            }
+         }
+         length = 0;
+         nameLength = 0;
+         state = NAME;
+      }
+   }
+}
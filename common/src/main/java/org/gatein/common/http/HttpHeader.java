@@ -22,13 +22,16 @@
  ******************************************************************************/
 package org.gatein.common.http;
 
+import org.gatein.common.util.ParameterValidation;
+
 import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
 
 /**
- * Modelize an http header structure.
+ * Modelize an http header structure. The value rendered by {@link #getValue()} is cached until the header, one of its
+ * elements or their params are modified.
  *
  * @author <a href="mailto:julien@jboss.org">Julien Viet</a>
  * @version $Revision: 7228 $
@@ -37,12 +40,21 @@ import java.util.List;
 public class HttpHeader implements Serializable
 {
 
+   /** The serial version of the original class, the static methods change the computed value. */
+   private static final long serialVersionUID = -1184405821384575037L;
+
    /** . */
    private String name;
 
    /** . */
    private List<Element> elements = new ArrayList<Element>();
 
+   /** The number of modifications of the element list. */
+   private transient int modCount;
+
+   /** The last rendering or null. */
+   private transient Rendering rendering;
+
    public HttpHeader(String name)
    {
       if (name == null)
@@ -52,6 +64,21 @@ public class HttpHeader implements Serializable
       this.name = name;
    }
 
+   /**
+    * Parses an header value to its elements and params, see {@link HttpHeaderValue} for the parsing rules and to
+    * read the value without creating the header structure.
+    *
+    * @param name  the header name
+    * @param value the header value
+    * @return the header
+    * @throws IllegalArgumentException if any argument is null
+    */
+   public static HttpHeader parse(String name, String value) throws IllegalArgumentException
+   {
+      ParameterValidation.throwIllegalArgExceptionIfNull(name, "name");
+      return new HttpHeaderValue(value).toHeader(name);
+   }
+
    public String getName()
    {
       return name;
@@ -74,6 +101,7 @@ public class HttpHeader implements Serializable
          throw new IllegalArgumentException();
       }
       elements.add(element);
+      modCount++;
       return element;
    }
 
@@ -88,12 +116,23 @@ public class HttpHeader implements Serializable
 
    public Iterator<Element> elements()
    {
-      return elements.iterator();
+      return new ModCountIterator<Element>(elements.iterator())
+      {
+         void removed(Element element)
+         {
+            // Keep the stamp increasing when the modifications of the element are not counted anymore
+            modCount += 1 + element.modCount;
+         }
+      };
    }
 
    /** An element of an header */
    public static class Element implements Serializable
    {
+
+      /** The serial version of the original class, the modification tracking changes the computed value. */
+      private static final long serialVersionUID = 4169132508576698108L;
+
       /** The mandatory name. */
       private String name;
 
@@ -103,6 +142,9 @@ public class HttpHeader implements Serializable
       /** The params. */
       private List<Param> params;
 
+      /** The number of modifications of the param list. */
+      private transient int modCount;
+
       public Element(String name)
       {
          this(name, null);
@@ -146,6 +188,7 @@ public class HttpHeader implements Serializable
             throw new IllegalArgumentException();
          }
          params.add(param);
+         modCount++;
          return param;
       }
 
@@ -170,7 +213,13 @@ public class HttpHeader implements Serializable
        */
       public Iterator<Param> params()
       {
-         return params.iterator();
+         return new ModCountIterator<Param>(params.iterator())
+         {
+            void removed(Param param)
+            {
+               modCount++;
+            }
+         };
       }
 
       /** A param of an element. */
@@ -211,8 +260,52 @@ public class HttpHeader implements Serializable
 
    public String getValue()
    {
-      StringBuffer buffer = new StringBuffer();
-      for (Iterator<HttpHeader.Element> j = elements(); j.hasNext();)
+      return render().value;
+   }
+
+   /**
+    * Returns the US-ASCII bytes of the header line terminated by CRLF as written by {@link HttpHeadersWriter}, the
+    * returned array is cached and must not be modified.
+    *
+    * @return the header line bytes
+    */
+   byte[] getLine()
+   {
+      Rendering rendering = render();
+      if (rendering.line == null)
+      {
+         rendering = new Rendering(rendering.stamp, rendering.value, HttpHeadersWriter.encodeLine(name, rendering.value));
+         this.rendering = rendering;
+      }
+      return rendering.line;
+   }
+
+   /**
+    * Returns a rendering of the current state, the stamp is the sum of the modification counts of the header and its
+    * elements, it increases each time the header, an element or a param is modified.
+    *
+    * @return the rendering
+    */
+   private Rendering render()
+   {
+      int stamp = modCount;
+      for (int i = 0; i < elements.size(); i++)
+      {
+         stamp += elements.get(i).modCount;
+      }
+      Rendering rendering = this.rendering;
+      if (rendering == null || rendering.stamp != stamp)
+      {
+         rendering = new Rendering(stamp, renderValue(), null);
+         this.rendering = rendering;
+      }
+      return rendering;
+   }
+
+   private String renderValue()
+   {
+      StringBuilder buffer = new StringBuilder();
+      for (Iterator<HttpHeader.Element> j = elements.iterator(); j.hasNext();)
       {
          HttpHeader.Element elt = (HttpHeader.Element)j.next();
          buffer.append(elt.getName());
@@ -220,7 +313,7 @@ public class HttpHeader implements Serializable
          {
             buffer.append("=").append(elt.getValue());
          }
-         for (Iterator<HttpHeader.Element.Param> k = elt.params(); k.hasNext();)
+         for (Iterator<HttpHeader.Element.Param> k = elt.params.iterator(); k.hasNext();)
          {
             HttpHeader.Element.Param param = (HttpHeader.Element.Param)k.next();
             buffer.append(";").append(param.getName());
@@ -241,4 +334,59 @@ public class HttpHeader implements Serializable
    {
       return name + ": " + getValue();
    }
+
+   /** An immutable rendering of the header, it can be published without synchronization. */
+   private static class Rendering
+   {
+
+      /** . */
+      private final int stamp;
+
+      /** . */
+      private final String value;
+
+      /** The header line or null when it was not encoded. */
+      private final byte[] line;
+
+      private Rendering(int stamp, String value, byte[] line)
+      {
+         this.stamp = stamp;
+         this.value = value;
+         this.line = line;
+      }
+   }
+
+   /** An iterator counting the removals as modifications of the iterated list. */
+   private abstract static class ModCountIterator<E> implements Iterator<E>
+   {
+
+      /** . */
+      private final Iterator<E> delegate;
+
+      /** . */
+      private E last;
+
+      private ModCountIterator(Iterator<E> delegate)
+      {
+         this.delegate = delegate;
+      }
+
+      public boolean hasNext()
+      {
+         return delegate.hasNext();
+      }
+
+      public E next()
+      {
+         return last = delegate.next();
+      }
+
+      public void remove()
+      {
+         delegate.remove();
+         removed(last);
+      }
+
+      abstract void removed(E removed);
+   }
 }
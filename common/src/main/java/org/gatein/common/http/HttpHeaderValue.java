@@ -0,0 +1,567 @@
+/******************************************************************************
+ * JBoss, a division of Red Hat                                               *
+ * Copyright 2009, Red Hat Middleware, LLC, and individual                    *
+ * contributors as indicated by the @authors tag. See the                     *
+ * copyright.txt in the distribution for a full listing of                    *
+ * individual contributors.                                                   *
+ *                                                                            *
+ * This is free software; you can redistribute it and/or modify it            *
+ * under the terms of the GNU Lesser General Public License as                *
+ * published by the Free Software Foundation; either version 2.1 of           *
+ * the License, or (at your option) any later version.                        *
+ *                                                                            *
+ * This software is distributed in the hope that it will be useful,           *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of             *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU           *
+ * Lesser General Public License for more details.                            *
+ *                                                                            *
+ * You should have received a copy of the GNU Lesser General Public           *
+ * License along with this software; if not, write to the Free                *
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA         *
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.                   *
+ ******************************************************************************/
+package org.gatein.common.http;
+
+import org.gatein.common.util.ParameterValidation;
+
+/**
+ * A read only view of a parsed header value, the value is tokenized in a single pass to the elements and params
+ * modelized by {@link HttpHeader} but they are only recorded as ranges of the original string. The names and values
+ * are created when they are asked for, the elements and params can be compared to a name without creating any
+ * object and an {@link HttpHeader} can be created when the full structure is needed.
+ * <p/>
+ * The value is a comma separated list of elements, an element has a name, an optional value and semicolon separated
+ * params that have a name and an optional value. The values are tokens or quoted strings, a quoted string can contain
+ * the separators and its escaped chars are unescaped. The parsing is lenient, the whitespace around the separators is
+ * ignored, the elements or params without a name are skipped and an unterminated quoted string ends with the value.
+ * <p/>
+ * A view can be reused to parse several values with {@link #parse(String)}, it is not thread safe.
+ *
+ * @author <a href="mailto:agent@local">agent</a>
+ */
+public final class HttpHeaderValue
+{
+
+   /** . */
+   private static final int NAME_FROM = 0;
+
+   /** . */
+   private static final int NAME_TO = 1;
+
+   /** . */
+   private static final int VALUE_FROM = 2;
+
+   /** . */
+   private static final int VALUE_TO = 3;
+
+   /** . */
+   private static final int PARAM_START = 4;
+
+   /** . */
+   private static final int PARAM_COUNT = 5;
+
+   /** The number of ints of an element. */
+   private static final int ELEMENT_SIZE = 6;
+
+   /** The number of ints of a param. */
+   private static final int PARAM_SIZE = 4;
+
+   /** . */
+   private String value;
+
+   /** The element ranges. */
+   private int[] elements = new int[4 * ELEMENT_SIZE];
+
+   /** . */
+   private int elementCount;
+
+   /** The param ranges of all the elements. */
+   private int[] params = new int[8 * PARAM_SIZE];
+
+   /** . */
+   private int paramCount;
+
+   /**
+    * Creates an empty view.
+    */
+   public HttpHeaderValue()
+   {
+      this.value = "";
+   }
+
+   /**
+    * Creates a view of the specified value.
+    *
+    * @param value the header value
+    * @throws IllegalArgumentException if the value is null
+    */
+   public HttpHeaderValue(String value) throws IllegalArgumentException
+   {
+      parse(value);
+   }
+
+   /**
+    * Parses a new value, the view does not retain anything from the previous value.
+    *
+    * @param value the header value
+    * @return this view
+    * @throws IllegalArgumentException if the value is null
+    */
+   public HttpHeaderValue parse(String value) throws IllegalArgumentException
+   {
+      ParameterValidation.throwIllegalArgExceptionIfNull(value, "value");
+
+      //
+      this.value = value;
+      this.elementCount = 0;
+      this.paramCount = 0;
+
+      //
+      int len = value.length();
+      int i = 0;
+      while (i < len)
+      {
+         int element = elementCount * ELEMENT_SIZE;
+         if (element == elements.length)
+         {
+            elements = grow(elements);
+         }
+
+         // The element name ends with any separator
+         i = skipWhitespace(i);
+         int nameFrom = i;
+         i = scanName(i);
+         elements[element + NAME_FROM] = nameFrom;
+         elements[element + NAME_TO] = trim(nameFrom, i);
+         elements[element + VALUE_FROM] = -1;
+         elements[element + VALUE_TO] = -1;
+         if (i < len && value.charAt(i) == '=')
+         {
+            i = scanValue(i + 1, elements, element + VALUE_FROM);
+         }
+
+         // The params
+         int paramStart = paramCount;
+         while (i < len && value.charAt(i) == ';')
+         {
+            int param = paramCount * PARAM_SIZE;
+            if (param == params.length)
+            {
+               params = grow(params);
+            }
+            i = skipWhitespace(i + 1);
+            nameFrom = i;
+            i = scanName(i);
+            int nameTo = trim(nameFrom, i);
+            params[param + NAME_FROM] = nameFrom;
+            params[param + NAME_TO] = nameTo;
+            params[param + VALUE_FROM] = -1;
+            params[param + VALUE_TO] = -1;
+            if (i < len && value.charAt(i) == '=')
+            {
+               i = scanValue(i + 1, params, param + VALUE_FROM);
+            }
+            if (nameTo > nameFrom)
+            {
+               paramCount++;
+            }
+         }
+
+         // An element without a name is dropped with its params
+         if (elements[element + NAME_TO] > elements[element + NAME_FROM])
+         {
+            elements[element + PARAM_START] = paramStart;
+            elements[element + PARAM_COUNT] = paramCount - paramStart;
+            elementCount++;
+         }
+         else
+         {
+            paramCount = paramStart;
+         }
+
+         // Skip the comma
+         i++;
+      }
+
+      //
+      return this;
+   }
+
+   /**
+    * Returns the value that was parsed.
+    *
+    * @return the raw header value
+    */
+   public String getRawValue()
+   {
+      return value;
+   }
+
+   public int getElementCount()
+   {
+      return elementCount;
+   }
+
+   public String getElementName(int index) throws IndexOutOfBoundsException
+   {
+      int element = element(index);
+      return value.substring(elements[element + NAME_FROM], elements[element + NAME_TO]);
+   }
+
+   /**
+    * Returns the value of an element, a quoted string value is unquoted.
+    *
+    * @param index the element index
+    * @return the element value or null if the element has no value
+    * @throws IndexOutOfBoundsException if the index is not valid
+    */
+   public String getElementValue(int index) throws IndexOutOfBoundsException
+   {
+      int element = element(index);
+      return unquote(elements[element + VALUE_FROM], elements[element + VALUE_TO]);
+   }
+
+   /**
+    * Returns the index of the first element with the specified name ignoring the case.
+    *
+    * @param name the element name
+    * @return the element index or -1
+    * @throws IllegalArgumentException if the name is null
+    */
+   public int indexOfElement(String name) throws IllegalArgumentException
+   {
+      ParameterValidation.throwIllegalArgExceptionIfNull(name, "name");
+      for (int index = 0; index < elementCount; index++)
+      {
+         if (matches(elements, index * ELEMENT_SIZE, name))
+         {
+            return index;
+         }
+      }
+      return -1;
+   }
+
+   public int getParamCount(int index) throws IndexOutOfBoundsException
+   {
+      return elements[element(index) + PARAM_COUNT];
+   }
+
+   public String getParamName(int index, int paramIndex) throws IndexOutOfBoundsException
+   {
+      int param = param(index, paramIndex);
+      return value.substring(params[param + NAME_FROM], params[param + NAME_TO]);
+   }
+
+   /**
+    * Returns the value of a param, a quoted string value is unquoted.
+    *
+    * @param index      the element index
+    * @param paramIndex the param index in the element
+    * @return the param value or null if the param has no value
+    * @throws IndexOutOfBoundsException if an index is not valid
+    */
+   public String getParamValue(int index, int paramIndex) throws IndexOutOfBoundsException
+   {
+      int param = param(index, paramIndex);
+      return unquote(params[param + VALUE_FROM], params[param + VALUE_TO]);
+   }
+
+   /**
+    * Returns the index of the first param of an element with the specified name ignoring the case.
+    *
+    * @param index the element index
+    * @param name  the param name
+    * @return the param index or -1
+    * @throws IndexOutOfBoundsException if the index is not valid
+    * @throws IllegalArgumentException  if the name is null
+    */
+   public int indexOfParam(int index, String name) throws IndexOutOfBoundsException, IllegalArgumentException
+   {
+      int element = element(index);
+      ParameterValidation.throwIllegalArgExceptionIfNull(name, "name");
+      int start = elements[element + PARAM_START];
+      int count = elements[element + PARAM_COUNT];
+      for (int paramIndex = 0; paramIndex < count; paramIndex++)
+      {
+         if (matches(params, (start + paramIndex) * PARAM_SIZE, name))
+         {
+            return paramIndex;
+         }
+      }
+      return -1;
+   }
+
+   /**
+    * Returns the value of the first param of an element with the specified name ignoring the case.
+    *
+    * @param index the element index
+    * @param name  the param name
+    * @return the param value or null if the element has no such param or the param has no value
+    * @throws IndexOutOfBoundsException if the index is not valid
+    * @throws IllegalArgumentException  if the name is null
+    */
+   public String getParamValue(int index, String name) throws IndexOutOfBoundsException, IllegalArgumentException
+   {
+      int paramIndex = indexOfParam(index, name);
+      return paramIndex == -1 ? null : getParamValue(index, paramIndex);
+   }
+
+   /**
+    * Returns the quality of an element given by its <code>q</code> param as defined by the HTTP protocol, the quality
+    * is read without creating the param value. An element without quality has the quality 1 and an element with a
+    * malformed quality has the quality 0.
+    *
+    * @param index the element index
+    * @return the quality between 0 and 1
+    * @throws IndexOutOfBoundsException if the index is not valid
+    */
+   public float getQuality(int index) throws IndexOutOfBoundsException
+   {
+      int paramIndex = indexOfParam(index, "q");
+      if (paramIndex == -1)
+      {
+         return 1f;
+      }
+      int param = (elements[index * ELEMENT_SIZE + PARAM_START] + paramIndex) * PARAM_SIZE;
+      int from = params[param + VALUE_FROM];
+      int to = params[param + VALUE_TO];
+      if (from == to)
+      {
+         return 0f;
+      }
+
+      // qvalue = ( "0" [ "." 0*3DIGIT ] ) / ( "1" [ "." 0*3("0") ] ), more digits are tolerated and ignored
+      char c = value.charAt(from++);
+      if (c != '0' && c != '1')
+      {
+         return 0f;
+      }
+      int thousandths = 0;
+      if (from < to)
+      {
+         if (value.charAt(from++) != '.')
+         {
+            return 0f;
+         }
+         for (int scale = 100; from < to; scale /= 10)
+         {
+            int digit = value.charAt(from++) - '0';
+            if (digit < 0 || digit > 9)
+            {
+               return 0f;
+            }
+            thousandths += digit * scale;
+         }
+      }
+      if (c == '1')
+      {
+         return thousandths == 0 ? 1f : 0f;
+      }
+      return thousandths / 1000f;
+   }
+
+   /**
+    * Creates the element at the specified index.
+    *
+    * @param index the element index
+    * @return a new element
+    * @throws IndexOutOfBoundsException if the index is not valid
+    */
+   public HttpHeader.Element getElement(int index) throws IndexOutOfBoundsException
+   {
+      HttpHeader.Element element = new HttpHeader.Element(getElementName(index), getElementValue(index));
+      for (int paramIndex = 0, count = getParamCount(index); paramIndex < count; paramIndex++)
+      {
+         element.addParam(getParamName(index, paramIndex), getParamValue(index, paramIndex));
+      }
+      return element;
+   }
+
+   /**
+    * Creates an header with all the elements of this view.
+    *
+    * @param name the header name
+    * @return a new header
+    * @throws IllegalArgumentException if the name is null
+    */
+   public HttpHeader toHeader(String name) throws IllegalArgumentException
+   {
+      HttpHeader header = new HttpHeader(name);
+      for (int index = 0; index < elementCount; index++)
+      {
+         header.addElement(getElement(index));
+      }
+      return header;
+   }
+
+   public String toString()
+   {
+      return value;
+   }
+
+   private int element(int index)
+   {
+      if (index < 0 || index >= elementCount)
+      {
+         throw new IndexOutOfBoundsException("No element at index " + index);
+      }
+      return index * ELEMENT_SIZE;
+   }
+
+   private int param(int index, int paramIndex)
+   {
+      int element = element(index);
+      if (paramIndex < 0 || paramIndex >= elements[element + PARAM_COUNT])
+      {
+         throw new IndexOutOfBoundsException("No param at index " + paramIndex + " of element " + index);
+      }
+      return (elements[element + PARAM_START] + paramIndex) * PARAM_SIZE;
+   }
+
+   private boolean matches(int[] ranges, int offset, String name)
+   {
+      int from = ranges[offset + NAME_FROM];
+      int length = ranges[offset + NAME_TO] - from;
+      return length == name.length() && value.regionMatches(true, from, name, 0, length);
+   }
+
+   private int skipWhitespace(int i)
+   {
+      int len = value.length();
+      while (i < len && isWhitespace(value.charAt(i)))
+      {
+         i++;
+      }
+      return i;
+   }
+
+   private int trim(int from, int to)
+   {
+      while (to > from && isWhitespace(value.charAt(to - 1)))
+      {
+         to--;
+      }
+      return to;
+   }
+
+   private int scanName(int i)
+   {
+      int len = value.length();
+      for (char c; i < len && (c = value.charAt(i)) != ',' && c != ';' && c != '='; i++)
+      {
+         // Scan
+      }
+      return i;
+   }
+
+   /**
+    * Scans a token or a quoted string value, the range of the value is stored in the array and any char following a
+    * quoted string is ignored until the next separator.
+    *
+    * @param i      the index after the equals sign
+    * @param ranges the range array
+    * @param offset the offset of the value range in the array
+    * @return the index of the separator ending the value or the value length
+    */
+   private int scanValue(int i, int[] ranges, int offset)
+   {
+      int len = value.length();
+      i = skipWhitespace(i);
+      int from = i;
+      int to;
+      if (i < len && value.charAt(i) == '"')
+      {
+         for (i++; i < len; i++)
+         {
+            char c = value.charAt(i);
+            if (c == '\\')
+            {
+               i++;
+            }
+            else if (c == '"')
+            {
+               i++;
+               break;
+            }
+         }
+         i = Math.min(i, len);
+         to = i;
+         for (char c; i < len && (c = value.charAt(i)) != ',' && c != ';'; i++)
+         {
+            // Skip
+         }
+      }
+      else
+      {
+         for (char c; i < len && (c = value.charAt(i)) != ',' && c != ';'; i++)
+         {
+            // Scan
+         }
+         to = trim(from, i);
+      }
+      ranges[offset] = from;
+      ranges[offset + 1] = to;
+      return i;
+   }
+
+   private String unquote(int from, int to)
+   {
+      if (from == -1)
+      {
+         return null;
+      }
+      if (from == to || value.charAt(from) != '"')
+      {
+         return value.substring(from, to);
+      }
+
+      // Remove the quotes, the closing one may be missing
+      from++;
+      if (to > from && value.charAt(to - 1) == '"' && !isEscaped(from, to - 1))
+      {
+         to--;
+      }
+      int backslash = value.indexOf('\\', from);
+      if (backslash == -1 || backslash >= to)
+      {
+         return value.substring(from, to);
+      }
+      StringBuilder builder = new StringBuilder(to - from);
+      for (int i = from; i < to; i++)
+      {
+         char c = value.charAt(i);
+         if (c == '\\' && i + 1 < to)
+         {
+            c = value.charAt(++i);
+         }
+         builder.append(c);
+      }
+      return builder.toString();
+   }
+
+   /**
+    * Returns true if the char at the specified index is escaped by an odd number of backslashes.
+    */
+   private boolean isEscaped(int from, int index)
+   {
+      int count = 0;
+      while (index > from && value.charAt(index - 1) == '\\')
+      {
+         index--;
+         count++;
+      }
+      return (count & 1) == 1;
+   }
+
+   private static boolean isWhitespace(char c)
+   {
+      return c == ' ' || c == '\t';
+   }
+
+   private static int[] grow(int[] array)
+   {
+      int[] tmp = new int[array.length * 2];
+      System.arraycopy(array, 0, tmp, 0, array.length);
+      return tmp;
+   }
+}
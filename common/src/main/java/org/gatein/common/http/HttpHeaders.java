@@ -22,12 +22,22 @@
  ******************************************************************************/
 package org.gatein.common.http;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
 import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
 
 /**
+ * An ordered set of headers, the headers are iterated in the order they are added and they are indexed by their
+ * name ignoring the case as the names of the HTTP protocol. The lower case index keys of the well known header names
+ * are computed once, a lookup with one of the constant names of this class does not compute any hash.
+ *
  * @author <a href="mailto:julien@jboss.org">Julien Viet</a>
  * @version $Revision: 7228 $
  */
@@ -35,9 +45,128 @@ import java.util.List;
 public class HttpHeaders implements Serializable
 {
 
+   /** The serial version of the original class, the constants and the index change the computed value. */
+   private static final long serialVersionUID = 2767060220572222783L;
+
+   /** . */
+   public static final String ACCEPT = "Accept";
+
+   /** . */
+   public static final String ACCEPT_CHARSET = "Accept-Charset";
+
+   /** . */
+   public static final String ACCEPT_ENCODING = "Accept-Encoding";
+
+   /** . */
+   public static final String ACCEPT_LANGUAGE = "Accept-Language";
+
+   /** . */
+   public static final String AUTHORIZATION = "Authorization";
+
+   /** . */
+   public static final String CACHE_CONTROL = "Cache-Control";
+
+   /** . */
+   public static final String CONNECTION = "Connection";
+
+   /** . */
+   public static final String CONTENT_DISPOSITION = "Content-Disposition";
+
+   /** . */
+   public static final String CONTENT_ENCODING = "Content-Encoding";
+
+   /** . */
+   public static final String CONTENT_LANGUAGE = "Content-Language";
+
+   /** . */
+   public static final String CONTENT_LENGTH = "Content-Length";
+
+   /** . */
+   public static final String CONTENT_TYPE = "Content-Type";
+
+   /** . */
+   public static final String COOKIE = "Cookie";
+
+   /** . */
+   public static final String DATE = "Date";
+
+   /** . */
+   public static final String ETAG = "ETag";
+
+   /** . */
+   public static final String EXPIRES = "Expires";
+
+   /** . */
+   public static final String HOST = "Host";
+
+   /** . */
+   public static final String IF_MODIFIED_SINCE = "If-Modified-Since";
+
+   /** . */
+   public static final String IF_NONE_MATCH = "If-None-Match";
+
+   /** . */
+   public static final String LAST_MODIFIED = "Last-Modified";
+
+   /** . */
+   public static final String LOCATION = "Location";
+
+   /** . */
+   public static final String PRAGMA = "Pragma";
+
+   /** . */
+   public static final String REFERER = "Referer";
+
+   /** . */
+   public static final String SERVER = "Server";
+
+   /** . */
+   public static final String SET_COOKIE = "Set-Cookie";
+
+   /** . */
+   public static final String TRANSFER_ENCODING = "Transfer-Encoding";
+
+   /** . */
+   public static final String USER_AGENT = "User-Agent";
+
+   /** . */
+   public static final String VARY = "Vary";
+
+   /** . */
+   public static final String VIA = "Via";
+
+   /** . */
+   public static final String X_FORWARDED_FOR = "X-Forwarded-For";
+
+   /** The well known header names. */
+   static final String[] WELL_KNOWN_NAMES = {
+      ACCEPT, ACCEPT_CHARSET, ACCEPT_ENCODING, ACCEPT_LANGUAGE, AUTHORIZATION, CACHE_CONTROL, CONNECTION,
+      CONTENT_DISPOSITION, CONTENT_ENCODING, CONTENT_LANGUAGE, CONTENT_LENGTH, CONTENT_TYPE, COOKIE, DATE, ETAG,
+      EXPIRES, HOST, IF_MODIFIED_SINCE, IF_NONE_MATCH, LAST_MODIFIED, LOCATION, PRAGMA, REFERER, SERVER, SET_COOKIE,
+      TRANSFER_ENCODING, USER_AGENT, VARY, VIA, X_FORWARDED_FOR};
+
+   /** The index keys of the well known names by their usual and their lower case spelling. */
+   private static final Map<String, String> WELL_KNOWN_KEYS = new HashMap<String, String>();
+
+   static
+   {
+      for (String name : WELL_KNOWN_NAMES)
+      {
+         String key = name.toLowerCase(Locale.ENGLISH);
+
+         // Compute the hash codes once
+         key.hashCode();
+         WELL_KNOWN_KEYS.put(name, key);
+         WELL_KNOWN_KEYS.put(key, key);
+      }
+   }
+
    /** . */
    private List<HttpHeader> headers = new ArrayList<HttpHeader>();
 
+   /** The headers by lower case name, a name with a single header maps to a singleton list. */
+   private transient Map<String, List<HttpHeader>> index = new HashMap<String, List<HttpHeader>>();
+
    public HttpHeader addHeader(String name)
    {
       return addHeader(new HttpHeader(name));
@@ -50,34 +179,83 @@ public class HttpHeaders implements Serializable
          throw new IllegalArgumentException();
       }
       headers.add(header);
+      index(header);
       return header;
    }
 
+   /**
+    * Returns the first header with the specified name ignoring the case.
+    *
+    * @param name the header name
+    * @return the header or null
+    * @throws IllegalArgumentException if the name is null
+    */
    public HttpHeader getHeader(String name)
    {
       if (name == null)
       {
          throw new IllegalArgumentException();
       }
-      for (Iterator<HttpHeader> i = headers.iterator(); i.hasNext();)
+      List<HttpHeader> list = index.get(key(name));
+      return list != null ? list.get(0) : null;
+   }
+
+   /**
+    * Returns the headers with the specified name ignoring the case in the order they were added.
+    *
+    * @param name the header name
+    * @return the unmodifiable list of headers, empty if there is no such header
+    * @throws IllegalArgumentException if the name is null
+    */
+   public List<HttpHeader> getHeaders(String name)
+   {
+      if (name == null)
       {
-         HttpHeader header = (HttpHeader)i.next();
-         if (header.getName().equals(name))
-         {
-            return header;
-         }
+         throw new IllegalArgumentException();
+      }
+      List<HttpHeader> list = index.get(key(name));
+      if (list == null)
+      {
+         return Collections.emptyList();
       }
-      return null;
+      return list.size() == 1 ? list : Collections.unmodifiableList(list);
    }
 
+   /**
+    * Returns an iterator over the headers in the order they were added, a header removed with the iterator is also
+    * removed from the index by name.
+    *
+    * @return the header iterator
+    */
    public Iterator<HttpHeader> headers()
    {
-      return headers.iterator();
+      final Iterator<HttpHeader> iterator = headers.iterator();
+      return new Iterator<HttpHeader>()
+      {
+         /** . */
+         private HttpHeader last;
+
+         public boolean hasNext()
+         {
+            return iterator.hasNext();
+         }
+
+         public HttpHeader next()
+         {
+            return last = iterator.next();
+         }
+
+         public void remove()
+         {
+            iterator.remove();
+            unindex(last);
+         }
+      };
    }
 
    public String toString()
    {
-      StringBuffer buffer = new StringBuffer();
+      StringBuilder buffer = new StringBuilder();
       for (Iterator<HttpHeader> i = headers.iterator(); i.hasNext();)
       {
          HttpHeader header = (HttpHeader)i.next();
@@ -86,4 +264,63 @@ public class HttpHeaders implements Serializable
       }
       return buffer.toString();
    }
+
+   private void index(HttpHeader header)
+   {
+      String key = key(header.getName());
+      List<HttpHeader> list = index.get(key);
+      if (list == null)
+      {
+         index.put(key, Collections.singletonList(header));
+      }
+      else
+      {
+         if (list.size() == 1)
+         {
+            list = new ArrayList<HttpHeader>(list);
+            index.put(key, list);
+         }
+         list.add(header);
+      }
+   }
+
+   private void unindex(HttpHeader header)
+   {
+      String key = key(header.getName());
+      List<HttpHeader> list = index.get(key);
+      if (list.size() == 1)
+      {
+         index.remove(key);
+      }
+      else
+      {
+         list.remove(header);
+         if (list.size() == 1)
+         {
+            index.put(key, Collections.singletonList(list.get(0)));
+         }
+      }
+   }
+
+   private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException
+   {
+      in.defaultReadObject();
+      index = new HashMap<String, List<HttpHeader>>();
+      for (HttpHeader header : headers)
+      {
+         index(header);
+      }
+   }
+
+   /**
+    * Returns the index key of a name.
+    *
+    * @param name the name
+    * @return the lower case name
+    */
+   static String key(String name)
+   {
+      String key = WELL_KNOWN_KEYS.get(name);
+      return key != null ? key : name.toLowerCase(Locale.ENGLISH);
+   }
 }
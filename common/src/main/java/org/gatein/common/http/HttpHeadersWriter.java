@@ -0,0 +1,178 @@
+/******************************************************************************
+ * JBoss, a division of Red Hat                                               *
+ * Copyright 2009, Red Hat Middleware, LLC, and individual                    *
+ * contributors as indicated by the @authors tag. See the                     *
+ * copyright.txt in the distribution for a full listing of                    *
+ * individual contributors.                                                   *
+ *                                                                            *
+ * This is free software; you can redistribute it and/or modify it            *
+ * under the terms of the GNU Lesser General Public License as                *
+ * published by the Free Software Foundation; either version 2.1 of           *
+ * the License, or (at your option) any later version.                        *
+ *                                                                            *
+ * This software is distributed in the hope that it will be useful,           *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of             *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU           *
+ * Lesser General Public License for more details.                            *
+ *                                                                            *
+ * You should have received a copy of the GNU Lesser General Public           *
+ * License along with this software; if not, write to the Free                *
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA         *
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.                   *
+ ******************************************************************************/
+package org.gatein.common.http;
+
+import org.gatein.common.util.ParameterValidation;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * Writes headers in the HTTP/1.1 wire format, each header is written on a line <code>Name: value</code> terminated
+ * by CRLF, the empty line ending the headers is not written. The header names are encoded in US-ASCII and the values
+ * in ISO-8859-1, the chars that cannot be encoded are replaced by a question mark and the CR and LF chars of the
+ * values are replaced by a space so a value cannot inject a header line, they are replaced by a question mark in the
+ * names.
+ * <p/>
+ * The prefixes <code>Name: </code> of the well known header names are encoded once and each header caches its
+ * encoded line until it is modified, writing the same headers again only copies the cached bytes. This class is
+ * thread safe but the written headers must not be modified concurrently.
+ *
+ * @author <a href="mailto:agent@local">agent</a>
+ */
+public class HttpHeadersWriter
+{
+
+   /** The encoded prefixes of the well known header names. */
+   private static final Map<String, byte[]> PREFIXES = new HashMap<String, byte[]>();
+
+   static
+   {
+      for (String name : HttpHeaders.WELL_KNOWN_NAMES)
+      {
+         byte[] prefix = new byte[name.length() + 2];
+         encodeName(name, prefix);
+         PREFIXES.put(name, prefix);
+      }
+   }
+
+   private HttpHeadersWriter()
+   {
+   }
+
+   /**
+    * Writes the headers to a stream, a line is written at once and the stream should be buffered.
+    *
+    * @param headers the headers
+    * @param out     the output stream
+    * @throws IllegalArgumentException if any argument is null
+    * @throws IOException              any IOException thrown by the stream
+    */
+   public static void write(HttpHeaders headers, OutputStream out) throws IllegalArgumentException, IOException
+   {
+      ParameterValidation.throwIllegalArgExceptionIfNull(headers, "HttpHeaders");
+      ParameterValidation.throwIllegalArgExceptionIfNull(out, "OutputStream");
+      for (Iterator<HttpHeader> i = headers.headers(); i.hasNext();)
+      {
+         out.write(i.next().getLine());
+      }
+   }
+
+   /**
+    * Writes the headers to a buffer, nothing is written when the remaining bytes of the buffer are not enough.
+    *
+    * @param headers the headers
+    * @param buffer  the byte buffer
+    * @throws IllegalArgumentException if any argument is null
+    * @throws BufferOverflowException  if the buffer is too small
+    */
+   public static void write(HttpHeaders headers, ByteBuffer buffer) throws IllegalArgumentException, BufferOverflowException
+   {
+      ParameterValidation.throwIllegalArgExceptionIfNull(buffer, "ByteBuffer");
+      if (getLength(headers) > buffer.remaining())
+      {
+         throw new BufferOverflowException();
+      }
+      for (Iterator<HttpHeader> i = headers.headers(); i.hasNext();)
+      {
+         buffer.put(i.next().getLine());
+      }
+   }
+
+   /**
+    * Returns the number of bytes written for the headers.
+    *
+    * @param headers the headers
+    * @return the length in bytes
+    * @throws IllegalArgumentException if the headers are null
+    */
+   public static int getLength(HttpHeaders headers) throws IllegalArgumentException
+   {
+      ParameterValidation.throwIllegalArgExceptionIfNull(headers, "HttpHeaders");
+      int length = 0;
+      for (Iterator<HttpHeader> i = headers.headers(); i.hasNext();)
+      {
+         length += i.next().getLine().length;
+      }
+      return length;
+   }
+
+   /**
+    * Encodes an header line.
+    *
+    * @param name  the header name
+    * @param value the header value
+    * @return the line bytes terminated by CRLF
+    */
+   static byte[] encodeLine(String name, String value)
+   {
+      byte[] prefix = PREFIXES.get(name);
+      int prefixLength = prefix != null ? prefix.length : name.length() + 2;
+      byte[] line = new byte[prefixLength + value.length() + 2];
+      if (prefix != null)
+      {
+         System.arraycopy(prefix, 0, line, 0, prefixLength);
+      }
+      else
+      {
+         encodeName(name, line);
+      }
+      int index = prefixLength;
+      for (int i = 0; i < value.length(); i++)
+      {
+         char c = value.charAt(i);
+         if (c == '\r' || c == '\n')
+         {
+            c = ' ';
+         }
+         else if (c > 0xFF)
+         {
+            c = '?';
+         }
+         line[index++] = (byte)c;
+      }
+      line[index++] = '\r';
+      line[index] = '\n';
+      return line;
+   }
+
+   /**
+    * Encodes the prefix of a name at the beginning of an array.
+    */
+   private static void encodeName(String name, byte[] bytes)
+   {
+      int length = name.length();
+      for (int i = 0; i < length; i++)
+      {
+         char c = name.charAt(i);
+         bytes[i] = (byte)(c < 0x80 && c != '\r' && c != '\n' ? c : '?');
+      }
+      bytes[length] = ':';
+      bytes[length + 1] = ' ';
+   }
+}
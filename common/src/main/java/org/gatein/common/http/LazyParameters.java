@@ -0,0 +1,308 @@
+/******************************************************************************
+ * JBoss, a division of Red Hat                                               *
+ * Copyright 2009, Red Hat Middleware, LLC, and individual                    *
+ * contributors as indicated by the @authors tag. See the                     *
+ * copyright.txt in the distribution for a full listing of                    *
+ * individual contributors.                                                   *
+ *                                                                            *
+ * This is free software; you can redistribute it and/or modify it            *
+ * under the terms of the GNU Lesser General Public License as                *
+ * published by the Free Software Foundation; either version 2.1 of           *
+ * the License, or (at your option) any later version.                        *
+ *                                                                            *
+ * This software is distributed in the hope that it will be useful,           *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of             *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU           *
+ * Lesser General Public License for more details.                            *
+ *                                                                            *
+ * You should have received a copy of the GNU Lesser General Public           *
+ * License along with this software; if not, write to the Free                *
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA         *
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.                   *
+ ******************************************************************************/
+package org.gatein.common.http;
+
+import org.gatein.common.logging.Logger;
+import org.gatein.common.logging.LoggerFactory;
+import org.gatein.common.text.AbstractCharEncoder;
+import org.gatein.common.text.CharBufferPool;
+import org.gatein.common.text.CharEncoder;
+import org.gatein.common.text.EncodingException;
+
+import java.io.ObjectStreamException;
+import java.io.Serializable;
+import java.util.AbstractMap;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The delegate of a parameter map created from a query string where the parameter values are decoded on demand. The
+ * parameter names are decoded when the query string is parsed, the values are kept as ranges of the query string
+ * until the parameter is first read and then the decoded values replace the ranges.
+ *
+ * The lookup operations decode only the looked up parameter, the operations that need the whole content such as
+ * <code>size()</code> or <code>entrySet()</code> decode all the pending parameters first. As with the eager parsing a
+ * value that cannot be decoded is ignored and a parameter without any value is removed, so the map exposes the same
+ * content than a map created by the eager parsing. The map is serialized as a <code>HashMap</code>.
+ *
+ * The map is thread safe. The views returned by <code>keySet()</code>, <code>values()</code> and
+ * <code>entrySet()</code> are unmodifiable views of the fully decoded parameters, once a view is returned the
+ * decoded parameters are never modified again: a modification of the map copies them first, so a view can be
+ * iterated while other threads read or modify the map, it does not reflect the later modifications.
+ *
+ * @author <a href="mailto:agent@local">agent</a>
+ */
+@SuppressWarnings("serial")
+final class LazyParameters extends AbstractMap<String, String[]> implements Serializable
+{
+
+   /** . */
+   private static final Logger log = LoggerFactory.getLogger(QueryStringParser.class);
+
+   /** . */
+   private final String queryString;
+
+   /** . */
+   private final CharEncoder decoder;
+
+   /** The decoded parameters. */
+   private HashMap<String, String[]> decoded;
+
+   /** True when views of the decoded parameters were returned, they must be copied before they are modified. */
+   private boolean shared;
+
+   /** The parameters not yet decoded. */
+   private final HashMap<String, Ranges> pending;
+
+   LazyParameters(String queryString, CharEncoder decoder)
+   {
+      this.queryString = queryString;
+      this.decoder = decoder;
+      this.decoded = new HashMap<String, String[]>();
+      this.pending = new HashMap<String, Ranges>();
+   }
+
+   /**
+    * Adds a value range to a parameter.
+    *
+    * @param name the decoded parameter name
+    * @param from the encoded value start
+    * @param to   the encoded value end
+    */
+   void add(String name, int from, int to)
+   {
+      Ranges ranges = pending.get(name);
+      if (ranges == null)
+      {
+         ranges = new Ranges(name);
+         pending.put(name, ranges);
+      }
+      else if (ranges.size + 2 > ranges.bounds.length)
+      {
+         int[] tmp = new int[ranges.bounds.length * 2];
+         System.arraycopy(ranges.bounds, 0, tmp, 0, ranges.size);
+         ranges.bounds = tmp;
+      }
+      ranges.bounds[ranges.size++] = from;
+      ranges.bounds[ranges.size++] = to;
+   }
+
+   public synchronized String[] get(Object key)
+   {
+      String[] values = decoded.get(key);
+      if (values == null && pending.size() > 0)
+      {
+         values = decode(key);
+      }
+      return values;
+   }
+
+   public synchronized boolean containsKey(Object key)
+   {
+      return get(key) != null;
+   }
+
+   public synchronized String[] put(String key, String[] value)
+   {
+      String[] previous = decode(key);
+      String[] tmp = modifiable().put(key, value);
+      return previous != null ? previous : tmp;
+   }
+
+   public synchronized String[] remove(Object key)
+   {
+      String[] previous = decode(key);
+      String[] tmp = modifiable().remove(key);
+      return previous != null ? previous : tmp;
+   }
+
+   public synchronized void clear()
+   {
+      pending.clear();
+      if (shared)
+      {
+         decoded = new HashMap<String, String[]>();
+         shared = false;
+      }
+      else
+      {
+         decoded.clear();
+      }
+   }
+
+   public synchronized int size()
+   {
+      return decodeAll().size();
+   }
+
+   public synchronized boolean isEmpty()
+   {
+      return decodeAll().isEmpty();
+   }
+
+   public synchronized boolean containsValue(Object value)
+   {
+      return decodeAll().containsValue(value);
+   }
+
+   public Set<String> keySet()
+   {
+      return Collections.unmodifiableSet(share().keySet());
+   }
+
+   public Collection<String[]> values()
+   {
+      return Collections.unmodifiableCollection(share().values());
+   }
+
+   public Set<Entry<String, String[]>> entrySet()
+   {
+      return Collections.unmodifiableSet(share().entrySet());
+   }
+
+   /**
+    * Returns the decoded parameters for a modification, they are copied first when views of them were returned.
+    *
+    * @return the decoded parameters
+    */
+   private HashMap<String, String[]> modifiable()
+   {
+      if (shared)
+      {
+         decoded = new HashMap<String, String[]>(decoded);
+         shared = false;
+      }
+      return decoded;
+   }
+
+   /**
+    * Decodes the pending values of a parameter, the decoded values are stored unless none of them could be decoded.
+    *
+    * @param key the parameter name
+    * @return the decoded values or null
+    */
+   private String[] decode(Object key)
+   {
+      Ranges ranges = pending.remove(key);
+      if (ranges == null)
+      {
+         return null;
+      }
+
+      //
+      String[] values = new String[ranges.size / 2];
+      int size = 0;
+      CharBufferPool.Lease buffer = CharBufferPool.DEFAULT.acquire();
+      try
+      {
+         for (int i = 0; i < ranges.size; i += 2)
+         {
+            int from = ranges.bounds[i];
+            int to = ranges.bounds[i + 1];
+            try
+            {
+               buffer.reset();
+               AbstractCharEncoder.encode(decoder, queryString, from, to - from, buffer);
+               values[size++] = buffer.asString();
+            }
+            catch (EncodingException e)
+            {
+               log.debug("Could not decode parameter value " + queryString.substring(from, to), e);
+            }
+         }
+      }
+      finally
+      {
+         buffer.release();
+      }
+
+      //
+      if (size == 0)
+      {
+         return null;
+      }
+      if (size < values.length)
+      {
+         String[] tmp = new String[size];
+         System.arraycopy(values, 0, tmp, 0, size);
+         values = tmp;
+      }
+      // Use the parsed name as key, it may be shared with other maps
+      modifiable().put(ranges.name, values);
+      return values;
+   }
+
+   /**
+    * Decodes all the pending parameters and marks them as shared, the returned map is not modified anymore and can
+    * be read without synchronization.
+    *
+    * @return the decoded parameters
+    */
+   private synchronized Map<String, String[]> share()
+   {
+      Map<String, String[]> map = decodeAll();
+      shared = true;
+      return map;
+   }
+
+   private Map<String, String[]> decodeAll()
+   {
+      if (pending.size() > 0)
+      {
+         // Copy the names as decoding removes them from the pending map
+         String[] names = pending.keySet().toArray(new String[pending.size()]);
+         for (String name : names)
+         {
+            decode(name);
+         }
+      }
+      return decoded;
+   }
+
+   private Object writeReplace() throws ObjectStreamException
+   {
+      return new HashMap<String, String[]>(share());
+   }
+
+   /** The value ranges of a parameter. */
+   private static final class Ranges
+   {
+
+      /** . */
+      private final String name;
+
+      /** The start and the end of each value. */
+      private int[] bounds = new int[2];
+
+      /** . */
+      private int size;
+
+      private Ranges(String name)
+      {
+         this.name = name;
+      }
+   }
+}
@@ -0,0 +1,218 @@
+/******************************************************************************
+ * JBoss, a division of Red Hat                                               *
+ * Copyright 2009, Red Hat Middleware, LLC, and individual                    *
+ * contributors as indicated by the @authors tag. See the                     *
+ * copyright.txt in the distribution for a full listing of                    *
+ * individual contributors.                                                   *
+ *                                                                            *
+ * This is free software; you can redistribute it and/or modify it            *
+ * under the terms of the GNU Lesser General Public License as                *
+ * published by the Free Software Foundation; either version 2.1 of           *
+ * the License, or (at your option) any later version.                        *
+ *                                                                            *
+ * This software is distributed in the hope that it will be useful,           *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of             *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU           *
+ * Lesser General Public License for more details.                            *
+ *                                                                            *
+ * You should have received a copy of the GNU Lesser General Public           *
+ * License along with this software; if not, write to the Free                *
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA         *
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.                   *
+ ******************************************************************************/
+package org.gatein.common.http;
+
+import org.gatein.common.util.ParameterMap;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The result of the parsing of a <code>multipart/form-data</code> body by a {@link MultipartParser}: the simple
+ * fields and the uploaded files. The temporary files are deleted with the {@link #delete()} method.
+ *
+ * @author <a href="mailto:agent@local">agent</a>
+ */
+public class MultipartForm
+{
+
+   /** . */
+   private ParameterMap parameters = new ParameterMap();
+
+   /** . */
+   private final List<Upload> uploads = new ArrayList<Upload>();
+
+   MultipartForm()
+   {
+   }
+
+   void setParameters(ParameterMap parameters)
+   {
+      this.parameters = parameters;
+   }
+
+   void add(Upload upload)
+   {
+      uploads.add(upload);
+   }
+
+   /**
+    * Returns the simple fields.
+    *
+    * @return the fields
+    */
+   public ParameterMap getParameters()
+   {
+      return parameters;
+   }
+
+   /**
+    * Returns the uploaded files in the order of the body.
+    *
+    * @return the uploads
+    */
+   public List<Upload> getUploads()
+   {
+      return Collections.unmodifiableList(uploads);
+   }
+
+   /**
+    * Returns the first uploaded file with the specified field name.
+    *
+    * @param name the field name
+    * @return the upload or null
+    */
+   public Upload getUpload(String name)
+   {
+      for (Upload upload : uploads)
+      {
+         if (upload.getName().equals(name))
+         {
+            return upload;
+         }
+      }
+      return null;
+   }
+
+   /**
+    * Deletes the temporary files of the uploads.
+    */
+   public void delete()
+   {
+      for (Upload upload : uploads)
+      {
+         upload.delete();
+      }
+   }
+
+   /** An uploaded file, its content is kept in memory or in a temporary file. */
+   public static class Upload
+   {
+
+      /** . */
+      private final String name;
+
+      /** . */
+      private final String fileName;
+
+      /** . */
+      private final String contentType;
+
+      /** . */
+      private final byte[] bytes;
+
+      /** . */
+      private final File file;
+
+      /** . */
+      private final long size;
+
+      Upload(String name, String fileName, String contentType, byte[] bytes)
+      {
+         this.name = name;
+         this.fileName = fileName;
+         this.contentType = contentType;
+         this.bytes = bytes;
+         this.file = null;
+         this.size = bytes.length;
+      }
+
+      Upload(String name, String fileName, String contentType, File file, long size)
+      {
+         this.name = name;
+         this.fileName = fileName;
+         this.contentType = contentType;
+         this.bytes = null;
+         this.file = file;
+         this.size = size;
+      }
+
+      public String getName()
+      {
+         return name;
+      }
+
+      public String getFileName()
+      {
+         return fileName;
+      }
+
+      /**
+       * Returns the content type of the part.
+       *
+       * @return the content type or null
+       */
+      public String getContentType()
+      {
+         return contentType;
+      }
+
+      public long getSize()
+      {
+         return size;
+      }
+
+      public boolean isInMemory()
+      {
+         return file == null;
+      }
+
+      /**
+       * Returns the temporary file.
+       *
+       * @return the file or null when the content is in memory
+       */
+      public File getFile()
+      {
+         return file;
+      }
+
+      /**
+       * Opens the content.
+       *
+       * @return the content
+       * @throws IOException if the temporary file cannot be opened
+       */
+      public InputStream getInputStream() throws IOException
+      {
+         return file == null ? new ByteArrayInputStream(bytes) : new FileInputStream(file);
+      }
+
+      /**
+       * Deletes the temporary file.
+       */
+      public void delete()
+      {
+         if (file != null)
+         {
+            file.delete();
+         }
+      }
+   }
+}
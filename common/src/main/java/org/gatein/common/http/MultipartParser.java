@@ -0,0 +1,435 @@
+/******************************************************************************
+ * JBoss, a division of Red Hat                                               *
+ * Copyright 2009, Red Hat Middleware, LLC, and individual                    *
+ * contributors as indicated by the @authors tag. See the                     *
+ * copyright.txt in the distribution for a full listing of                    *
+ * individual contributors.                                                   *
+ *                                                                            *
+ * This is free software; you can redistribute it and/or modify it            *
+ * under the terms of the GNU Lesser General Public License as                *
+ * published by the Free Software Foundation; either version 2.1 of           *
+ * the License, or (at your option) any later version.                        *
+ *                                                                            *
+ * This software is distributed in the hope that it will be useful,           *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of             *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU           *
+ * Lesser General Public License for more details.                            *
+ *                                                                            *
+ * You should have received a copy of the GNU Lesser General Public           *
+ * License along with this software; if not, write to the Free                *
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA         *
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.                   *
+ ******************************************************************************/
+package org.gatein.common.http;
+
+import org.gatein.common.net.media.ContentType;
+import org.gatein.common.net.media.MediaType;
+import org.gatein.common.net.media.Parameter;
+import org.gatein.common.util.ParameterValidation;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+
+/**
+ * Parses a <code>multipart/form-data</code> body with a {@link MultipartReader}. The simple fields are collected in a
+ * parameter map and the uploaded files are kept in memory up to a threshold and are written to temporary files
+ * above. The parser enforces a maximum number of parts, a maximum size for the bytes kept in memory by the simple
+ * fields and the in memory uploads, a maximum size for an uploaded file and a maximum size for the body, so both the
+ * heap and the disk used by a request are bounded. A {@link FormLimitExceededException} is thrown as soon as a limit
+ * is exceeded, before the rest of the body is read, and the temporary files already written are deleted. This class
+ * is thread safe.
+ *
+ * @author <a href="mailto:agent@local">agent</a>
+ */
+public class MultipartParser
+{
+
+   /** . */
+   public static final int DEFAULT_THRESHOLD = 10 * 1024;
+
+   /** . */
+   public static final int DEFAULT_MAX_FIELD_SIZE = 1024 * 1024;
+
+   /** . */
+   public static final int DEFAULT_MAX_PARTS = 1000;
+
+   /** . */
+   public static final long DEFAULT_MAX_MEMORY_SIZE = 2 * 1024 * 1024L;
+
+   /** . */
+   public static final long DEFAULT_MAX_FILE_SIZE = 100 * 1024 * 1024L;
+
+   /** . */
+   public static final long DEFAULT_MAX_REQUEST_SIZE = 200 * 1024 * 1024L;
+
+   /** . */
+   private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+   /**
+    * Returns the boundary of a multipart/form-data content type.
+    *
+    * @param contentType the content type
+    * @return the boundary
+    * @throws IllegalArgumentException if the content type is null, is not multipart/form-data or does not have a
+    *                                  boundary parameter
+    */
+   public static String getBoundary(ContentType contentType) throws IllegalArgumentException
+   {
+      ParameterValidation.throwIllegalArgExceptionIfNull(contentType, "ContentType");
+      if (!MediaType.MULTIPART_FORM_DATA_MEDIA_TYPE.equals(contentType.getMediaType()))
+      {
+         throw new IllegalArgumentException("Content type " + contentType.getValue() + " is not multipart/form-data");
+      }
+      for (Parameter parameter : contentType.getParameters())
+      {
+         if ("boundary".equalsIgnoreCase(parameter.getName().trim()))
+         {
+            String boundary = parameter.getValue().trim();
+            if (boundary.length() > 1 && boundary.charAt(0) == '"' && boundary.charAt(boundary.length() - 1) == '"')
+            {
+               boundary = boundary.substring(1, boundary.length() - 1);
+            }
+            return boundary;
+         }
+      }
+      throw new IllegalArgumentException("Content type " + contentType.getValue() + " does not have a boundary");
+   }
+
+   /** . */
+   private final File repository;
+
+   /** . */
+   private final int threshold;
+
+   /** . */
+   private final int maxFieldSize;
+
+   /** . */
+   private final int maxParts;
+
+   /** . */
+   private final long maxMemorySize;
+
+   /** . */
+   private final long maxFileSize;
+
+   /** . */
+   private final long maxRequestSize;
+
+   /** . */
+   private final Charset charset;
+
+   /**
+    * Creates a parser using the default temporary directory and limits, the fields are decoded with UTF-8.
+    */
+   public MultipartParser()
+   {
+      this(null, DEFAULT_THRESHOLD, DEFAULT_MAX_FIELD_SIZE, UTF_8);
+   }
+
+   /**
+    * Creates a parser.
+    *
+    * @param repository   the directory of the temporary files or null for the default temporary directory
+    * @param threshold    the size above which an uploaded file is written to a temporary file
+    * @param maxFieldSize the maximum size of a simple field value in bytes
+    * @param charset      the charset of the part headers and of the simple field values
+    * @throws IllegalArgumentException if the charset is null or a size is negative
+    */
+   public MultipartParser(File repository, int threshold, int maxFieldSize, Charset charset) throws IllegalArgumentException
+   {
+      this(repository, threshold, maxFieldSize, DEFAULT_MAX_PARTS, DEFAULT_MAX_MEMORY_SIZE, DEFAULT_MAX_FILE_SIZE,
+         DEFAULT_MAX_REQUEST_SIZE, charset);
+   }
+
+   /**
+    * Creates a parser.
+    *
+    * @param repository     the directory of the temporary files or null for the default temporary directory
+    * @param threshold      the size above which an uploaded file is written to a temporary file
+    * @param maxFieldSize   the maximum size of a simple field value in bytes
+    * @param maxParts       the maximum number of parts
+    * @param maxMemorySize  the maximum number of bytes kept in memory by the simple fields and the in memory uploads
+    * @param maxFileSize    the maximum size of an uploaded file in bytes
+    * @param maxRequestSize the maximum size of the body in bytes
+    * @param charset        the charset of the part headers and of the simple field values
+    * @throws IllegalArgumentException if the charset is null, a size is negative or a limit is not positive
+    */
+   public MultipartParser(File repository, int threshold, int maxFieldSize, int maxParts, long maxMemorySize,
+                          long maxFileSize, long maxRequestSize, Charset charset) throws IllegalArgumentException
+   {
+      ParameterValidation.throwIllegalArgExceptionIfNull(charset, "Charset");
+      if (threshold < 0 || maxFieldSize < 0)
+      {
+         throw new IllegalArgumentException("Sizes must not be negative");
+      }
+      if (maxParts < 1 || maxMemorySize < 1 || maxFileSize < 1 || maxRequestSize < 1)
+      {
+         throw new IllegalArgumentException("Limits must be positive");
+      }
+
+      //
+      this.repository = repository;
+      this.threshold = threshold;
+      this.maxFieldSize = maxFieldSize;
+      this.maxParts = maxParts;
+      this.maxMemorySize = maxMemorySize;
+      this.maxFileSize = maxFileSize;
+      this.maxRequestSize = maxRequestSize;
+      this.charset = charset;
+   }
+
+   public File getRepository()
+   {
+      return repository;
+   }
+
+   public int getThreshold()
+   {
+      return threshold;
+   }
+
+   public int getMaxFieldSize()
+   {
+      return maxFieldSize;
+   }
+
+   public int getMaxParts()
+   {
+      return maxParts;
+   }
+
+   public long getMaxMemorySize()
+   {
+      return maxMemorySize;
+   }
+
+   public long getMaxFileSize()
+   {
+      return maxFileSize;
+   }
+
+   public long getMaxRequestSize()
+   {
+      return maxRequestSize;
+   }
+
+   public Charset getCharset()
+   {
+      return charset;
+   }
+
+   /**
+    * Creates a reader for a body.
+    *
+    * @param contentType the body content type
+    * @param in          the body
+    * @return the reader
+    * @throws IllegalArgumentException if an argument is null or the content type is not valid
+    */
+   public MultipartReader createReader(ContentType contentType, InputStream in) throws IllegalArgumentException
+   {
+      return new MultipartReader(in, getBoundary(contentType), charset);
+   }
+
+   /**
+    * Parses a body, the temporary files created before a failure are deleted. The stream is not closed.
+    *
+    * @param contentType the body content type
+    * @param in          the body
+    * @return the parsed form
+    * @throws IllegalArgumentException    if an argument is null or the content type is not valid
+    * @throws FormLimitExceededException if a simple field or an uploaded file exceeds its maximum size or if the body
+    *                                     exceeds the maximum number of parts, the maximum memory size or the maximum
+    *                                     request size
+    * @throws IOException                 if the body cannot be read or is not valid
+    */
+   public MultipartForm parse(ContentType contentType, InputStream in) throws IllegalArgumentException, IOException
+   {
+      MultipartReader reader = createReader(contentType, new LimitedInputStream(in, maxRequestSize));
+      QueryStringParser.Parameters parameters = new QueryStringParser.Parameters();
+      MultipartForm form = new MultipartForm();
+      byte[] chunk = new byte[4096];
+      int parts = 0;
+      long memory = 0;
+      try
+      {
+         for (MultipartReader.Part part = reader.nextPart(); part != null; part = reader.nextPart())
+         {
+            if (++parts > maxParts)
+            {
+               throw new FormLimitExceededException("Form body exceeds " + maxParts + " parts");
+            }
+            String name = part.getName();
+            if (name == null)
+            {
+               continue;
+            }
+            InputStream content = part.getInputStream();
+            String fileName = part.getFileName();
+            if (fileName == null)
+            {
+               ByteArrayOutputStream value = new ByteArrayOutputStream();
+               for (int len = content.read(chunk); len != -1; len = content.read(chunk))
+               {
+                  if (value.size() + len > maxFieldSize)
+                  {
+                     throw new FormLimitExceededException("Field " + name + " exceeds " + maxFieldSize + " bytes");
+                  }
+                  if (memory + value.size() + len > maxMemorySize)
+                  {
+                     throw memoryLimitExceeded();
+                  }
+                  value.write(chunk, 0, len);
+               }
+               memory += value.size();
+               parameters.add(name, new String(value.toByteArray(), charset));
+            }
+            else
+            {
+               MultipartForm.Upload upload = upload(name, fileName, part.getContentType(), content, chunk, memory);
+               if (upload.isInMemory())
+               {
+                  memory += upload.getSize();
+               }
+               form.add(upload);
+            }
+         }
+      }
+      catch (IOException e)
+      {
+         form.delete();
+         throw e;
+      }
+      catch (RuntimeException e)
+      {
+         form.delete();
+         throw e;
+      }
+
+      //
+      form.setParameters(parameters.toParameterMap());
+      return form;
+   }
+
+   private FormLimitExceededException memoryLimitExceeded()
+   {
+      return new FormLimitExceededException("Form body exceeds " + maxMemorySize + " bytes in memory");
+   }
+
+   private MultipartForm.Upload upload(String name, String fileName, String contentType, InputStream content, byte[] chunk, long memory) throws IOException
+   {
+      ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+      File file = null;
+      OutputStream out = buffer;
+      long size = 0;
+      boolean complete = false;
+      try
+      {
+         for (int len = content.read(chunk); len != -1; len = content.read(chunk))
+         {
+            if (size + len > maxFileSize)
+            {
+               throw new FormLimitExceededException("File " + fileName + " of field " + name + " exceeds " + maxFileSize + " bytes");
+            }
+            if (file == null && size + len > threshold)
+            {
+               // Spill to a temporary file
+               file = File.createTempFile("upload", ".tmp", repository);
+               out = new FileOutputStream(file);
+               buffer.writeTo(out);
+               buffer = null;
+            }
+            else if (file == null && memory + size + len > maxMemorySize)
+            {
+               throw memoryLimitExceeded();
+            }
+            out.write(chunk, 0, len);
+            size += len;
+         }
+         complete = true;
+      }
+      finally
+      {
+         out.close();
+         if (!complete && file != null)
+         {
+            file.delete();
+         }
+      }
+
+      //
+      if (file == null)
+      {
+         return new MultipartForm.Upload(name, fileName, contentType, buffer.toByteArray());
+      }
+      else
+      {
+         return new MultipartForm.Upload(name, fileName, contentType, file, size);
+      }
+   }
+
+   /** Counts the bytes read from the body and fails as soon as the maximum size of the body is exceeded. */
+   private static class LimitedInputStream extends FilterInputStream
+   {
+
+      /** . */
+      private final long maxSize;
+
+      /** . */
+      private long size;
+
+      private LimitedInputStream(InputStream in, long maxSize)
+      {
+         super(in);
+         this.maxSize = maxSize;
+      }
+
+      public int read() throws IOException
+      {
+         int b = in.read();
+         if (b != -1)
+         {
+            count(1);
+         }
+         return b;
+      }
+
+      public int read(byte[] b, int off, int len) throws IOException
+      {
+         int read = in.read(b, off, len);
+         if (read > 0)
+         {
+            count(read);
+         }
+         return read;
+      }
+
+      public long skip(long n) throws IOException
+      {
+         long skipped = in.skip(n);
+         count(skipped);
+         return skipped;
+      }
+
+      public boolean markSupported()
+      {
+         return false;
+      }
+
+      private void count(long n) throws FormLimitExceededException
+      {
+         size += n;
+         if (size > maxSize)
+         {
+            throw new FormLimitExceededException("Form body exceeds " + maxSize + " bytes");
+         }
+      }
+   }
+}
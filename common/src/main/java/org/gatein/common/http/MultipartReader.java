@@ -0,0 +1,539 @@
+/******************************************************************************
+ * JBoss, a division of Red Hat                                               *
+ * Copyright 2009, Red Hat Middleware, LLC, and individual                    *
+ * contributors as indicated by the @authors tag. See the                     *
+ * copyright.txt in the distribution for a full listing of                    *
+ * individual contributors.                                                   *
+ *                                                                            *
+ * This is free software; you can redistribute it and/or modify it            *
+ * under the terms of the GNU Lesser General Public License as                *
+ * published by the Free Software Foundation; either version 2.1 of           *
+ * the License, or (at your option) any later version.                        *
+ *                                                                            *
+ * This software is distributed in the hope that it will be useful,           *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of             *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU           *
+ * Lesser General Public License for more details.                            *
+ *                                                                            *
+ * You should have received a copy of the GNU Lesser General Public           *
+ * License along with this software; if not, write to the Free                *
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA         *
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.                   *
+ ******************************************************************************/
+package org.gatein.common.http;
+
+import org.gatein.common.util.ParameterValidation;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reads the parts of a <code>multipart/form-data</code> body as defined by the
+ * <a href="http://tools.ietf.org/html/rfc2046#section-5.1">RFC2046</a> in a streaming manner. The body is read
+ * through a fixed size window, the delimiters are located with a Boyer-Moore-Horspool search and the content of a
+ * part is exposed as an input stream valid until the next part is read. The heap used by a reader does not depend
+ * on the size of the body. This class is not thread safe.
+ *
+ * @author <a href="mailto:agent@local">agent</a>
+ */
+public class MultipartReader
+{
+
+   /** The maximum size of the headers of a part. */
+   private static final int MAX_HEADERS_SIZE = 8 * 1024;
+
+   /** . */
+   private static final int BUFFER_SIZE = 8 * 1024;
+
+   /** . */
+   private final InputStream in;
+
+   /** . */
+   private final Charset charset;
+
+   /** The delimiter, a CRLF followed by two dashes and the boundary. */
+   private final byte[] delimiter;
+
+   /** The Boyer-Moore-Horspool shifts of the delimiter. */
+   private final int[] shifts;
+
+   /** . */
+   private final byte[] buffer;
+
+   /** The position of the next byte to read in the buffer. */
+   private int head;
+
+   /** The end of the bytes read in the buffer. */
+   private int tail;
+
+   /** The end of the current part content that can be read without searching the delimiter again. */
+   private int limit;
+
+   /** True when the delimiter is located at the limit. */
+   private boolean found;
+
+   /** True when the end of the stream is reached. */
+   private boolean eof;
+
+   /** True when the close delimiter has been read. */
+   private boolean done;
+
+   /** . */
+   private Part part;
+
+   /**
+    * Creates a reader.
+    *
+    * @param in       the body
+    * @param boundary the boundary
+    * @param charset  the charset of the part headers
+    * @throws IllegalArgumentException if an argument is null or the boundary is empty or longer than 70 chars
+    */
+   public MultipartReader(InputStream in, String boundary, Charset charset) throws IllegalArgumentException
+   {
+      ParameterValidation.throwIllegalArgExceptionIfNull(in, "InputStream");
+      ParameterValidation.throwIllegalArgExceptionIfNull(boundary, "boundary");
+      ParameterValidation.throwIllegalArgExceptionIfNull(charset, "Charset");
+      if (boundary.length() == 0 || boundary.length() > 70)
+      {
+         throw new IllegalArgumentException("Invalid boundary length " + boundary.length());
+      }
+
+      //
+      byte[] delimiter = new byte[4 + boundary.length()];
+      delimiter[0] = '\r';
+      delimiter[1] = '\n';
+      delimiter[2] = '-';
+      delimiter[3] = '-';
+      for (int i = 0; i < boundary.length(); i++)
+      {
+         char c = boundary.charAt(i);
+         if (c < 0x20 || c > 0x7E)
+         {
+            throw new IllegalArgumentException("Invalid boundary " + boundary);
+         }
+         delimiter[4 + i] = (byte)c;
+      }
+
+      //
+      int[] shifts = new int[256];
+      int last = delimiter.length - 1;
+      for (int i = 0; i < shifts.length; i++)
+      {
+         shifts[i] = delimiter.length;
+      }
+      for (int i = 0; i < last; i++)
+      {
+         shifts[delimiter[i] & 0xFF] = last - i;
+      }
+
+      //
+      this.in = in;
+      this.charset = charset;
+      this.delimiter = delimiter;
+      this.shifts = shifts;
+      this.buffer = new byte[BUFFER_SIZE];
+
+      // The first delimiter is not preceded by a CRLF when there is no preamble
+      this.buffer[0] = '\r';
+      this.buffer[1] = '\n';
+      this.tail = 2;
+   }
+
+   /**
+    * Returns the next part, the previous part content is skipped.
+    *
+    * @return the next part or null when there are no more parts
+    * @throws IOException if the body cannot be read or is not valid
+    */
+   public Part nextPart() throws IOException
+   {
+      if (done)
+      {
+         return null;
+      }
+
+      // Skip the preamble or the remaining content of the current part
+      if (part != null)
+      {
+         part.closed = true;
+         part = null;
+      }
+      while (skip(Long.MAX_VALUE) > 0)
+      {
+         // Skip
+      }
+
+      // Consume the delimiter
+      head += delimiter.length;
+      limit = head;
+      found = false;
+
+      // A close delimiter is followed by two dashes
+      if (!require(2))
+      {
+         throw new IOException("Unexpected end of multipart body");
+      }
+      if (buffer[head] == '-' && buffer[head + 1] == '-')
+      {
+         done = true;
+         return null;
+      }
+
+      // Transport padding then CRLF
+      List<String> headers = new ArrayList<String>();
+      String line = readLine();
+      if (line.trim().length() > 0)
+      {
+         throw new IOException("Invalid multipart delimiter line");
+      }
+      int size = 0;
+      while ((line = readLine()).length() > 0)
+      {
+         size += line.length();
+         if (size > MAX_HEADERS_SIZE)
+         {
+            throw new IOException("Multipart headers exceed " + MAX_HEADERS_SIZE + " bytes");
+         }
+         if ((line.charAt(0) == ' ' || line.charAt(0) == '\t') && headers.size() > 0)
+         {
+            // Folded header
+            headers.set(headers.size() - 1, headers.get(headers.size() - 1) + ' ' + line.trim());
+         }
+         else
+         {
+            headers.add(line);
+         }
+      }
+
+      //
+      part = new Part(headers);
+      return part;
+   }
+
+   /**
+    * Reads a line terminated by a CRLF.
+    *
+    * @return the line without its terminator
+    * @throws IOException if the line cannot be read
+    */
+   private String readLine() throws IOException
+   {
+      while (true)
+      {
+         for (int i = head; i + 1 < tail; i++)
+         {
+            if (buffer[i] == '\r' && buffer[i + 1] == '\n')
+            {
+               String line = new String(buffer, head, i - head, charset);
+               head = i + 2;
+               limit = head;
+               return line;
+            }
+         }
+         if (tail - head >= MAX_HEADERS_SIZE)
+         {
+            throw new IOException("Multipart header line exceeds " + MAX_HEADERS_SIZE + " bytes");
+         }
+         if (!fill())
+         {
+            throw new IOException("Unexpected end of multipart body");
+         }
+      }
+   }
+
+   /**
+    * Ensures that the buffer contains at least the specified number of bytes after the head.
+    *
+    * @param size the size
+    * @return false if the end of the stream is reached before
+    * @throws IOException any IOException
+    */
+   private boolean require(int size) throws IOException
+   {
+      while (tail - head < size)
+      {
+         if (!fill())
+         {
+            return false;
+         }
+      }
+      return true;
+   }
+
+   /**
+    * Moves the unread bytes at the beginning of the buffer and reads more bytes.
+    *
+    * @return false if the end of the stream is reached
+    * @throws IOException any IOException
+    */
+   private boolean fill() throws IOException
+   {
+      if (eof)
+      {
+         return false;
+      }
+      if (head > 0)
+      {
+         System.arraycopy(buffer, head, buffer, 0, tail - head);
+         tail -= head;
+         limit -= head;
+         head = 0;
+      }
+      int read = in.read(buffer, tail, buffer.length - tail);
+      if (read == -1)
+      {
+         eof = true;
+         return false;
+      }
+      tail += read;
+      return true;
+   }
+
+   /**
+    * Computes the end of the content that can be read, the bytes that could be the beginning of a delimiter are kept
+    * in the buffer until more bytes are read.
+    *
+    * @return the number of bytes that can be read or -1 when the delimiter is reached
+    * @throws IOException if the body ends before the delimiter
+    */
+   private int readable() throws IOException
+   {
+      while (head == limit)
+      {
+         if (found)
+         {
+            return -1;
+         }
+         int index = search(head, tail);
+         if (index != -1)
+         {
+            limit = index;
+            found = true;
+         }
+         else
+         {
+            limit = Math.max(head, tail - delimiter.length + 1);
+            if (limit == head && !fill())
+            {
+               throw new IOException("Unexpected end of multipart body");
+            }
+         }
+      }
+      return limit - head;
+   }
+
+   private int search(int from, int to)
+   {
+      int last = delimiter.length - 1;
+      for (int i = from; i + last < to;)
+      {
+         int j = last;
+         while (buffer[i + j] == delimiter[j])
+         {
+            if (j-- == 0)
+            {
+               return i;
+            }
+         }
+         i += shifts[buffer[i + last] & 0xFF];
+      }
+      return -1;
+   }
+
+   private long skip(long n) throws IOException
+   {
+      int readable = readable();
+      if (readable == -1)
+      {
+         return 0;
+      }
+      int skipped = (int)Math.min(n, readable);
+      head += skipped;
+      return skipped;
+   }
+
+   /** A part of the body, it is valid until the next part is read. */
+   public class Part
+   {
+
+      /** . */
+      private final List<String> headers;
+
+      /** . */
+      private final InputStream content;
+
+      /** . */
+      private boolean closed;
+
+      private Part(List<String> headers)
+      {
+         this.headers = headers;
+         this.content = new InputStream()
+         {
+            public int read() throws IOException
+            {
+               if (closed || readable() == -1)
+               {
+                  return -1;
+               }
+               return buffer[head++] & 0xFF;
+            }
+
+            public int read(byte[] b, int off, int len) throws IOException
+            {
+               ParameterValidation.throwIllegalArgExceptionIfNull(b, "byte[]");
+               if (off < 0 || len < 0 || off + len > b.length)
+               {
+                  throw new IndexOutOfBoundsException();
+               }
+               if (len == 0)
+               {
+                  return 0;
+               }
+               int readable;
+               if (closed || (readable = readable()) == -1)
+               {
+                  return -1;
+               }
+               len = Math.min(len, readable);
+               System.arraycopy(buffer, head, b, off, len);
+               head += len;
+               return len;
+            }
+
+            public long skip(long n) throws IOException
+            {
+               return closed || n <= 0 ? 0 : MultipartReader.this.skip(n);
+            }
+
+            public int available() throws IOException
+            {
+               return closed || head == limit ? 0 : limit - head;
+            }
+
+            public void close()
+            {
+               closed = true;
+            }
+         };
+      }
+
+      /**
+       * Returns the value of the first header with the specified name, the name is not case sensitive.
+       *
+       * @param name the header name
+       * @return the header value or null
+       */
+      public String getHeader(String name)
+      {
+         for (String header : headers)
+         {
+            int colon = header.indexOf(':');
+            if (colon == name.length() && header.regionMatches(true, 0, name, 0, colon))
+            {
+               return header.substring(colon + 1).trim();
+            }
+         }
+         return null;
+      }
+
+      /**
+       * Returns the name parameter of the <code>Content-Disposition</code> header.
+       *
+       * @return the name or null
+       */
+      public String getName()
+      {
+         return getDispositionParameter("name");
+      }
+
+      /**
+       * Returns the file name parameter of the <code>Content-Disposition</code> header, a part without a file name
+       * is a simple field.
+       *
+       * @return the file name or null
+       */
+      public String getFileName()
+      {
+         return getDispositionParameter("filename");
+      }
+
+      /**
+       * Returns the <code>Content-Type</code> header value.
+       *
+       * @return the content type or null
+       */
+      public String getContentType()
+      {
+         return getHeader("Content-Type");
+      }
+
+      /**
+       * Returns the content of the part, it is read directly from the body.
+       *
+       * @return the content
+       */
+      public InputStream getInputStream()
+      {
+         return content;
+      }
+
+      private String getDispositionParameter(String name)
+      {
+         String disposition = getHeader("Content-Disposition");
+         if (disposition == null)
+         {
+            return null;
+         }
+         int len = disposition.length();
+         int i = disposition.indexOf(';');
+         while (i != -1 && i < len)
+         {
+            // Parameter name
+            int from = i + 1;
+            int eq = disposition.indexOf('=', from);
+            if (eq == -1)
+            {
+               return null;
+            }
+            String paramName = disposition.substring(from, eq).trim();
+
+            // Parameter value, a token or a quoted string
+            StringBuilder value = new StringBuilder();
+            i = eq + 1;
+            while (i < len && disposition.charAt(i) == ' ')
+            {
+               i++;
+            }
+            if (i < len && disposition.charAt(i) == '"')
+            {
+               for (i++; i < len && disposition.charAt(i) != '"'; i++)
+               {
+                  char c = disposition.charAt(i);
+                  if (c == '\\' && i + 1 < len && disposition.charAt(i + 1) == '"')
+                  {
+                     c = disposition.charAt(++i);
+                  }
+                  value.append(c);
+               }
+               i = disposition.indexOf(';', i);
+            }
+            else
+            {
+               int to = disposition.indexOf(';', i);
+               value.append(disposition.substring(i, to == -1 ? len : to).trim());
+               i = to;
+            }
+            if (paramName.equalsIgnoreCase(name))
+            {
+               return value.toString();
+            }
+         }
+         return null;
+      }
+   }
+}
@@ -0,0 +1,215 @@
+/******************************************************************************
+ * JBoss, a division of Red Hat                                               *
+ * Copyright 2009, Red Hat Middleware, LLC, and individual                    *
+ * contributors as indicated by the @authors tag. See the                     *
+ * copyright.txt in the distribution for a full listing of                    *
+ * individual contributors.                                                   *
+ *                                                                            *
+ * This is free software; you can redistribute it and/or modify it            *
+ * under the terms of the GNU Lesser General Public License as                *
+ * published by the Free Software Foundation; either version 2.1 of           *
+ * the License, or (at your option) any later version.                        *
+ *                                                                            *
+ * This software is distributed in the hope that it will be useful,           *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of             *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU           *
+ * Lesser General Public License for more details.                            *
+ *                                                                            *
+ * You should have received a copy of the GNU Lesser General Public           *
+ * License along with this software; if not, write to the Free                *
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA         *
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.                   *
+ ******************************************************************************/
+package org.gatein.common.http;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A bounded cache of decoded parameter names used by a {@link QueryStringParser}, it maps an encoded name to its
+ * decoded String so the names that appear in most query strings are decoded and allocated once and the keys of the
+ * parsed maps share the hash code computed by the cached String.
+ *
+ * The cache is a direct mapped table: an encoded name has a single slot determined by its hash and a new name
+ * replaces the name in its slot. The entries are immutable and the table is read and written without locking, a
+ * concurrent update can only lose an entry. The hit and miss counts are shared by all the threads using the cache, they
+ * are only maintained when the statistics are enabled and they are disabled by default. This class is thread safe.
+ *
+ * @author <a href="mailto:agent@local">agent</a>
+ */
+public final class NameCache
+{
+
+   /** The encoded names longer than that are not cached. */
+   static final int MAX_NAME_LENGTH = 128;
+
+   /** . */
+   private final Entry[] entries;
+
+   /** . */
+   private final int mask;
+
+   /** . */
+   private final AtomicLong hits = new AtomicLong();
+
+   /** . */
+   private final AtomicLong misses = new AtomicLong();
+
+   /** . */
+   private volatile boolean statisticsEnabled;
+
+   /**
+    * Creates a cache.
+    *
+    * @param size the number of slots, rounded up to a power of two
+    * @throws IllegalArgumentException if the size is not positive or is greater than 2^20
+    */
+   NameCache(int size) throws IllegalArgumentException
+   {
+      if (size < 1 || size > 1 << 20)
+      {
+         throw new IllegalArgumentException("Invalid name cache size " + size);
+      }
+      int capacity = Integer.highestOneBit(size);
+      if (capacity < size)
+      {
+         capacity <<= 1;
+      }
+      this.entries = new Entry[capacity];
+      this.mask = capacity - 1;
+   }
+
+   /**
+    * Returns the number of slots.
+    *
+    * @return the size
+    */
+   public int getSize()
+   {
+      return entries.length;
+   }
+
+   public boolean isStatisticsEnabled()
+   {
+      return statisticsEnabled;
+   }
+
+   /**
+    * Enables or disables the hit and miss counts, the counts are kept when the statistics are disabled.
+    *
+    * @param statisticsEnabled true to count the hits and the misses
+    */
+   public void setStatisticsEnabled(boolean statisticsEnabled)
+   {
+      this.statisticsEnabled = statisticsEnabled;
+   }
+
+   public long getHits()
+   {
+      return hits.get();
+   }
+
+   public long getMisses()
+   {
+      return misses.get();
+   }
+
+   /**
+    * Removes the cached names and resets the statistics.
+    */
+   public void clear()
+   {
+      for (int i = 0; i < entries.length; i++)
+      {
+         entries[i] = null;
+      }
+      hits.set(0);
+      misses.set(0);
+   }
+
+   /**
+    * Computes the hash of an encoded name, it is the String hash code of the name.
+    *
+    * @param s    the chars
+    * @param from the name start
+    * @param to   the name end
+    * @return the hash
+    */
+   static int hash(String s, int from, int to)
+   {
+      int hash = 0;
+      for (int i = from; i < to; i++)
+      {
+         hash = 31 * hash + s.charAt(i);
+      }
+      return hash;
+   }
+
+   /**
+    * Returns the decoded name of an encoded name.
+    *
+    * @param s    the chars
+    * @param from the encoded name start
+    * @param to   the encoded name end
+    * @param hash the encoded name hash
+    * @return the decoded name or null if it is not cached
+    */
+   String get(String s, int from, int to, int hash)
+   {
+      Entry entry = entries[(hash ^ (hash >>> 16)) & mask];
+      int len = to - from;
+      if (entry != null && entry.hash == hash && entry.encoded.length() == len && entry.encoded.regionMatches(0, s, from, len))
+      {
+         if (statisticsEnabled)
+         {
+            hits.incrementAndGet();
+         }
+         return entry.decoded;
+      }
+      if (statisticsEnabled)
+      {
+         misses.incrementAndGet();
+      }
+      return null;
+   }
+
+   /**
+    * Caches the decoded name of an encoded name.
+    *
+    * @param s       the chars
+    * @param from    the encoded name start
+    * @param to      the encoded name end
+    * @param hash    the encoded name hash
+    * @param decoded the decoded name
+    */
+   void put(String s, int from, int to, int hash, String decoded)
+   {
+      // Compute the hash code of the decoded name once for all the maps using it
+      decoded.hashCode();
+      entries[(hash ^ (hash >>> 16)) & mask] = new Entry(s.substring(from, to), decoded, hash);
+   }
+
+   public String toString()
+   {
+      return "NameCache[size=" + entries.length + ",hits=" + hits.get() + ",misses=" + misses.get() + "]";
+   }
+
+   private static final class Entry
+   {
+
+      /** . */
+      private final String encoded;
+
+      /** . */
+      private final String decoded;
+
+      /** . */
+      private final int hash;
+
+      private Entry(String encoded, String decoded, int hash)
+      {
+         this.encoded = encoded;
+         this.decoded = decoded;
+         this.hash = hash;
+      }
+   }
+}
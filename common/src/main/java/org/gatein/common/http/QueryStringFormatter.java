@@ -0,0 +1,202 @@
+/******************************************************************************
+ * JBoss, a division of Red Hat                                               *
+ * Copyright 2009, Red Hat Middleware, LLC, and individual                    *
+ * contributors as indicated by the @authors tag. See the                     *
+ * copyright.txt in the distribution for a full listing of                    *
+ * individual contributors.                                                   *
+ *                                                                            *
+ * This is free software; you can redistribute it and/or modify it            *
+ * under the terms of the GNU Lesser General Public License as                *
+ * published by the Free Software Foundation; either version 2.1 of           *
+ * the License, or (at your option) any later version.                        *
+ *                                                                            *
+ * This software is distributed in the hope that it will be useful,           *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of             *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU           *
+ * Lesser General Public License for more details.                            *
+ *                                                                            *
+ * You should have received a copy of the GNU Lesser General Public           *
+ * License along with this software; if not, write to the Free                *
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA         *
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.                   *
+ ******************************************************************************/
+package org.gatein.common.http;
+
+import org.gatein.common.text.CharBufferPool;
+import org.gatein.common.text.CharEncoder;
+import org.gatein.common.text.CharWriter;
+import org.gatein.common.text.EncodingException;
+import org.gatein.common.text.FastURLEncoder;
+import org.gatein.common.text.HashingCharWriter;
+import org.gatein.common.util.ParameterValidation;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * Formats a parameter map as a query string, the names and values are encoded with a parameter encoder and written
+ * directly to a char writer. In canonical mode the parameters are sorted by name and the values of a parameter keep
+ * their order, so equal maps give the same query string whatever their iteration order is, it allows to use the
+ * query string or its hash as a cache key. This class is thread safe.
+ *
+ * @author <a href="mailto:agent@local">agent</a>
+ */
+public class QueryStringFormatter
+{
+
+   /** . */
+   private static final QueryStringFormatter DEFAULT_FORMATTER = new QueryStringFormatter(FastURLEncoder.getUTF8Instance(), false);
+
+   /** . */
+   private static final QueryStringFormatter CANONICAL_FORMATTER = new QueryStringFormatter(FastURLEncoder.getUTF8Instance(), true);
+
+   /**
+    * Returns a formatter using the UTF-8 x-www-form-urlencoded encoding that follows the iteration order of the maps.
+    *
+    * @return the formatter
+    */
+   public static QueryStringFormatter getInstance()
+   {
+      return DEFAULT_FORMATTER;
+   }
+
+   /**
+    * Returns a formatter using the UTF-8 x-www-form-urlencoded encoding that sorts the parameters by name.
+    *
+    * @return the formatter
+    */
+   public static QueryStringFormatter getCanonicalInstance()
+   {
+      return CANONICAL_FORMATTER;
+   }
+
+   /** . */
+   private final CharEncoder parameterEncoder;
+
+   /** . */
+   private final boolean canonical;
+
+   /**
+    * Creates a new formatter.
+    *
+    * @param parameterEncoder the parameter encoder
+    * @param canonical        true if the parameters are sorted by name
+    * @throws IllegalArgumentException if the encoder is null
+    */
+   public QueryStringFormatter(CharEncoder parameterEncoder, boolean canonical) throws IllegalArgumentException
+   {
+      ParameterValidation.throwIllegalArgExceptionIfNull(parameterEncoder, "parameter encoder");
+
+      //
+      this.parameterEncoder = parameterEncoder;
+      this.canonical = canonical;
+   }
+
+   public CharEncoder getParameterEncoder()
+   {
+      return parameterEncoder;
+   }
+
+   public boolean isCanonical()
+   {
+      return canonical;
+   }
+
+   /**
+    * Formats the parameters to a writer, a parameter with several values is written once per value and a parameter
+    * without values is not written.
+    *
+    * @param parameters the parameters
+    * @param writer     the writer
+    * @throws IllegalArgumentException if an argument is null or the map contains a null name or value
+    * @throws EncodingException        if a name or a value cannot be encoded
+    */
+   public void format(Map<String, String[]> parameters, CharWriter writer) throws IllegalArgumentException, EncodingException
+   {
+      ParameterValidation.throwIllegalArgExceptionIfNull(parameters, "parameters");
+      ParameterValidation.throwIllegalArgExceptionIfNull(writer, "CharWriter");
+
+      //
+      boolean first = true;
+      if (canonical && parameters.size() > 1)
+      {
+         String[] names = parameters.keySet().toArray(new String[parameters.size()]);
+         for (String name : names)
+         {
+            ParameterValidation.throwIllegalArgExceptionIfNull(name, "parameter name");
+         }
+         Arrays.sort(names);
+         for (String name : names)
+         {
+            first = format(name, parameters.get(name), writer, first);
+         }
+      }
+      else
+      {
+         for (Iterator<Map.Entry<String, String[]>> i = parameters.entrySet().iterator(); i.hasNext();)
+         {
+            Map.Entry<String, String[]> entry = i.next();
+            first = format(entry.getKey(), entry.getValue(), writer, first);
+         }
+      }
+   }
+
+   /**
+    * Formats the parameters to a String.
+    *
+    * @param parameters the parameters
+    * @return the query string
+    * @throws IllegalArgumentException if the map is null or contains a null name or value
+    * @throws EncodingException        if a name or a value cannot be encoded
+    */
+   public String format(Map<String, String[]> parameters) throws IllegalArgumentException, EncodingException
+   {
+      CharBufferPool.Lease buffer = CharBufferPool.DEFAULT.acquire();
+      try
+      {
+         format(parameters, buffer);
+         return buffer.asString();
+      }
+      finally
+      {
+         buffer.release();
+      }
+   }
+
+   /**
+    * Computes the 64 bit FNV-1a hash of the formatted query string without building it. With a canonical formatter
+    * equal maps have the same hash.
+    *
+    * @param parameters the parameters
+    * @return the hash of the query string
+    * @throws IllegalArgumentException if the map is null or contains a null name or value
+    * @throws EncodingException        if a name or a value cannot be encoded
+    * @see HashingCharWriter
+    */
+   public long hash(Map<String, String[]> parameters) throws IllegalArgumentException, EncodingException
+   {
+      HashingCharWriter writer = new HashingCharWriter();
+      format(parameters, writer);
+      return writer.getHash();
+   }
+
+   private boolean format(String name, String[] values, CharWriter writer, boolean first) throws EncodingException
+   {
+      ParameterValidation.throwIllegalArgExceptionIfNull(name, "parameter name");
+      ParameterValidation.throwIllegalArgExceptionIfNull(values, "parameter values");
+      for (String value : values)
+      {
+         ParameterValidation.throwIllegalArgExceptionIfNull(value, "parameter value");
+         if (!first)
+         {
+            writer.append('&');
+         }
+         parameterEncoder.encode(name, writer);
+         writer.append('=');
+         parameterEncoder.encode(value, writer);
+         first = false;
+      }
+      return first;
+   }
+}
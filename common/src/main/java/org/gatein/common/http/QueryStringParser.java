@@ -24,11 +24,19 @@ package org.gatein.common.http;
 
 import org.gatein.common.logging.Logger;
 import org.gatein.common.logging.LoggerFactory;
+import org.gatein.common.text.AbstractCharEncoder;
 import org.gatein.common.text.CharBuffer;
+import org.gatein.common.text.CharBufferPool;
 import org.gatein.common.text.CharEncoder;
 import org.gatein.common.text.EncodingException;
+import org.gatein.common.text.FastURLByteDecoder;
 import org.gatein.common.text.FastURLDecoder;
 import org.gatein.common.util.ParameterMap;
+import org.gatein.common.util.ParameterValidation;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
 
 /**
  * A parser for query string for the HTTP protocol. This class is thread safe.
@@ -50,21 +58,12 @@ public class QueryStringParser
    /** . */
    private static final Logger log = LoggerFactory.getLogger(QueryStringParser.class);
 
-   /** . */
-   private static final int LOOKUP = 0;
-
-   /** . */
-   private static final int INVALID_CHUNK = 1;
-
-   /** . */
-   private static final int PARAM_NAME = 2;
-
-   /** . */
-   private static final int PARAM_VALUE = 3;
-
    /** . */
    private CharEncoder parameterDecoder;
 
+   /** The decoded name cache or null. */
+   private final NameCache nameCache;
+
    /**
     * Create a new parser with the specified parameter decoder.
     *
@@ -72,12 +71,31 @@ public class QueryStringParser
     * @throws IllegalArgumentException if the decoder is null
     */
    public QueryStringParser(CharEncoder parameterDecoder) throws IllegalArgumentException
+   {
+      this(parameterDecoder, 0);
+   }
+
+   /**
+    * Create a new parser with the specified parameter decoder and a cache of decoded parameter names. The names of
+    * the parameters that are parsed repeatedly are decoded once and the parsed maps share the same name Strings.
+    *
+    * @param parameterDecoder the parameter decoder
+    * @param nameCacheSize    the number of cached names, zero for no cache
+    * @throws IllegalArgumentException if the decoder is null or the cache size is negative or too large
+    * @see NameCache
+    */
+   public QueryStringParser(CharEncoder parameterDecoder, int nameCacheSize) throws IllegalArgumentException
    {
       if (parameterDecoder == null)
       {
          throw new IllegalArgumentException("No parameter decoder");
       }
+      if (nameCacheSize < 0)
+      {
+         throw new IllegalArgumentException("Invalid name cache size " + nameCacheSize);
+      }
       this.parameterDecoder = parameterDecoder;
+      this.nameCache = nameCacheSize > 0 ? new NameCache(nameCacheSize) : null;
    }
 
    /**
@@ -94,25 +112,47 @@ public class QueryStringParser
       return parameterDecoder;
    }
 
-   private void append(ParameterMap parameterMap, String parameterName, String parameterValue)
+   /**
+    * Returns the decoded name cache.
+    *
+    * @return the name cache or null if the parser does not cache names
+    */
+   public NameCache getNameCache()
    {
-      String[] values = parameterMap.getValues(parameterName);
+      return nameCache;
+   }
 
-      //
-      if (values == null)
+   /**
+    * Decodes a parameter name with the name cache when there is one.
+    *
+    * @param queryString the query string
+    * @param from        the encoded name start
+    * @param to          the encoded name end
+    * @param buffer      the buffer used for decoding
+    * @return the decoded name
+    * @throws EncodingException if the name cannot be decoded
+    */
+   private String decodeName(String queryString, int from, int to, CharBuffer buffer) throws EncodingException
+   {
+      if (nameCache != null && to - from <= NameCache.MAX_NAME_LENGTH)
       {
-         values = new String[]{parameterValue};
+         int hash = NameCache.hash(queryString, from, to);
+         String name = nameCache.get(queryString, from, to, hash);
+         if (name == null)
+         {
+            buffer.reset();
+            AbstractCharEncoder.encode(parameterDecoder, queryString, from, to - from, buffer);
+            name = buffer.asString();
+            nameCache.put(queryString, from, to, hash, name);
+         }
+         return name;
       }
       else
       {
-         String[] tmp = new String[values.length + 1];
-         System.arraycopy(values, 0, tmp, 0, values.length);
-         values = tmp;
-         values[values.length - 1] = parameterValue;
+         buffer.reset();
+         AbstractCharEncoder.encode(parameterDecoder, queryString, from, to - from, buffer);
+         return buffer.asString();
       }
-
-      //
-      parameterMap.setValues(parameterName, values);
    }
 
    /**
@@ -130,134 +170,277 @@ public class QueryStringParser
       }
 
       //
-      // Map result = Collections.EMPTY_MAP;
-
-      ParameterMap parameterMap = new ParameterMap();
-
-      String encodedName = null;
-      CharBuffer buffer = new CharBuffer(50);
-
-
-      int pos = 0;
-      int len = queryString.length();
-      int state = LOOKUP;
-      while (true)
+      Parameters parameters = new Parameters();
+      CharBufferPool.Lease buffer = CharBufferPool.DEFAULT.acquire();
+      try
       {
-         char c;
-         if (pos < len)
-         {
-            c = queryString.charAt(pos++);
-         }
-         else if (pos == len)
+         int len = queryString.length();
+         for (int from = 0; from < len;)
          {
-            c = '&';
-            pos++;
-         }
-         else
-         {
-            break;
-         }
+            // Find the end of the chunk and the first '=' in that chunk
+            int to = queryString.indexOf('&', from);
+            if (to == -1)
+            {
+               to = len;
+            }
+            int eq = from;
+            while (eq < to && queryString.charAt(eq) != '=')
+            {
+               eq++;
+            }
 
-         //
-         switch(state)
-         {
-            case LOOKUP:
-               if (c == '&')
+            // A chunk starting with '=' is invalid
+            if (eq > from)
+            {
+               // The ranges are decoded directly from the query string
+               String name = null;
+               try
                {
-                  // Do nothing
+                  name = decodeName(queryString, from, eq, buffer);
                }
-               else if (c == '=')
+               catch (EncodingException e)
                {
-                  state = INVALID_CHUNK;
+                  log.debug("Could not decode parameter name " + queryString.substring(from, eq), e);
                }
-               else
+               if (name != null)
                {
-                  state = PARAM_NAME;
-                  buffer.append(c);
-               }
-               break;
-            case PARAM_NAME:
-               if (c == '&')
-               {
-                  String tmp = buffer.asString();
-
-                  //
-                  try
-                  {
-                     parameterDecoder.encode(tmp, buffer);
-                     append(parameterMap, buffer.asString(false), "");
-                  }
-                  catch (EncodingException e)
+                  if (eq < to)
                   {
-                     log.debug("Could not decode parameter name " + tmp, e);
-                  }
-
-                  //
-                  buffer.reset();
-                  state = LOOKUP;
-               }
-               else if (c == '=')
-               {
-                  encodedName = buffer.asString();
-                  buffer.reset();
-                  state = PARAM_VALUE;
-               }
-               else
-               {
-                  buffer.append(c);
-               }
-               break;
-            case PARAM_VALUE:
-               if (c == '&')
-               {
-
-                  //
-                  try
-                  {
-                     // Save value
-                     String encodedValue = buffer.asString();
-
-                     // Decode parameter name
-                     parameterDecoder.encode(encodedName, buffer);
-                     String name = buffer.asString(false);
-
-                     // Now decode parameter value
                      try
                      {
                         buffer.reset();
-                        parameterDecoder.encode(encodedValue, buffer);
-                        String value = buffer.asString();
-                        append(parameterMap, name, value);
+                        AbstractCharEncoder.encode(parameterDecoder, queryString, eq + 1, to - eq - 1, buffer);
+                        parameters.add(name, buffer.asString());
                      }
                      catch (EncodingException e)
                      {
-                        log.debug("Could not decode parameter value " + encodedValue, e);
+                        log.debug("Could not decode parameter value " + queryString.substring(eq + 1, to), e);
                      }
                   }
-                  catch (EncodingException e)
+                  else
                   {
-                     log.debug("Could not decode parameter name " + encodedName, e);
+                     parameters.add(name, "");
                   }
+               }
+            }
+
+            //
+            from = to + 1;
+         }
+      }
+      finally
+      {
+         buffer.release();
+      }
+
+      //
+      return parameters.toParameterMap();
+   }
 
-                  //
-                  buffer.reset();
-                  state = LOOKUP;
+   /**
+    * Parse the query string and build a parameter map of it. When the parsing is lazy the parameter names are decoded
+    * but the parameter values are only decoded when they are first read, the returned map has the same content
+    * than the map returned by <code>parseQueryString(String)</code>. The lazy parsing avoids to decode the values of
+    * long query strings when few parameters are read.
+    *
+    * @param queryString the non null query string
+    * @param lazy        true if the values are decoded when they are read
+    * @return a <String,String[]> map
+    * @throws IllegalArgumentException if the query string is null
+    */
+   public ParameterMap parseQueryString(String queryString, boolean lazy) throws IllegalArgumentException
+   {
+      if (!lazy)
+      {
+         return parseQueryString(queryString);
+      }
+      if (queryString == null)
+      {
+         throw new IllegalArgumentException();
+      }
+
+      //
+      LazyParameters parameters = new LazyParameters(queryString, parameterDecoder);
+      CharBufferPool.Lease buffer = CharBufferPool.DEFAULT.acquire();
+      try
+      {
+         int len = queryString.length();
+         for (int from = 0; from < len;)
+         {
+            // Find the end of the chunk and the first '=' in that chunk
+            int to = queryString.indexOf('&', from);
+            if (to == -1)
+            {
+               to = len;
+            }
+            int eq = from;
+            while (eq < to && queryString.charAt(eq) != '=')
+            {
+               eq++;
+            }
+
+            // A chunk starting with '=' is invalid
+            if (eq > from)
+            {
+               try
+               {
+                  String name = decodeName(queryString, from, eq, buffer);
+                  if (eq < to)
+                  {
+                     parameters.add(name, eq + 1, to);
+                  }
+                  else
+                  {
+                     parameters.add(name, to, to);
+                  }
                }
-               else
+               catch (EncodingException e)
+               {
+                  log.debug("Could not decode parameter name " + queryString.substring(from, eq), e);
+               }
+            }
+
+            //
+            from = to + 1;
+         }
+      }
+      finally
+      {
+         buffer.release();
+      }
+
+      //
+      return new ParameterMap(parameters);
+   }
+
+   /**
+    * Parse a query string provided as ASCII bytes, the bytes are decoded directly to the parameter names and values
+    * with the specified decoder without building the query string first. The parsing rules are the same than for
+    * <code>parseQueryString(String)</code>.
+    *
+    * @param bytes   the bytes
+    * @param off     the offset
+    * @param len     the length
+    * @param decoder the byte decoder
+    * @return a <String,String[]> map
+    * @throws IllegalArgumentException if any argument is null or the range is not valid
+    */
+   public ParameterMap parseQueryString(byte[] bytes, int off, int len, FastURLByteDecoder decoder) throws IllegalArgumentException
+   {
+      ParameterValidation.throwIllegalArgExceptionIfNull(bytes, "byte[]");
+      ParameterValidation.throwIllegalArgExceptionIfNull(decoder, "FastURLByteDecoder");
+      if (off < 0 || len < 0 || off + len > bytes.length)
+      {
+         throw new IllegalArgumentException("Specified byte range is outside of the given byte[]!");
+      }
+
+      //
+      Parameters parameters = new Parameters();
+      int to = off + len;
+      int from = off;
+      while (from < to)
+      {
+         // Find the end of the chunk and the first '=' in that chunk
+         int end = from;
+         int equals = -1;
+         while (end < to && bytes[end] != '&')
+         {
+            if (equals == -1 && bytes[end] == '=')
+            {
+               equals = end;
+            }
+            end++;
+         }
+
+         // A chunk starting with '=' is invalid
+         if (end > from && equals != from)
+         {
+            int nameEnd = equals == -1 ? end : equals;
+            String name;
+            try
+            {
+               name = decoder.decode(bytes, from, nameEnd - from);
+            }
+            catch (EncodingException e)
+            {
+               log.debug("Could not decode parameter name", e);
+               name = null;
+            }
+            if (name != null)
+            {
+               try
                {
-                  buffer.append(c);
+                  String value = equals == -1 ? "" : decoder.decode(bytes, equals + 1, end - equals - 1);
+                  parameters.add(name, value);
                }
-               break;
-            case INVALID_CHUNK:
-               if (c == '&')
+               catch (EncodingException e)
                {
-                  state = LOOKUP;
+                  log.debug("Could not decode parameter value of " + name, e);
                }
-               break;
+            }
          }
+
+         //
+         from = end + 1;
       }
 
       //
-      return parameterMap;
+      return parameters.toParameterMap();
+   }
+
+   /**
+    * Collects the parsed parameters, a parameter value array is created once when the parameter has a single value
+    * and the values of a multi valued parameter are accumulated in a list turned into an array at the end. It is also
+    * used by the {@link FormParser}.
+    */
+   static final class Parameters
+   {
+
+      /** . */
+      private final HashMap<String, String[]> map = new HashMap<String, String[]>();
+
+      /** The multi valued parameters, null until a parameter has several values. */
+      private HashMap<String, ArrayList<String>> multiValued;
+
+      void add(String name, String value)
+      {
+         String[] values = map.get(name);
+         if (values == null)
+         {
+            map.put(name, new String[]{value});
+         }
+         else
+         {
+            ArrayList<String> list = null;
+            if (multiValued == null)
+            {
+               multiValued = new HashMap<String, ArrayList<String>>();
+            }
+            else
+            {
+               list = multiValued.get(name);
+            }
+            if (list == null)
+            {
+               list = new ArrayList<String>();
+               list.add(values[0]);
+               multiValued.put(name, list);
+            }
+            list.add(value);
+         }
+      }
+
+      ParameterMap toParameterMap()
+      {
+         if (multiValued != null)
+         {
+            for (Map.Entry<String, ArrayList<String>> entry : multiValued.entrySet())
+            {
+               ArrayList<String> list = entry.getValue();
+               map.put(entry.getKey(), list.toArray(new String[list.size()]));
+            }
+         }
+         return new ParameterMap(map);
+      }
    }
 }
@@ -25,7 +25,7 @@ package org.gatein.common.i18n;
 import org.gatein.common.io.UndeclaredIOException;
 import org.gatein.common.util.ConversionException;
 import org.gatein.common.util.NullConversionException;
-import org.gatein.common.text.CharBuffer;
+import org.gatein.common.text.CharBufferPool;
 import org.gatein.common.text.CharWriter;
 
 import java.io.IOException;
@@ -73,9 +73,9 @@ public abstract class AbstractLocaleFormat implements LocaleFormat
 
    protected String internalToString(Locale locale) throws ConversionException
    {
+      CharBufferPool.Lease buffer = CharBufferPool.DEFAULT.acquire();
       try
       {
-         CharBuffer buffer = new CharBuffer();
          internalWrite(locale, buffer);
          return buffer.asString();
       }
@@ -83,6 +83,10 @@ public abstract class AbstractLocaleFormat implements LocaleFormat
       {
          throw new UndeclaredIOException(e);
       }
+      finally
+      {
+         buffer.release();
+      }
    }
 
    protected abstract void internalWrite(Locale locale, CharWriter writer) throws IOException, ConversionException;
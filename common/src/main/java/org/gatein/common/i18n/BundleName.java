@@ -22,7 +22,7 @@
  ******************************************************************************/
 package org.gatein.common.i18n;
 
-import org.gatein.common.text.CharBuffer;
+import org.gatein.common.text.CharBufferPool;
 import org.gatein.common.util.ConversionException;
 
 import java.util.Locale;
@@ -114,16 +114,19 @@ public class BundleName
       }
       else
       {
-         CharBuffer buffer = new CharBuffer(baseName.length() + 15);
-         buffer.append(baseName);
-
-         //
-         buffer.append('_');
-
-         //
+         CharBufferPool.Lease buffer = CharBufferPool.DEFAULT.acquire();
          try
          {
+            buffer.append(baseName);
+
+            //
+            buffer.append('_');
+
+            //
             LocaleFormat.DEFAULT.write(locale, buffer);
+
+            //
+            return buffer.asString();
          }
          catch (IOException e)
          {
@@ -133,9 +136,10 @@ public class BundleName
          {
             throw new AssertionError(e);
          }
-
-         //
-         return buffer.asString();
+         finally
+         {
+            buffer.release();
+         }
       }
    }
 
@@ -0,0 +1,265 @@
+/******************************************************************************
+ * JBoss, a division of Red Hat                                               *
+ * Copyright 2009, Red Hat Middleware, LLC, and individual                    *
+ * contributors as indicated by the @authors tag. See the                     *
+ * copyright.txt in the distribution for a full listing of                    *
+ * individual contributors.                                                   *
+ *                                                                            *
+ * This is free software; you can redistribute it and/or modify it            *
+ * under the terms of the GNU Lesser General Public License as                *
+ * published by the Free Software Foundation; either version 2.1 of           *
+ * the License, or (at your option) any later version.                        *
+ *                                                                            *
+ * This software is distributed in the hope that it will be useful,           *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of             *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU           *
+ * Lesser General Public License for more details.                            *
+ *                                                                            *
+ * You should have received a copy of the GNU Lesser General Public           *
+ * License along with this software; if not, write to the Free                *
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA         *
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.                   *
+ ******************************************************************************/
+package org.gatein.common.i18n;
+
+import org.gatein.common.http.HttpHeaderValue;
+import org.gatein.common.util.BoundedCache;
+import org.gatein.common.util.ParameterValidation;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Negotiates the locale of a response from the value of an <code>Accept-Language</code> header and a set of
+ * supported locales. The language ranges of the header are tried by decreasing quality, the ranges with the same
+ * quality are tried in the header order and the ranges with a zero quality are ignored. A range is matched against
+ * the supported locales with the fallback of {@link BundleName.Iterator}, the variant then the country of the range
+ * are removed until a supported locale is found, and when none is found a supported locale with the same language
+ * is chosen. The wildcard range matches the default locale.
+ * <p/>
+ * The result of a negotiation is cached by header value in a {@link BoundedCache}, browsers send few distinct
+ * values and most negotiations are a single cache lookup. This class is thread safe.
+ *
+ * @author <a href="mailto:agent@local">agent</a>
+ */
+public class LocaleNegotiator
+{
+
+   /** The default cache size. */
+   public static final int DEFAULT_CACHE_SIZE = 256;
+
+   /** The cached value of a negotiation without result. */
+   private static final Locale NO_LOCALE = new Locale("", "", "");
+
+   /** . */
+   private final Set<Locale> supportedLocales;
+
+   /** The first supported locale of each language. */
+   private final Map<String, Locale> languages;
+
+   /** . */
+   private final Locale defaultLocale;
+
+   /** . */
+   private final BoundedCache<String, Locale> cache;
+
+   /**
+    * Creates a new negotiator with the default cache size.
+    *
+    * @param supportedLocales the supported locales
+    * @param defaultLocale    the default locale or null
+    * @throws IllegalArgumentException if the supported locales are null or contain null
+    */
+   public LocaleNegotiator(Collection<Locale> supportedLocales, Locale defaultLocale) throws IllegalArgumentException
+   {
+      this(supportedLocales, defaultLocale, DEFAULT_CACHE_SIZE);
+   }
+
+   /**
+    * Creates a new negotiator.
+    *
+    * @param supportedLocales the supported locales in order of preference
+    * @param defaultLocale    the locale returned when no supported locale is acceptable or null
+    * @param cacheSize        the maximum number of cached header values
+    * @throws IllegalArgumentException if the supported locales are null or contain null or the cache size is not
+    *                                  positive
+    */
+   public LocaleNegotiator(Collection<Locale> supportedLocales, Locale defaultLocale, int cacheSize) throws IllegalArgumentException
+   {
+      ParameterValidation.throwIllegalArgExceptionIfNull(supportedLocales, "supported locales");
+
+      //
+      Set<Locale> locales = new LinkedHashSet<Locale>();
+      Map<String, Locale> languages = new HashMap<String, Locale>();
+      for (Locale locale : supportedLocales)
+      {
+         ParameterValidation.throwIllegalArgExceptionIfNull(locale, "supported locale");
+         locales.add(locale);
+         if (!languages.containsKey(locale.getLanguage()))
+         {
+            languages.put(locale.getLanguage(), locale);
+         }
+      }
+
+      //
+      this.supportedLocales = Collections.unmodifiableSet(locales);
+      this.languages = languages;
+      this.defaultLocale = defaultLocale;
+      this.cache = new BoundedCache<String, Locale>(cacheSize);
+   }
+
+   public Set<Locale> getSupportedLocales()
+   {
+      return supportedLocales;
+   }
+
+   public Locale getDefaultLocale()
+   {
+      return defaultLocale;
+   }
+
+   /**
+    * Returns the supported locale that best matches an <code>Accept-Language</code> header value.
+    *
+    * @param acceptLanguage the header value or null when the request has no such header
+    * @return the negotiated locale, the default locale when no supported locale is acceptable
+    */
+   public Locale negotiate(String acceptLanguage)
+   {
+      if (acceptLanguage == null)
+      {
+         return defaultLocale;
+      }
+
+      //
+      Locale locale = cache.get(acceptLanguage);
+      if (locale == null)
+      {
+         locale = resolve(new HttpHeaderValue(acceptLanguage));
+         if (locale == null)
+         {
+            locale = NO_LOCALE;
+         }
+         cache.put(acceptLanguage, locale);
+      }
+      return locale == NO_LOCALE ? null : locale;
+   }
+
+   /**
+    * Clears the cached negotiations.
+    */
+   public void clearCache()
+   {
+      cache.clear();
+   }
+
+   private Locale resolve(HttpHeaderValue value)
+   {
+      // Order the acceptable ranges by decreasing quality, the sort is stable
+      int count = value.getElementCount();
+      int[] ranges = new int[count];
+      float[] qualities = new float[count];
+      int size = 0;
+      for (int index = 0; index < count; index++)
+      {
+         float quality = value.getQuality(index);
+         if (quality > 0)
+         {
+            int i = size++;
+            while (i > 0 && qualities[i - 1] < quality)
+            {
+               ranges[i] = ranges[i - 1];
+               qualities[i] = qualities[i - 1];
+               i--;
+            }
+            ranges[i] = index;
+            qualities[i] = quality;
+         }
+      }
+
+      //
+      for (int i = 0; i < size; i++)
+      {
+         String range = value.getElementName(ranges[i]);
+         if ("*".equals(range))
+         {
+            if (defaultLocale != null)
+            {
+               return defaultLocale;
+            }
+         }
+         else
+         {
+            Locale locale = match(range);
+            if (locale != null)
+            {
+               return locale;
+            }
+         }
+      }
+
+      //
+      return defaultLocale;
+   }
+
+   private Locale match(String range)
+   {
+      Locale requested = parse(range);
+      if (requested == null)
+      {
+         return null;
+      }
+      for (Iterator<BundleName> i = new BundleName.Iterator("", requested); i.hasNext();)
+      {
+         Locale candidate = i.next().getLocale();
+         if (candidate.getLanguage().length() == 0)
+         {
+            break;
+         }
+         if (supportedLocales.contains(candidate))
+         {
+            return candidate;
+         }
+      }
+      return languages.get(requested.getLanguage());
+   }
+
+   /**
+    * Parses a language range to a locale, the script subtag is ignored, the region subtag becomes the country and the
+    * next subtag becomes the variant.
+    *
+    * @param range the language range
+    * @return the locale or null if the range has no language
+    */
+   static Locale parse(String range)
+   {
+      String[] subtags = range.split("[-_]");
+      String language = subtags[0].toLowerCase(Locale.ENGLISH);
+      if (language.length() == 0)
+      {
+         return null;
+      }
+      String country = "";
+      String variant = "";
+      int i = 1;
+      if (i < subtags.length && subtags[i].length() == 4)
+      {
+         i++;
+      }
+      if (i < subtags.length && (subtags[i].length() == 2 || subtags[i].length() == 3))
+      {
+         country = subtags[i++].toUpperCase(Locale.ENGLISH);
+      }
+      if (i < subtags.length)
+      {
+         variant = subtags[i];
+      }
+      return new Locale(language, country, variant);
+   }
+}
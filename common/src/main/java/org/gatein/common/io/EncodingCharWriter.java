@@ -0,0 +1,495 @@
+/******************************************************************************
+ * JBoss, a division of Red Hat                                               *
+ * Copyright 2009, Red Hat Middleware, LLC, and individual                    *
+ * contributors as indicated by the @authors tag. See the                     *
+ * copyright.txt in the distribution for a full listing of                    *
+ * individual contributors.                                                   *
+ *                                                                            *
+ * This is free software; you can redistribute it and/or modify it            *
+ * under the terms of the GNU Lesser General Public License as                *
+ * published by the Free Software Foundation; either version 2.1 of           *
+ * the License, or (at your option) any later version.                        *
+ *                                                                            *
+ * This software is distributed in the hope that it will be useful,           *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of             *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU           *
+ * Lesser General Public License for more details.                            *
+ *                                                                            *
+ * You should have received a copy of the GNU Lesser General Public           *
+ * License along with this software; if not, write to the Free                *
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA         *
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.                   *
+ ******************************************************************************/
+package org.gatein.common.io;
+
+import org.gatein.common.text.CharWriter;
+import org.gatein.common.text.RangeCharWriter;
+import org.gatein.common.text.UnsupportedCharsetException;
+import org.gatein.common.util.ParameterValidation;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+
+/**
+ * A char writer that encodes the chars to bytes in a reusable buffer and writes the buffer to an output stream or a
+ * byte channel when it is full, so that text produced by the encoders reaches the byte stream without building an
+ * intermediate string. The UTF-8 and ISO-8859-1 charsets are supported.
+ *
+ * <p>A surrogate pair split between two appends is encoded as a single code point. Like the charset encoders of the
+ * JDK an unpaired surrogate or a char that cannot be represented in ISO-8859-1 is written as <code>'?'</code>.</p>
+ *
+ * <p>The writer is not thread safe.</p>
+ *
+ * @author <a href="mailto:agent@local">agent</a>
+ */
+public class EncodingCharWriter implements RangeCharWriter
+{
+
+   /** . */
+   private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+   /** . */
+   private static final Charset ISO_8859_1 = Charset.forName("ISO-8859-1");
+
+   /** . */
+   private static final byte REPLACEMENT = '?';
+
+   /** . */
+   private final OutputStream out;
+
+   /** . */
+   private final WritableByteChannel channel;
+
+   /** . */
+   private final Charset charset;
+
+   /** . */
+   private final boolean utf8;
+
+   /** . */
+   private final byte[] bytes;
+
+   /** The bytes wrapped for the channel. */
+   private final ByteBuffer byteBuffer;
+
+   /** The number of bytes in the buffer. */
+   private int count;
+
+   /** A high surrogate waiting for the next char, or 0. */
+   private char pending;
+
+   /** Scratch chars used to copy sequences, created when needed. */
+   private char[] chars;
+
+   /**
+    * @param out     the target stream
+    * @param charset the charset
+    * @throws IllegalArgumentException if an argument is null
+    * @throws UnsupportedCharsetException if the charset is not UTF-8 or ISO-8859-1
+    */
+   public EncodingCharWriter(OutputStream out, Charset charset) throws IllegalArgumentException, UnsupportedCharsetException
+   {
+      this(out, charset, 8 * 1024);
+   }
+
+   /**
+    * @param out        the target stream
+    * @param charset    the charset
+    * @param bufferSize the size of the byte buffer
+    * @throws IllegalArgumentException if an argument is null or the buffer size is lower than 4
+    * @throws UnsupportedCharsetException if the charset is not UTF-8 or ISO-8859-1
+    */
+   public EncodingCharWriter(OutputStream out, Charset charset, int bufferSize) throws IllegalArgumentException, UnsupportedCharsetException
+   {
+      this(out, null, charset, bufferSize);
+
+      //
+      ParameterValidation.throwIllegalArgExceptionIfNull(out, "OutputStream");
+   }
+
+   /**
+    * @param channel    the target channel
+    * @param charset    the charset
+    * @param bufferSize the size of the byte buffer
+    * @throws IllegalArgumentException if an argument is null or the buffer size is lower than 4
+    * @throws UnsupportedCharsetException if the charset is not UTF-8 or ISO-8859-1
+    */
+   public EncodingCharWriter(WritableByteChannel channel, Charset charset, int bufferSize) throws IllegalArgumentException, UnsupportedCharsetException
+   {
+      this(null, channel, charset, bufferSize);
+
+      //
+      ParameterValidation.throwIllegalArgExceptionIfNull(channel, "WritableByteChannel");
+   }
+
+   private EncodingCharWriter(OutputStream out, WritableByteChannel channel, Charset charset, int bufferSize)
+   {
+      ParameterValidation.throwIllegalArgExceptionIfNull(charset, "Charset");
+      if (bufferSize < 4)
+      {
+         throw new IllegalArgumentException("The buffer size " + bufferSize + " cannot hold an encoded char");
+      }
+      if (!UTF_8.equals(charset) && !ISO_8859_1.equals(charset))
+      {
+         throw new UnsupportedCharsetException("Charset " + charset.name() + " is not supported");
+      }
+
+      //
+      this.out = out;
+      this.channel = channel;
+      this.charset = charset;
+      this.utf8 = UTF_8.equals(charset);
+      this.bytes = new byte[bufferSize];
+      this.byteBuffer = channel != null ? ByteBuffer.wrap(bytes) : null;
+   }
+
+   public Charset getCharset()
+   {
+      return charset;
+   }
+
+   public CharWriter append(char c) throws UndeclaredIOException
+   {
+      if (pending == 0 && c < 0x80 && count < bytes.length)
+      {
+         bytes[count++] = (byte)c;
+      }
+      else
+      {
+         char[] chars = getChars();
+         chars[0] = c;
+         encode(chars, 0, 1);
+      }
+      return this;
+   }
+
+   public CharWriter append(char[] chars, int off, int len) throws UndeclaredIOException
+   {
+      ParameterValidation.throwIllegalArgExceptionIfRangeInvalid(chars, off, len);
+
+      //
+      encode(chars, off, off + len);
+
+      //
+      return this;
+   }
+
+   public CharWriter append(char[] chars) throws UndeclaredIOException
+   {
+      ParameterValidation.throwIllegalArgExceptionIfNull(chars, "char[]");
+
+      //
+      encode(chars, 0, chars.length);
+
+      //
+      return this;
+   }
+
+   public CharWriter append(CharSequence s) throws UndeclaredIOException
+   {
+      ParameterValidation.throwIllegalArgExceptionIfNull(s, "CharSequence");
+
+      //
+      encode(s, 0, s.length());
+
+      //
+      return this;
+   }
+
+   public CharWriter appendRange(CharSequence s, int off, int len) throws UndeclaredIOException
+   {
+      ParameterValidation.throwIllegalArgExceptionIfRangeInvalid(s, off, len);
+
+      //
+      encode(s, off, off + len);
+
+      //
+      return this;
+   }
+
+   /**
+    * Writes the buffered bytes to the target and flushes the target stream. A pending high surrogate is kept as it
+    * may be completed by the next append.
+    *
+    * @throws UndeclaredIOException if the target cannot be written
+    */
+   public void flush() throws UndeclaredIOException
+   {
+      writeBuffer();
+      if (out != null)
+      {
+         try
+         {
+            out.flush();
+         }
+         catch (IOException e)
+         {
+            throw new UndeclaredIOException(e);
+         }
+      }
+   }
+
+   /**
+    * Writes a pending high surrogate as <code>'?'</code> and flushes. The target is not closed.
+    *
+    * @throws UndeclaredIOException if the target cannot be written
+    */
+   public void close() throws UndeclaredIOException
+   {
+      if (pending != 0)
+      {
+         pending = 0;
+         if (count == bytes.length)
+         {
+            writeBuffer();
+         }
+         bytes[count++] = REPLACEMENT;
+      }
+      flush();
+   }
+
+   private char[] getChars()
+   {
+      if (chars == null)
+      {
+         chars = new char[Math.min(bytes.length, 1024)];
+      }
+      return chars;
+   }
+
+   private void encode(CharSequence s, int off, int to)
+   {
+      char[] chars = getChars();
+      while (off < to)
+      {
+         int len = Math.min(to - off, chars.length);
+         if (s instanceof String)
+         {
+            ((String)s).getChars(off, off + len, chars, 0);
+         }
+         else
+         {
+            for (int i = 0; i < len; i++)
+            {
+               chars[i] = s.charAt(off + i);
+            }
+         }
+         encode(chars, 0, len);
+         off += len;
+      }
+   }
+
+   private void encode(char[] chars, int off, int to)
+   {
+      if (off == to)
+      {
+         return;
+      }
+
+      // Complete the surrogate pair left by the previous append
+      if (pending != 0)
+      {
+         char high = pending;
+         pending = 0;
+         char c = chars[off];
+         if (Character.isLowSurrogate(c))
+         {
+            ensureRoom(4);
+            if (utf8)
+            {
+               writeCodePoint(Character.toCodePoint(high, c));
+            }
+            else
+            {
+               bytes[count++] = REPLACEMENT;
+            }
+            off++;
+         }
+         else
+         {
+            ensureRoom(1);
+            bytes[count++] = REPLACEMENT;
+         }
+      }
+
+      //
+      if (utf8)
+      {
+         encodeUTF8(chars, off, to);
+      }
+      else
+      {
+         encodeLatin1(chars, off, to);
+      }
+   }
+
+   private void encodeUTF8(char[] chars, int off, int to)
+   {
+      byte[] bytes = this.bytes;
+      int limit = bytes.length - 4;
+      int count = this.count;
+      while (off < to)
+      {
+         if (count > limit)
+         {
+            this.count = count;
+            writeBuffer();
+            count = 0;
+         }
+
+         // Copy the ASCII run that fits in the buffer
+         int asciiTo = Math.min(to, off + bytes.length - count);
+         while (off < asciiTo)
+         {
+            char c = chars[off];
+            if (c >= 0x80)
+            {
+               break;
+            }
+            bytes[count++] = (byte)c;
+            off++;
+         }
+         if (off == to || count > limit)
+         {
+            continue;
+         }
+
+         //
+         char c = chars[off++];
+         if (c < 0x80)
+         {
+            bytes[count++] = (byte)c;
+         }
+         else if (c < 0x800)
+         {
+            bytes[count++] = (byte)(0xC0 | (c >> 6));
+            bytes[count++] = (byte)(0x80 | (c & 0x3F));
+         }
+         else if (Character.isHighSurrogate(c))
+         {
+            if (off == to)
+            {
+               pending = c;
+            }
+            else if (Character.isLowSurrogate(chars[off]))
+            {
+               this.count = count;
+               writeCodePoint(Character.toCodePoint(c, chars[off++]));
+               count = this.count;
+            }
+            else
+            {
+               bytes[count++] = REPLACEMENT;
+            }
+         }
+         else if (Character.isLowSurrogate(c))
+         {
+            bytes[count++] = REPLACEMENT;
+         }
+         else
+         {
+            bytes[count++] = (byte)(0xE0 | (c >> 12));
+            bytes[count++] = (byte)(0x80 | ((c >> 6) & 0x3F));
+            bytes[count++] = (byte)(0x80 | (c & 0x3F));
+         }
+      }
+      this.count = count;
+   }
+
+   private void encodeLatin1(char[] chars, int off, int to)
+   {
+      byte[] bytes = this.bytes;
+      int count = this.count;
+      while (off < to)
+      {
+         if (count == bytes.length)
+         {
+            this.count = count;
+            writeBuffer();
+            count = 0;
+         }
+
+         //
+         int chunkTo = Math.min(to, off + bytes.length - count);
+         while (off < chunkTo)
+         {
+            char c = chars[off++];
+            if (c < 0x100)
+            {
+               bytes[count++] = (byte)c;
+            }
+            else if (Character.isHighSurrogate(c))
+            {
+               if (off == to)
+               {
+                  pending = c;
+               }
+               else
+               {
+                  // A surrogate pair is replaced by a single '?'
+                  if (Character.isLowSurrogate(chars[off]))
+                  {
+                     off++;
+                     chunkTo = Math.min(to, chunkTo + 1);
+                  }
+                  bytes[count++] = REPLACEMENT;
+               }
+            }
+            else
+            {
+               bytes[count++] = REPLACEMENT;
+            }
+         }
+      }
+      this.count = count;
+   }
+
+   private void writeCodePoint(int codePoint)
+   {
+      bytes[count++] = (byte)(0xF0 | (codePoint >> 18));
+      bytes[count++] = (byte)(0x80 | ((codePoint >> 12) & 0x3F));
+      bytes[count++] = (byte)(0x80 | ((codePoint >> 6) & 0x3F));
+      bytes[count++] = (byte)(0x80 | (codePoint & 0x3F));
+   }
+
+   private void ensureRoom(int size)
+   {
+      if (count + size > bytes.length)
+      {
+         writeBuffer();
+      }
+   }
+
+   private void writeBuffer() throws UndeclaredIOException
+   {
+      if (count > 0)
+      {
+         try
+         {
+            if (out != null)
+            {
+               out.write(bytes, 0, count);
+            }
+            else
+            {
+               byteBuffer.clear().limit(count);
+               while (byteBuffer.hasRemaining())
+               {
+                  channel.write(byteBuffer);
+               }
+            }
+         }
+         catch (IOException e)
+         {
+            throw new UndeclaredIOException(e);
+         }
+         finally
+         {
+            count = 0;
+         }
+      }
+   }
+}
@@ -23,6 +23,7 @@
 package org.gatein.common.io;
 
 import org.gatein.common.text.CharWriter;
+import org.gatein.common.text.RangeCharWriter;
 import org.gatein.common.util.ParameterValidation;
 
 import java.io.IOException;
@@ -32,7 +33,7 @@ import java.io.Writer;
  * @author <a href="mailto:julien@jboss.org">Julien Viet</a>
  * @version $Revision: 1.1 $
  */
-public class WriterCharWriter implements CharWriter
+public class WriterCharWriter implements RangeCharWriter
 {
 
    /** . */
@@ -115,6 +116,27 @@ public class WriterCharWriter implements CharWriter
       return this;
    }
 
+   public CharWriter appendRange(CharSequence s, int off, int len) throws UndeclaredIOException
+   {
+      ParameterValidation.throwIllegalArgExceptionIfRangeInvalid(s, off, len);
+      try
+      {
+         if (s instanceof String)
+         {
+            writer.write((String)s, off, len);
+         }
+         else
+         {
+            writer.append(s, off, off + len);
+         }
+      }
+      catch (IOException e)
+      {
+         throw new UndeclaredIOException(e);
+      }
+      return this;
+   }
+
    public void flush() throws UndeclaredIOException
    {
       try
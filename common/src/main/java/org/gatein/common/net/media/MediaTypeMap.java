@@ -171,6 +171,19 @@ public interface MediaTypeMap<V>
     */
    Set<V> resolve(TypeDef type) throws IllegalArgumentException;
 
+   /**
+    * Negotiates the media type of a response from the value of an HTTP <code>Accept</code> header. The candidates are
+    * the declared media types and the media types named by the header that the map supports. The quality of a
+    * candidate is the quality of the most specific media range matching it, the candidate with the highest quality
+    * wins and the ties are broken by the specificity of the matching range, then by the order of the header and
+    * then by the order of declaration. The values of the negotiated media type are given by
+    * {@link #resolve(MediaType)}.
+    *
+    * @param acceptHeader the header value or null when the request has no such header, which is equivalent to * / *
+    * @return the negotiated media type or null if no media type is acceptable
+    */
+   MediaType negotiate(String acceptHeader);
+
    /**
     * Returns the set of declared media types.
     *
@@ -22,9 +22,14 @@
  ******************************************************************************/
 package org.gatein.common.net.media;
 
+import org.gatein.common.http.HttpHeaderValue;
 import org.gatein.common.net.media.MediaType;
 import org.gatein.common.net.media.TypeDef;
+import org.gatein.common.util.BoundedCache;
 
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.HashMap;
 import java.util.Set;
@@ -49,14 +54,20 @@ public class MediaTypeMapImpl<V> implements MediaTypeMap<V>
    /** . */
    private static final char SEPARATOR = '/';
 
+   /** The maximum number of cached negotiations. */
+   private static final int NEGOTIATION_CACHE_SIZE = 256;
+
+   /** The cached value of a negotiation without result. */
+   private static final MediaType NOT_ACCEPTABLE = new MediaType(TypeDef.TEXT, new SubtypeDef("not-acceptable"));
+
    /** . */
    private final Map<MediaType, Set<V>> mediaTypeToValues = new HashMap<MediaType,Set<V>>();
 
    /** . */
    private final Map<TypeDef, Set<V>> typeToValues = new HashMap<TypeDef,Set<V>>();
 
-   /** . */
-   private final Map<MediaType, Set<V>> combinedMediaTypeToValues = new HashMap<MediaType,Set<V>>();
+   /** The declared media types in declaration order. */
+   private final Map<MediaType, Set<V>> combinedMediaTypeToValues = new LinkedHashMap<MediaType,Set<V>>();
 
    /** . */
    private final Map<TypeDef, Set<V>> combinedTypeToValues = new HashMap<TypeDef,Set<V>>();
@@ -64,6 +75,9 @@ public class MediaTypeMapImpl<V> implements MediaTypeMap<V>
    /** . */
    private final Set<V> anyTypeValues = new HashSet<V>();
 
+   /** The negotiated media types by header value, cleared when the map is modified. */
+   private final BoundedCache<String, MediaType> negotiations = new BoundedCache<String, MediaType>(NEGOTIATION_CACHE_SIZE);
+
    /**
     * Adds a value to the map using a media type pattern.
     *
@@ -131,6 +145,7 @@ public class MediaTypeMapImpl<V> implements MediaTypeMap<V>
       }
 
       //
+      negotiations.clear();
       Set<V> mediaTypeValues = mediaTypeToValues.get(mediaType);
       if (mediaTypeValues == null)
       {
@@ -178,6 +193,7 @@ public class MediaTypeMapImpl<V> implements MediaTypeMap<V>
       }
 
       //
+      negotiations.clear();
       Set<V> typeValues = typeToValues.get(type);
       if (typeValues == null)
       {
@@ -219,6 +235,7 @@ public class MediaTypeMapImpl<V> implements MediaTypeMap<V>
       }
 
       //
+      negotiations.clear();
       anyTypeValues.add(value);
 
       //
@@ -274,6 +291,55 @@ public class MediaTypeMapImpl<V> implements MediaTypeMap<V>
       return values;
    }
 
+   public MediaType negotiate(String acceptHeader)
+   {
+      if (acceptHeader == null)
+      {
+         acceptHeader = ANY_ANY;
+      }
+
+      //
+      MediaType mediaType = negotiations.get(acceptHeader);
+      if (mediaType == null)
+      {
+         mediaType = negotiate(new HttpHeaderValue(acceptHeader));
+         negotiations.put(acceptHeader, mediaType != null ? mediaType : NOT_ACCEPTABLE);
+      }
+
+      //
+      return mediaType == NOT_ACCEPTABLE ? null : mediaType;
+   }
+
+   private MediaType negotiate(HttpHeaderValue value)
+   {
+      List<MediaRange> ranges = new ArrayList<MediaRange>(value.getElementCount());
+      for (int index = 0; index < value.getElementCount(); index++)
+      {
+         MediaRange range = MediaRange.create(value.getElementName(index), value.getQuality(index));
+         if (range != null)
+         {
+            ranges.add(range);
+         }
+      }
+
+      // The declared media types, then the media types of the header that are only supported
+      Negotiation negotiation = new Negotiation(ranges);
+      for (MediaType candidate : combinedMediaTypeToValues.keySet())
+      {
+         negotiation.consider(candidate);
+      }
+      for (MediaRange range : ranges)
+      {
+         if (range.mediaType != null && !combinedMediaTypeToValues.containsKey(range.mediaType) && isSupported(range.mediaType))
+         {
+            negotiation.consider(range.mediaType);
+         }
+      }
+
+      //
+      return negotiation.best;
+   }
+
    public Set<V> get(MediaType mediaType)
    {
       if (mediaType == null)
@@ -396,4 +462,121 @@ public class MediaTypeMapImpl<V> implements MediaTypeMap<V>
    {
       return combinedTypeToValues.keySet();
    }
+
+   /** A media range of an accept header, the most specific range has a media type, then a type, then none. */
+   private static class MediaRange
+   {
+
+      /** . */
+      private final TypeDef type;
+
+      /** . */
+      private final MediaType mediaType;
+
+      /** . */
+      private final float quality;
+
+      /** . */
+      private final int specificity;
+
+      private MediaRange(TypeDef type, MediaType mediaType, float quality)
+      {
+         this.type = type;
+         this.mediaType = mediaType;
+         this.quality = quality;
+         this.specificity = mediaType != null ? 2 : (type != null ? 1 : 0);
+      }
+
+      /**
+       * Creates a media range.
+       *
+       * @param name    the range name
+       * @param quality the range quality
+       * @return the media range or null if the range is not valid or its type is unknown
+       */
+      private static MediaRange create(String name, float quality)
+      {
+         if (ANY.equals(name) || ANY_ANY.equals(name))
+         {
+            return new MediaRange(null, null, quality);
+         }
+         int index = name.indexOf(SEPARATOR);
+         if (index == -1)
+         {
+            return null;
+         }
+         TypeDef type = TypeDef.create(name.substring(0, index));
+         String subtype = name.substring(index + 1);
+         if (type == null || subtype.length() == 0)
+         {
+            return null;
+         }
+         if (ANY.equals(subtype))
+         {
+            return new MediaRange(type, null, quality);
+         }
+         return new MediaRange(type, MediaType.create(type, SubtypeDef.create(subtype)), quality);
+      }
+
+      private boolean matches(MediaType mediaType)
+      {
+         if (this.mediaType != null)
+         {
+            return this.mediaType.equals(mediaType);
+         }
+         return type == null || type == mediaType.getType();
+      }
+   }
+
+   /** Keeps the best candidate of a negotiation. */
+   private static class Negotiation
+   {
+
+      /** . */
+      private final List<MediaRange> ranges;
+
+      /** . */
+      private MediaType best;
+
+      /** The range matching the best candidate. */
+      private MediaRange bestRange;
+
+      /** . */
+      private int bestIndex;
+
+      private Negotiation(List<MediaRange> ranges)
+      {
+         this.ranges = ranges;
+      }
+
+      private void consider(MediaType candidate)
+      {
+         // Find the most specific range matching the candidate, the first one wins
+         int index = -1;
+         MediaRange match = null;
+         for (int i = 0; i < ranges.size(); i++)
+         {
+            MediaRange range = ranges.get(i);
+            if (range.matches(candidate) && (match == null || range.specificity > match.specificity))
+            {
+               index = i;
+               match = range;
+            }
+         }
+
+         //
+         if (match != null && match.quality > 0)
+         {
+            if (best == null ||
+               match.quality > bestRange.quality ||
+               (match.quality == bestRange.quality && (match.specificity > bestRange.specificity ||
+               (match.specificity == bestRange.specificity && index < bestIndex))))
+            {
+               best = candidate;
+               bestRange = match;
+               bestIndex = index;
+            }
+         }
+      }
+   }
 }
@@ -22,19 +22,22 @@
  ******************************************************************************/
 package org.gatein.common.text;
 
-import org.gatein.common.io.WriterCharWriter;
 import org.gatein.common.util.ParameterValidation;
 
-import java.io.StringWriter;
-import java.io.Writer;
-
 /**
+ * Base class for encoders. Subclasses implement the encoding of char arrays and should also implement the encoding
+ * of char sequences and the scan of the chars that are left unchanged by the encoder, which avoids to copy the
+ * sequences and allows to return an unchanged String without any allocation.
+ *
  * @author <a href="mailto:julien@jboss.org">Julien Viet</a>
  * @version $Revision: 1.1 $
  */
 public abstract class AbstractCharEncoder implements CharEncoder
 {
 
+   /** The sequence of all the chars where each char is at the index of its code, used to encode a single char. */
+   private static final CharSequence CODES = new Codes(0, Character.MAX_VALUE + 1);
+
    public void encode(char[] chars, int off, int len, CharWriter writer) throws EncodingException
    {
       ParameterValidation.throwIllegalArgExceptionIfRangeInvalid(chars, off, len);
@@ -54,39 +57,186 @@ public abstract class AbstractCharEncoder implements CharEncoder
    public void encode(CharSequence s, CharWriter writer) throws EncodingException
    {
       ParameterValidation.throwIllegalArgExceptionIfNull(s, "CharSequence");
+      ParameterValidation.throwIllegalArgExceptionIfNull(writer, "CharWriter");
 
       //
-      if (s instanceof String)
+      safeEncode(s, 0, s.length(), writer);
+   }
+
+   public void encode(char c, CharWriter writer) throws EncodingException
+   {
+      ParameterValidation.throwIllegalArgExceptionIfNull(writer, "CharWriter");
+
+      //
+      safeEncode(CODES, c, 1, writer);
+   }
+
+   /**
+    * Encodes a range of a sequence with an encoder. The range is not copied when the encoder extends this class,
+    * otherwise the encoder is given the corresponding sub sequence.
+    *
+    * @param encoder the encoder
+    * @param s       the sequence to encode
+    * @param off     the offset in the sequence
+    * @param len     the length of chars to encode
+    * @param writer  the writer to use
+    * @throws IllegalArgumentException if any argument is null or if the bounds are not valid in the sequence
+    * @throws EncodingException        an encoding exception
+    */
+   public static void encode(CharEncoder encoder, CharSequence s, int off, int len, CharWriter writer) throws IllegalArgumentException, EncodingException
+   {
+      ParameterValidation.throwIllegalArgExceptionIfNull(encoder, "CharEncoder");
+      ParameterValidation.throwIllegalArgExceptionIfRangeInvalid(s, off, len);
+      ParameterValidation.throwIllegalArgExceptionIfNull(writer, "CharWriter");
+
+      //
+      if (encoder instanceof AbstractCharEncoder)
       {
-         char[] chars = ((String)s).toCharArray();
-         encode(chars, 0, chars.length, writer);
+         ((AbstractCharEncoder)encoder).safeEncode(s, off, len, writer);
       }
       else
       {
-         char[] chars = new char[s.length()];
-         for (int i = 0; i < s.length(); i++)
-         {
-            char c = s.charAt(i);
-            chars[i] = c;
-         }
-         encode(chars, 0, chars.length, writer);
+         encoder.encode(s.subSequence(off, off + len), writer);
       }
    }
 
-   public void encode(char c, CharWriter writer) throws EncodingException
+   /**
+    * Appends a range of a sequence to a writer. The range is not copied when the writer is a {@link RangeCharWriter},
+    * otherwise the writer is given the corresponding sub sequence.
+    *
+    * @param writer the writer
+    * @param s      the sequence
+    * @param off    the offset in the sequence
+    * @param len    the length of chars to append
+    */
+   static void append(CharWriter writer, CharSequence s, int off, int len)
    {
-      encode(new char[]{c}, writer);
+      if (writer instanceof RangeCharWriter)
+      {
+         ((RangeCharWriter)writer).appendRange(s, off, len);
+      }
+      else
+      {
+         writer.append(s.subSequence(off, off + len));
+      }
    }
 
    public String encode(String string) throws IllegalArgumentException
    {
       ParameterValidation.throwIllegalArgExceptionIfNull(string, "String");
 
-      Writer sw = new StringWriter();
-      CharWriter charWriter = new WriterCharWriter(sw);
-      safeEncode(string.toCharArray(), 0, string.length(), charWriter);
-      return sw.toString();
+      //
+      int length = string.length();
+      int index = scan(string, 0, length);
+      if (index == length)
+      {
+         return string;
+      }
+
+      //
+      CharBufferPool.Lease buffer = CharBufferPool.DEFAULT.acquire();
+      try
+      {
+         buffer.appendNoCheck(string, 0, index);
+         safeEncode(string, index, length - index, buffer);
+         return buffer.asString();
+      }
+      finally
+      {
+         buffer.release();
+      }
    }
 
    protected abstract void safeEncode(char[] chars, int off, int len, CharWriter writer) throws EncodingException;
+
+   /**
+    * Encodes a range of a sequence. The default implementation copies the range in a char array, subclasses should
+    * override it to work directly on the sequence.
+    *
+    * @param s      the sequence
+    * @param off    the offset
+    * @param len    the length
+    * @param writer the writer
+    * @throws EncodingException an encoding exception
+    */
+   protected void safeEncode(CharSequence s, int off, int len, CharWriter writer) throws EncodingException
+   {
+      char[] chars = new char[len];
+      if (s instanceof String)
+      {
+         ((String)s).getChars(off, off + len, chars, 0);
+      }
+      else
+      {
+         for (int i = 0; i < len; i++)
+         {
+            chars[i] = s.charAt(off + i);
+         }
+      }
+      safeEncode(chars, 0, len, writer);
+   }
+
+   /**
+    * Returns the index of the first char of the range that is not copied as is by the encoder or the index following
+    * the range if the encoding would not change the range. The default implementation returns the offset.
+    *
+    * @param s   the sequence
+    * @param off the offset
+    * @param len the length
+    * @return the index of the first char that is modified by the encoder
+    */
+   protected int scan(CharSequence s, int off, int len)
+   {
+      return off;
+   }
+
+   /** A sequence of consecutive char codes. */
+   private static final class Codes implements CharSequence
+   {
+
+      /** . */
+      private final int from;
+
+      /** . */
+      private final int length;
+
+      private Codes(int from, int length)
+      {
+         this.from = from;
+         this.length = length;
+      }
+
+      public int length()
+      {
+         return length;
+      }
+
+      public char charAt(int index)
+      {
+         if (index < 0 || index >= length)
+         {
+            throw new IndexOutOfBoundsException("Index " + index + " out of bounds");
+         }
+         return (char)(from + index);
+      }
+
+      public CharSequence subSequence(int start, int end)
+      {
+         if (start < 0 || end > length || start > end)
+         {
+            throw new IndexOutOfBoundsException("Range " + start + "-" + end + " out of bounds");
+         }
+         return new Codes(from + start, end - start);
+      }
+
+      public String toString()
+      {
+         char[] chars = new char[length];
+         for (int i = 0; i < length; i++)
+         {
+            chars[i] = (char)(from + i);
+         }
+         return new String(chars);
+      }
+   }
 }
@@ -30,7 +30,7 @@ import org.gatein.common.util.ParameterValidation;
  * @author <a href="mailto:julien@jboss.org">Julien Viet</a>
  * @version $Revision: 7228 $
  */
-public class CharBuffer implements CharWriter
+public class CharBuffer implements RangeCharWriter
 {
 
    /** . */
@@ -53,6 +53,17 @@ public class CharBuffer implements CharWriter
       this.length = 0;
    }
 
+   /**
+    * Creates a buffer backed by the specified array.
+    *
+    * @param buffer the array
+    */
+   CharBuffer(char[] buffer)
+   {
+      this.buffer = buffer;
+      this.length = 0;
+   }
+
    public CharBuffer()
    {
       this.buffer = new char[512];
@@ -74,6 +85,13 @@ public class CharBuffer implements CharWriter
       return this;
    }
 
+   public CharWriter appendRange(CharSequence s, int off, int len)
+   {
+      ParameterValidation.throwIllegalArgExceptionIfRangeInvalid(s, off, len);
+      appendNoCheck(s, off, len);
+      return this;
+   }
+
    public CharWriter append(char[] chars, int off, int len)
    {
       ParameterValidation.throwIllegalArgExceptionIfRangeInvalid(chars, off, len);
@@ -177,20 +195,25 @@ public class CharBuffer implements CharWriter
 
    protected final void appendNoCheck(CharSequence s)
    {
-      ensureCapacity(length + s.length());
+      appendNoCheck(s, 0, s.length());
+   }
+
+   protected final void appendNoCheck(CharSequence s, int off, int len)
+   {
+      ensureCapacity(length + len);
 
       //
       if (s instanceof String)
       {
-         ((String)s).getChars(0, s.length(), buffer, length);
-         length += s.length();
+         ((String)s).getChars(off, off + len, buffer, length);
+         length += len;
       }
       else
       {
-         for (int i = 0; i < s.length(); i++)
+         int to = off + len;
+         while (off < to)
          {
-            char c = s.charAt(i);
-            buffer[length++] = c;
+            buffer[length++] = s.charAt(off++);
          }
       }
    }
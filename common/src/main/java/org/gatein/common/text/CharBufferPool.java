@@ -0,0 +1,205 @@
+/******************************************************************************
+ * JBoss, a division of Red Hat                                               *
+ * Copyright 2009, Red Hat Middleware, LLC, and individual                    *
+ * contributors as indicated by the @authors tag. See the                     *
+ * copyright.txt in the distribution for a full listing of                    *
+ * individual contributors.                                                   *
+ *                                                                            *
+ * This is free software; you can redistribute it and/or modify it            *
+ * under the terms of the GNU Lesser General Public License as                *
+ * published by the Free Software Foundation; either version 2.1 of           *
+ * the License, or (at your option) any later version.                        *
+ *                                                                            *
+ * This software is distributed in the hope that it will be useful,           *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of             *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU           *
+ * Lesser General Public License for more details.                            *
+ *                                                                            *
+ * You should have received a copy of the GNU Lesser General Public           *
+ * License along with this software; if not, write to the Free                *
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA         *
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.                   *
+ ******************************************************************************/
+package org.gatein.common.text;
+
+/**
+ * A bounded pool of char arrays backing short lived {@link CharBuffer} instances. Each thread keeps its own free
+ * arrays so acquiring and releasing a buffer requires no synchronization. A buffer that has grown past the maximum
+ * retained capacity is shrunk to the initial capacity when it is released, so that a single large value does not
+ * stay pinned in memory for the lifetime of the thread. The thread local only references char arrays, it does not
+ * keep the classes of this library reachable from the threads of a container.
+ *
+ * <p>A lease must be released once it is not used anymore, usually in a finally block:</p>
+ *
+ * <pre>
+ * CharBufferPool.Lease buffer = CharBufferPool.DEFAULT.acquire();
+ * try
+ * {
+ *    ...
+ *    return buffer.asString();
+ * }
+ * finally
+ * {
+ *    buffer.release();
+ * }
+ * </pre>
+ *
+ * @author <a href="mailto:agent@local">agent</a>
+ */
+public final class CharBufferPool
+{
+
+   /** The pool used by the library. */
+   public static final CharBufferPool DEFAULT = new CharBufferPool(4, 512, 8 * 1024);
+
+   /** The maximum number of arrays retained per thread. */
+   private final int maxBuffers;
+
+   /** The capacity of a new array. */
+   private final int initialCapacity;
+
+   /** The maximum capacity of a retained array. */
+   private final int maxRetainedCapacity;
+
+   /** The free arrays of each thread, a null slot is empty. */
+   private final ThreadLocal<char[][]> free = new ThreadLocal<char[][]>();
+
+   /**
+    * @param maxBuffers          the maximum number of buffers retained per thread
+    * @param initialCapacity     the capacity of a new buffer
+    * @param maxRetainedCapacity the maximum capacity of a retained buffer
+    * @throws IllegalArgumentException if an argument is negative or if the initial capacity is greater than the maximum
+    *                                  retained capacity
+    */
+   public CharBufferPool(int maxBuffers, int initialCapacity, int maxRetainedCapacity) throws IllegalArgumentException
+   {
+      if (maxBuffers < 0)
+      {
+         throw new IllegalArgumentException("The maximum number of buffers must be positive");
+      }
+      if (initialCapacity < 0)
+      {
+         throw new IllegalArgumentException("The initial capacity must be positive");
+      }
+      if (maxRetainedCapacity < initialCapacity)
+      {
+         throw new IllegalArgumentException("The maximum retained capacity " + maxRetainedCapacity +
+            " is lower than the initial capacity " + initialCapacity);
+      }
+
+      //
+      this.maxBuffers = maxBuffers;
+      this.initialCapacity = initialCapacity;
+      this.maxRetainedCapacity = maxRetainedCapacity;
+   }
+
+   public int getMaxBuffers()
+   {
+      return maxBuffers;
+   }
+
+   public int getInitialCapacity()
+   {
+      return initialCapacity;
+   }
+
+   public int getMaxRetainedCapacity()
+   {
+      return maxRetainedCapacity;
+   }
+
+   /**
+    * Acquires an empty buffer from the pool of the current thread, a new buffer is created when the pool is empty.
+    *
+    * @return the buffer
+    */
+   public Lease acquire()
+   {
+      char[][] arrays = free.get();
+      if (arrays != null)
+      {
+         for (int i = arrays.length - 1; i >= 0; i--)
+         {
+            char[] array = arrays[i];
+            if (array != null)
+            {
+               arrays[i] = null;
+               return new Lease(this, array);
+            }
+         }
+      }
+      return new Lease(this, new char[initialCapacity]);
+   }
+
+   private void release(char[] array)
+   {
+      if (maxBuffers == 0)
+      {
+         return;
+      }
+
+      //
+      if (array.length > maxRetainedCapacity)
+      {
+         array = new char[initialCapacity];
+      }
+
+      //
+      char[][] arrays = free.get();
+      if (arrays == null)
+      {
+         arrays = new char[maxBuffers][];
+         free.set(arrays);
+      }
+      for (int i = 0; i < arrays.length; i++)
+      {
+         if (arrays[i] == null)
+         {
+            arrays[i] = array;
+            return;
+         }
+      }
+   }
+
+   /**
+    * A buffer acquired from a pool, it must be released by the thread that acquired it and must not be used anymore
+    * after it has been released.
+    */
+   public static final class Lease extends CharBuffer
+   {
+
+      /** . */
+      private static final char[] EMPTY = new char[0];
+
+      /** The pool, null once the lease has been released. */
+      private CharBufferPool pool;
+
+      private Lease(CharBufferPool pool, char[] buffer)
+      {
+         super(buffer);
+
+         //
+         this.pool = pool;
+      }
+
+      /**
+       * Returns the buffer to its pool.
+       *
+       * @throws IllegalStateException if the lease has already been released
+       */
+      public void release() throws IllegalStateException
+      {
+         if (pool == null)
+         {
+            throw new IllegalStateException("The buffer has already been released");
+         }
+
+         //
+         char[] array = buffer;
+         buffer = EMPTY;
+         length = 0;
+         pool.release(array);
+         pool = null;
+      }
+   }
+}
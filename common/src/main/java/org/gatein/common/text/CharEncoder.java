@@ -65,6 +65,8 @@ public interface CharEncoder
    void encode(CharSequence s, CharWriter writer) throws IllegalArgumentException, EncodingException;
 
    /**
+    * Encodes a String, when the String does not contain any char to encode the same String is returned.
+    *
     * @param string the String to encode
     * @return the encoded String
     * @throws IllegalArgumentException if the specified String is <code>null</code>
@@ -0,0 +1,161 @@
+/******************************************************************************
+ * JBoss, a division of Red Hat                                               *
+ * Copyright 2009, Red Hat Middleware, LLC, and individual                    *
+ * contributors as indicated by the @authors tag. See the                     *
+ * copyright.txt in the distribution for a full listing of                    *
+ * individual contributors.                                                   *
+ *                                                                            *
+ * This is free software; you can redistribute it and/or modify it            *
+ * under the terms of the GNU Lesser General Public License as                *
+ * published by the Free Software Foundation; either version 2.1 of           *
+ * the License, or (at your option) any later version.                        *
+ *                                                                            *
+ * This software is distributed in the hope that it will be useful,           *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of             *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU           *
+ * Lesser General Public License for more details.                            *
+ *                                                                            *
+ * You should have received a copy of the GNU Lesser General Public           *
+ * License along with this software; if not, write to the Free                *
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA         *
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.                   *
+ ******************************************************************************/
+package org.gatein.common.text;
+
+import org.gatein.common.util.ParameterValidation;
+
+/**
+ * Finds the next char of a text that is not in a set of ASCII chars, the encoders use it to find the next char to
+ * escape and copy all the chars before it in one operation. The text is examined four chars at a time: a single
+ * test on the bitwise or of the four chars tells whether they are all ASCII and a single test on the conjunction
+ * of their table entries tells whether they are all skipped, so a run of plain text costs one branch per four chars
+ * instead of two branches per char. A char that is not ASCII always stops the scan, the caller decides what to do
+ * with it.
+ *
+ * @author <a href="mailto:agent@local">agent</a>
+ */
+public final class CharScanner
+{
+
+   /** The skipped chars indexed by ASCII code. */
+   private final boolean[] skipped;
+
+   /**
+    * Creates a scanner skipping the ASCII chars for which the corresponding entry of the array is true.
+    *
+    * @param skipped the skipped chars
+    * @throws IllegalArgumentException if the array is null or longer than 128
+    */
+   public CharScanner(boolean[] skipped) throws IllegalArgumentException
+   {
+      ParameterValidation.throwIllegalArgExceptionIfNull(skipped, "boolean[]");
+      if (skipped.length > 0x80)
+      {
+         throw new IllegalArgumentException("Only ASCII chars can be skipped");
+      }
+
+      //
+      this.skipped = new boolean[0x80];
+      System.arraycopy(skipped, 0, this.skipped, 0, skipped.length);
+   }
+
+   /**
+    * Creates a scanner skipping the ASCII chars of the specified string.
+    *
+    * @param skipped the skipped chars
+    * @throws IllegalArgumentException if the string is null or contains a char that is not ASCII
+    */
+   public CharScanner(String skipped) throws IllegalArgumentException
+   {
+      ParameterValidation.throwIllegalArgExceptionIfNull(skipped, "String");
+
+      //
+      this.skipped = new boolean[0x80];
+      for (int i = 0; i < skipped.length(); i++)
+      {
+         char c = skipped.charAt(i);
+         if (c >= 0x80)
+         {
+            throw new IllegalArgumentException("Only ASCII chars can be skipped");
+         }
+         this.skipped[c] = true;
+      }
+   }
+
+   /**
+    * Returns true if the char is skipped.
+    *
+    * @param c the char
+    * @return true if the char is skipped
+    */
+   public boolean skips(char c)
+   {
+      return c < 0x80 && skipped[c];
+   }
+
+   /**
+    * Returns the index of the first char that is not skipped in the range or the end of the range.
+    *
+    * @param chars the chars
+    * @param from  the start index
+    * @param to    the end index
+    * @return the index of the first char not skipped
+    */
+   public int scan(char[] chars, int from, int to)
+   {
+      boolean[] skipped = this.skipped;
+      for (int limit = to - 3; from < limit; from += 4)
+      {
+         char c0 = chars[from];
+         char c1 = chars[from + 1];
+         char c2 = chars[from + 2];
+         char c3 = chars[from + 3];
+         if ((c0 | c1 | c2 | c3) >= 0x80 || !(skipped[c0] & skipped[c1] & skipped[c2] & skipped[c3]))
+         {
+            break;
+         }
+      }
+      for (; from < to; from++)
+      {
+         char c = chars[from];
+         if (c >= 0x80 || !skipped[c])
+         {
+            break;
+         }
+      }
+      return from;
+   }
+
+   /**
+    * Returns the index of the first char that is not skipped in the range or the end of the range.
+    *
+    * @param s    the sequence
+    * @param from the start index
+    * @param to   the end index
+    * @return the index of the first char not skipped
+    */
+   public int scan(CharSequence s, int from, int to)
+   {
+      boolean[] skipped = this.skipped;
+      for (int limit = to - 3; from < limit; from += 4)
+      {
+         char c0 = s.charAt(from);
+         char c1 = s.charAt(from + 1);
+         char c2 = s.charAt(from + 2);
+         char c3 = s.charAt(from + 3);
+         if ((c0 | c1 | c2 | c3) >= 0x80 || !(skipped[c0] & skipped[c1] & skipped[c2] & skipped[c3]))
+         {
+            break;
+         }
+      }
+      for (; from < to; from++)
+      {
+         char c = s.charAt(from);
+         if (c >= 0x80 || !skipped[c])
+         {
+            break;
+         }
+      }
+      return from;
+   }
+}
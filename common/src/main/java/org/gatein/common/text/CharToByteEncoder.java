@@ -22,6 +22,8 @@
  ******************************************************************************/
 package org.gatein.common.text;
 
+import org.gatein.common.util.ParameterValidation;
+
 import java.nio.charset.CharsetEncoder;
 import java.nio.charset.Charset;
 import java.nio.CharBuffer;
@@ -38,7 +40,8 @@ public interface CharToByteEncoder
 
    /**
     * Encode the specified char. The returned byte array can be used safely until a new invocation to the same
-    * object is done. If the returned array has a length of zero it means that the char cannot be encoded. 
+    * object is done, unless the implementation documents otherwise. If the returned array has a length of zero it
+    * means that the char cannot be encoded.
     *
     * @param c the char to encode
     * @return the encoded char as a byte array
@@ -50,7 +53,110 @@ public interface CharToByteEncoder
    final byte[] EMPTY = new byte[0];
 
    /**
-    * Generic implementation that works for any charset, based on NIO.
+    * A stateless and thread safe UTF-8 implementation. The arrays returned by <code>encode(char)</code> are new
+    * arrays, a surrogate cannot be encoded alone and is returned as an empty array. The bulk
+    * {@link #encode(char[], int, int, byte[], int)} method encodes surrogate pairs to their four bytes form.
+    */
+   public static final class UTF8 implements CharToByteEncoder
+   {
+
+      /** . */
+      public static final UTF8 INSTANCE = new UTF8();
+
+      /** . */
+      private static final Charset CHARSET = Charset.forName("UTF-8");
+
+      private UTF8()
+      {
+      }
+
+      public Charset getCharset()
+      {
+         return CHARSET;
+      }
+
+      public byte[] encode(char c)
+      {
+         if (c < 0x80)
+         {
+            return new byte[]{(byte)c};
+         }
+         else if (c < 0x800)
+         {
+            return new byte[]{(byte)(0xC0 | (c >> 6)), (byte)(0x80 | (c & 0x3F))};
+         }
+         else if (c >= Character.MIN_SURROGATE && c <= Character.MAX_SURROGATE)
+         {
+            return EMPTY;
+         }
+         else
+         {
+            return new byte[]{(byte)(0xE0 | (c >> 12)), (byte)(0x80 | ((c >> 6) & 0x3F)), (byte)(0x80 | (c & 0x3F))};
+         }
+      }
+
+      /**
+       * Encodes a range of chars, a surrogate pair is encoded as one four bytes sequence. The destination must have
+       * room for three bytes per char of the range.
+       *
+       * @param src    the chars
+       * @param off    the offset of the range
+       * @param len    the length of the range
+       * @param dst    the destination
+       * @param dstOff the offset in the destination
+       * @return the number of bytes written
+       * @throws IllegalArgumentException if an argument is null or a range is not valid
+       * @throws MalformedInputException if the range contains an unpaired surrogate
+       */
+      public int encode(char[] src, int off, int len, byte[] dst, int dstOff) throws IllegalArgumentException, MalformedInputException
+      {
+         ParameterValidation.throwIllegalArgExceptionIfRangeInvalid(src, off, len);
+         ParameterValidation.throwIllegalArgExceptionIfNull(dst, "byte[]");
+         if (dstOff < 0 || dstOff > dst.length)
+         {
+            throw new IllegalArgumentException("Invalid destination offset " + dstOff);
+         }
+
+         //
+         int pos = dstOff;
+         for (int to = off + len; off < to; off++)
+         {
+            char c = src[off];
+            if (c < 0x80)
+            {
+               dst[pos++] = (byte)c;
+            }
+            else if (c < 0x800)
+            {
+               dst[pos++] = (byte)(0xC0 | (c >> 6));
+               dst[pos++] = (byte)(0x80 | (c & 0x3F));
+            }
+            else if (c >= Character.MIN_SURROGATE && c <= Character.MAX_SURROGATE)
+            {
+               if (!Character.isHighSurrogate(c) || off + 1 == to || !Character.isLowSurrogate(src[off + 1]))
+               {
+                  throw new MalformedInputException("Unpaired surrogate " + Integer.toHexString(c) + " at " + off);
+               }
+               int codePoint = Character.toCodePoint(c, src[++off]);
+               dst[pos++] = (byte)(0xF0 | (codePoint >> 18));
+               dst[pos++] = (byte)(0x80 | ((codePoint >> 12) & 0x3F));
+               dst[pos++] = (byte)(0x80 | ((codePoint >> 6) & 0x3F));
+               dst[pos++] = (byte)(0x80 | (codePoint & 0x3F));
+            }
+            else
+            {
+               dst[pos++] = (byte)(0xE0 | (c >> 12));
+               dst[pos++] = (byte)(0x80 | ((c >> 6) & 0x3F));
+               dst[pos++] = (byte)(0x80 | (c & 0x3F));
+            }
+         }
+         return pos - dstOff;
+      }
+   }
+
+   /**
+    * Generic implementation that works for any charset, based on NIO. The encoding of each char is computed once and
+    * cached, the returned arrays are shared and must not be modified. This class is thread safe.
     */
    public static class Generic implements CharToByteEncoder
    {
@@ -58,6 +164,15 @@ public interface CharToByteEncoder
       /** . */
       public static final Generic UTF8 = new Generic("UTF8");
 
+      /** . */
+      private static final int PAGE_SHIFT = 8;
+
+      /** . */
+      private static final int PAGE_MASK = (1 << PAGE_SHIFT) - 1;
+
+      /** . */
+      private final Charset charset;
+
       /** . */
       private final CharsetEncoder encoder;
 
@@ -67,11 +182,12 @@ public interface CharToByteEncoder
       /** . */
       private final ByteBuffer out;
 
-      /** . */
-      private final byte[][] arrays = {new byte[0],new byte[1],new byte[2],new byte[3],new byte[4], new byte[5]};
+      /** The cached encodings by page of 256 chars, null until they are used. */
+      private final Page[] pages = new Page[0x10000 >> PAGE_SHIFT];
 
       public Generic(Charset charset)
       {
+         this.charset = charset;
          encoder = charset.newEncoder();
          in = CharBuffer.allocate(1);
          out = ByteBuffer.allocate(100);
@@ -82,7 +198,34 @@ public interface CharToByteEncoder
          this(Charset.forName(encoding));
       }
 
+      public Charset getCharset()
+      {
+         return charset;
+      }
+
       public byte[] encode(char c) throws EncodingException
+      {
+         int pageIndex = c >> PAGE_SHIFT;
+         Page page = pages[pageIndex];
+         if (page == null)
+         {
+            page = buildPage(pageIndex);
+            pages[pageIndex] = page;
+         }
+         return page.encodings[c & PAGE_MASK];
+      }
+
+      private synchronized Page buildPage(int pageIndex)
+      {
+         byte[][] encodings = new byte[PAGE_MASK + 1][];
+         for (int i = 0; i <= PAGE_MASK; i++)
+         {
+            encodings[i] = doEncode((char)((pageIndex << PAGE_SHIFT) | i));
+         }
+         return new Page(encodings);
+      }
+
+      private byte[] doEncode(char c)
       {
          switch(Character.getType(c))
          {
@@ -99,7 +242,7 @@ public interface CharToByteEncoder
                   encoder.encode(in, out, true);
                   encoder.flush(out);
                   int length = out.position();
-                  byte[] bytes = arrays[length];
+                  byte[] bytes = new byte[length];
                   System.arraycopy(out.array(), 0, bytes, 0, length);
                   return bytes;
                }
@@ -109,5 +252,20 @@ public interface CharToByteEncoder
                }
          }
       }
+
+      /**
+       * The final field guarantees that a page published without synchronization is seen complete.
+       */
+      private static class Page
+      {
+
+         /** . */
+         private final byte[][] encodings;
+
+         private Page(byte[][] encodings)
+         {
+            this.encodings = encodings;
+         }
+      }
    }
 }
@@ -0,0 +1,550 @@
+/******************************************************************************
+ * JBoss, a division of Red Hat                                               *
+ * Copyright 2009, Red Hat Middleware, LLC, and individual                    *
+ * contributors as indicated by the @authors tag. See the                     *
+ * copyright.txt in the distribution for a full listing of                    *
+ * individual contributors.                                                   *
+ *                                                                            *
+ * This is free software; you can redistribute it and/or modify it            *
+ * under the terms of the GNU Lesser General Public License as                *
+ * published by the Free Software Foundation; either version 2.1 of           *
+ * the License, or (at your option) any later version.                        *
+ *                                                                            *
+ * This software is distributed in the hope that it will be useful,           *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of             *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU           *
+ * Lesser General Public License for more details.                            *
+ *                                                                            *
+ * You should have received a copy of the GNU Lesser General Public           *
+ * License along with this software; if not, write to the Free                *
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA         *
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.                   *
+ ******************************************************************************/
+package org.gatein.common.text;
+
+import org.gatein.common.util.BoundedCache;
+import org.gatein.common.util.ParameterValidation;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Arrays;
+
+/**
+ * A template prepared for {@link TextTools#replaceBoundedString(String, String, String,
+ * TextTools.StringReplacementGenerator, boolean, boolean, boolean)}. The occurrences of the prefix and of the suffix in
+ * the template are located once when the template is compiled. Rendering performs the same edits as the original
+ * algorithm and gives the same result in every case, including the replacements that contain a prefix or a suffix, but
+ * the text is kept in a gap buffer: an edit only moves the text between the previous edit and the current one, and
+ * a search in the part of the template that was not edited yet is a lookup in the located occurrences. Rendering a
+ * template is linear instead of quadratic in the number of bounded strings.
+ *
+ * <p>The compiled templates are cached by template, boundaries and flags, except the templates longer than 8K chars
+ * that are usually generated markup that is not reused. A compiled template is immutable and can be rendered
+ * concurrently.</p>
+ *
+ * @author <a href="mailto:agent@local">agent</a>
+ */
+public final class CompiledTemplate
+{
+
+   /** The maximum length of a cached template. */
+   private static final int MAX_CACHED_LENGTH = 8 * 1024;
+
+   /** The maximum number of cached templates. */
+   private static final int MAX_CACHE_SIZE = 256;
+
+   /** . */
+   private static final BoundedCache<Key, CompiledTemplate> cache = new BoundedCache<Key, CompiledTemplate>(MAX_CACHE_SIZE);
+
+   /** . */
+   private static final int[] NO_OCCURRENCES = new int[0];
+
+   /** . */
+   private static final int REPLACE_IF_EMPTY = 1;
+
+   /** . */
+   private static final int KEEP_BOUNDARIES = 2;
+
+   /** . */
+   private static final int SUFFIX_IS_OPTIONAL = 4;
+
+   /**
+    * Compiles a template or returns the cached compiled template.
+    *
+    * @param template                    the template
+    * @param prefix                      the prefix of a bounded string
+    * @param suffix                      the suffix of a bounded string, null when a bounded string extends to the end
+    *                                    of the template
+    * @param replaceIfBoundedStringEmpty <code>true</code> to replace the empty bounded strings
+    * @param keepBoundaries              <code>true</code> to keep the prefix and suffix in the rendered text
+    * @param suffixIsOptional            whether or not the suffix is optional
+    * @return the compiled template
+    * @throws IllegalArgumentException if the template is null or the prefix is null or empty
+    */
+   public static CompiledTemplate compile(String template, String prefix, String suffix,
+                                          boolean replaceIfBoundedStringEmpty, boolean keepBoundaries, boolean suffixIsOptional) throws IllegalArgumentException
+   {
+      ParameterValidation.throwIllegalArgExceptionIfNull(template, "template");
+      ParameterValidation.throwIllegalArgExceptionIfNullOrEmpty(prefix, "prefix", "CompiledTemplate");
+
+      //
+      int flags = (replaceIfBoundedStringEmpty ? REPLACE_IF_EMPTY : 0) | (keepBoundaries ? KEEP_BOUNDARIES : 0) |
+         (suffixIsOptional ? SUFFIX_IS_OPTIONAL : 0);
+      if (template.length() > MAX_CACHED_LENGTH)
+      {
+         return new CompiledTemplate(template, prefix, suffix, flags);
+      }
+
+      //
+      Key key = new Key(template, prefix, suffix, flags);
+      CompiledTemplate compiled = cache.get(key);
+      if (compiled == null)
+      {
+         compiled = new CompiledTemplate(template, prefix, suffix, flags);
+         cache.put(key, compiled);
+      }
+      return compiled;
+   }
+
+   /** . */
+   private final String template;
+
+   /** . */
+   private final String prefix;
+
+   /** . */
+   private final String suffix;
+
+   /** . */
+   private final boolean replaceIfBoundedStringEmpty;
+
+   /** . */
+   private final boolean keepBoundaries;
+
+   /** . */
+   private final boolean suffixIsOptional;
+
+   /** The sorted indexes of the prefix in the template, empty when the template is rendered unchanged. */
+   private final int[] prefixes;
+
+   /** The sorted indexes of the suffix in the template or null if there is no suffix. */
+   private final int[] suffixes;
+
+   private CompiledTemplate(String template, String prefix, String suffix, int flags)
+   {
+      this.template = template;
+      this.prefix = prefix;
+      this.suffix = suffix;
+      this.replaceIfBoundedStringEmpty = (flags & REPLACE_IF_EMPTY) != 0;
+      this.keepBoundaries = (flags & KEEP_BOUNDARIES) != 0;
+      this.suffixIsOptional = (flags & SUFFIX_IS_OPTIONAL) != 0;
+
+      // Nothing to do if the suffix is required and does not appear in the template
+      if (!suffixIsOptional && suffix != null && template.indexOf(suffix) == -1)
+      {
+         this.prefixes = NO_OCCURRENCES;
+         this.suffixes = null;
+      }
+      else
+      {
+         this.prefixes = occurrences(template, prefix);
+         this.suffixes = suffix != null ? occurrences(template, suffix) : null;
+      }
+   }
+
+   public String getTemplate()
+   {
+      return template;
+   }
+
+   /**
+    * Renders the template.
+    *
+    * @param generator the replacement generator
+    * @return the rendered string, the template itself when it contains no bounded string
+    * @throws IllegalArgumentException if the generator is null
+    */
+   public String render(TextTools.StringReplacementGenerator generator) throws IllegalArgumentException
+   {
+      ParameterValidation.throwIllegalArgExceptionIfNull(generator, "StringReplacementGenerator");
+
+      //
+      if (prefixes.length == 0)
+      {
+         return template;
+      }
+
+      //
+      Buffer tmp = new Buffer(template);
+      int prefixIndex = prefixes[0];
+      final int prefixLength = prefix.length();
+      boolean suffixAbsent = suffix == null;
+      int suffixLength = suffixAbsent ? 0 : suffix.length();
+
+      // loop as long as we can find an instance of prefix in the String
+      while (prefixIndex != -1)
+      {
+         int suffixIndex;
+         if (suffixAbsent)
+         {
+            String match = tmp.substring(prefixIndex + prefixLength, tmp.length());
+
+            // replace prefix with replacement
+            if (keepBoundaries)
+            {
+               // just insert replacement for prefix
+               tmp.insert(prefixIndex + prefixLength, generator.getReplacementFor(match, prefix, suffix, true));
+            }
+            else
+            {
+               // delete prefix then insert remplacement instead
+               tmp.delete(prefixIndex, prefixIndex + prefixLength);
+               tmp.insert(prefixIndex, generator.getReplacementFor(match, prefix, suffix, true));
+            }
+
+            // new lookup starting position
+            prefixIndex = tmp.indexOf(prefix, prefixes, prefixIndex + prefixLength);
+         }
+         else
+         {
+            // look for suffix
+            suffixIndex = tmp.indexOf(suffix, suffixes, prefixIndex);
+
+            if (suffixIndex == -1)
+            {
+               // we haven't found suffix in the rest of the String so don't look for it again
+               suffixAbsent = true;
+               continue;
+            }
+            else
+            {
+               if (suffixIsOptional)
+               {
+                  // if suffix is optional, look for potential next prefix instance that we'd need to replace
+                  int nextPrefixIndex = tmp.indexOf(prefix, prefixes, prefixIndex + prefixLength);
+
+                  // check that we're not matching the suffix, which can happen if they are close one to another as is the case with WSRP
+                  if (nextPrefixIndex >= suffixIndex && nextPrefixIndex <= (suffixIndex + suffixLength))
+                  {
+                     // if that's the case, look for the next one instead
+                     nextPrefixIndex = tmp.indexOf(prefix, prefixes, suffixIndex + suffixLength);
+                  }
+
+                  if (nextPrefixIndex != -1 && nextPrefixIndex <= suffixIndex)
+                  {
+                     // we've found an in-between prefix, use it as the suffix for the current match
+                     // delete prefix then insert remplacement instead
+                     String match = tmp.substring(prefixIndex + prefixLength, nextPrefixIndex);
+                     tmp.delete(prefixIndex, prefixIndex + prefixLength);
+                     String replacement = generator.getReplacementFor(match, prefix, suffix, true);
+                     tmp.insert(prefixIndex, replacement);
+
+                     prefixIndex = nextPrefixIndex - prefixLength + replacement.length();
+                     continue;
+                  }
+               }
+
+               // we don't care about empty bounded strings or prefix and suffix don't delimit an empty String => replace!
+               if (replaceIfBoundedStringEmpty || suffixIndex != prefixIndex + prefixLength)
+               {
+                  String match = tmp.substring(prefixIndex + prefixLength, suffixIndex);
+                  String replacement = generator.getReplacementFor(match, prefix, suffix, false);
+                  int changeInLength = replacement.length() - match.length();
+
+                  // compute the next lookup index from which we will look for the next prefix
+                  int nextLookupIndex = prefixIndex + changeInLength;
+
+                  if (keepBoundaries)
+                  {
+                     // delete only match
+                     tmp.delete(prefixIndex + prefixLength, suffixIndex);
+                     tmp.insert(prefixIndex + prefixLength, replacement);
+                     nextLookupIndex += prefixLength + suffixLength;
+                  }
+                  else
+                  {
+                     // delete everything between start of prefix and end of suffix
+                     tmp.delete(prefixIndex, suffixIndex + suffixLength);
+                     tmp.insert(prefixIndex, replacement);
+                  }
+
+                  prefixIndex = nextLookupIndex;
+               }
+            }
+
+            prefixIndex = tmp.indexOf(prefix, prefixes, prefixIndex + 1); // +1 to avoid infinite loop on border cases
+         }
+      }
+
+      //
+      return tmp.toString();
+   }
+
+   /**
+    * Renders the template to a char writer.
+    *
+    * @param generator the replacement generator
+    * @param writer    the writer
+    * @throws IllegalArgumentException if an argument is null
+    */
+   public void render(TextTools.StringReplacementGenerator generator, CharWriter writer) throws IllegalArgumentException
+   {
+      ParameterValidation.throwIllegalArgExceptionIfNull(writer, "CharWriter");
+      writer.append(render(generator));
+   }
+
+   /**
+    * Renders the template to a writer.
+    *
+    * @param generator the replacement generator
+    * @param writer    the writer
+    * @throws IllegalArgumentException if an argument is null
+    * @throws IOException              any IOException thrown by the writer
+    */
+   public void render(TextTools.StringReplacementGenerator generator, Writer writer) throws IllegalArgumentException, IOException
+   {
+      ParameterValidation.throwIllegalArgExceptionIfNull(writer, "Writer");
+      writer.write(render(generator));
+   }
+
+   private static int[] occurrences(String s, String str)
+   {
+      int[] occurrences = new int[4];
+      int size = 0;
+      for (int i = s.indexOf(str); i != -1; i = i < s.length() ? s.indexOf(str, i + 1) : -1)
+      {
+         if (size == occurrences.length)
+         {
+            int[] tmp = new int[size * 2];
+            System.arraycopy(occurrences, 0, tmp, 0, size);
+            occurrences = tmp;
+         }
+         occurrences[size++] = i;
+      }
+      int[] tmp = new int[size];
+      System.arraycopy(occurrences, 0, tmp, 0, size);
+      return tmp;
+   }
+
+   /**
+    * The text being rendered, the chars before the gap are followed by the chars after the gap. The chars after the
+    * <code>pristine</code> index are the end of the template as it was compiled, the occurrences of the template
+    * located in this part are still valid.
+    */
+   private static final class Buffer
+   {
+
+      /** . */
+      private char[] chars;
+
+      /** . */
+      private int gapStart;
+
+      /** . */
+      private int gapEnd;
+
+      /** The index of the first char of the template in the array. */
+      private int offset;
+
+      /** The index from which the array contains the unchanged end of the template. */
+      private int pristine;
+
+      private Buffer(String template)
+      {
+         int length = template.length();
+         chars = new char[length + Math.max(16, length >> 2)];
+         gapStart = 0;
+         gapEnd = chars.length - length;
+         offset = gapEnd;
+         pristine = gapEnd;
+         template.getChars(0, length, chars, gapEnd);
+      }
+
+      private int length()
+      {
+         return chars.length - gapEnd + gapStart;
+      }
+
+      private char charAt(int index)
+      {
+         return chars[index < gapStart ? index : index + gapEnd - gapStart];
+      }
+
+      /**
+       * Same as {@link StringBuilder#indexOf(String, int)}, the occurrences of the string in the template are used
+       * for the part of the text that was not edited.
+       *
+       * @param str         the searched string
+       * @param occurrences the occurrences of the string in the template
+       * @param from        the index from which to start the search
+       * @return the index of the string or -1
+       */
+      private int indexOf(String str, int[] occurrences, int from)
+      {
+         if (from < 0)
+         {
+            from = 0;
+         }
+         int length = str.length();
+         int right = Math.max(pristine, gapEnd);
+         int pristineFrom = right - gapEnd + gapStart;
+
+         // Search the edited text, an occurrence may end in the unchanged text
+         int to = Math.min(pristineFrom, length() - length + 1);
+         for (int i = from; i < to; i++)
+         {
+            int j = 0;
+            while (j < length && charAt(i + j) == str.charAt(j))
+            {
+               j++;
+            }
+            if (j == length)
+            {
+               return i;
+            }
+         }
+
+         // Lookup the occurrences of the unchanged text
+         int index = Arrays.binarySearch(occurrences, Math.max(from, pristineFrom) - pristineFrom + right - offset);
+         if (index < 0)
+         {
+            index = -index - 1;
+         }
+         return index < occurrences.length ? occurrences[index] - right + offset + pristineFrom : -1;
+      }
+
+      private String substring(int from, int to)
+      {
+         if (from < 0 || to > length() || from > to)
+         {
+            throw new StringIndexOutOfBoundsException("Invalid range [" + from + "," + to + "]");
+         }
+         char[] tmp = new char[to - from];
+         getChars(from, to, tmp);
+         return new String(tmp);
+      }
+
+      private void delete(int from, int to)
+      {
+         to = Math.min(to, length());
+         moveGap(from);
+         gapEnd += to - from;
+      }
+
+      private void insert(int index, String s)
+      {
+         if (s == null)
+         {
+            s = "null";
+         }
+         moveGap(index);
+         int length = s.length();
+         if (gapEnd - gapStart < length)
+         {
+            grow(length);
+         }
+         s.getChars(0, length, chars, gapStart);
+         gapStart += length;
+      }
+
+      private void moveGap(int index)
+      {
+         if (index < gapStart)
+         {
+            // The chars moved after the gap overwrite the template
+            int length = gapStart - index;
+            System.arraycopy(chars, index, chars, gapEnd - length, length);
+            pristine = Math.max(pristine, gapEnd);
+            gapStart = index;
+            gapEnd -= length;
+         }
+         else if (index > gapStart)
+         {
+            int length = index - gapStart;
+            System.arraycopy(chars, gapEnd, chars, gapStart, length);
+            gapStart = index;
+            gapEnd += length;
+         }
+      }
+
+      private void grow(int length)
+      {
+         char[] tmp = new char[Math.max(chars.length * 2, chars.length + length)];
+         int delta = tmp.length - chars.length;
+         System.arraycopy(chars, 0, tmp, 0, gapStart);
+         System.arraycopy(chars, gapEnd, tmp, gapEnd + delta, chars.length - gapEnd);
+         chars = tmp;
+         gapEnd += delta;
+         offset += delta;
+         pristine += delta;
+      }
+
+      private void getChars(int from, int to, char[] dst)
+      {
+         int left = Math.min(to, gapStart);
+         if (from < left)
+         {
+            System.arraycopy(chars, from, dst, 0, left - from);
+         }
+         int right = Math.max(from, gapStart);
+         if (right < to)
+         {
+            System.arraycopy(chars, right + gapEnd - gapStart, dst, right - from, to - right);
+         }
+      }
+
+      public String toString()
+      {
+         return substring(0, length());
+      }
+   }
+
+   /** The key of a cached template. */
+   private static final class Key
+   {
+
+      /** . */
+      private final String template;
+
+      /** . */
+      private final String prefix;
+
+      /** . */
+      private final String suffix;
+
+      /** . */
+      private final int flags;
+
+      /** . */
+      private final int hashCode;
+
+      private Key(String template, String prefix, String suffix, int flags)
+      {
+         this.template = template;
+         this.prefix = prefix;
+         this.suffix = suffix;
+         this.flags = flags;
+         this.hashCode = ((template.hashCode() * 31 + prefix.hashCode()) * 31 + (suffix != null ? suffix.hashCode() : 0)) * 31 + flags;
+      }
+
+      public int hashCode()
+      {
+         return hashCode;
+      }
+
+      public boolean equals(Object obj)
+      {
+         if (obj == this)
+         {
+            return true;
+         }
+         if (obj instanceof Key)
+         {
+            Key that = (Key)obj;
+            return hashCode == that.hashCode && flags == that.flags && template.equals(that.template) &&
+               prefix.equals(that.prefix) && (suffix != null ? suffix.equals(that.suffix) : that.suffix == null);
+         }
+         return false;
+      }
+   }
+}
@@ -0,0 +1,495 @@
+/******************************************************************************
+ * JBoss, a division of Red Hat                                               *
+ * Copyright 2009, Red Hat Middleware, LLC, and individual                    *
+ * contributors as indicated by the @authors tag. See the                     *
+ * copyright.txt in the distribution for a full listing of                    *
+ * individual contributors.                                                   *
+ *                                                                            *
+ * This is free software; you can redistribute it and/or modify it            *
+ * under the terms of the GNU Lesser General Public License as                *
+ * published by the Free Software Foundation; either version 2.1 of           *
+ * the License, or (at your option) any later version.                        *
+ *                                                                            *
+ * This software is distributed in the hope that it will be useful,           *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of             *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU           *
+ * Lesser General Public License for more details.                            *
+ *                                                                            *
+ * You should have received a copy of the GNU Lesser General Public           *
+ * License along with this software; if not, write to the Free                *
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA         *
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.                   *
+ ******************************************************************************/
+package org.gatein.common.text;
+
+import org.gatein.common.util.ParameterValidation;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Decodes the HTML entities <code>&amp;name;</code>, <code>&amp;#NNN;</code> and <code>&amp;#xHH;</code>. The names are
+ * matched with a trie compiled from the entities of an {@link EntityEncoder}. A reference that is not terminated by a
+ * semicolon, an unknown name or a numeric reference that is not a valid code point are left unchanged.
+ * <p/>
+ * The decoder itself is stateless and thread safe, the {@link #newStream(CharWriter)} method returns a writer that
+ * decodes text fed in successive chunks, an entity can be split across chunks.
+ *
+ * @author <a href="mailto:agent@local">agent</a>
+ */
+public class EntityDecoder extends AbstractCharEncoder
+{
+
+   /** Decodes all HTML entities. */
+   public static final EntityDecoder FULL = new EntityDecoder(EntityEncoder.FULL);
+
+   /** The maximum length of a pending reference, a longer reference is left unchanged. */
+   private static final int MAX_REFERENCE_LENGTH = 32;
+
+   /** . */
+   private static final int TEXT = 0;
+
+   /** After '&amp;'. */
+   private static final int AMPERSAND = 1;
+
+   /** In an entity name. */
+   private static final int NAME = 2;
+
+   /** After '&amp;#'. */
+   private static final int NUMBER = 3;
+
+   /** After '&amp;#x'. */
+   private static final int HEX_NUMBER = 4;
+
+   /** In a decimal number. */
+   private static final int DECIMAL_DIGITS = 5;
+
+   /** In an hexadecimal number. */
+   private static final int HEX_DIGITS = 6;
+
+   /** The transition labels of each node, sorted. */
+   private final char[][] labels;
+
+   /** The transition targets of each node. */
+   private final int[][] targets;
+
+   /** The char of each node or -1. */
+   private final int[] values;
+
+   /**
+    * Creates a decoder for the entities of the specified encoder.
+    *
+    * @param encoder the encoder
+    * @throws IllegalArgumentException if the encoder is null
+    */
+   public EntityDecoder(EntityEncoder encoder) throws IllegalArgumentException
+   {
+      ParameterValidation.throwIllegalArgExceptionIfNull(encoder, "EntityEncoder");
+
+      // Build the trie
+      Node root = new Node();
+      int size = 1;
+      for (Map.Entry<String, Character> entry : encoder.getEntities().entrySet())
+      {
+         String name = entry.getKey();
+         Node node = root;
+         for (int i = 0; i < name.length(); i++)
+         {
+            Character c = name.charAt(i);
+            Node child = node.children.get(c);
+            if (child == null)
+            {
+               child = new Node();
+               node.children.put(c, child);
+               size++;
+            }
+            node = child;
+         }
+         node.value = entry.getValue();
+      }
+
+      // Compile it
+      labels = new char[size][];
+      targets = new int[size][];
+      values = new int[size];
+      compile(root, 0, 1);
+   }
+
+   /**
+    * Compile the node at the specified index, its children are allocated from the next free index.
+    *
+    * @param node  the node
+    * @param index the node index
+    * @param next  the next free index
+    * @return the next free index after the subtree
+    */
+   private int compile(Node node, int index, int next)
+   {
+      int count = node.children.size();
+      labels[index] = new char[count];
+      targets[index] = new int[count];
+      values[index] = node.value;
+
+      //
+      int first = next;
+      next += count;
+      int i = 0;
+      for (Map.Entry<Character, Node> entry : node.children.entrySet())
+      {
+         labels[index][i] = entry.getKey();
+         targets[index][i] = first + i;
+         next = compile(entry.getValue(), first + i, next);
+         i++;
+      }
+      return next;
+   }
+
+   /**
+    * Returns the child of a node or -1.
+    *
+    * @param node the node
+    * @param c    the transition char
+    * @return the child node or -1
+    */
+   private int child(int node, char c)
+   {
+      int index = Arrays.binarySearch(labels[node], c);
+      return index >= 0 ? targets[node][index] : -1;
+   }
+
+   /**
+    * Returns a writer that decodes the chars appended to it and writes the result to the specified writer. The
+    * {@link Stream#finish()} method must be called after the last chunk to write any incomplete reference.
+    *
+    * @param writer the writer receiving the decoded chars
+    * @return the decoding stream
+    * @throws IllegalArgumentException if the writer is null
+    */
+   public Stream newStream(CharWriter writer) throws IllegalArgumentException
+   {
+      ParameterValidation.throwIllegalArgExceptionIfNull(writer, "CharWriter");
+      return new Stream(writer);
+   }
+
+   public void encode(char c, CharWriter writer) throws EncodingException
+   {
+      ParameterValidation.throwIllegalArgExceptionIfNull(writer, "CharWriter");
+      writer.append(c);
+   }
+
+   protected void safeEncode(char[] chars, int off, int len, CharWriter writer) throws EncodingException
+   {
+      Stream stream = new Stream(writer);
+      stream.decode(chars, off, off + len);
+      stream.finish();
+   }
+
+   protected void safeEncode(CharSequence s, int off, int len, CharWriter writer) throws EncodingException
+   {
+      Stream stream = new Stream(writer);
+      stream.decode(s, off, off + len);
+      stream.finish();
+   }
+
+   protected int scan(CharSequence s, int off, int len)
+   {
+      for (int to = off + len; off < to; off++)
+      {
+         if (s.charAt(off) == '&')
+         {
+            break;
+         }
+      }
+      return off;
+   }
+
+   /**
+    * A writer decoding the chars it receives. It is not thread safe.
+    */
+   public class Stream implements RangeCharWriter
+   {
+
+      /** . */
+      private final CharWriter writer;
+
+      /** The chars of the current reference. */
+      private final char[] pending;
+
+      /** . */
+      private int pendingLength;
+
+      /** . */
+      private int state;
+
+      /** The current trie node. */
+      private int node;
+
+      /** The current numeric value. */
+      private int number;
+
+      private Stream(CharWriter writer)
+      {
+         this.writer = writer;
+         this.pending = new char[MAX_REFERENCE_LENGTH];
+         this.pendingLength = 0;
+         this.state = TEXT;
+      }
+
+      public CharWriter append(char c)
+      {
+         decode(c);
+         return this;
+      }
+
+      public CharWriter append(char[] chars, int off, int len)
+      {
+         ParameterValidation.throwIllegalArgExceptionIfRangeInvalid(chars, off, len);
+         decode(chars, off, off + len);
+         return this;
+      }
+
+      public CharWriter append(char[] chars)
+      {
+         ParameterValidation.throwIllegalArgExceptionIfNull(chars, "char[]");
+         decode(chars, 0, chars.length);
+         return this;
+      }
+
+      public CharWriter append(CharSequence s)
+      {
+         ParameterValidation.throwIllegalArgExceptionIfNull(s, "CharSequence");
+         decode(s, 0, s.length());
+         return this;
+      }
+
+      public CharWriter appendRange(CharSequence s, int off, int len)
+      {
+         ParameterValidation.throwIllegalArgExceptionIfRangeInvalid(s, off, len);
+         decode(s, off, off + len);
+         return this;
+      }
+
+      /**
+       * Writes the incomplete reference if any, the stream can be reused after.
+       */
+      public void finish()
+      {
+         flushPending();
+      }
+
+      private void decode(CharSequence s, int i, int to)
+      {
+         while (i < to)
+         {
+            if (state == TEXT)
+            {
+               // Copy the text up to the next reference in one operation
+               int from = i;
+               while (i < to && s.charAt(i) != '&')
+               {
+                  i++;
+               }
+               if (i > from)
+               {
+                  AbstractCharEncoder.append(writer, s, from, i - from);
+               }
+               if (i == to)
+               {
+                  break;
+               }
+            }
+            decode(s.charAt(i++));
+         }
+      }
+
+      private void decode(char[] chars, int i, int to)
+      {
+         while (i < to)
+         {
+            if (state == TEXT)
+            {
+               // Copy the text up to the next reference in one operation
+               int from = i;
+               while (i < to && chars[i] != '&')
+               {
+                  i++;
+               }
+               if (i > from)
+               {
+                  writer.append(chars, from, i - from);
+               }
+               if (i == to)
+               {
+                  break;
+               }
+            }
+            decode(chars[i++]);
+         }
+      }
+
+      private void decode(char c)
+      {
+         switch (state)
+         {
+            case TEXT:
+               if (c == '&')
+               {
+                  begin(c);
+               }
+               else
+               {
+                  writer.append(c);
+               }
+               return;
+            case AMPERSAND:
+               if (c == '#')
+               {
+                  push(c, NUMBER);
+                  return;
+               }
+               node = child(0, c);
+               if (node != -1)
+               {
+                  push(c, NAME);
+                  return;
+               }
+               break;
+            case NAME:
+               if (c == ';')
+               {
+                  if (values[node] != -1)
+                  {
+                     pendingLength = 0;
+                     state = TEXT;
+                     writer.append((char)values[node]);
+                     return;
+                  }
+               }
+               else
+               {
+                  int next = child(node, c);
+                  if (next != -1)
+                  {
+                     node = next;
+                     push(c, NAME);
+                     return;
+                  }
+               }
+               break;
+            case NUMBER:
+               if (c == 'x' || c == 'X')
+               {
+                  number = 0;
+                  push(c, HEX_NUMBER);
+                  return;
+               }
+               else if (c >= '0' && c <= '9')
+               {
+                  number = c - '0';
+                  push(c, DECIMAL_DIGITS);
+                  return;
+               }
+               break;
+            case HEX_NUMBER:
+            case HEX_DIGITS:
+            case DECIMAL_DIGITS:
+               if (c == ';' && state != HEX_NUMBER)
+               {
+                  if (number > 0 && number <= Character.MAX_CODE_POINT && (number < Character.MIN_SURROGATE || number > Character.MAX_SURROGATE))
+                  {
+                     pendingLength = 0;
+                     state = TEXT;
+                     if (number < Character.MIN_SUPPLEMENTARY_CODE_POINT)
+                     {
+                        writer.append((char)number);
+                     }
+                     else
+                     {
+                        int value = number - Character.MIN_SUPPLEMENTARY_CODE_POINT;
+                        writer.append((char)(Character.MIN_HIGH_SURROGATE + (value >> 10)));
+                        writer.append((char)(Character.MIN_LOW_SURROGATE + (value & 0x3FF)));
+                     }
+                     return;
+                  }
+                  break;
+               }
+               int digit = digit(c, state == DECIMAL_DIGITS ? 10 : 16);
+               if (digit != -1)
+               {
+                  // Saturate the value to avoid overflows, it will be rejected as out of range
+                  number = Math.min(number * (state == DECIMAL_DIGITS ? 10 : 16) + digit, Character.MAX_CODE_POINT + 1);
+                  push(c, state == HEX_NUMBER ? HEX_DIGITS : state);
+                  return;
+               }
+               break;
+         }
+
+         // The reference is not valid, write it unchanged and process the char as text
+         flushPending();
+         decode(c);
+      }
+
+      private int digit(char c, int radix)
+      {
+         if (c >= '0' && c <= '9')
+         {
+            return c - '0';
+         }
+         if (radix == 16)
+         {
+            if (c >= 'a' && c <= 'f')
+            {
+               return c - 'a' + 10;
+            }
+            if (c >= 'A' && c <= 'F')
+            {
+               return c - 'A' + 10;
+            }
+         }
+         return -1;
+      }
+
+      private void begin(char c)
+      {
+         pending[0] = c;
+         pendingLength = 1;
+         state = AMPERSAND;
+      }
+
+      private void push(char c, int nextState)
+      {
+         if (pendingLength == pending.length)
+         {
+            flushPending();
+            writer.append(c);
+         }
+         else
+         {
+            pending[pendingLength++] = c;
+            state = nextState;
+         }
+      }
+
+      private void flushPending()
+      {
+         if (pendingLength > 0)
+         {
+            writer.append(pending, 0, pendingLength);
+            pendingLength = 0;
+         }
+         state = TEXT;
+      }
+   }
+
+   /** A node of the trie during its construction. */
+   private static class Node
+   {
+
+      /** . */
+      private final TreeMap<Character, Node> children = new TreeMap<Character, Node>();
+
+      /** . */
+      private int value = -1;
+   }
+}
@@ -24,6 +24,7 @@ package org.gatein.common.text;
 
 import org.gatein.common.util.ParameterValidation;
 
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -40,14 +41,13 @@ public class EntityEncoder extends AbstractCharEncoder
    {
       ParameterValidation.throwIllegalArgExceptionIfNull(writer, "CharWriter");
 
-      String s = lookup(c);
+      char[][] page = escapes[c >> PAGE_SHIFT];
+      char[] escape = page != null ? page[c & PAGE_MASK] : null;
 
       //
-      if (s != null)
+      if (escape != null)
       {
-         writer.append('&');
-         writer.append(s);
-         writer.append(';');
+         writer.append(escape);
       }
       else
       {
@@ -63,22 +63,48 @@ public class EntityEncoder extends AbstractCharEncoder
       //
       int to = off + len;
 
-      // Perform lookup char by char
-      for (int current = off; current < to; current++)
+      // The scanner skips the ASCII chars without entity, it stops on the other ASCII chars and on all non ASCII chars
+      CharScanner scanner = getScanner();
+
+      // Scan while the skipped runs are long, dense markup and non ASCII text give short runs
+      int current = off;
+      for (int shortRuns = 0; current < to;)
+      {
+         int next = scanner.scan(chars, current, to);
+         shortRuns = next - current < SHORT_RUN ? shortRuns + 1 : 0;
+         current = next;
+         if (current == to || shortRuns == MAX_SHORT_RUNS)
+         {
+            break;
+         }
+
+         // Lookup the char the scanner stopped on
+         char c = chars[current];
+         char[][] page = escapes[c >> PAGE_SHIFT];
+         if (page != null && page[c & PAGE_MASK] != null)
+         {
+            writer.append(chars, previous, current - previous);
+            writer.append(page[c & PAGE_MASK]);
+            previous = current + 1;
+         }
+         current++;
+      }
+
+      // Perform lookup char by char for dense markup and non ASCII text
+      for (; current < to; current++)
       {
          // Lookup
-         String replacement = lookup(chars[current]);
+         char c = chars[current];
+         char[][] page = escapes[c >> PAGE_SHIFT];
 
          // Do we have a replacement
-         if (replacement != null)
+         if (page != null && page[c & PAGE_MASK] != null)
          {
-            // We lazy create the result
-
             // Append the previous chars if any
             writer.append(chars, previous, current - previous);
 
             // Append the replaced entity
-            writer.append('&').append(replacement).append(';');
+            writer.append(page[c & PAGE_MASK]);
 
             // Update the previous pointer
             previous = current + 1;
@@ -86,7 +112,111 @@ public class EntityEncoder extends AbstractCharEncoder
       }
 
       //
-      writer.append(chars, previous, chars.length - previous);
+      writer.append(chars, previous, to - previous);
+   }
+
+   protected void safeEncode(CharSequence s, int off, int len, CharWriter writer) throws EncodingException
+   {
+      // The index of the last copied char
+      int previous = off;
+
+      //
+      int to = off + len;
+
+      //
+      CharScanner scanner = getScanner();
+      int current = off;
+      for (int shortRuns = 0; current < to;)
+      {
+         int next = scanner.scan(s, current, to);
+         shortRuns = next - current < SHORT_RUN ? shortRuns + 1 : 0;
+         current = next;
+         if (current == to || shortRuns == MAX_SHORT_RUNS)
+         {
+            break;
+         }
+         char c = s.charAt(current);
+         char[][] page = escapes[c >> PAGE_SHIFT];
+         if (page != null && page[c & PAGE_MASK] != null)
+         {
+            append(writer, s, previous, current - previous);
+            writer.append(page[c & PAGE_MASK]);
+            previous = current + 1;
+         }
+         current++;
+      }
+
+      //
+      for (; current < to; current++)
+      {
+         char c = s.charAt(current);
+         char[][] page = escapes[c >> PAGE_SHIFT];
+         if (page != null && page[c & PAGE_MASK] != null)
+         {
+            append(writer, s, previous, current - previous);
+            writer.append(page[c & PAGE_MASK]);
+            previous = current + 1;
+         }
+      }
+
+      //
+      append(writer, s, previous, to - previous);
+   }
+
+   protected int scan(CharSequence s, int off, int len)
+   {
+      int to = off + len;
+      CharScanner scanner = getScanner();
+      for (int shortRuns = 0; off < to; off++)
+      {
+         int next = scanner.scan(s, off, to);
+         shortRuns = next - off < SHORT_RUN ? shortRuns + 1 : 0;
+         off = next;
+         if (off == to || shortRuns == MAX_SHORT_RUNS)
+         {
+            break;
+         }
+         char c = s.charAt(off);
+         char[][] page = escapes[c >> PAGE_SHIFT];
+         if (page != null && page[c & PAGE_MASK] != null)
+         {
+            return off;
+         }
+      }
+
+      //
+      for (; off < to; off++)
+      {
+         char c = s.charAt(off);
+         char[][] page = escapes[c >> PAGE_SHIFT];
+         if (page != null && page[c & PAGE_MASK] != null)
+         {
+            break;
+         }
+      }
+      return off;
+   }
+
+   /**
+    * Returns the scanner skipping the ASCII chars that have no entity, it is built again after the ASCII entities
+    * are modified. The scanner is immutable so it can be published to other threads without synchronization.
+    *
+    * @return the scanner
+    */
+   private CharScanner getScanner()
+   {
+      CharScanner scanner = this.scanner;
+      if (scanner == null)
+      {
+         boolean[] skipped = new boolean[0x80];
+         for (int c = 0; c < 0x80; c++)
+         {
+            skipped[c] = escapes[0] == null || escapes[0][c] == null;
+         }
+         scanner = new CharScanner(skipped);
+         this.scanner = scanner;
+      }
+      return scanner;
    }
 
    /** All HTML entities. */
@@ -99,21 +229,58 @@ public class EntityEncoder extends AbstractCharEncoder
    {
       public BasicEntityTable()
       {
-         remove('<');
-         remove('>');
-         remove('"');
-         remove('&');
+         super(false);
       }
    }
 
-   // this uses two hashmaps, which would be similar to the approach with the BidiMap from commons-collections
-   // but we don't need to introduce the depedency there. The disadvantage is that we have two maps, but we need
-   // to do a reverse lookup, so, it's a small price to pay, as this hash is quite small (255 when this was introduced)
-   private Map<Character, String> charMap = new HashMap<Character, String>(255);
-   private Map<String, Character> inverseCharMap = new HashMap<String, Character>(255);
+   /** . */
+   private static final int PAGE_SHIFT = 8;
+
+   /** . */
+   private static final int PAGE_MASK = (1 << PAGE_SHIFT) - 1;
+
+   /** A run of skipped chars shorter than this costs more to scan than to look up char by char. */
+   private static final int SHORT_RUN = 16;
+
+   /** The number of consecutive short runs after which the remaining chars are only looked up. */
+   private static final int MAX_SHORT_RUNS = 2;
+
+   // The entities are looked up in tables indexed by page of 256 chars, a page exists only when it contains at least
+   // one entity so the whole table is small (a dozen of pages for the full HTML entity set) and a lookup costs two
+   // array loads. The reverse lookup is done with a map.
+
+   /** The entity names. */
+   private final String[][] names = new String[0x10000 >> PAGE_SHIFT][];
+
+   /** The escaped entities &name; ready to be appended. */
+   private final char[][][] escapes = new char[0x10000 >> PAGE_SHIFT][][];
+
+   /** The scanner skipping the ASCII chars without entity, null when it must be built again. */
+   private CharScanner scanner;
+
+   /** . */
+   private final Map<String, Character> inverseCharMap = new HashMap<String, Character>(255);
 
    protected EntityEncoder()
    {
+      this(true);
+   }
+
+   /**
+    * Creates the tables of the HTML entities, the entities of the chars used to do HTML itself are included only
+    * when requested so an encoder without them does not have to remove them afterwards.
+    *
+    * @param markup true if the entities of the &lt; &gt; &quot; &amp; chars are included
+    */
+   protected EntityEncoder(boolean markup)
+   {
+      if (markup)
+      {
+         put(34, "quot");
+         put(38, "amp");
+         put(60, "lt");
+         put(62, "gt");
+      }
       put(160, "nbsp");
       put(161, "iexcl");
       put(162, "cent");
@@ -334,10 +501,6 @@ public class EntityEncoder extends AbstractCharEncoder
       put(9827, "clubs");
       put(9829, "hearts");
       put(9830, "diams");
-      put(34, "quot");
-      put(38, "amp");
-      put(60, "lt");
-      put(62, "gt");
       put(338, "OElig");
       put(339, "oelig");
       put(352, "Scaron");
@@ -370,14 +533,39 @@ public class EntityEncoder extends AbstractCharEncoder
 
    protected final void put(int c, String entity)
    {
-      charMap.put((char) c, entity);
+      int pageIndex = (char)c >> PAGE_SHIFT;
+      if (names[pageIndex] == null)
+      {
+         names[pageIndex] = new String[PAGE_MASK + 1];
+         escapes[pageIndex] = new char[PAGE_MASK + 1][];
+      }
+      String previous = names[pageIndex][c & PAGE_MASK];
+      if (previous != null)
+      {
+         inverseCharMap.remove(previous);
+      }
+      names[pageIndex][c & PAGE_MASK] = entity;
+      escapes[pageIndex][c & PAGE_MASK] = ("&" + entity + ";").toCharArray();
       inverseCharMap.put(entity, (char) c);
+      if ((char)c < 0x80)
+      {
+         scanner = null;
+      }
    }
 
    protected final void remove(int c)
    {
-      inverseCharMap.remove(charMap.get((char) c));
-      charMap.remove((char) c);
+      int pageIndex = (char)c >> PAGE_SHIFT;
+      if (names[pageIndex] != null)
+      {
+         inverseCharMap.remove(names[pageIndex][c & PAGE_MASK]);
+         names[pageIndex][c & PAGE_MASK] = null;
+         escapes[pageIndex][c & PAGE_MASK] = null;
+         if ((char)c < 0x80)
+         {
+            scanner = null;
+         }
+      }
    }
 
    /**
@@ -388,7 +576,18 @@ public class EntityEncoder extends AbstractCharEncoder
     */
    public final String lookup(char c)
    {
-      return charMap.get(c);
+      String[] page = names[c >> PAGE_SHIFT];
+      return page != null ? page[c & PAGE_MASK] : null;
+   }
+
+   /**
+    * Returns a read only view of the entities of this encoder.
+    *
+    * @return the entities keyed by name
+    */
+   final Map<String, Character> getEntities()
+   {
+      return Collections.unmodifiableMap(inverseCharMap);
    }
 
    /**
@@ -0,0 +1,332 @@
+/******************************************************************************
+ * JBoss, a division of Red Hat                                               *
+ * Copyright 2009, Red Hat Middleware, LLC, and individual                    *
+ * contributors as indicated by the @authors tag. See the                     *
+ * copyright.txt in the distribution for a full listing of                    *
+ * individual contributors.                                                   *
+ *                                                                            *
+ * This is free software; you can redistribute it and/or modify it            *
+ * under the terms of the GNU Lesser General Public License as                *
+ * published by the Free Software Foundation; either version 2.1 of           *
+ * the License, or (at your option) any later version.                        *
+ *                                                                            *
+ * This software is distributed in the hope that it will be useful,           *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of             *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU           *
+ * Lesser General Public License for more details.                            *
+ *                                                                            *
+ * You should have received a copy of the GNU Lesser General Public           *
+ * License along with this software; if not, write to the Free                *
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA         *
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.                   *
+ ******************************************************************************/
+package org.gatein.common.text;
+
+import org.gatein.common.util.ParameterValidation;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+
+/**
+ * Decodes <code>application/x-www-form-urlencoded</code> data directly from its bytes, the escaped bytes and the
+ * charset are decoded in the same pass without an intermediate String. The UTF-8 and ISO-8859-1 charsets are
+ * supported and the strict and lenient modes follow the semantic of {@link FastURLDecoder}. In lenient mode the
+ * raw bytes that are not ASCII are decoded with the charset like the escaped bytes. This class is thread safe.
+ *
+ * @author <a href="mailto:agent@local">agent</a>
+ */
+public class FastURLByteDecoder
+{
+
+   /** . */
+   private static final Charset UTF8_CHARSET = Charset.forName("UTF-8");
+
+   /** . */
+   private static final Charset ISO_8859_1_CHARSET = Charset.forName("ISO-8859-1");
+
+   /** . */
+   private static final FastURLByteDecoder UTF8 = new FastURLByteDecoder(UTF8_CHARSET, false);
+
+   /** . */
+   private static final FastURLByteDecoder UTF8_STRICT = new FastURLByteDecoder(UTF8_CHARSET, true);
+
+   /** . */
+   private static final FastURLByteDecoder ISO_8859_1 = new FastURLByteDecoder(ISO_8859_1_CHARSET, false);
+
+   /** . */
+   private static final FastURLByteDecoder ISO_8859_1_STRICT = new FastURLByteDecoder(ISO_8859_1_CHARSET, true);
+
+   public static FastURLByteDecoder getUTF8Instance()
+   {
+      return UTF8;
+   }
+
+   public static FastURLByteDecoder getUTF8StrictInstance()
+   {
+      return UTF8_STRICT;
+   }
+
+   public static FastURLByteDecoder getISO88591Instance()
+   {
+      return ISO_8859_1;
+   }
+
+   public static FastURLByteDecoder getISO88591StrictInstance()
+   {
+      return ISO_8859_1_STRICT;
+   }
+
+   /** The decision for a byte that is not ASCII. */
+   private static final int RAW = 4;
+
+   /** . */
+   private final Charset charset;
+
+   /** . */
+   private final boolean utf8;
+
+   /** . */
+   private final boolean strict;
+
+   /**
+    * Creates a new decoder.
+    *
+    * @param charset the charset
+    * @param strict  the strict mode
+    * @throws IllegalArgumentException if the charset is null
+    * @throws UnsupportedCharsetException if the charset is neither UTF-8 nor ISO-8859-1
+    */
+   public FastURLByteDecoder(Charset charset, boolean strict) throws IllegalArgumentException, UnsupportedCharsetException
+   {
+      ParameterValidation.throwIllegalArgExceptionIfNull(charset, "Charset");
+      if (!UTF8_CHARSET.equals(charset) && !ISO_8859_1_CHARSET.equals(charset))
+      {
+         throw new UnsupportedCharsetException("Charset " + charset.name() + " is not supported");
+      }
+
+      //
+      this.charset = charset;
+      this.utf8 = UTF8_CHARSET.equals(charset);
+      this.strict = strict;
+   }
+
+   public Charset getCharset()
+   {
+      return charset;
+   }
+
+   public boolean isStrict()
+   {
+      return strict;
+   }
+
+   /**
+    * Decodes a range of bytes.
+    *
+    * @param bytes the bytes
+    * @param off   the offset
+    * @param len   the length
+    * @return the decoded string
+    * @throws IllegalArgumentException if the bytes are null or the range is not valid
+    * @throws MalformedInputException  if the bytes cannot be decoded
+    */
+   public String decode(byte[] bytes, int off, int len) throws IllegalArgumentException, MalformedInputException
+   {
+      checkRange(bytes, off, len);
+
+      // The decoded string cannot be longer than the encoded bytes
+      char[] chars = new char[len];
+      int length = safeDecode(bytes, off, off + len, chars);
+      return new String(chars, 0, length);
+   }
+
+   /**
+    * Decodes the bytes.
+    *
+    * @param bytes the bytes
+    * @return the decoded string
+    * @throws IllegalArgumentException if the bytes are null
+    * @throws MalformedInputException  if the bytes cannot be decoded
+    */
+   public String decode(byte[] bytes) throws IllegalArgumentException, MalformedInputException
+   {
+      ParameterValidation.throwIllegalArgExceptionIfNull(bytes, "byte[]");
+      return decode(bytes, 0, bytes.length);
+   }
+
+   /**
+    * Decodes the remaining bytes of the buffer, the position of the buffer is set to its limit when the decoding is
+    * successful.
+    *
+    * @param buffer the buffer
+    * @return the decoded string
+    * @throws IllegalArgumentException if the buffer is null
+    * @throws MalformedInputException  if the bytes cannot be decoded
+    */
+   public String decode(ByteBuffer buffer) throws IllegalArgumentException, MalformedInputException
+   {
+      ParameterValidation.throwIllegalArgExceptionIfNull(buffer, "ByteBuffer");
+
+      //
+      int len = buffer.remaining();
+      char[] chars = new char[len];
+      int length;
+      if (buffer.hasArray())
+      {
+         int off = buffer.arrayOffset() + buffer.position();
+         length = safeDecode(buffer.array(), off, off + len, chars);
+         buffer.position(buffer.limit());
+      }
+      else
+      {
+         byte[] bytes = new byte[len];
+         buffer.duplicate().get(bytes);
+         length = safeDecode(bytes, 0, len, chars);
+         buffer.position(buffer.limit());
+      }
+      return new String(chars, 0, length);
+   }
+
+   /**
+    * Decodes a range of bytes to a writer.
+    *
+    * @param bytes  the bytes
+    * @param off    the offset
+    * @param len    the length
+    * @param writer the writer
+    * @throws IllegalArgumentException if any argument is null or the range is not valid
+    * @throws MalformedInputException  if the bytes cannot be decoded
+    */
+   public void decode(byte[] bytes, int off, int len, CharWriter writer) throws IllegalArgumentException, MalformedInputException
+   {
+      checkRange(bytes, off, len);
+      ParameterValidation.throwIllegalArgExceptionIfNull(writer, "CharWriter");
+
+      //
+      char[] chars = new char[len];
+      int length = safeDecode(bytes, off, off + len, chars);
+      writer.append(chars, 0, length);
+   }
+
+   /**
+    * Decodes the bytes from the index i to the index to and put the decoded chars in the array, the array must be at
+    * least as long as the range of bytes.
+    *
+    * @param bytes the bytes
+    * @param i     the start index
+    * @param to    the end index
+    * @param chars the decoded chars
+    * @return the number of decoded chars
+    * @throws MalformedInputException if the bytes cannot be decoded
+    */
+   int safeDecode(byte[] bytes, int i, int to, char[] chars) throws MalformedInputException
+   {
+      int length = 0;
+      while (i < to)
+      {
+         int b = bytes[i++] & 0xFF;
+         switch (b < 0x80 ? FastURLDecoder.decisions[b] : RAW)
+         {
+            case FastURLDecoder.AS_IS:
+               chars[length++] = (char)b;
+               continue;
+            case FastURLDecoder.PLUS:
+               chars[length++] = ' ';
+               continue;
+            case FastURLDecoder.ERROR:
+               if (strict)
+               {
+                  throw new MalformedInputException("Cannot decode char '" + (char)b + "'");
+               }
+               chars[length++] = (char)b;
+               continue;
+            case FastURLDecoder.ESCAPE:
+               b = hexByte(bytes, i, to);
+               i += 2;
+               break;
+            case RAW:
+               if (strict)
+               {
+                  throw new MalformedInputException("Cannot decode byte " + Integer.toHexString(b));
+               }
+               break;
+         }
+
+         // From here the byte is decoded with the charset
+         if (b < 0x80 || !utf8)
+         {
+            chars[length++] = (char)b;
+            continue;
+         }
+
+         //
+         int state = UTF8Decoder.start(b);
+         while (UTF8Decoder.remaining(state) > 0)
+         {
+            if (i >= to)
+            {
+               throw truncated(i);
+            }
+            int next = bytes[i] & 0xFF;
+            if (next == '%')
+            {
+               next = hexByte(bytes, i + 1, to);
+               i += 3;
+            }
+            else if (next >= 0x80 && !strict)
+            {
+               i++;
+            }
+            else
+            {
+               throw truncated(i);
+            }
+            state = UTF8Decoder.next(state, next);
+         }
+         length = UTF8Decoder.write(UTF8Decoder.codePoint(state), chars, length);
+      }
+      return length;
+   }
+
+   public String toString()
+   {
+      return "FastURLByteDecoder[" + charset.name() + (strict ? ",strict" : "") + "]";
+   }
+
+   private static int hexByte(byte[] bytes, int i, int to) throws MalformedInputException
+   {
+      if (i + 2 > to)
+      {
+         throw truncated(i);
+      }
+      int b1 = bytes[i];
+      int b2 = bytes[i + 1];
+      if (b1 < 0 || b2 < 0 || (FastURLDecoder.hexValues[b1] | FastURLDecoder.hexValues[b2]) < 0)
+      {
+         throw new MalformedInputException("Input out of the lookup range (" + (b1 & 0xFF) + "," + (b2 & 0xFF) + ")");
+      }
+      return (FastURLDecoder.hexValues[b1] << 4) + FastURLDecoder.hexValues[b2];
+   }
+
+   private static void checkRange(byte[] bytes, int off, int len) throws IllegalArgumentException
+   {
+      ParameterValidation.throwIllegalArgExceptionIfNull(bytes, "byte[]");
+      if (off < 0)
+      {
+         throw new IllegalArgumentException("Offset must be positive!");
+      }
+      if (len < 0)
+      {
+         throw new IllegalArgumentException("Length must be positive!");
+      }
+      if (off + len > bytes.length)
+      {
+         throw new IllegalArgumentException("Specified byte range is outside of the given byte[]!");
+      }
+   }
+
+   private static MalformedInputException truncated(int index)
+   {
+      return new MalformedInputException("Not enough bytes to decode an escaped value at index " + index);
+   }
+}
@@ -22,7 +22,15 @@
  ******************************************************************************/
 package org.gatein.common.text;
 
+import org.gatein.common.util.ParameterValidation;
+
+import java.util.Arrays;
+
 /**
+ * Decodes <code>application/x-www-form-urlencoded</code> text. When the charset is UTF-8 the escaped bytes are
+ * decoded arithmetically and the decoder does not need any lookup table. For other charsets the byte sequences
+ * of each char are computed once and kept in a sorted array that is searched for each escaped sequence.
+ *
  * @author <a href="mailto:julien@jboss.org">Julien Viet</a>
  * @version $Revision: 1.1 $
  */
@@ -30,10 +38,10 @@ public class FastURLDecoder extends AbstractCharEncoder
 {
 
    /** . */
-   private static final FastURLDecoder UTF8 = new FastURLDecoder(CharToByteEncoder.Generic.UTF8);
+   private static final FastURLDecoder UTF8 = new FastURLDecoder(CharToByteEncoder.UTF8.INSTANCE);
 
    /** . */
-   private static final FastURLDecoder UTF8_STRICT = new FastURLDecoder(CharToByteEncoder.Generic.UTF8, true);
+   private static final FastURLDecoder UTF8_STRICT = new FastURLDecoder(CharToByteEncoder.UTF8.INSTANCE, true);
 
    public static FastURLDecoder getUTF8Instance()
    {
@@ -52,25 +60,66 @@ public class FastURLDecoder extends AbstractCharEncoder
    private static final char TO = (char)0x10FFFD;
 
    /** . */
-   private static final int AS_IS = 0;
+   static final int AS_IS = 0;
 
    /** . */
-   private static final int PLUS = 1;
+   static final int PLUS = 1;
 
    /** . */
-   private static final int ESCAPE = 2;
+   static final int ESCAPE = 2;
 
    /** . */
-   private static final int ERROR = 3;
+   static final int ERROR = 3;
 
-   /** . */
-   private final LookupNonTerm root;
+   /** The maximum number of bytes of a char in the table. */
+   private static final int MAX_BYTES = 5;
 
-   /** . */
-   private final int[] decisions;
+   /** The decision for each ASCII char, any other char is an error. */
+   static final int[] decisions = new int[0x80];
 
-   /** . */
-   private final int[][] conversions;
+   /** The hexadecimal value of each ASCII char or -1. */
+   static final int[] hexValues = new int[0x80];
+
+   static
+   {
+      for (char c = 0; c < 0x80; c++)
+      {
+         int decision;
+         if (TextTools.isAlphaNumeric(c))
+         {
+            decision = AS_IS;
+         }
+         else
+         {
+            switch (c)
+            {
+               case '+':
+                  decision = PLUS;
+                  break;
+               case '.':
+               case '-':
+               case '*':
+               case '_':
+                  decision = AS_IS;
+                  break;
+               case '%':
+                  decision = ESCAPE;
+                  break;
+               default:
+                  decision = ERROR;
+                  break;
+            }
+         }
+         decisions[c] = decision;
+         hexValues[c] = hexValue(c);
+      }
+   }
+
+   /** The byte sequences sorted, or null when the charset is UTF-8. */
+   private final long[] sequences;
+
+   /** The chars of the byte sequences, or null when the charset is UTF-8. */
+   private final char[] chars;
 
    /** . */
    private final boolean strict;
@@ -82,91 +131,123 @@ public class FastURLDecoder extends AbstractCharEncoder
 
    public FastURLDecoder(CharToByteEncoder encoder, boolean strict)
    {
+      if (encoder == null)
+      {
+         throw new IllegalArgumentException("No encoding provided");
+      }
+
+      //
       this.strict = strict;
 
       //
-      root = new LookupNonTerm();
-      for (char c = FROM; c <= TO; c++)
+      if (FastURLEncoder.isUTF8(encoder))
       {
-         byte[] v = encoder.encode(c);
-         LookupNonTerm node = root;
-         int k = v.length;
-         for (int i = 0; i < k; i++)
+         this.sequences = null;
+         this.chars = null;
+      }
+      else
+      {
+         // Each entry is the byte sequence length, the bytes and the char packed in a long
+         long[] entries = new long[TO - FROM + 1];
+         int size = 0;
+         for (char c = FROM; c <= TO; c++)
          {
-            int index = (int)v[i] & 0xFF;
-            if (i == k - 1)
+            byte[] v = encoder.encode(c);
+            if (v.length > 0 && v.length <= MAX_BYTES)
             {
-               node.children[index] = new LookupTerm(c);
-            }
-            else
-            {
-               if (node.children[index] == null)
-               {
-                  node.children[index] = new LookupNonTerm();
-               }
-               node = (LookupNonTerm)node.children[index];
+               entries[size++] = (sequence(v) << 16) | c;
             }
          }
+         Arrays.sort(entries, 0, size);
+
+         //
+         this.sequences = new long[size];
+         this.chars = new char[size];
+         for (int i = 0; i < size; i++)
+         {
+            sequences[i] = entries[i] >>> 16;
+            chars[i] = (char)entries[i];
+         }
       }
+   }
+
+   public void encode(char c, CharWriter writer) throws EncodingException
+   {
+      ParameterValidation.throwIllegalArgExceptionIfNull(writer, "CharWriter");
 
       //
-      conversions = new int[256][256];
-      for (char i = 0; i < 256; i++)
+      int decision = c < 0x80 ? decisions[c] : ERROR;
+      switch (decision)
       {
-         int x = hexValue(i);
-         for (char j = 0; j < 256; j++)
-         {
-            int y = hexValue(j);
-            if (x != -1 && y != -1)
+         case AS_IS:
+            writer.append(c);
+            break;
+         case PLUS:
+            writer.append(' ');
+            break;
+         case ESCAPE:
+            throw truncated(0);
+         case ERROR:
+            if (strict)
             {
-               conversions[i][j] = (x << 4) + y;
+               throw new MalformedInputException("Cannot decode char '" + c + "'");
             }
             else
             {
-               conversions[i][j] = -1;
+               writer.append(c);
             }
-         }
+            break;
       }
+   }
 
-      //
-      decisions = new int[256];
-      for (int i = 0; i < decisions.length; i++)
+   protected void safeEncode(char[] chars, int off, int len, CharWriter tmp)
+   {
+      int i = off;
+      int to = off + len;
+      while (i < to)
       {
-         if (TextTools.isAlphaNumeric((char)i))
-         {
-            decisions[i] = AS_IS;
-         }
-         else
+         char c = chars[i++];
+         int decision = c < 0x80 ? decisions[c] : ERROR;
+         switch (decision)
          {
-            switch (i)
-            {
-               case '+':
-                  decisions[i] = PLUS;
-                  break;
-               case '.':
-               case '-':
-               case '*':
-               case '_':
-                  decisions[i] = AS_IS;
-                  break;
-               case '%':
-                  decisions[i] = ESCAPE;
-                  break;
-               default:
-                  decisions[i] = ERROR;
-                  break;
-            }
+            case AS_IS:
+               tmp.append(c);
+               break;
+            case PLUS:
+               tmp.append(' ');
+               break;
+            case ESCAPE:
+               if (sequences == null)
+               {
+                  i = decodeUTF8(chars, i, to, tmp);
+               }
+               else
+               {
+                  i = decodeSequence(chars, i, to, tmp);
+               }
+               break;
+            case ERROR:
+               if (strict)
+               {
+                  throw new MalformedInputException("Cannot decode char '" + c + "'");
+               }
+               else
+               {
+                  tmp.append(c);
+               }
+               break;
          }
       }
    }
 
-
-   protected void safeEncode(char[] chars, int i, int length, CharWriter tmp)
+   protected void safeEncode(CharSequence chars, int off, int len, CharWriter tmp)
    {
-      while (i < length)
+      int i = off;
+      int to = off + len;
+      while (i < to)
       {
-         char c = chars[i++];
-         int decision = c < 256 ? decisions[c] : ERROR;
+         char c = chars.charAt(i++);
+         int decision = c < 0x80 ? decisions[c] : ERROR;
          switch (decision)
          {
             case AS_IS:
@@ -176,64 +257,13 @@ public class FastURLDecoder extends AbstractCharEncoder
                tmp.append(' ');
                break;
             case ESCAPE:
-               int j = i;
-
-               //
-               LookupNonTerm current = root;
-               while (true)
+               if (sequences == null)
                {
-                  if (j + 2 > length)
-                  {
-                     throw new MalformedInputException("Not enough chars to decode an escaped value length should have been" +
-                        (j + 2) + " but is " + length);
-                  }
-
-                  //
-                  char c1 = chars[j++];
-                  char c2 = chars[j++];
-
-                  //
-                  if (c1 > 255)
-                  {
-                     throw new MalformedInputException("Input out of the lookup range (" + c1 + "," + c2 + ")");
-                  }
-                  if (c2 > 255)
-                  {
-                     throw new MalformedInputException("Input out of the lookup range (" + c1 + "," + c2 + ")");
-                  }
-
-
-                  int z = conversions[c1][c2];
-
-                  //
-                  if (z == -1)
-                  {
-                     throw new MalformedInputException("Input out of the lookup range (" + c1 + "," + c2 + ")");
-                  }
-
-                  //
-                  if (current == null)
-                  {
-                     throw new MalformedInputException("Cannot decode char '" + c1 + c2 + "'");
-                  }
-                  else
-                  {
-                     LookupNode child = current.children[z];
-                     if (child instanceof LookupTerm)
-                     {
-                        LookupTerm term = (LookupTerm)child;
-                        tmp.append(term.c);
-                        i = j;
-                        break;
-                     }
-                     else
-                     {
-                        current = (LookupNonTerm)child;
-                     }
-                  }
-
-                  //
-                  j++;
+                  i = decodeUTF8(chars, i, to, tmp);
+               }
+               else
+               {
+                  i = decodeSequence(chars, i, to, tmp);
                }
                break;
             case ERROR:
@@ -250,30 +280,220 @@ public class FastURLDecoder extends AbstractCharEncoder
       }
    }
 
+   protected int scan(CharSequence s, int off, int len)
+   {
+      for (int to = off + len; off < to; off++)
+      {
+         char c = s.charAt(off);
+         int decision = c < 0x80 ? decisions[c] : ERROR;
+         if (decision == PLUS || decision == ESCAPE || (decision == ERROR && strict))
+         {
+            break;
+         }
+      }
+      return off;
+   }
+
    public boolean isStrict()
    {
       return strict;
    }
 
-   private static class LookupNode
+   /**
+    * Decodes an UTF-8 sequence whose first escaped byte starts at the index i, i.e just after the first '%' char.
+    *
+    * @param chars  the chars
+    * @param i      the index of the first hexadecimal digit
+    * @param to     the end index
+    * @param writer the writer
+    * @return the index after the last decoded char
+    * @throws MalformedInputException if the sequence is not valid
+    */
+   private static int decodeUTF8(CharSequence chars, int i, int to, CharWriter writer) throws MalformedInputException
    {
+      int b = hexByte(chars, i, to);
+      i += 2;
+
+      //
+      if (b < 0x80)
+      {
+         writer.append((char)b);
+         return i;
+      }
+
+      //
+      int state = UTF8Decoder.start(b);
+      while (UTF8Decoder.remaining(state) > 0)
+      {
+         if (i >= to || chars.charAt(i) != '%')
+         {
+            throw truncated(i);
+         }
+         state = UTF8Decoder.next(state, hexByte(chars, i + 1, to));
+         i += 3;
+      }
+      UTF8Decoder.write(UTF8Decoder.codePoint(state), writer);
+      return i;
    }
 
-   private static class LookupTerm extends LookupNode
+   /** The char array version of {@link #decodeUTF8(CharSequence, int, int, CharWriter)}. */
+   private static int decodeUTF8(char[] chars, int i, int to, CharWriter writer) throws MalformedInputException
    {
+      int b = hexByte(chars, i, to);
+      i += 2;
 
-      /** . */
-      private final char c;
+      //
+      if (b < 0x80)
+      {
+         writer.append((char)b);
+         return i;
+      }
 
-      public LookupTerm(char c)
+      //
+      int state = UTF8Decoder.start(b);
+      while (UTF8Decoder.remaining(state) > 0)
       {
-         this.c = c;
+         if (i >= to || chars[i] != '%')
+         {
+            throw truncated(i);
+         }
+         state = UTF8Decoder.next(state, hexByte(chars, i + 1, to));
+         i += 3;
       }
+      UTF8Decoder.write(UTF8Decoder.codePoint(state), writer);
+      return i;
    }
 
-   private static class LookupNonTerm extends LookupNode
+   /**
+    * Decodes a byte sequence of the table whose first escaped byte starts at the index i, i.e just after the first
+    * '%' char.
+    *
+    * @param chars  the chars
+    * @param i      the index of the first hexadecimal digit
+    * @param to     the end index
+    * @param writer the writer
+    * @return the index after the last decoded char
+    * @throws MalformedInputException if the sequence is not valid
+    */
+   private int decodeSequence(CharSequence chars, int i, int to, CharWriter writer) throws MalformedInputException
    {
-      private final LookupNode[] children = new LookupNode[256];
+      long bytes = 0;
+      for (int length = 1;length <= MAX_BYTES;length++)
+      {
+         bytes = (bytes << 8) | hexByte(chars, i, to);
+         i += 2;
+
+         //
+         int index = Arrays.binarySearch(sequences, ((long)length << 40) | bytes);
+         if (index >= 0)
+         {
+            writer.append(this.chars[index]);
+            return i;
+         }
+
+         //
+         if (i >= to || chars.charAt(i) != '%')
+         {
+            break;
+         }
+         i++;
+      }
+      throw new MalformedInputException("Cannot decode escaped sequence ending at index " + i);
+   }
+
+   /** The char array version of {@link #decodeSequence(CharSequence, int, int, CharWriter)}. */
+   private int decodeSequence(char[] chars, int i, int to, CharWriter writer) throws MalformedInputException
+   {
+      long bytes = 0;
+      for (int length = 1;length <= MAX_BYTES;length++)
+      {
+         bytes = (bytes << 8) | hexByte(chars, i, to);
+         i += 2;
+
+         //
+         int index = Arrays.binarySearch(sequences, ((long)length << 40) | bytes);
+         if (index >= 0)
+         {
+            writer.append(this.chars[index]);
+            return i;
+         }
+
+         //
+         if (i >= to || chars[i] != '%')
+         {
+            break;
+         }
+         i++;
+      }
+      throw new MalformedInputException("Cannot decode escaped sequence ending at index " + i);
+   }
+
+   /**
+    * Returns the value of the two hexadecimal digits starting at the index i.
+    *
+    * @param chars the chars
+    * @param i     the index
+    * @param to    the end index
+    * @return the byte value between 0 and 255
+    * @throws MalformedInputException if the digits are missing or are not hexadecimal digits
+    */
+   private static int hexByte(CharSequence chars, int i, int to) throws MalformedInputException
+   {
+      if (i + 2 > to)
+      {
+         throw truncated(i);
+      }
+      char c1 = chars.charAt(i);
+      char c2 = chars.charAt(i + 1);
+      if ((c1 | c2) >= 0x80 || (hexValues[c1] | hexValues[c2]) < 0)
+      {
+         throw outOfRange(c1, c2);
+      }
+      return (hexValues[c1] << 4) + hexValues[c2];
+   }
+
+   /** The char array version of {@link #hexByte(CharSequence, int, int)}. */
+   private static int hexByte(char[] chars, int i, int to) throws MalformedInputException
+   {
+      if (i + 2 > to)
+      {
+         throw truncated(i);
+      }
+      char c1 = chars[i];
+      char c2 = chars[i + 1];
+      if ((c1 | c2) >= 0x80 || (hexValues[c1] | hexValues[c2]) < 0)
+      {
+         throw outOfRange(c1, c2);
+      }
+      return (hexValues[c1] << 4) + hexValues[c2];
+   }
+
+   // The exceptions are created out of the decoding methods to keep them small enough to be inlined
+
+   private static MalformedInputException truncated(int index)
+   {
+      return new MalformedInputException("Not enough chars to decode an escaped value at index " + index);
+   }
+
+   private static MalformedInputException outOfRange(char c1, char c2)
+   {
+      return new MalformedInputException("Input out of the lookup range (" + c1 + "," + c2 + ")");
+   }
+
+   /**
+    * Pack a byte sequence and its length in a long.
+    *
+    * @param v the byte sequence
+    * @return the packed sequence
+    */
+   private static long sequence(byte[] v)
+   {
+      long bytes = 0;
+      for (int i = 0; i < v.length; i++)
+      {
+         bytes = (bytes << 8) | (v[i] & 0xFF);
+      }
+      return ((long)v.length << 40) | bytes;
    }
 
    /**
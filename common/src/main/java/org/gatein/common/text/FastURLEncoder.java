@@ -27,9 +27,12 @@ import org.gatein.common.util.ParameterValidation;
 
 import java.io.IOException;
 import java.io.Writer;
+import java.nio.charset.Charset;
 
 /**
- * An implementation based on a table for lookups.
+ * An implementation based on tables for lookups. The ASCII range is resolved with a direct table of escape sequences
+ * created when the encoder is built. The rest of the range is split in pages of 256 chars, each page packs the escape
+ * sequences of its chars in a single char array and is built lazily on its first use.
  *
  * @author <a href="mailto:julien@jboss.org">Julien Viet</a>
  * @version $Revision: 7228 $
@@ -37,74 +40,222 @@ import java.io.Writer;
 public class FastURLEncoder extends AbstractCharEncoder
 {
 
+   /** The RFC 3986 unreserved chars. */
+   public static final String UNRESERVED = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789-._~";
+
+   /** The RFC 3986 sub-delims chars. */
+   public static final String SUB_DELIMS = "!$&'()*+,;=";
+
+   /** The chars left unchanged in a path segment. */
+   public static final String PATH_SEGMENT_SAFE = UNRESERVED + SUB_DELIMS + ":@";
+
+   /** The chars left unchanged in a path. */
+   public static final String PATH_SAFE = PATH_SEGMENT_SAFE + "/";
+
+   /** The chars left unchanged in a query. */
+   public static final String QUERY_SAFE = PATH_SAFE + "?";
+
+   /** The chars left unchanged in the name or the value of a query parameter, the delimiters &amp;, = and + are escaped. */
+   public static final String QUERY_PARAM_SAFE = UNRESERVED + "!$'()*,;:@/?";
+
+   /** The chars left unchanged in a fragment. */
+   public static final String FRAGMENT_SAFE = PATH_SAFE + "?";
+
+   /** The chars left unchanged in the user information. */
+   public static final String USERINFO_SAFE = UNRESERVED + SUB_DELIMS + ":";
+
+   /** The chars left unchanged by the application/x-www-form-urlencoded encoding. */
+   private static final String FORM_SAFE = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789.-*_";
+
    /** . */
-   private static final FastURLEncoder DEFAULT_ENCODER = new FastURLEncoder(CharToByteEncoder.Generic.UTF8);
+   private static final FastURLEncoder DEFAULT_ENCODER = new FastURLEncoder(CharToByteEncoder.UTF8.INSTANCE);
 
+   /** . */
+   private static final FastURLEncoder PATH_ENCODER = new FastURLEncoder(CharToByteEncoder.UTF8.INSTANCE, PATH_SAFE, false);
+
+   /** . */
+   private static final FastURLEncoder PATH_SEGMENT_ENCODER = new FastURLEncoder(CharToByteEncoder.UTF8.INSTANCE, PATH_SEGMENT_SAFE, false);
+
+   /** . */
+   private static final FastURLEncoder QUERY_ENCODER = new FastURLEncoder(CharToByteEncoder.UTF8.INSTANCE, QUERY_SAFE, false);
+
+   /** . */
+   private static final FastURLEncoder QUERY_PARAM_ENCODER = new FastURLEncoder(CharToByteEncoder.UTF8.INSTANCE, QUERY_PARAM_SAFE, false);
+
+   /** . */
+   private static final FastURLEncoder FRAGMENT_ENCODER = new FastURLEncoder(CharToByteEncoder.UTF8.INSTANCE, FRAGMENT_SAFE, false);
+
+   /** . */
+   private static final FastURLEncoder USERINFO_ENCODER = new FastURLEncoder(CharToByteEncoder.UTF8.INSTANCE, USERINFO_SAFE, false);
+
+   /**
+    * Returns the UTF-8 application/x-www-form-urlencoded encoder, a space is encoded as <code>'+'</code>.
+    *
+    * @return the encoder
+    */
    public static FastURLEncoder getUTF8Instance()
    {
       return DEFAULT_ENCODER;
    }
 
-   /** . */
-   private final char[][] table;
+   /**
+    * Returns the UTF-8 encoder for an RFC 3986 path, the <code>'/'</code> separators are left unchanged.
+    *
+    * @return the encoder
+    */
+   public static FastURLEncoder getUTF8PathInstance()
+   {
+      return PATH_ENCODER;
+   }
+
+   /**
+    * Returns the UTF-8 encoder for an RFC 3986 path segment, a <code>'/'</code> is escaped.
+    *
+    * @return the encoder
+    */
+   public static FastURLEncoder getUTF8PathSegmentInstance()
+   {
+      return PATH_SEGMENT_ENCODER;
+   }
+
+   /**
+    * Returns the UTF-8 encoder for an RFC 3986 query.
+    *
+    * @return the encoder
+    */
+   public static FastURLEncoder getUTF8QueryInstance()
+   {
+      return QUERY_ENCODER;
+   }
+
+   /**
+    * Returns the UTF-8 encoder for the name or the value of a query parameter, the <code>'&amp;'</code>,
+    * <code>'='</code> and <code>'+'</code> chars are escaped and a space is encoded as <code>%20</code>.
+    *
+    * @return the encoder
+    */
+   public static FastURLEncoder getUTF8QueryParameterInstance()
+   {
+      return QUERY_PARAM_ENCODER;
+   }
+
+   /**
+    * Returns the UTF-8 encoder for an RFC 3986 fragment.
+    *
+    * @return the encoder
+    */
+   public static FastURLEncoder getUTF8FragmentInstance()
+   {
+      return FRAGMENT_ENCODER;
+   }
+
+   /**
+    * Returns the UTF-8 encoder for the RFC 3986 user information.
+    *
+    * @return the encoder
+    */
+   public static FastURLEncoder getUTF8UserInfoInstance()
+   {
+      return USERINFO_ENCODER;
+   }
 
    /** . */
    private static final char MAX = (char)0x10FFFD;
 
+   /** . */
+   private static final int PAGE_SHIFT = 8;
+
+   /** . */
+   private static final int PAGE_SIZE = 1 << PAGE_SHIFT;
+
+   /** . */
+   private static final int PAGE_MASK = PAGE_SIZE - 1;
+
+   /** . */
+   private final CharToByteEncoder encoder;
+
+   /** The encodings of the ASCII chars. */
+   private final char[][] ascii;
+
+   /** Finds the runs of ASCII chars left unchanged by the encoding. */
+   private final CharScanner scanner;
+
+   /** True when the encoding is UTF-8, surrogate pairs are then encoded as one code point. */
+   private final boolean utf8;
+
+   /** The pages, null until they are used. */
+   private final Page[] pages;
+
+   /**
+    * Creates an application/x-www-form-urlencoded encoder.
+    *
+    * @param encoder the char to byte encoder
+    * @throws IllegalArgumentException if the encoder is null
+    */
    public FastURLEncoder(CharToByteEncoder encoder) throws IllegalArgumentException
+   {
+      this(encoder, FORM_SAFE, true);
+   }
+
+   /**
+    * Creates an encoder leaving the specified ASCII chars unchanged and escaping all the other chars.
+    *
+    * @param encoder     the char to byte encoder
+    * @param safeChars   the chars left unchanged
+    * @param spaceAsPlus true if a space is encoded as <code>'+'</code> rather than <code>%20</code>
+    * @throws IllegalArgumentException if an argument is null, if a safe char is not a printable ASCII char or is
+    *                                  <code>'%'</code>, or if <code>'+'</code> is safe and a space is encoded as
+    *                                  <code>'+'</code>
+    */
+   public FastURLEncoder(CharToByteEncoder encoder, String safeChars, boolean spaceAsPlus) throws IllegalArgumentException
    {
       if (encoder == null)
       {
          throw new IllegalArgumentException("No encoding provided");
       }
+      ParameterValidation.throwIllegalArgExceptionIfNull(safeChars, "safe chars");
 
       //
-      this.table = new char[MAX + 1][];
+      boolean[] safe = new boolean[0x80];
+      for (int i = 0; i < safeChars.length(); i++)
+      {
+         char c = safeChars.charAt(i);
+         if (c <= ' ' || c >= 0x7F || c == '%')
+         {
+            throw new IllegalArgumentException("Char " + (int)c + " cannot be left unchanged");
+         }
+         safe[c] = true;
+      }
+      if (spaceAsPlus && safe['+'])
+      {
+         throw new IllegalArgumentException("The '+' char cannot be left unchanged when it encodes a space");
+      }
+
+      //
+      this.encoder = encoder;
+      this.utf8 = isUTF8(encoder);
+      this.ascii = new char[0x80][];
+      this.pages = new Page[0x10000 >> PAGE_SHIFT];
 
       //
-      for (char c = 0; c <= MAX; c++)
+      for (char c = 0; c < 0x80; c++)
       {
          char[] z;
-         if (TextTools.isAlphaNumeric(c))
+         if (safe[c])
          {
             z = new char[]{c};
          }
+         else if (c == ' ' && spaceAsPlus)
+         {
+            z = new char[]{'+'};
+         }
          else
          {
-            switch (c)
-            {
-               case ' ':
-                  z = new char[]{'+'};
-                  break;
-               case '.':
-               case '-':
-               case '*':
-               case '_':
-                  z = new char[]{c};
-                  break;
-               default:
-                  byte[] v = encoder.encode(c);
-                  if (v.length > 0)
-                  {
-                     z = new char[v.length * 3];
-                     int index = 0;
-                     for (int i = 0; i < v.length; i++)
-                     {
-                        byte b = v[i];
-                        z[index++] = '%';
-                        z[index++] = TextTools.toHex((b & 0xF0) >> 4);
-                        z[index++] = TextTools.toHex(b & 0x0F);
-                     }
-                  }
-                  else
-                  {
-                     z = null;
-                  }
-                  break;
-            }
+            z = escape(encoder.encode(c));
          }
-         table[c] = z;
+         ascii[c] = z;
       }
+      this.scanner = new CharScanner(safe);
    }
 
    public void encode(char c, CharWriter writer)
@@ -112,27 +263,89 @@ public class FastURLEncoder extends AbstractCharEncoder
       ParameterValidation.throwIllegalArgExceptionIfNull(writer, "CharWriter");
 
       //
-      char[] z = getEncoding(c);
-      writer.append(z);
+      append(c, writer);
    }
 
-   private char[] getEncoding(char c)
+   protected void safeEncode(char[] chars, int off, int len, CharWriter writer)
    {
-      char[] z = table[c];
-      if (z == null)
+      // The escaped form of the last supplementary char
+      char[] pair = null;
+      for (int i = off, to = off + len; i < to;)
       {
-         throw new MalformedInputException("Couldn't find appropriate encoding for '" + c + "'");
+         // Copy the run of unchanged chars in one operation
+         int next = scanner.scan(chars, i, to);
+         if (next > i)
+         {
+            writer.append(chars, i, next - i);
+            i = next;
+         }
+
+         // Encode the chars until the next unchanged char
+         for (; i < to && !scanner.skips(chars[i]); i++)
+         {
+            char c = chars[i];
+            if (utf8 && Character.isHighSurrogate(c) && i + 1 < to && Character.isLowSurrogate(chars[i + 1]))
+            {
+               pair = escape(c, chars[++i], pair);
+               writer.append(pair);
+            }
+            else
+            {
+               append(c, writer);
+            }
+         }
       }
-      return z;
    }
 
-   protected void safeEncode(char[] chars, int off, int len, CharWriter writer)
+   protected void safeEncode(CharSequence s, int off, int len, CharWriter writer)
    {
-      for (int i = off; i < len; i++)
+      char[] pair = null;
+      for (int i = off, to = off + len; i < to;)
       {
-         char c = chars[i];
-         char[] z = getEncoding(c);
-         writer.append(z);
+         int next = scanner.scan(s, i, to);
+         if (next > i)
+         {
+            append(writer, s, i, next - i);
+            i = next;
+         }
+         for (; i < to && !scanner.skips(s.charAt(i)); i++)
+         {
+            char c = s.charAt(i);
+            if (utf8 && Character.isHighSurrogate(c) && i + 1 < to && Character.isLowSurrogate(s.charAt(i + 1)))
+            {
+               pair = escape(c, s.charAt(++i), pair);
+               writer.append(pair);
+            }
+            else
+            {
+               append(c, writer);
+            }
+         }
+      }
+   }
+
+   protected int scan(CharSequence s, int off, int len)
+   {
+      return scanner.scan(s, off, off + len);
+   }
+
+   private void append(char c, CharWriter writer)
+   {
+      if (c < 0x80)
+      {
+         writer.append(getEncoding(c));
+      }
+      else
+      {
+         Page page = getPage(c);
+         int index = c & PAGE_MASK;
+         int from = page.offsets[index];
+         int length = page.offsets[index + 1] - from;
+         if (length == 0)
+         {
+            throw new MalformedInputException("Couldn't find appropriate encoding for '" + c + "'");
+         }
+         writer.append(page.data, from, length);
       }
    }
 
@@ -141,13 +354,47 @@ public class FastURLEncoder extends AbstractCharEncoder
       ParameterValidation.throwIllegalArgExceptionIfNull(s, "String");
       ParameterValidation.throwIllegalArgExceptionIfNull(out, "Writer");
 
+      //
+      char[] pair = null;
       try
       {
-         for (int i = 0; i < s.length(); i++)
+         for (int i = 0, to = s.length(); i < to;)
          {
-            char c = s.charAt(i);
-            char[] z = getEncoding(c);
-            out.write(z);
+            int next = scanner.scan(s, i, to);
+            if (next > i)
+            {
+               out.write(s, i, next - i);
+               i = next;
+            }
+            for (; i < to; i++)
+            {
+               char c = s.charAt(i);
+               if (scanner.skips(c))
+               {
+                  break;
+               }
+               if (c < 0x80)
+               {
+                  out.write(getEncoding(c));
+               }
+               else if (utf8 && Character.isHighSurrogate(c) && i + 1 < to && Character.isLowSurrogate(s.charAt(i + 1)))
+               {
+                  pair = escape(c, s.charAt(++i), pair);
+                  out.write(pair);
+               }
+               else
+               {
+                  Page page = getPage(c);
+                  int index = c & PAGE_MASK;
+                  int from = page.offsets[index];
+                  int length = page.offsets[index + 1] - from;
+                  if (length == 0)
+                  {
+                     throw new MalformedInputException("Couldn't find appropriate encoding for '" + c + "'");
+                  }
+                  out.write(page.data, from, length);
+               }
+            }
          }
       }
       catch (IOException e)
@@ -156,8 +403,164 @@ public class FastURLEncoder extends AbstractCharEncoder
       }
    }
 
+   private char[] getEncoding(char c)
+   {
+      char[] z = ascii[c];
+      if (z == null)
+      {
+         throw new MalformedInputException("Couldn't find appropriate encoding for '" + c + "'");
+      }
+      return z;
+   }
+
+   /**
+    * Returns the page containing the char c, the page is built if it does not exist yet. A page is immutable
+    * and can safely be published to other threads without synchronization.
+    *
+    * @param c the char
+    * @return the page
+    */
+   private Page getPage(char c)
+   {
+      int pageIndex = c >> PAGE_SHIFT;
+      Page page = pages[pageIndex];
+      if (page == null)
+      {
+         page = buildPage(pageIndex);
+         pages[pageIndex] = page;
+      }
+      return page;
+   }
+
+   private Page buildPage(int pageIndex)
+   {
+      char[][] encodings = new char[PAGE_SIZE][];
+      int size = 0;
+
+      // The char to byte encoder is not required to be thread safe
+      synchronized (encoder)
+      {
+         for (int i = 0; i < PAGE_SIZE; i++)
+         {
+            char c = (char)((pageIndex << PAGE_SHIFT) + i);
+            if (c >= 0x80 && c <= MAX)
+            {
+               char[] z = escape(encoder.encode(c));
+               if (z != null)
+               {
+                  encodings[i] = z;
+                  size += z.length;
+               }
+            }
+         }
+      }
+
+      //
+      char[] data = new char[size];
+      char[] offsets = new char[PAGE_SIZE + 1];
+      int offset = 0;
+      for (int i = 0; i < PAGE_SIZE; i++)
+      {
+         offsets[i] = (char)offset;
+         char[] z = encodings[i];
+         if (z != null)
+         {
+            System.arraycopy(z, 0, data, offset, z.length);
+            offset += z.length;
+         }
+      }
+      offsets[PAGE_SIZE] = (char)offset;
+
+      //
+      return new Page(data, offsets);
+   }
+
+   static boolean isUTF8(CharToByteEncoder encoder)
+   {
+      if (encoder instanceof CharToByteEncoder.UTF8)
+      {
+         return true;
+      }
+      if (encoder instanceof CharToByteEncoder.Generic)
+      {
+         Charset charset = ((CharToByteEncoder.Generic)encoder).getCharset();
+         return "UTF-8".equals(charset.name());
+      }
+      return false;
+   }
+
+   /**
+    * Returns the percent escaped form of the bytes or null if the array is empty.
+    *
+    * @param bytes the bytes
+    * @return the escaped bytes
+    */
+   private static char[] escape(byte[] bytes)
+   {
+      if (bytes.length == 0)
+      {
+         return null;
+      }
+      char[] z = new char[bytes.length * 3];
+      for (int i = 0; i < bytes.length; i++)
+      {
+         escape(bytes[i] & 0xFF, z, i * 3);
+      }
+      return z;
+   }
+
+   /**
+    * Writes the percent escaped form of the four UTF-8 bytes of a supplementary char in an array of 12 chars, the
+    * array is created when the provided array is null so it can be reused for the next chars.
+    *
+    * @param high the high surrogate of the char
+    * @param low  the low surrogate of the char
+    * @param z    the array to reuse or null
+    * @return the array containing the escaped bytes
+    */
+   private static char[] escape(char high, char low, char[] z)
+   {
+      if (z == null)
+      {
+         z = new char[12];
+      }
+      int codePoint = Character.toCodePoint(high, low);
+      escape(0xF0 | (codePoint >> 18), z, 0);
+      escape(0x80 | ((codePoint >> 12) & 0x3F), z, 3);
+      escape(0x80 | ((codePoint >> 6) & 0x3F), z, 6);
+      escape(0x80 | (codePoint & 0x3F), z, 9);
+      return z;
+   }
+
+   private static void escape(int b, char[] z, int index)
+   {
+      z[index] = '%';
+      z[index + 1] = TextTools.toHex(b >> 4);
+      z[index + 2] = TextTools.toHex(b & 0x0F);
+   }
+
    public String toString()
    {
       return "FastURLEncoder[" + "" + ",[" + 0 + "," + MAX + "]]";
    }
+
+   /**
+    * The escape sequences of 256 consecutive chars packed in a single array, the sequence of the char at index i
+    * lies between offsets[i] and offsets[i + 1], a char that cannot be encoded has an empty sequence.
+    */
+   private static class Page
+   {
+
+      /** . */
+      private final char[] data;
+
+      /** . */
+      private final char[] offsets;
+
+      private Page(char[] data, char[] offsets)
+      {
+         this.data = data;
+         this.offsets = offsets;
+      }
+   }
 }
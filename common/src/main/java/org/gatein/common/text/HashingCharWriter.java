@@ -0,0 +1,123 @@
+/******************************************************************************
+ * JBoss, a division of Red Hat                                               *
+ * Copyright 2009, Red Hat Middleware, LLC, and individual                    *
+ * contributors as indicated by the @authors tag. See the                     *
+ * copyright.txt in the distribution for a full listing of                    *
+ * individual contributors.                                                   *
+ *                                                                            *
+ * This is free software; you can redistribute it and/or modify it            *
+ * under the terms of the GNU Lesser General Public License as                *
+ * published by the Free Software Foundation; either version 2.1 of           *
+ * the License, or (at your option) any later version.                        *
+ *                                                                            *
+ * This software is distributed in the hope that it will be useful,           *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of             *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU           *
+ * Lesser General Public License for more details.                            *
+ *                                                                            *
+ * You should have received a copy of the GNU Lesser General Public           *
+ * License along with this software; if not, write to the Free                *
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA         *
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.                   *
+ ******************************************************************************/
+package org.gatein.common.text;
+
+import org.gatein.common.util.ParameterValidation;
+
+/**
+ * A char writer that computes a 64 bit FNV-1a hash of the chars appended to it instead of retaining them. Each char
+ * is hashed as a single unit, so for ASCII chars the hash is the FNV-1a hash of the ASCII bytes. It allows to compute
+ * a key for some formatted content without building the corresponding String. This class is not thread safe.
+ *
+ * @author <a href="mailto:agent@local">agent</a>
+ */
+public final class HashingCharWriter implements RangeCharWriter
+{
+
+   /** The FNV-1a 64 bit offset basis. */
+   private static final long OFFSET_BASIS = 0xCBF29CE484222325L;
+
+   /** The FNV-1a 64 bit prime. */
+   private static final long PRIME = 0x100000001B3L;
+
+   /** . */
+   private long hash = OFFSET_BASIS;
+
+   /** . */
+   private int length;
+
+   public CharWriter append(char c)
+   {
+      hash = (hash ^ c) * PRIME;
+      length++;
+      return this;
+   }
+
+   public CharWriter append(char[] chars, int off, int len)
+   {
+      ParameterValidation.throwIllegalArgExceptionIfRangeInvalid(chars, off, len);
+
+      //
+      long hash = this.hash;
+      for (int to = off + len; off < to; off++)
+      {
+         hash = (hash ^ chars[off]) * PRIME;
+      }
+      this.hash = hash;
+      length += len;
+      return this;
+   }
+
+   public CharWriter append(char[] chars)
+   {
+      ParameterValidation.throwIllegalArgExceptionIfNull(chars, "char[]");
+      return append(chars, 0, chars.length);
+   }
+
+   public CharWriter append(CharSequence s)
+   {
+      ParameterValidation.throwIllegalArgExceptionIfNull(s, "CharSequence");
+      return appendRange(s, 0, s.length());
+   }
+
+   public CharWriter appendRange(CharSequence s, int off, int len)
+   {
+      ParameterValidation.throwIllegalArgExceptionIfRangeInvalid(s, off, len);
+
+      //
+      long hash = this.hash;
+      for (int to = off + len; off < to; off++)
+      {
+         hash = (hash ^ s.charAt(off)) * PRIME;
+      }
+      this.hash = hash;
+      length += len;
+      return this;
+   }
+
+   /**
+    * Returns the hash of the chars appended since the creation or the last reset.
+    *
+    * @return the hash
+    */
+   public long getHash()
+   {
+      return hash;
+   }
+
+   /**
+    * Returns the number of chars appended since the creation or the last reset.
+    *
+    * @return the length
+    */
+   public int getLength()
+   {
+      return length;
+   }
+
+   public void reset()
+   {
+      hash = OFFSET_BASIS;
+      length = 0;
+   }
+}
@@ -0,0 +1,421 @@
+/******************************************************************************
+ * JBoss, a division of Red Hat                                               *
+ * Copyright 2009, Red Hat Middleware, LLC, and individual                    *
+ * contributors as indicated by the @authors tag. See the                     *
+ * copyright.txt in the distribution for a full listing of                    *
+ * individual contributors.                                                   *
+ *                                                                            *
+ * This is free software; you can redistribute it and/or modify it            *
+ * under the terms of the GNU Lesser General Public License as                *
+ * published by the Free Software Foundation; either version 2.1 of           *
+ * the License, or (at your option) any later version.                        *
+ *                                                                            *
+ * This software is distributed in the hope that it will be useful,           *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of             *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU           *
+ * Lesser General Public License for more details.                            *
+ *                                                                            *
+ * You should have received a copy of the GNU Lesser General Public           *
+ * License along with this software; if not, write to the Free                *
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA         *
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.                   *
+ ******************************************************************************/
+package org.gatein.common.text;
+
+import org.gatein.common.io.UndeclaredIOException;
+import org.gatein.common.io.WriterCharWriter;
+import org.gatein.common.util.ParameterValidation;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Replaces several patterns in a single scan of a text with an Aho-Corasick automaton built from a map of patterns to
+ * replacements. When matches overlap the leftmost one wins and among the matches starting at the same position the
+ * longest one wins, the text of a replacement is never scanned again.
+ *
+ * <p>The automaton is immutable, a replacer can be used concurrently.</p>
+ *
+ * @author <a href="mailto:agent@local">agent</a>
+ */
+public final class MultiReplacer
+{
+
+   /** The transitions of the root state for the ASCII chars, -1 when there is no transition. */
+   private final int[] rootTransitions;
+
+   /** The transition labels of each state, sorted. */
+   private final char[][] labels;
+
+   /** The transition targets of each state. */
+   private final int[][] targets;
+
+   /** The failure state of each state. */
+   private final int[] failures;
+
+   /** The length of the path of each state. */
+   private final int[] depths;
+
+   /** The longest pattern that is a suffix of the path of each state or -1. */
+   private final int[] outputs;
+
+   /** . */
+   private final int[] patternLengths;
+
+   /** . */
+   private final String[] replacements;
+
+   /**
+    * Creates a replacer.
+    *
+    * @param replacements the replacements keyed by pattern
+    * @throws IllegalArgumentException if the map is null or contains a null or empty pattern or a null replacement
+    */
+   public MultiReplacer(Map<String, String> replacements) throws IllegalArgumentException
+   {
+      ParameterValidation.throwIllegalArgExceptionIfNull(replacements, "Map");
+
+      // Build the trie
+      int count = replacements.size();
+      this.patternLengths = new int[count];
+      this.replacements = new String[count];
+      Node root = new Node();
+      int pattern = 0;
+      for (Map.Entry<String, String> entry : replacements.entrySet())
+      {
+         String key = entry.getKey();
+         String value = entry.getValue();
+         ParameterValidation.throwIllegalArgExceptionIfNullOrEmpty(key, "pattern", "MultiReplacer");
+         ParameterValidation.throwIllegalArgExceptionIfNull(value, "replacement");
+
+         //
+         Node node = root;
+         for (int i = 0; i < key.length(); i++)
+         {
+            Character c = key.charAt(i);
+            Node child = node.children.get(c);
+            if (child == null)
+            {
+               child = new Node(node.depth + 1);
+               node.children.put(c, child);
+            }
+            node = child;
+         }
+         node.pattern = pattern;
+         patternLengths[pattern] = key.length();
+         this.replacements[pattern] = value;
+         pattern++;
+      }
+
+      // Number the states breadth first, a failure state is always numbered before the states failing to it
+      List<Node> nodes = new ArrayList<Node>();
+      nodes.add(root);
+      for (int i = 0; i < nodes.size(); i++)
+      {
+         Node node = nodes.get(i);
+         node.index = i;
+         for (Map.Entry<Character, Node> entry : node.children.entrySet())
+         {
+            Node child = entry.getValue();
+            if (node == root)
+            {
+               child.failure = root;
+            }
+            else
+            {
+               char c = entry.getKey();
+               Node failure = node.failure;
+               while (failure != root && !failure.children.containsKey(c))
+               {
+                  failure = failure.failure;
+               }
+               Node target = failure.children.get(c);
+               child.failure = target != null ? target : root;
+            }
+            nodes.add(child);
+         }
+      }
+
+      // Compile it
+      int size = nodes.size();
+      this.labels = new char[size][];
+      this.targets = new int[size][];
+      this.failures = new int[size];
+      this.depths = new int[size];
+      this.outputs = new int[size];
+      for (Node node : nodes)
+      {
+         int index = node.index;
+         char[] nodeLabels = new char[node.children.size()];
+         int[] nodeTargets = new int[nodeLabels.length];
+         int i = 0;
+         for (Map.Entry<Character, Node> entry : node.children.entrySet())
+         {
+            nodeLabels[i] = entry.getKey();
+            nodeTargets[i++] = entry.getValue().index;
+         }
+         labels[index] = nodeLabels;
+         targets[index] = nodeTargets;
+         failures[index] = node.failure != null ? node.failure.index : 0;
+         depths[index] = node.depth;
+         outputs[index] = node.pattern != -1 ? node.pattern : (node == root ? -1 : outputs[failures[index]]);
+      }
+
+      //
+      this.rootTransitions = new int[0x80];
+      Arrays.fill(rootTransitions, -1);
+      for (Map.Entry<Character, Node> entry : root.children.entrySet())
+      {
+         char c = entry.getKey();
+         if (c < 0x80)
+         {
+            rootTransitions[c] = entry.getValue().index;
+         }
+      }
+   }
+
+   /**
+    * Performs the replacements in a string.
+    *
+    * @param s the string
+    * @return the replaced string, the same string when no pattern is found
+    * @throws IllegalArgumentException if the string is null
+    */
+   public String replace(String s) throws IllegalArgumentException
+   {
+      ParameterValidation.throwIllegalArgExceptionIfNull(s, "String");
+
+      //
+      if (!contains(s))
+      {
+         return s;
+      }
+
+      //
+      CharBufferPool.Lease buffer = CharBufferPool.DEFAULT.acquire();
+      try
+      {
+         replace(s, buffer);
+         return buffer.asString();
+      }
+      finally
+      {
+         buffer.release();
+      }
+   }
+
+   /**
+    * Performs the replacements in a sequence and writes the result to a writer.
+    *
+    * @param s      the sequence
+    * @param writer the writer
+    * @throws IllegalArgumentException if an argument is null
+    * @throws IOException              any IOException thrown by the writer
+    */
+   public void replace(CharSequence s, Writer writer) throws IllegalArgumentException, IOException
+   {
+      ParameterValidation.throwIllegalArgExceptionIfNull(s, "CharSequence");
+      ParameterValidation.throwIllegalArgExceptionIfNull(writer, "Writer");
+
+      //
+      try
+      {
+         replace(s, new WriterCharWriter(writer));
+      }
+      catch (UndeclaredIOException e)
+      {
+         throw (IOException)e.getCause();
+      }
+   }
+
+   /**
+    * Performs the replacements in a sequence and writes the result to a char writer.
+    *
+    * @param s      the sequence
+    * @param writer the writer
+    * @throws IllegalArgumentException if an argument is null
+    */
+   public void replace(CharSequence s, CharWriter writer) throws IllegalArgumentException
+   {
+      ParameterValidation.throwIllegalArgExceptionIfNull(s, "CharSequence");
+      ParameterValidation.throwIllegalArgExceptionIfNull(writer, "CharWriter");
+
+      //
+      int length = s.length();
+
+      // The start of the text not yet written
+      int written = 0;
+
+      // The best match found so far, the one starting first and then the longest
+      int matchStart = 0;
+      int matchEnd = 0;
+      int match = -1;
+
+      //
+      int state = 0;
+      int i = 0;
+      while (true)
+      {
+         if (i < length)
+         {
+            // Skip the chars that cannot start a pattern
+            if (state == 0)
+            {
+               i = skip(s, i, length);
+               if (i == length)
+               {
+                  continue;
+               }
+            }
+
+            //
+            state = next(state, s.charAt(i++));
+
+            // The longest match ending here is the one starting first
+            int output = outputs[state];
+            if (output != -1)
+            {
+               int start = i - patternLengths[output];
+               if (match == -1 || start < matchStart || (start == matchStart && i > matchEnd))
+               {
+                  matchStart = start;
+                  matchEnd = i;
+                  match = output;
+               }
+            }
+
+            // As long as the current path contains the start of the match, a longer match may still be found
+            if (match == -1 || matchStart >= i - depths[state])
+            {
+               continue;
+            }
+         }
+         else if (match == -1)
+         {
+            break;
+         }
+
+         // Write the match and scan again from its end
+         AbstractCharEncoder.append(writer, s, written, matchStart - written);
+         writer.append(replacements[match]);
+         written = matchEnd;
+         i = matchEnd;
+         state = 0;
+         match = -1;
+      }
+
+      //
+      AbstractCharEncoder.append(writer, s, written, length - written);
+   }
+
+   /**
+    * Returns true if one of the patterns occurs in the sequence.
+    *
+    * @param s the sequence
+    * @return true if a pattern is found
+    */
+   private boolean contains(CharSequence s)
+   {
+      int state = 0;
+      for (int i = 0, length = s.length(); i < length; i++)
+      {
+         if (state == 0)
+         {
+            i = skip(s, i, length);
+            if (i == length)
+            {
+               break;
+            }
+         }
+         state = next(state, s.charAt(i));
+         if (outputs[state] != -1)
+         {
+            return true;
+         }
+      }
+      return false;
+   }
+
+   /**
+    * Returns the index of the first char that is not an ASCII char without transition from the root state.
+    *
+    * @param s    the sequence
+    * @param from the start index
+    * @param to   the end index
+    * @return the index of the first char that may start a pattern or the end index
+    */
+   private int skip(CharSequence s, int from, int to)
+   {
+      int[] rootTransitions = this.rootTransitions;
+      while (from < to)
+      {
+         char c = s.charAt(from);
+         if (c >= 0x80 || rootTransitions[c] != -1)
+         {
+            break;
+         }
+         from++;
+      }
+      return from;
+   }
+
+   private int next(int state, char c)
+   {
+      while (true)
+      {
+         int target;
+         if (state == 0 && c < 0x80)
+         {
+            target = rootTransitions[c];
+         }
+         else
+         {
+            int index = Arrays.binarySearch(labels[state], c);
+            target = index >= 0 ? targets[state][index] : -1;
+         }
+         if (target != -1)
+         {
+            return target;
+         }
+         if (state == 0)
+         {
+            return 0;
+         }
+         state = failures[state];
+      }
+   }
+
+   private static class Node
+   {
+
+      /** . */
+      private final TreeMap<Character, Node> children = new TreeMap<Character, Node>();
+
+      /** . */
+      private final int depth;
+
+      /** . */
+      private int pattern = -1;
+
+      /** . */
+      private Node failure;
+
+      /** . */
+      private int index;
+
+      private Node()
+      {
+         this(0);
+      }
+
+      private Node(int depth)
+      {
+         this.depth = depth;
+      }
+   }
+}
@@ -0,0 +1,42 @@
+/******************************************************************************
+ * JBoss, a division of Red Hat                                               *
+ * Copyright 2009, Red Hat Middleware, LLC, and individual                    *
+ * contributors as indicated by the @authors tag. See the                     *
+ * copyright.txt in the distribution for a full listing of                    *
+ * individual contributors.                                                   *
+ *                                                                            *
+ * This is free software; you can redistribute it and/or modify it            *
+ * under the terms of the GNU Lesser General Public License as                *
+ * published by the Free Software Foundation; either version 2.1 of           *
+ * the License, or (at your option) any later version.                        *
+ *                                                                            *
+ * This software is distributed in the hope that it will be useful,           *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of             *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU           *
+ * Lesser General Public License for more details.                            *
+ *                                                                            *
+ * You should have received a copy of the GNU Lesser General Public           *
+ * License along with this software; if not, write to the Free                *
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA         *
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.                   *
+ ******************************************************************************/
+package org.gatein.common.text;
+
+/**
+ * A writer that appends a range of a char sequence without copying it. The encoders extending
+ * {@link AbstractCharEncoder} append the unchanged ranges of a sequence with this method when the writer implements
+ * it, other writers are given the corresponding sub sequence.
+ *
+ * @author <a href="mailto:agent@local">agent</a>
+ */
+public interface RangeCharWriter extends CharWriter
+{
+   /**
+    * @param s   the sequence to append
+    * @param off the offset in the sequence
+    * @param len the length of chars to append
+    * @return this writer
+    * @throws IllegalArgumentException if the sequence is null or if the bounds are not valid in the sequence
+    */
+   CharWriter appendRange(CharSequence s, int off, int len) throws IllegalArgumentException;
+}
@@ -66,7 +66,7 @@ public class TextTools
    }
 
    /**
-    * Replace occurence in a string.
+    * Replace occurence in a string. See {@link MultiReplacer} to replace several patterns in one pass.
     *
     * @param string      the source string
     * @param pattern     the replaced pattern
@@ -75,17 +75,21 @@ public class TextTools
     */
    public static String replace(String string, String pattern, String replacement)
    {
-      StringBuffer buffer = new StringBuffer(string.length());
-      int previous = 0;
       int current = string.indexOf(pattern);
+      if (current == -1)
+      {
+         return string;
+      }
+      StringBuilder buffer = new StringBuilder(string.length());
+      int previous = 0;
       while (current != -1)
       {
-         buffer.append(string.substring(previous, current));
+         buffer.append(string, previous, current);
          buffer.append(replacement);
          previous = current + pattern.length();
          current = string.indexOf(pattern, previous);
       }
-      buffer.append(string.substring(previous));
+      buffer.append(string, previous, string.length());
       return buffer.toString();
    }
 
@@ -138,7 +142,7 @@ public class TextTools
     * and suffix) after the substitution by setting <code>keepBoundaries</code> to <code>true</code>. <br/> Note that it
     * is possible to specify that the suffix is optional, will be passed as a match on to the specified
     * StringReplacementGenerator and be replaced. <br/> See org.gatein.common.StringTestCase.testReplaceBoundedString()
-    * for usage details.
+    * for usage details. <br/> The template is compiled and cached by a {@link CompiledTemplate}.
     *
     * @param initial                     the String in which we want to replace bounded Strings
     * @param prefix                      the prefix used identify the beginning of the String targeted for replacement
@@ -164,130 +168,7 @@ public class TextTools
 
       ParameterValidation.throwIllegalArgExceptionIfNullOrEmpty(prefix, "prefix", "TextTools.replaceBoundedString");
 
-      StringBuilder tmp = new StringBuilder(initial);
-      int prefixIndex = tmp.indexOf(prefix);
-      final int prefixLength = prefix.length();
-      boolean suffixAbsent = suffix == null;
-      int suffixLength = suffixAbsent ? 0 : suffix.length();
-
-      // nothing to do if didn't ask for an optional suffix and we have one and it's not present in our string
-      if (!suffixIsOptional && suffix != null && tmp.indexOf(suffix) == -1)
-      {
-         return initial;
-      }
-
-      // loop as long as we can find an instance of prefix in the String
-      while (prefixIndex != -1)
-      {
-         int suffixIndex;
-         if (suffixAbsent)
-         {
-            String match = tmp.substring(prefixIndex + prefixLength);
-
-            // replace prefix with replacement
-            if (keepBoundaries)
-            {
-               // just insert replacement for prefix
-               tmp.insert(prefixIndex + prefixLength, generator.getReplacementFor(match, prefix, suffix, true));
-            }
-            else
-            {
-               // delete prefix then insert remplacement instead
-               tmp.delete(prefixIndex, prefixIndex + prefixLength);
-               tmp.insert(prefixIndex, generator.getReplacementFor(match, prefix, suffix, true));
-            }
-
-            // new lookup starting position
-            prefixIndex = tmp.indexOf(prefix, prefixIndex + prefixLength);
-         }
-         else
-         {
-            // look for suffix
-            suffixIndex = tmp.indexOf(suffix, prefixIndex);
-
-            if (suffixIndex == -1)
-            {
-               // we haven't found suffix in the rest of the String so don't look for it again
-               suffixAbsent = true;
-               continue;
-            }
-            else
-            {
-               if (suffixIsOptional)
-               {
-                  // if suffix is optional, look for potential next prefix instance that we'd need to replace
-                  int nextPrefixIndex = tmp.indexOf(prefix, prefixIndex + prefixLength);
-
-                  // check that we're not matching the suffix, which can happen if they are close one to another as is the case with WSRP
-                  if (nextPrefixIndex >= suffixIndex && nextPrefixIndex <= (suffixIndex + suffixLength))
-                  {
-                     // if that's the case, look for the next one instead
-                     nextPrefixIndex = tmp.indexOf(prefix, suffixIndex + suffixLength);
-                  }
-
-                  if (nextPrefixIndex != -1 && nextPrefixIndex <= suffixIndex)
-                  {
-                     // we've found an in-between prefix, use it as the suffix for the current match
-                     // delete prefix then insert remplacement instead
-                     String match = tmp.substring(prefixIndex + prefixLength, nextPrefixIndex);
-                     tmp.delete(prefixIndex, prefixIndex + prefixLength);
-                     String replacement = generator.getReplacementFor(match, prefix, suffix, true);
-                     tmp.insert(prefixIndex, replacement);
-
-                     prefixIndex = nextPrefixIndex - prefixLength + replacement.length();
-                     continue;
-                  }
-               }
-
-               // we don't care about empty bounded strings or prefix and suffix don't delimit an empty String => replace!
-               if (replaceIfBoundedStringEmpty || suffixIndex != prefixIndex + prefixLength)
-               {
-                  String match = tmp.substring(prefixIndex + prefixLength, suffixIndex);
-                  String replacement = generator.getReplacementFor(match, prefix, suffix, false);
-                  int changeInLength = replacement.length() - match.length();
-
-                  // compute the next lookup index from which we will look for the next prefix
-                  int nextLookupIndex = prefixIndex + changeInLength;
-
-                  if (keepBoundaries)
-                  {
-                     if (!suffixAbsent)
-                     {
-                        // delete only match
-                        tmp.delete(prefixIndex + prefixLength, suffixIndex);
-                     }
-                     else
-                     {
-                        // delete nothing
-                     }
-                     tmp.insert(prefixIndex + prefixLength, replacement);
-                     nextLookupIndex += prefixLength + suffixLength;
-                  }
-                  else
-                  {
-                     if (!suffixAbsent)
-                     {
-                        // if we have a suffix, delete everything between start of prefix and end of suffix
-                        tmp.delete(prefixIndex, suffixIndex + suffixLength);
-                     }
-                     else
-                     {
-                        // only delete prefix
-                        tmp.delete(prefixIndex, prefixIndex + prefixLength);
-                     }
-                     tmp.insert(prefixIndex, replacement);
-                  }
-
-                  prefixIndex = nextLookupIndex;
-               }
-            }
-
-            prefixIndex = tmp.indexOf(prefix, prefixIndex + 1); // +1 to avoid infinite loop on border cases
-
-         }
-      }
-
-      return tmp.toString();
+      return CompiledTemplate.compile(initial, prefix, suffix, replaceIfBoundedStringEmpty, keepBoundaries, suffixIsOptional).render(generator);
    }
 
    public static interface StringReplacementGenerator
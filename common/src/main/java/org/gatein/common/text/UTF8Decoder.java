@@ -0,0 +1,188 @@
+/******************************************************************************
+ * JBoss, a division of Red Hat                                               *
+ * Copyright 2009, Red Hat Middleware, LLC, and individual                    *
+ * contributors as indicated by the @authors tag. See the                     *
+ * copyright.txt in the distribution for a full listing of                    *
+ * individual contributors.                                                   *
+ *                                                                            *
+ * This is free software; you can redistribute it and/or modify it            *
+ * under the terms of the GNU Lesser General Public License as                *
+ * published by the Free Software Foundation; either version 2.1 of           *
+ * the License, or (at your option) any later version.                        *
+ *                                                                            *
+ * This software is distributed in the hope that it will be useful,           *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of             *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU           *
+ * Lesser General Public License for more details.                            *
+ *                                                                            *
+ * You should have received a copy of the GNU Lesser General Public           *
+ * License along with this software; if not, write to the Free                *
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA         *
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.                   *
+ ******************************************************************************/
+package org.gatein.common.text;
+
+/**
+ * The UTF-8 validation state machine shared by the decoders of escaped bytes. The bytes of a sequence are fed one at a
+ * time and the overlong forms, the surrogates and the code points above U+10FFFF are rejected. A state packs in an int
+ * the bits of the code point decoded so far, the number of remaining bytes and the bounds of the next byte.
+ *
+ * @author <a href="mailto:agent@local">agent</a>
+ */
+final class UTF8Decoder
+{
+
+   /** . */
+   private static final int REMAINING_SHIFT = 21;
+
+   /** . */
+   private static final int BOUNDS_SHIFT = 23;
+
+   /** . */
+   private static final int CODE_POINT_MASK = (1 << REMAINING_SHIFT) - 1;
+
+   /** The bounds of a continuation byte. */
+   private static final int ANY = 0;
+
+   /** The bounds of the byte following 0xE0, which excludes the overlong forms. */
+   private static final int AFTER_E0 = 1;
+
+   /** The bounds of the byte following 0xED, which excludes the surrogates. */
+   private static final int AFTER_ED = 2;
+
+   /** The bounds of the byte following 0xF0, which excludes the overlong forms. */
+   private static final int AFTER_F0 = 3;
+
+   /** The bounds of the byte following 0xF4, which excludes the code points above U+10FFFF. */
+   private static final int AFTER_F4 = 4;
+
+   /** The lower bound of the next byte for each bounds. */
+   private static final int[] LOWER = {0x80, 0xA0, 0x80, 0x90, 0x80};
+
+   /** The upper bound of the next byte for each bounds. */
+   private static final int[] UPPER = {0xBF, 0xBF, 0x9F, 0xBF, 0x8F};
+
+   private UTF8Decoder()
+   {
+   }
+
+   /**
+    * Starts a sequence with its first byte, the byte must not be an ASCII byte.
+    *
+    * @param b the first byte between 0x80 and 0xFF
+    * @return the state after the first byte
+    * @throws MalformedInputException if the byte cannot start a sequence
+    */
+   static int start(int b) throws MalformedInputException
+   {
+      if (b >= 0xC2 && b <= 0xDF)
+      {
+         return state(b & 0x1F, 1, ANY);
+      }
+      else if (b >= 0xE0 && b <= 0xEF)
+      {
+         return state(b & 0x0F, 2, b == 0xE0 ? AFTER_E0 : b == 0xED ? AFTER_ED : ANY);
+      }
+      else if (b >= 0xF0 && b <= 0xF4)
+      {
+         return state(b & 0x07, 3, b == 0xF0 ? AFTER_F0 : b == 0xF4 ? AFTER_F4 : ANY);
+      }
+      else
+      {
+         throw invalidByte(b);
+      }
+   }
+
+   /**
+    * Feeds the next byte of a sequence that is not complete.
+    *
+    * @param state the current state
+    * @param b     the next byte
+    * @return the state after the byte
+    * @throws MalformedInputException if the byte cannot continue the sequence
+    */
+   static int next(int state, int b) throws MalformedInputException
+   {
+      int bounds = state >>> BOUNDS_SHIFT;
+      if (b < LOWER[bounds] || b > UPPER[bounds])
+      {
+         throw invalidByte(b);
+      }
+      return state((codePoint(state) << 6) | (b & 0x3F), remaining(state) - 1, ANY);
+   }
+
+   /**
+    * Returns the number of bytes that remain to complete the sequence.
+    *
+    * @param state the state
+    * @return the number of remaining bytes
+    */
+   static int remaining(int state)
+   {
+      return (state >>> REMAINING_SHIFT) & 0x3;
+   }
+
+   /**
+    * Returns the code point of a complete sequence.
+    *
+    * @param state the state
+    * @return the code point
+    */
+   static int codePoint(int state)
+   {
+      return state & CODE_POINT_MASK;
+   }
+
+   /**
+    * Writes a code point as one char or as a surrogate pair.
+    *
+    * @param codePoint the code point
+    * @param writer    the writer
+    */
+   static void write(int codePoint, CharWriter writer)
+   {
+      if (codePoint < 0x10000)
+      {
+         writer.append((char)codePoint);
+      }
+      else
+      {
+         codePoint -= 0x10000;
+         writer.append((char)(0xD800 + (codePoint >> 10)));
+         writer.append((char)(0xDC00 + (codePoint & 0x3FF)));
+      }
+   }
+
+   /**
+    * Writes a code point as one char or as a surrogate pair in an array.
+    *
+    * @param codePoint the code point
+    * @param chars     the chars
+    * @param length    the index where the chars are written
+    * @return the index following the written chars
+    */
+   static int write(int codePoint, char[] chars, int length)
+   {
+      if (codePoint < 0x10000)
+      {
+         chars[length++] = (char)codePoint;
+      }
+      else
+      {
+         codePoint -= 0x10000;
+         chars[length++] = (char)(0xD800 + (codePoint >> 10));
+         chars[length++] = (char)(0xDC00 + (codePoint & 0x3FF));
+      }
+      return length;
+   }
+
+   private static int state(int codePoint, int remaining, int bounds)
+   {
+      return codePoint | (remaining << REMAINING_SHIFT) | (bounds << BOUNDS_SHIFT);
+   }
+
+   private static MalformedInputException invalidByte(int b)
+   {
+      return new MalformedInputException("Cannot decode byte " + Integer.toHexString(b) + " of an UTF-8 sequence");
+   }
+}
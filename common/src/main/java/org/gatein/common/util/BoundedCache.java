@@ -0,0 +1,120 @@
+/******************************************************************************
+ * JBoss, a division of Red Hat                                               *
+ * Copyright 2009, Red Hat Middleware, LLC, and individual                    *
+ * contributors as indicated by the @authors tag. See the                     *
+ * copyright.txt in the distribution for a full listing of                    *
+ * individual contributors.                                                   *
+ *                                                                            *
+ * This is free software; you can redistribute it and/or modify it            *
+ * under the terms of the GNU Lesser General Public License as                *
+ * published by the Free Software Foundation; either version 2.1 of           *
+ * the License, or (at your option) any later version.                        *
+ *                                                                            *
+ * This software is distributed in the hope that it will be useful,           *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of             *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU           *
+ * Lesser General Public License for more details.                            *
+ *                                                                            *
+ * You should have received a copy of the GNU Lesser General Public           *
+ * License along with this software; if not, write to the Free                *
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA         *
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.                   *
+ ******************************************************************************/
+package org.gatein.common.util;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A thread safe cache holding a bounded number of entries. When an entry is added to a full cache the least recently
+ * used entry is evicted, so the entries that are looked up again and again stay in the cache while a flow of distinct
+ * keys only evicts the keys that are not used anymore, and the cache cannot grow beyond its maximum size. The
+ * operations are serialized by a lock, a lookup updates the order of the entries.
+ *
+ * @author <a href="mailto:agent@local">agent</a>
+ */
+public class BoundedCache<K, V>
+{
+
+   /** The entries in access order, guarded by itself. */
+   private final LinkedHashMap<K, V> entries;
+
+   /** . */
+   private final int maxSize;
+
+   /**
+    * Creates a new cache.
+    *
+    * @param maxSize the maximum number of entries
+    * @throws IllegalArgumentException if the maximum size is not positive
+    */
+   public BoundedCache(final int maxSize) throws IllegalArgumentException
+   {
+      if (maxSize < 1)
+      {
+         throw new IllegalArgumentException("Invalid cache size " + maxSize);
+      }
+      this.entries = new LinkedHashMap<K, V>(16, 0.75f, true)
+      {
+         protected boolean removeEldestEntry(Map.Entry<K, V> eldest)
+         {
+            return size() > maxSize;
+         }
+      };
+      this.maxSize = maxSize;
+   }
+
+   public int getMaxSize()
+   {
+      return maxSize;
+   }
+
+   public int size()
+   {
+      synchronized (entries)
+      {
+         return entries.size();
+      }
+   }
+
+   /**
+    * Returns the cached value of a key, the entry becomes the most recently used.
+    *
+    * @param key the key
+    * @return the value or null
+    * @throws IllegalArgumentException if the key is null
+    */
+   public V get(K key) throws IllegalArgumentException
+   {
+      ParameterValidation.throwIllegalArgExceptionIfNull(key, "key");
+      synchronized (entries)
+      {
+         return entries.get(key);
+      }
+   }
+
+   /**
+    * Caches the value of a key, the least recently used entry is evicted when the cache is full.
+    *
+    * @param key   the key
+    * @param value the value
+    * @throws IllegalArgumentException if any argument is null
+    */
+   public void put(K key, V value) throws IllegalArgumentException
+   {
+      ParameterValidation.throwIllegalArgExceptionIfNull(key, "key");
+      ParameterValidation.throwIllegalArgExceptionIfNull(value, "value");
+      synchronized (entries)
+      {
+         entries.put(key, value);
+      }
+   }
+
+   public void clear()
+   {
+      synchronized (entries)
+      {
+         entries.clear();
+      }
+   }
+}
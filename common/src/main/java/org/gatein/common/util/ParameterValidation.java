@@ -135,6 +135,24 @@ public class ParameterValidation
       }
    }
 
+   public static void throwIllegalArgExceptionIfRangeInvalid(CharSequence s, int offset, int length)
+   {
+      ParameterValidation.throwIllegalArgExceptionIfNull(s, "CharSequence");
+
+      if (offset < 0)
+      {
+         throw new IllegalArgumentException("Offset must be positive!");
+      }
+      if (length < 0)
+      {
+         throw new IllegalArgumentException("Length must be positive!");
+      }
+      if (offset + length > s.length())
+      {
+         throw new IllegalArgumentException("Specified character range is outside of the given CharSequence!");
+      }
+   }
+
    /**
     * Determines whether the given String is <code>null</code> or empty (after all extra whitespaces have been trimmed,
     * if any).
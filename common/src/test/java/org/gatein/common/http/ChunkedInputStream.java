@@ -0,0 +1,67 @@
+/******************************************************************************
+ * JBoss, a division of Red Hat                                               *
+ * Copyright 2009, Red Hat Middleware, LLC, and individual                    *
+ * contributors as indicated by the @authors tag. See the                     *
+ * copyright.txt in the distribution for a full listing of                    *
+ * individual contributors.                                                   *
+ *                                                                            *
+ * This is free software; you can redistribute it and/or modify it            *
+ * under the terms of the GNU Lesser General Public License as                *
+ * published by the Free Software Foundation; either version 2.1 of           *
+ * the License, or (at your option) any later version.                        *
+ *                                                                            *
+ * This software is distributed in the hope that it will be useful,           *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of             *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU           *
+ * Lesser General Public License for more details.                            *
+ *                                                                            *
+ * You should have received a copy of the GNU Lesser General Public           *
+ * License along with this software; if not, write to the Free                *
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA         *
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.                   *
+ ******************************************************************************/
+package org.gatein.common.http;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * An input stream that returns at most a few bytes at each read.
+ *
+ * @author <a href="mailto:agent@local">agent</a>
+ */
+class ChunkedInputStream extends InputStream
+{
+
+   /** . */
+   private final byte[] bytes;
+
+   /** . */
+   private final int size;
+
+   /** The number of bytes read. */
+   int read;
+
+   ChunkedInputStream(byte[] bytes, int size)
+   {
+      this.bytes = bytes;
+      this.size = size;
+   }
+
+   public int read() throws IOException
+   {
+      return read == bytes.length ? -1 : bytes[read++] & 0xFF;
+   }
+
+   public int read(byte[] b, int off, int len) throws IOException
+   {
+      if (read == bytes.length)
+      {
+         return -1;
+      }
+      len = Math.min(Math.min(len, size), bytes.length - read);
+      System.arraycopy(bytes, read, b, off, len);
+      read += len;
+      return len;
+   }
+}
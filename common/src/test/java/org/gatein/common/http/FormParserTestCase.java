@@ -0,0 +1,191 @@
+/******************************************************************************
+ * JBoss, a division of Red Hat                                               *
+ * Copyright 2009, Red Hat Middleware, LLC, and individual                    *
+ * contributors as indicated by the @authors tag. See the                     *
+ * copyright.txt in the distribution for a full listing of                    *
+ * individual contributors.                                                   *
+ *                                                                            *
+ * This is free software; you can redistribute it and/or modify it            *
+ * under the terms of the GNU Lesser General Public License as                *
+ * published by the Free Software Foundation; either version 2.1 of           *
+ * the License, or (at your option) any later version.                        *
+ *                                                                            *
+ * This software is distributed in the hope that it will be useful,           *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of             *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU           *
+ * Lesser General Public License for more details.                            *
+ *                                                                            *
+ * You should have received a copy of the GNU Lesser General Public           *
+ * License along with this software; if not, write to the Free                *
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA         *
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.                   *
+ ******************************************************************************/
+package org.gatein.common.http;
+
+import junit.framework.TestCase;
+import org.gatein.common.text.FastURLByteDecoder;
+import org.gatein.common.util.ParameterMap;
+
+import java.io.ByteArrayInputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.Pipe;
+
+/**
+ * @author <a href="mailto:agent@local">agent</a>
+ */
+public class FormParserTestCase extends TestCase
+{
+
+   /** . */
+   private static final String[] BODIES = {"", "f", "f=", "foo=bar", "f=b&f=bar2", "foo=%2", "foo&foo=%2", "=x=y&f=b",
+      "f=b=j", "x=y&foo=bar", "a+b=c%C3%A9&&a+b=%2F", "=&", "foo=%2&foo", "&&f&", "%2=x&f=y", "=", "a=%C3%A9%C3"};
+
+   public void testConstructorThrowsIAE()
+   {
+      try
+      {
+         new FormParser(null, 1, 1, 1, 1);
+         fail();
+      }
+      catch (IllegalArgumentException expected)
+      {
+      }
+      try
+      {
+         new FormParser(FastURLByteDecoder.getUTF8Instance(), 0, 1, 1, 1);
+         fail();
+      }
+      catch (IllegalArgumentException expected)
+      {
+      }
+      try
+      {
+         new FormParser(FastURLByteDecoder.getUTF8Instance(), 1, 1, 1, 0);
+         fail();
+      }
+      catch (IllegalArgumentException expected)
+      {
+      }
+   }
+
+   public void testParse() throws Exception
+   {
+      FormParser parser = new FormParser();
+      for (int i = 0; i < BODIES.length; i++)
+      {
+         String body = BODIES[i];
+         byte[] bytes = body.getBytes("ISO-8859-1");
+         ParameterMap expected = QueryStringParser.getInstance().parseQueryString(bytes, 0, bytes.length, FastURLByteDecoder.getUTF8Instance());
+         assertEquals(body, expected, parser.parse(new ByteArrayInputStream(bytes)));
+         assertEquals(body, expected, parser.parse(Channels.newChannel(new ByteArrayInputStream(bytes))));
+
+         // Split the body at every position
+         for (int size = 1; size < 4; size++)
+         {
+            assertEquals(body, expected, parser.parse(new ChunkedInputStream(bytes, size)));
+         }
+      }
+   }
+
+   public void testNonBlockingChannel() throws Exception
+   {
+      Pipe pipe = Pipe.open();
+      try
+      {
+         pipe.source().configureBlocking(false);
+         try
+         {
+            new FormParser().parse(pipe.source());
+            fail();
+         }
+         catch (IllegalArgumentException expected)
+         {
+         }
+
+         // A blocking selectable channel is accepted
+         pipe.source().configureBlocking(true);
+         pipe.sink().write(ByteBuffer.wrap("a=b".getBytes("ISO-8859-1")));
+         pipe.sink().close();
+         assertEquals("b", new FormParser().parse(pipe.source()).getValue("a"));
+      }
+      finally
+      {
+         pipe.sink().close();
+         pipe.source().close();
+      }
+   }
+
+   public void testParseLargeBody() throws Exception
+   {
+      StringBuffer body = new StringBuffer();
+      for (int i = 0; i < 1000; i++)
+      {
+         body.append("name").append(i % 10).append("=value%20").append(i).append('&');
+      }
+      byte[] bytes = body.toString().getBytes("ISO-8859-1");
+      ParameterMap parameters = new FormParser().parse(new ByteArrayInputStream(bytes));
+      assertEquals(QueryStringParser.getInstance().parseQueryString(body.toString()), parameters);
+      assertEquals(100, parameters.getValues("name3").length);
+      assertEquals("value 3", parameters.getValue("name3"));
+   }
+
+   public void testMaxParameters() throws Exception
+   {
+      FormParser parser = new FormParser(FastURLByteDecoder.getUTF8Instance(), 2, 10, 10, 100);
+      assertEquals(2, parser.parse(new ByteArrayInputStream("a=1&a=2&&=3".getBytes("ISO-8859-1"))).getValues("a").length);
+      assertLimitExceeded(parser, "a=1&a=2&b");
+      assertLimitExceeded(parser, "a=1&b=2&c=3");
+   }
+
+   public void testMaxNameLength() throws Exception
+   {
+      FormParser parser = new FormParser(FastURLByteDecoder.getUTF8Instance(), 10, 3, 10, 100);
+      assertEquals("x", parser.parse(new ByteArrayInputStream("abc=x".getBytes("ISO-8859-1"))).getValue("abc"));
+      assertLimitExceeded(parser, "abcd=x");
+      assertLimitExceeded(parser, "abcd");
+      assertLimitExceeded(parser, "a=b&abcd&c=d");
+   }
+
+   public void testMaxValueLength() throws Exception
+   {
+      FormParser parser = new FormParser(FastURLByteDecoder.getUTF8Instance(), 10, 10, 3, 100);
+      assertEquals("a=c", parser.parse(new ByteArrayInputStream("a=a=c".getBytes("ISO-8859-1"))).getValue("a"));
+      assertLimitExceeded(parser, "a=abcd");
+      assertLimitExceeded(parser, "a=abcd&b=c");
+   }
+
+   public void testMaxBytes() throws Exception
+   {
+      FormParser parser = new FormParser(FastURLByteDecoder.getUTF8Instance(), 10, 10, 10, 8);
+      assertEquals("1", parser.parse(new ByteArrayInputStream("a=1&b=23".getBytes("ISO-8859-1"))).getValue("a"));
+      assertLimitExceeded(parser, "a=1&b=234");
+
+      // The parser stops reading when the limit is exceeded
+      ChunkedInputStream in = new ChunkedInputStream(new byte[1000], 3);
+      try
+      {
+         parser.parse(in);
+         fail();
+      }
+      catch (FormLimitExceededException expected)
+      {
+      }
+      assertEquals(9, in.read);
+   }
+
+   private void assertLimitExceeded(FormParser parser, String body) throws Exception
+   {
+      for (int size = 1; size < 4; size++)
+      {
+         try
+         {
+            parser.parse(new ChunkedInputStream(body.getBytes("ISO-8859-1"), size));
+            fail();
+         }
+         catch (FormLimitExceededException expected)
+         {
+         }
+      }
+   }
+}
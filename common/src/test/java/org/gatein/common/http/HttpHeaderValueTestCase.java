@@ -0,0 +1,204 @@
+/******************************************************************************
+ * JBoss, a division of Red Hat                                               *
+ * Copyright 2009, Red Hat Middleware, LLC, and individual                    *
+ * contributors as indicated by the @authors tag. See the                     *
+ * copyright.txt in the distribution for a full listing of                    *
+ * individual contributors.                                                   *
+ *                                                                            *
+ * This is free software; you can redistribute it and/or modify it            *
+ * under the terms of the GNU Lesser General Public License as                *
+ * published by the Free Software Foundation; either version 2.1 of           *
+ * the License, or (at your option) any later version.                        *
+ *                                                                            *
+ * This software is distributed in the hope that it will be useful,           *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of             *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU           *
+ * Lesser General Public License for more details.                            *
+ *                                                                            *
+ * You should have received a copy of the GNU Lesser General Public           *
+ * License along with this software; if not, write to the Free                *
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA         *
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.                   *
+ ******************************************************************************/
+package org.gatein.common.http;
+
+import junit.framework.TestCase;
+
+import java.util.Iterator;
+
+/**
+ * @author <a href="mailto:agent@local">agent</a>
+ */
+public class HttpHeaderValueTestCase extends TestCase
+{
+
+   public void testParseThrowsIAE()
+   {
+      try
+      {
+         new HttpHeaderValue(null);
+         fail();
+      }
+      catch (IllegalArgumentException expected)
+      {
+      }
+      try
+      {
+         HttpHeader.parse(null, "foo");
+         fail();
+      }
+      catch (IllegalArgumentException expected)
+      {
+      }
+   }
+
+   public void testEmpty()
+   {
+      assertEquals(0, new HttpHeaderValue().getElementCount());
+      assertEquals(0, new HttpHeaderValue("").getElementCount());
+      assertEquals(0, new HttpHeaderValue(" , ,").getElementCount());
+      assertEquals(0, new HttpHeaderValue(";q=1,=foo").getElementCount());
+   }
+
+   public void testAccept()
+   {
+      HttpHeaderValue value = new HttpHeaderValue("text/html;level=1, application/xhtml+xml ; q=0.9 ,*/*;q=0.1");
+      assertEquals(3, value.getElementCount());
+      assertEquals("text/html", value.getElementName(0));
+      assertEquals(null, value.getElementValue(0));
+      assertEquals(1, value.getParamCount(0));
+      assertEquals("level", value.getParamName(0, 0));
+      assertEquals("1", value.getParamValue(0, 0));
+      assertEquals("application/xhtml+xml", value.getElementName(1));
+      assertEquals(1, value.getParamCount(1));
+      assertEquals("q", value.getParamName(1, 0));
+      assertEquals("0.9", value.getParamValue(1, 0));
+      assertEquals("*/*", value.getElementName(2));
+      assertEquals("0.1", value.getParamValue(2, "Q"));
+      assertEquals(null, value.getParamValue(2, "level"));
+      assertEquals(2, value.indexOfElement("*/*"));
+      assertEquals(1, value.indexOfElement("APPLICATION/XHTML+XML"));
+      assertEquals(-1, value.indexOfElement("text/plain"));
+   }
+
+   public void testElementValues()
+   {
+      HttpHeaderValue value = new HttpHeaderValue("a=b;c;d=, e = f ;g= h i ,j=abc==");
+      assertEquals(3, value.getElementCount());
+      assertEquals("a", value.getElementName(0));
+      assertEquals("b", value.getElementValue(0));
+      assertEquals(2, value.getParamCount(0));
+      assertEquals("c", value.getParamName(0, 0));
+      assertEquals(null, value.getParamValue(0, 0));
+      assertEquals("d", value.getParamName(0, 1));
+      assertEquals("", value.getParamValue(0, 1));
+      assertEquals("e", value.getElementName(1));
+      assertEquals("f", value.getElementValue(1));
+      assertEquals("h i", value.getParamValue(1, "g"));
+      assertEquals("abc==", value.getElementValue(2));
+   }
+
+   public void testQuotedString()
+   {
+      HttpHeaderValue value = new HttpHeaderValue("form-data; name=\"a,b;c\" ; filename=\"x\\\"y\\\\.txt\" junk, b=\"\", c=\"open");
+      assertEquals(3, value.getElementCount());
+      assertEquals("form-data", value.getElementName(0));
+      assertEquals(2, value.getParamCount(0));
+      assertEquals("a,b;c", value.getParamValue(0, "name"));
+      assertEquals("x\"y\\.txt", value.getParamValue(0, "filename"));
+      assertEquals("", value.getElementValue(1));
+      assertEquals("open", value.getElementValue(2));
+      assertEquals("a\\", new HttpHeaderValue("x=\"a\\\\\"").getElementValue(0));
+      assertEquals("a\"", new HttpHeaderValue("x=\"a\\\"").getElementValue(0));
+   }
+
+   public void testSkipNamelessParams()
+   {
+      HttpHeaderValue value = new HttpHeaderValue("a;;=b;c=d,;x=y,e");
+      assertEquals(2, value.getElementCount());
+      assertEquals(1, value.getParamCount(0));
+      assertEquals("c", value.getParamName(0, 0));
+      assertEquals("e", value.getElementName(1));
+      assertEquals(0, value.getParamCount(1));
+   }
+
+   public void testQuality()
+   {
+      HttpHeaderValue value = new HttpHeaderValue("a, b;q=0.5, c;q=1, d;q=0, e;q=0.125, f;q=1.5, g;q=abc, h;q=, i;q=0.1234, j;Q=1.000");
+      float[] expected = {1f, 0.5f, 1f, 0f, 0.125f, 0f, 0f, 0f, 0.123f, 1f};
+      assertEquals(expected.length, value.getElementCount());
+      for (int i = 0; i < expected.length; i++)
+      {
+         assertEquals(value.getElementName(i), expected[i], value.getQuality(i), 0f);
+      }
+   }
+
+   public void testIndexOutOfBounds()
+   {
+      HttpHeaderValue value = new HttpHeaderValue("a;b");
+      try
+      {
+         value.getElementName(1);
+         fail();
+      }
+      catch (IndexOutOfBoundsException expected)
+      {
+      }
+      try
+      {
+         value.getParamName(0, 1);
+         fail();
+      }
+      catch (IndexOutOfBoundsException expected)
+      {
+      }
+      try
+      {
+         value.getQuality(-1);
+         fail();
+      }
+      catch (IndexOutOfBoundsException expected)
+      {
+      }
+   }
+
+   public void testReuse()
+   {
+      HttpHeaderValue value = new HttpHeaderValue();
+      StringBuilder builder = new StringBuilder();
+      for (int i = 0; i < 20; i++)
+      {
+         builder.append("e").append(i).append(";p=").append(i).append(";r,");
+      }
+      assertSame(value, value.parse(builder.toString()));
+      assertEquals(20, value.getElementCount());
+      assertEquals("e19", value.getElementName(19));
+      assertEquals("19", value.getParamValue(19, 0));
+      assertEquals("r", value.getParamName(19, 1));
+      value.parse("foo");
+      assertEquals(1, value.getElementCount());
+      assertEquals(0, value.getParamCount(0));
+      assertEquals("foo", value.getRawValue());
+   }
+
+   public void testToHeader()
+   {
+      HttpHeader header = HttpHeader.parse("Accept", "text/html;level=1, */*;q=\"0.1\", x=y");
+      assertEquals("Accept", header.getName());
+      Iterator<HttpHeader.Element> elements = header.elements();
+      HttpHeader.Element element = elements.next();
+      assertEquals("text/html", element.getName());
+      assertEquals(null, element.getValue());
+      assertEquals("level", element.getParam().getName());
+      assertEquals("1", element.getParam().getValue());
+      element = elements.next();
+      assertEquals("*/*", element.getName());
+      assertEquals("0.1", element.getParam().getValue());
+      element = elements.next();
+      assertEquals("x", element.getName());
+      assertEquals("y", element.getValue());
+      assertFalse(element.params().hasNext());
+      assertFalse(elements.hasNext());
+      assertEquals("text/html;level=1,*/*;q=0.1,x=y", header.getValue());
+   }
+}
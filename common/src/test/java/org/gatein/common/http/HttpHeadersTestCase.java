@@ -0,0 +1,174 @@
+/******************************************************************************
+ * JBoss, a division of Red Hat                                               *
+ * Copyright 2009, Red Hat Middleware, LLC, and individual                    *
+ * contributors as indicated by the @authors tag. See the                     *
+ * copyright.txt in the distribution for a full listing of                    *
+ * individual contributors.                                                   *
+ *                                                                            *
+ * This is free software; you can redistribute it and/or modify it            *
+ * under the terms of the GNU Lesser General Public License as                *
+ * published by the Free Software Foundation; either version 2.1 of           *
+ * the License, or (at your option) any later version.                        *
+ *                                                                            *
+ * This software is distributed in the hope that it will be useful,           *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of             *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU           *
+ * Lesser General Public License for more details.                            *
+ *                                                                            *
+ * You should have received a copy of the GNU Lesser General Public           *
+ * License along with this software; if not, write to the Free                *
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA         *
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.                   *
+ ******************************************************************************/
+package org.gatein.common.http;
+
+import junit.framework.TestCase;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * @author <a href="mailto:agent@local">agent</a>
+ */
+public class HttpHeadersTestCase extends TestCase
+{
+
+   public void testGetHeaderIgnoresCase()
+   {
+      HttpHeaders headers = new HttpHeaders();
+      HttpHeader contentType = headers.addHeader(HttpHeaders.CONTENT_TYPE);
+      HttpHeader custom = headers.addHeader("X-Custom");
+      assertSame(contentType, headers.getHeader("Content-Type"));
+      assertSame(contentType, headers.getHeader("content-type"));
+      assertSame(contentType, headers.getHeader("CONTENT-TYPE"));
+      assertSame(contentType, headers.getHeader(HttpHeaders.CONTENT_TYPE));
+      assertSame(custom, headers.getHeader("x-custom"));
+      assertSame(custom, headers.getHeader("X-CUSTOM"));
+      assertNull(headers.getHeader("Accept"));
+      assertNull(headers.getHeader("X-Custom2"));
+   }
+
+   public void testGetHeaders()
+   {
+      HttpHeaders headers = new HttpHeaders();
+      HttpHeader cookie1 = headers.addHeader("Set-Cookie");
+      HttpHeader host = headers.addHeader("Host");
+      HttpHeader cookie2 = headers.addHeader("set-cookie");
+      HttpHeader cookie3 = headers.addHeader(new HttpHeader("SET-COOKIE"));
+      assertSame(cookie1, headers.getHeader(HttpHeaders.SET_COOKIE));
+      assertEquals(Arrays.asList(cookie1, cookie2, cookie3), headers.getHeaders("Set-Cookie"));
+      assertEquals(Collections.singletonList(host), headers.getHeaders("host"));
+      assertEquals(Collections.emptyList(), headers.getHeaders("Accept"));
+      List<HttpHeader> list = headers.getHeaders("Set-Cookie");
+      try
+      {
+         list.add(host);
+         fail();
+      }
+      catch (UnsupportedOperationException expected)
+      {
+      }
+      try
+      {
+         headers.getHeaders(null);
+         fail();
+      }
+      catch (IllegalArgumentException expected)
+      {
+      }
+   }
+
+   public void testRemoveWithIterator()
+   {
+      HttpHeaders headers = new HttpHeaders();
+      HttpHeader cookie1 = headers.addHeader("Set-Cookie");
+      HttpHeader host = headers.addHeader("Host");
+      HttpHeader cookie2 = headers.addHeader("set-cookie");
+      HttpHeader cookie3 = headers.addHeader("SET-COOKIE");
+      for (Iterator<HttpHeader> i = headers.headers(); i.hasNext();)
+      {
+         HttpHeader header = i.next();
+         if (header == host || header == cookie1)
+         {
+            i.remove();
+         }
+      }
+      assertNull(headers.getHeader("Host"));
+      assertEquals(Collections.emptyList(), headers.getHeaders("Host"));
+      assertSame(cookie2, headers.getHeader("Set-Cookie"));
+      assertEquals(Arrays.asList(cookie2, cookie3), headers.getHeaders("Set-Cookie"));
+
+      //
+      Iterator<HttpHeader> i = headers.headers();
+      i.next();
+      i.remove();
+      assertEquals(Collections.singletonList(cookie3), headers.getHeaders("Set-Cookie"));
+      i.next();
+      i.remove();
+      assertNull(headers.getHeader("Set-Cookie"));
+      assertFalse(headers.headers().hasNext());
+   }
+
+   public void testInsertionOrder()
+   {
+      HttpHeaders headers = new HttpHeaders();
+      String[] names = {"Via", "Host", "Accept", "X-B", "via", "X-A"};
+      for (String name : names)
+      {
+         headers.addHeader(name).addElement(name.toLowerCase());
+      }
+      Iterator<HttpHeader> i = headers.headers();
+      for (String name : names)
+      {
+         assertEquals(name, i.next().getName());
+      }
+      assertFalse(i.hasNext());
+      assertEquals("Via: via\nHost: host\nAccept: accept\nX-B: x-b\nvia: via\nX-A: x-a\n", headers.toString());
+   }
+
+   public void testSerialization() throws Exception
+   {
+      HttpHeaders headers = new HttpHeaders();
+      headers.addHeader("Accept").addElement("text/html");
+      headers.addHeader("Via").addElement("a");
+      headers.addHeader("via").addElement("b");
+      ByteArrayOutputStream baos = new ByteArrayOutputStream();
+      ObjectOutputStream out = new ObjectOutputStream(baos);
+      out.writeObject(headers);
+      out.close();
+      HttpHeaders copy = (HttpHeaders)new ObjectInputStream(new ByteArrayInputStream(baos.toByteArray())).readObject();
+      assertEquals(headers.toString(), copy.toString());
+      assertEquals("text/html", copy.getHeader("accept").getValue());
+      assertEquals(2, copy.getHeaders("VIA").size());
+   }
+
+   /**
+    * Reads headers serialized by the original class before the index was added.
+    */
+   public void testReadPreviousSerializedForm() throws Exception
+   {
+      InputStream in = Thread.currentThread().getContextClassLoader().getResourceAsStream("http/headers-1.ser");
+      assertNotNull(in);
+      HttpHeaders headers;
+      try
+      {
+         headers = (HttpHeaders)new ObjectInputStream(in).readObject();
+      }
+      finally
+      {
+         in.close();
+      }
+      assertEquals("Accept: text/html;level=1,*/*;q=0.1\nVia: a\nvia: b=c\n", headers.toString());
+      assertEquals("text/html;level=1,*/*;q=0.1", headers.getHeader("ACCEPT").getValue());
+      assertEquals(2, headers.getHeaders("Via").size());
+      headers.getHeader("Accept").getElement().addParam("x");
+      assertEquals("text/html;level=1;x,*/*;q=0.1", headers.getHeader("Accept").getValue());
+   }
+}
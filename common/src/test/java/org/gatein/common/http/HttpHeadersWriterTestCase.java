@@ -0,0 +1,158 @@
+/******************************************************************************
+ * JBoss, a division of Red Hat                                               *
+ * Copyright 2009, Red Hat Middleware, LLC, and individual                    *
+ * contributors as indicated by the @authors tag. See the                     *
+ * copyright.txt in the distribution for a full listing of                    *
+ * individual contributors.                                                   *
+ *                                                                            *
+ * This is free software; you can redistribute it and/or modify it            *
+ * under the terms of the GNU Lesser General Public License as                *
+ * published by the Free Software Foundation; either version 2.1 of           *
+ * the License, or (at your option) any later version.                        *
+ *                                                                            *
+ * This software is distributed in the hope that it will be useful,           *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of             *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU           *
+ * Lesser General Public License for more details.                            *
+ *                                                                            *
+ * You should have received a copy of the GNU Lesser General Public           *
+ * License along with this software; if not, write to the Free                *
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA         *
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.                   *
+ ******************************************************************************/
+package org.gatein.common.http;
+
+import junit.framework.TestCase;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.util.Iterator;
+
+/**
+ * @author <a href="mailto:agent@local">agent</a>
+ */
+public class HttpHeadersWriterTestCase extends TestCase
+{
+
+   private HttpHeaders createHeaders()
+   {
+      HttpHeaders headers = new HttpHeaders();
+      headers.addHeader(HttpHeader.parse(HttpHeaders.ACCEPT, "text/html;q=0.9, */*;q=0.1"));
+      headers.addHeader("X-Custom").addElement("foo", "bar");
+      headers.addHeader("Cache-Control").addElement("no-cache");
+      return headers;
+   }
+
+   public void testWriteToStream() throws Exception
+   {
+      HttpHeaders headers = createHeaders();
+      ByteArrayOutputStream out = new ByteArrayOutputStream();
+      HttpHeadersWriter.write(headers, out);
+      String expected = "Accept: text/html;q=0.9,*/*;q=0.1\r\nX-Custom: foo=bar\r\nCache-Control: no-cache\r\n";
+      assertEquals(expected, out.toString("ISO-8859-1"));
+      assertEquals(expected.length(), HttpHeadersWriter.getLength(headers));
+      out.reset();
+      HttpHeadersWriter.write(headers, out);
+      assertEquals(expected, out.toString("ISO-8859-1"));
+   }
+
+   public void testWriteToBuffer() throws Exception
+   {
+      HttpHeaders headers = createHeaders();
+      int length = HttpHeadersWriter.getLength(headers);
+      ByteBuffer buffer = ByteBuffer.allocate(length - 1);
+      try
+      {
+         HttpHeadersWriter.write(headers, buffer);
+         fail();
+      }
+      catch (BufferOverflowException expected)
+      {
+      }
+      assertEquals(0, buffer.position());
+      buffer = ByteBuffer.allocate(length + 10);
+      HttpHeadersWriter.write(headers, buffer);
+      assertEquals(length, buffer.position());
+      ByteArrayOutputStream out = new ByteArrayOutputStream();
+      HttpHeadersWriter.write(headers, out);
+      assertEquals(out.toString("ISO-8859-1"), new String(buffer.array(), 0, length, "ISO-8859-1"));
+   }
+
+   public void testEncoding() throws Exception
+   {
+      HttpHeaders headers = new HttpHeaders();
+      headers.addHeader("X-\u00E9\r\n").addElement("caf\u00E9 \u20AC");
+      headers.addHeader("X-Injected").addElement("a\r\nSet-Cookie: b");
+      ByteArrayOutputStream out = new ByteArrayOutputStream();
+      HttpHeadersWriter.write(headers, out);
+      assertEquals("X-???: caf\u00E9 ?\r\nX-Injected: a  Set-Cookie: b\r\n", out.toString("ISO-8859-1"));
+   }
+
+   public void testModificationInvalidatesCache() throws Exception
+   {
+      HttpHeaders headers = new HttpHeaders();
+      HttpHeader header = headers.addHeader("Accept");
+      HttpHeader.Element element = header.addElement("text/html");
+      assertEquals("Accept: text/html\r\n", write(headers));
+      assertSame(header.getValue(), header.getValue());
+      element.addParam("q", "0.5");
+      assertEquals("Accept: text/html;q=0.5\r\n", write(headers));
+      assertEquals("text/html;q=0.5", header.getValue());
+      HttpHeader.Element other = header.addElement("text/plain");
+      assertEquals("Accept: text/html;q=0.5,text/plain\r\n", write(headers));
+      Iterator<HttpHeader.Element> elements = header.elements();
+      elements.next();
+      elements.remove();
+      assertEquals("Accept: text/plain\r\n", write(headers));
+      other.addParam("level", "1");
+      assertEquals("Accept: text/plain;level=1\r\n", write(headers));
+      Iterator<HttpHeader.Element.Param> params = other.params();
+      params.next();
+      params.remove();
+      assertEquals("text/plain", header.getValue());
+      assertEquals("Accept: text/plain\r\n", write(headers));
+   }
+
+   public void testRemovalCannotRestoreAStamp() throws Exception
+   {
+      HttpHeader header = new HttpHeader("Accept");
+      HttpHeader.Element a = header.addElement("a");
+      a.addParam("p1");
+      a.addParam("p2");
+      HttpHeader.Element b = header.addElement("b");
+      assertEquals("a;p1;p2,b", header.getValue());
+      Iterator<HttpHeader.Element> elements = header.elements();
+      elements.next();
+      elements.remove();
+      b.addParam("x");
+      assertEquals("b;x", header.getValue());
+   }
+
+   public void testNullThrowsIAE() throws Exception
+   {
+      try
+      {
+         HttpHeadersWriter.write(null, new ByteArrayOutputStream());
+         fail();
+      }
+      catch (IllegalArgumentException expected)
+      {
+      }
+      try
+      {
+         HttpHeadersWriter.write(new HttpHeaders(), (ByteBuffer)null);
+         fail();
+      }
+      catch (IllegalArgumentException expected)
+      {
+      }
+   }
+
+   private String write(HttpHeaders headers) throws Exception
+   {
+      ByteArrayOutputStream out = new ByteArrayOutputStream();
+      HttpHeadersWriter.write(headers, out);
+      return out.toString("ISO-8859-1");
+   }
+}
@@ -0,0 +1,381 @@
+/******************************************************************************
+ * JBoss, a division of Red Hat                                               *
+ * Copyright 2009, Red Hat Middleware, LLC, and individual                    *
+ * contributors as indicated by the @authors tag. See the                     *
+ * copyright.txt in the distribution for a full listing of                    *
+ * individual contributors.                                                   *
+ *                                                                            *
+ * This is free software; you can redistribute it and/or modify it            *
+ * under the terms of the GNU Lesser General Public License as                *
+ * published by the Free Software Foundation; either version 2.1 of           *
+ * the License, or (at your option) any later version.                        *
+ *                                                                            *
+ * This software is distributed in the hope that it will be useful,           *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of             *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU           *
+ * Lesser General Public License for more details.                            *
+ *                                                                            *
+ * You should have received a copy of the GNU Lesser General Public           *
+ * License along with this software; if not, write to the Free                *
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA         *
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.                   *
+ ******************************************************************************/
+package org.gatein.common.http;
+
+import junit.framework.TestCase;
+import org.gatein.common.io.IOTools;
+import org.gatein.common.net.media.ContentType;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+/**
+ * @author <a href="mailto:agent@local">agent</a>
+ */
+public class MultipartParserTestCase extends TestCase
+{
+
+   /** . */
+   private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+   /** . */
+   private static final String BOUNDARY = "----WebKitFormBoundary7MA4YWxkTrZu0gW";
+
+   /** . */
+   private static final ContentType CONTENT_TYPE = ContentType.create("multipart/form-data; boundary=" + BOUNDARY);
+
+   public void testGetBoundary()
+   {
+      assertEquals(BOUNDARY, MultipartParser.getBoundary(CONTENT_TYPE));
+      assertEquals("a b", MultipartParser.getBoundary(ContentType.create("multipart/form-data;charset=UTF-8; Boundary=\"a b\"")));
+      try
+      {
+         MultipartParser.getBoundary(ContentType.create("multipart/form-data"));
+         fail();
+      }
+      catch (IllegalArgumentException expected)
+      {
+      }
+      try
+      {
+         MultipartParser.getBoundary(ContentType.create("text/html; boundary=abc"));
+         fail();
+      }
+      catch (IllegalArgumentException expected)
+      {
+      }
+   }
+
+   public void testParse() throws Exception
+   {
+      byte[] file = new byte[1000];
+      for (int i = 0; i < file.length; i++)
+      {
+         file[i] = (byte)i;
+      }
+
+      // Put almost delimiters in the file
+      System.arraycopy(("\r\n--" + BOUNDARY.substring(0, 10)).getBytes("ISO-8859-1"), 0, file, 100, 14);
+      System.arraycopy(("\r\n--" + BOUNDARY.substring(0, BOUNDARY.length() - 1)).getBytes("ISO-8859-1"), 0, file, 500, BOUNDARY.length() + 3);
+      byte[] body = body(
+         "preamble\r\n",
+         part("form-data; name=\"a\"", null, "1".getBytes("ISO-8859-1")),
+         part("form-data; name=\"b\"", null, "caf\u00E9".getBytes(UTF_8)),
+         part("form-data; name=\"a\"", null, new byte[0]),
+         part("form-data; name=\"file\"; filename=\"x \\\"y\\\".bin\"", "application/octet-stream", file),
+         part("form-data; name=\"empty\"; filename=\"\"", null, new byte[0]),
+         "--\r\nepilogue");
+
+      for (int size = 1; size < 80; size += size < 10 ? 1 : 17)
+      {
+         MultipartForm form = new MultipartParser().parse(CONTENT_TYPE, new ChunkedInputStream(body, size));
+         assertEquals(2, form.getParameters().size());
+         assertTrue(Arrays.equals(new String[]{"1", ""}, form.getParameters().getValues("a")));
+         assertEquals("caf\u00E9", form.getParameters().getValue("b"));
+         assertEquals(2, form.getUploads().size());
+         MultipartForm.Upload upload = form.getUpload("file");
+         assertEquals("x \"y\".bin", upload.getFileName());
+         assertEquals("application/octet-stream", upload.getContentType());
+         assertEquals(1000, upload.getSize());
+         assertTrue(upload.isInMemory());
+         assertTrue(Arrays.equals(file, IOTools.getBytes(upload.getInputStream())));
+         upload = form.getUpload("empty");
+         assertEquals("", upload.getFileName());
+         assertEquals(null, upload.getContentType());
+         assertEquals(0, upload.getSize());
+      }
+   }
+
+   public void testSpillToFile() throws Exception
+   {
+      byte[] file = new byte[100000];
+      for (int i = 0; i < file.length; i++)
+      {
+         file[i] = (byte)(i * 31);
+      }
+      byte[] body = body(part("form-data; name=\"file\"; filename=\"f\"", null, file), "--");
+      MultipartParser parser = new MultipartParser(null, 1000, 10, UTF_8);
+      MultipartForm form = parser.parse(CONTENT_TYPE, new ChunkedInputStream(body, 1000));
+      MultipartForm.Upload upload = form.getUpload("file");
+      assertFalse(upload.isInMemory());
+      File tmp = upload.getFile();
+      assertTrue(tmp.exists());
+      assertEquals(file.length, tmp.length());
+      InputStream in = upload.getInputStream();
+      assertTrue(Arrays.equals(file, IOTools.getBytes(in)));
+      in.close();
+      form.delete();
+      assertFalse(tmp.exists());
+   }
+
+   public void testMaxFieldSize() throws Exception
+   {
+      MultipartParser parser = new MultipartParser(null, 1000, 3, UTF_8);
+      assertEquals("abc", parser.parse(CONTENT_TYPE, new ByteArrayInputStream(body(part("form-data; name=\"a\"", null, "abc".getBytes("ISO-8859-1")), "--"))).getParameters().getValue("a"));
+      try
+      {
+         parser.parse(CONTENT_TYPE, new ByteArrayInputStream(body(part("form-data; name=\"a\"", null, "abcd".getBytes("ISO-8859-1")), "--")));
+         fail();
+      }
+      catch (FormLimitExceededException expected)
+      {
+      }
+   }
+
+   public void testConstructorThrowsIAE()
+   {
+      try
+      {
+         new MultipartParser(null, 1000, 10, 0, 100, 1000, 1000, UTF_8);
+         fail();
+      }
+      catch (IllegalArgumentException expected)
+      {
+      }
+      try
+      {
+         new MultipartParser(null, 1000, 10, 10, 0, 1000, 1000, UTF_8);
+         fail();
+      }
+      catch (IllegalArgumentException expected)
+      {
+      }
+      try
+      {
+         new MultipartParser(null, 1000, 10, 10, 100, 0, 1000, UTF_8);
+         fail();
+      }
+      catch (IllegalArgumentException expected)
+      {
+      }
+      try
+      {
+         new MultipartParser(null, 1000, 10, 10, 100, 1000, 0, UTF_8);
+         fail();
+      }
+      catch (IllegalArgumentException expected)
+      {
+      }
+   }
+
+   public void testMaxParts() throws Exception
+   {
+      MultipartParser parser = new MultipartParser(null, 1000, 10, 2, 100, 1000, 1000, UTF_8);
+      byte[] a = "a".getBytes("ISO-8859-1");
+      byte[] body = body(part("form-data; name=\"a\"", null, a), part("form-data; name=\"b\"", null, a), "--");
+      assertEquals(2, parser.parse(CONTENT_TYPE, new ByteArrayInputStream(body)).getParameters().size());
+
+      // The parts without a name are counted
+      body = body(part("form-data", null, a), part("form-data; name=\"a\"", null, a), part("form-data; name=\"b\"", null, a), "--");
+      assertLimitExceeded(parser, body);
+   }
+
+   public void testMaxMemorySize() throws Exception
+   {
+      MultipartParser parser = new MultipartParser(null, 4, 4, 10, 6, 1000, 1000, UTF_8);
+      byte[] abc = "abc".getBytes("ISO-8859-1");
+      MultipartForm form = parser.parse(CONTENT_TYPE, new ByteArrayInputStream(body(
+         part("form-data; name=\"a\"", null, abc),
+         part("form-data; name=\"f\"; filename=\"f\"", null, abc),
+         "--")));
+      assertTrue(form.getUpload("f").isInMemory());
+
+      // The simple fields and the in memory uploads are both counted
+      assertLimitExceeded(parser, body(
+         part("form-data; name=\"a\"", null, abc),
+         part("form-data; name=\"b\"", null, abc),
+         part("form-data; name=\"c\"", null, "c".getBytes("ISO-8859-1")),
+         "--"));
+      assertLimitExceeded(parser, body(
+         part("form-data; name=\"a\"", null, abc),
+         part("form-data; name=\"f\"; filename=\"f\"", null, "abcd".getBytes("ISO-8859-1")),
+         "--"));
+
+      // The uploads written to a temporary file are not counted
+      form = parser.parse(CONTENT_TYPE, new ByteArrayInputStream(body(
+         part("form-data; name=\"a\"", null, abc),
+         part("form-data; name=\"f\"; filename=\"f\"", null, "abcde".getBytes("ISO-8859-1")),
+         part("form-data; name=\"b\"", null, abc),
+         "--")));
+      assertFalse(form.getUpload("f").isInMemory());
+      form.delete();
+   }
+
+   public void testMaxFileSize() throws Exception
+   {
+      File repository = createRepository();
+      MultipartParser parser = new MultipartParser(repository, 4, 10, 10, 100, 8, 1000, UTF_8);
+      byte[] file = "abcdefgh".getBytes("ISO-8859-1");
+      MultipartForm form = parser.parse(CONTENT_TYPE, new ChunkedInputStream(body(part("form-data; name=\"f\"; filename=\"f\"", null, file), "--"), 3));
+      assertEquals(8, form.getUpload("f").getSize());
+      form.delete();
+
+      // The temporary files of the complete uploads and of the failed upload are deleted
+      byte[] body = body(
+         part("form-data; name=\"f\"; filename=\"f\"", null, file),
+         part("form-data; name=\"g\"; filename=\"g\"", null, "abcdefghi".getBytes("ISO-8859-1")),
+         "--");
+      assertLimitExceeded(parser, body);
+      assertEquals(0, repository.listFiles().length);
+      repository.delete();
+   }
+
+   public void testMaxRequestSize() throws Exception
+   {
+      File repository = createRepository();
+      byte[] file = new byte[100];
+      byte[] body = body(
+         part("form-data; name=\"a\"", null, "abc".getBytes("ISO-8859-1")),
+         part("form-data; name=\"f\"; filename=\"f\"", null, file),
+         part("form-data; name=\"g\"; filename=\"g\"", null, file),
+         "--");
+      MultipartParser parser = new MultipartParser(repository, 4, 10, 10, 100, 1000, body.length, UTF_8);
+      MultipartForm form = parser.parse(CONTENT_TYPE, new ByteArrayInputStream(body));
+      assertFalse(form.getUpload("g").isInMemory());
+      form.delete();
+
+      //
+      parser = new MultipartParser(repository, 4, 10, 10, 100, 1000, body.length - 1, UTF_8);
+      assertLimitExceeded(parser, body);
+      assertEquals(0, repository.listFiles().length);
+
+      // The parser stops reading when the limit is exceeded
+      parser = new MultipartParser(repository, 4, 10, 10, 100, 1000, 150, UTF_8);
+      ChunkedInputStream in = new ChunkedInputStream(body, 10);
+      try
+      {
+         parser.parse(CONTENT_TYPE, in);
+         fail();
+      }
+      catch (FormLimitExceededException expected)
+      {
+      }
+      assertTrue(in.read <= 160);
+      assertEquals(0, repository.listFiles().length);
+      repository.delete();
+   }
+
+   public void testMalformed() throws Exception
+   {
+      String[] bodies = {
+         "",
+         "no delimiter",
+         "--" + BOUNDARY,
+         "--" + BOUNDARY + "\r\nContent-Disposition: form-data; name=\"a\"\r\n\r\nno end",
+         "--" + BOUNDARY + "x\r\n\r\n\r\n--" + BOUNDARY + "--",
+      };
+      for (int i = 0; i < bodies.length; i++)
+      {
+         try
+         {
+            new MultipartParser().parse(CONTENT_TYPE, new ByteArrayInputStream(bodies[i].getBytes("ISO-8859-1")));
+            fail(bodies[i]);
+         }
+         catch (IOException expected)
+         {
+         }
+      }
+   }
+
+   public void testReader() throws Exception
+   {
+      byte[] body = body(
+         part("form-data; name=\"a\"", "text/plain", "first".getBytes("ISO-8859-1")),
+         part("form-data; name=\"b\"", null, "second".getBytes("ISO-8859-1")),
+         "--");
+      MultipartReader reader = new MultipartParser().createReader(CONTENT_TYPE, new ByteArrayInputStream(body));
+      MultipartReader.Part part = reader.nextPart();
+      assertEquals("a", part.getName());
+      assertEquals(null, part.getFileName());
+      assertEquals("text/plain", part.getContentType());
+      assertEquals("text/plain", part.getHeader("content-type"));
+      InputStream in = part.getInputStream();
+      assertEquals('f', in.read());
+      assertEquals(3, in.skip(3));
+      assertEquals('t', in.read());
+      assertEquals(-1, in.read());
+
+      // The remaining content is skipped
+      part = reader.nextPart();
+      assertEquals("b", part.getName());
+      assertEquals('s', part.getInputStream().read());
+      assertNull(reader.nextPart());
+      assertEquals(-1, part.getInputStream().read());
+      assertNull(reader.nextPart());
+   }
+
+   private static File createRepository() throws IOException
+   {
+      File repository = File.createTempFile("repository", "");
+      assertTrue(repository.delete());
+      assertTrue(repository.mkdir());
+      return repository;
+   }
+
+   private void assertLimitExceeded(MultipartParser parser, byte[] body) throws Exception
+   {
+      for (int size = 1; size < 4; size++)
+      {
+         try
+         {
+            parser.parse(CONTENT_TYPE, new ChunkedInputStream(body, size));
+            fail();
+         }
+         catch (FormLimitExceededException expected)
+         {
+         }
+      }
+   }
+
+   private static String part(String disposition, String contentType, byte[] content) throws IOException
+   {
+      StringBuffer part = new StringBuffer("--").append(BOUNDARY).append("\r\n");
+      part.append("Content-Disposition: ").append(disposition).append("\r\n");
+      if (contentType != null)
+      {
+         part.append("Content-Type: ").append(contentType).append("\r\n");
+      }
+      part.append("\r\n").append(new String(content, "ISO-8859-1")).append("\r\n");
+      return part.toString();
+   }
+
+   private static byte[] body(String... chunks) throws IOException
+   {
+      ByteArrayOutputStream out = new ByteArrayOutputStream();
+      for (int i = 0; i < chunks.length; i++)
+      {
+         String chunk = chunks[i];
+         if (chunk.equals("--") || chunk.startsWith("--\r\n"))
+         {
+            chunk = "--" + BOUNDARY + chunk;
+         }
+         out.write(chunk.getBytes("ISO-8859-1"));
+      }
+      return out.toByteArray();
+   }
+}
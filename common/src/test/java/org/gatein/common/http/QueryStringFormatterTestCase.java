@@ -0,0 +1,150 @@
+/******************************************************************************
+ * JBoss, a division of Red Hat                                               *
+ * Copyright 2009, Red Hat Middleware, LLC, and individual                    *
+ * contributors as indicated by the @authors tag. See the                     *
+ * copyright.txt in the distribution for a full listing of                    *
+ * individual contributors.                                                   *
+ *                                                                            *
+ * This is free software; you can redistribute it and/or modify it            *
+ * under the terms of the GNU Lesser General Public License as                *
+ * published by the Free Software Foundation; either version 2.1 of           *
+ * the License, or (at your option) any later version.                        *
+ *                                                                            *
+ * This software is distributed in the hope that it will be useful,           *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of             *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU           *
+ * Lesser General Public License for more details.                            *
+ *                                                                            *
+ * You should have received a copy of the GNU Lesser General Public           *
+ * License along with this software; if not, write to the Free                *
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA         *
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.                   *
+ ******************************************************************************/
+package org.gatein.common.http;
+
+import junit.framework.TestCase;
+import org.gatein.common.text.CharBuffer;
+import org.gatein.common.text.HashingCharWriter;
+import org.gatein.common.util.ParameterMap;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * @author <a href="mailto:agent@local">agent</a>
+ */
+public class QueryStringFormatterTestCase extends TestCase
+{
+
+   public void testConstructorThrowsIAE()
+   {
+      try
+      {
+         new QueryStringFormatter(null, false);
+         fail();
+      }
+      catch (IllegalArgumentException expected)
+      {
+      }
+   }
+
+   public void testFormat()
+   {
+      Map<String, String[]> parameters = new LinkedHashMap<String, String[]>();
+      assertEquals("", QueryStringFormatter.getInstance().format(parameters));
+      parameters.put("b", new String[]{"2", "1"});
+      parameters.put("a b", new String[]{"\u00E9&="});
+      parameters.put("c", new String[0]);
+      parameters.put("d", new String[]{""});
+      assertEquals("b=2&b=1&a+b=%C3%A9%26%3D&d=", QueryStringFormatter.getInstance().format(parameters));
+      assertEquals("a+b=%C3%A9%26%3D&b=2&b=1&d=", QueryStringFormatter.getCanonicalInstance().format(parameters));
+      CharBuffer buffer = new CharBuffer();
+      buffer.append('?');
+      QueryStringFormatter.getCanonicalInstance().format(parameters, buffer);
+      assertEquals("?a+b=%C3%A9%26%3D&b=2&b=1&d=", buffer.asString());
+   }
+
+   public void testFormatThrowsIAE()
+   {
+      Map<String, String[]> parameters = new HashMap<String, String[]>();
+      parameters.put("a", new String[]{"1"});
+      parameters.put(null, new String[]{"1"});
+      assertFormatThrowsIAE(parameters);
+      parameters.remove(null);
+      parameters.put("b", null);
+      assertFormatThrowsIAE(parameters);
+      parameters.put("b", new String[]{null});
+      assertFormatThrowsIAE(parameters);
+      try
+      {
+         QueryStringFormatter.getInstance().format(null);
+         fail();
+      }
+      catch (IllegalArgumentException expected)
+      {
+      }
+      try
+      {
+         QueryStringFormatter.getInstance().format(new HashMap<String, String[]>(), null);
+         fail();
+      }
+      catch (IllegalArgumentException expected)
+      {
+      }
+   }
+
+   public void testRoundTrip()
+   {
+      String[] queryStrings = {"a=1", "a=1&a=2&b=%2F+%C3%A9", "x=y&f=&foo=bar&f=2"};
+      for (int i = 0; i < queryStrings.length; i++)
+      {
+         ParameterMap parameters = QueryStringParser.getInstance().parseQueryString(queryStrings[i]);
+         String queryString = QueryStringFormatter.getInstance().format(parameters);
+         assertEquals(parameters, QueryStringParser.getInstance().parseQueryString(queryString));
+      }
+   }
+
+   public void testCanonicalHash()
+   {
+      Map<String, String[]> left = new LinkedHashMap<String, String[]>();
+      Map<String, String[]> right = new LinkedHashMap<String, String[]>();
+      for (int i = 0; i < 20; i++)
+      {
+         left.put("p" + i, new String[]{"v" + i, "w" + i});
+         right.put("p" + (19 - i), new String[]{"v" + (19 - i), "w" + (19 - i)});
+      }
+      QueryStringFormatter formatter = QueryStringFormatter.getCanonicalInstance();
+      assertEquals(formatter.format(left), formatter.format(right));
+      assertEquals(formatter.hash(left), formatter.hash(right));
+
+      // The hash is the hash of the query string
+      HashingCharWriter writer = new HashingCharWriter();
+      writer.append(formatter.format(left));
+      assertEquals(writer.getHash(), formatter.hash(left));
+
+      // The value order matters
+      right.put("p3", new String[]{"w3", "v3"});
+      assertFalse(formatter.hash(left) == formatter.hash(right));
+   }
+
+   private void assertFormatThrowsIAE(Map<String, String[]> parameters)
+   {
+      try
+      {
+         QueryStringFormatter.getCanonicalInstance().format(parameters);
+         fail();
+      }
+      catch (IllegalArgumentException expected)
+      {
+      }
+      try
+      {
+         QueryStringFormatter.getInstance().format(parameters);
+         fail();
+      }
+      catch (IllegalArgumentException expected)
+      {
+      }
+   }
+}
@@ -24,9 +24,22 @@ package org.gatein.common.http;
 
 import junit.framework.TestCase;
 import org.gatein.common.http.QueryStringParser;
+import org.gatein.common.text.AbstractCharEncoder;
+import org.gatein.common.text.CharWriter;
+import org.gatein.common.text.EncodingException;
+import org.gatein.common.text.FastURLByteDecoder;
+import org.gatein.common.text.FastURLDecoder;
 import org.gatein.common.util.MapBuilder;
 import org.gatein.common.util.ParameterMap;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+
 /**
  * @author <a href="mailto:julien@jboss.org">Julien Viet</a>
  * @version $Revision: 1.1 $
@@ -200,4 +213,267 @@ public class QueryStringParserTestCase extends TestCase
       assertEquals(MapBuilder.create(new ParameterMap()).put("foo", new String[]{"bar"}).get(), parser.parseQueryString("=x=&foo=bar"));
       assertEquals(MapBuilder.create(new ParameterMap()).put("foo", new String[]{"bar"}).get(), parser.parseQueryString("=x=y&foo=bar"));
    }
+
+   public void testManyValues() throws Exception
+   {
+      StringBuffer queryString = new StringBuffer();
+      String[] values = new String[100];
+      for (int i = 0; i < values.length; i++)
+      {
+         values[i] = "v" + i;
+         queryString.append("a=").append(values[i]).append("&b").append(i).append("=&");
+      }
+      ParameterMap parameters = parser.parseQueryString(queryString.toString());
+      assertEquals(101, parameters.size());
+      assertEquals(values, parameters.getValues("a"));
+      assertEquals(new String[]{""}, parameters.getValues("b99"));
+      byte[] bytes = queryString.toString().getBytes("ISO-8859-1");
+      assertEquals(parameters, parser.parseQueryString(bytes, 0, bytes.length, FastURLByteDecoder.getUTF8Instance()));
+   }
+
+   public void testNameCache() throws Exception
+   {
+      QueryStringParser parser = new QueryStringParser(FastURLDecoder.getUTF8Instance(), 60);
+      NameCache cache = parser.getNameCache();
+      assertEquals(64, cache.getSize());
+      assertNull(this.parser.getNameCache());
+      assertFalse(cache.isStatisticsEnabled());
+      parser.parseQueryString("x=y");
+      assertEquals(0, cache.getMisses());
+      cache.clear();
+      cache.setStatisticsEnabled(true);
+
+      //
+      ParameterMap first = parser.parseQueryString("a=1&b%20c=2&a=3");
+      assertEquals(this.parser.parseQueryString("a=1&b%20c=2&a=3"), first);
+      assertEquals(1, cache.getHits());
+      assertEquals(2, cache.getMisses());
+      ParameterMap second = parser.parseQueryString("b%20c=4", true);
+      assertEquals("4", second.getValue("b c"));
+      assertEquals(2, cache.getHits());
+      assertSame(key(first, "b c"), key(second, "b c"));
+
+      // Names that cannot be decoded are not cached
+      assertEquals(0, parser.parseQueryString("%2=x").size());
+      assertEquals(0, parser.parseQueryString("%2=x").size());
+      assertEquals(2, cache.getHits());
+
+      //
+      cache.clear();
+      assertEquals(0, cache.getHits());
+      assertEquals(0, cache.getMisses());
+   }
+
+   public void testNameCacheCollisions() throws Exception
+   {
+      QueryStringParser parser = new QueryStringParser(FastURLDecoder.getUTF8Instance(), 1);
+      for (int i = 0; i < 10; i++)
+      {
+         String queryString = "a=1&b=2&c%3D=3&" + i + "=4";
+         assertEquals(this.parser.parseQueryString(queryString), parser.parseQueryString(queryString));
+      }
+   }
+
+   public void testNameCacheConcurrency() throws Exception
+   {
+      final QueryStringParser parser = new QueryStringParser(FastURLDecoder.getUTF8Instance(), 8);
+      parser.getNameCache().setStatisticsEnabled(true);
+      final Throwable[] failure = new Throwable[1];
+      Thread[] threads = new Thread[4];
+      for (int i = 0; i < threads.length; i++)
+      {
+         final int seed = i;
+         threads[i] = new Thread()
+         {
+            public void run()
+            {
+               try
+               {
+                  for (int j = 0; j < 2000; j++)
+                  {
+                     int k = (j * 7 + seed) % 40;
+                     String queryString = "p" + k + "=" + j + "&n%C3%A9" + (k % 3) + "=x";
+                     assertEquals(QueryStringParserTestCase.this.parser.parseQueryString(queryString), parser.parseQueryString(queryString));
+                  }
+               }
+               catch (Throwable t)
+               {
+                  failure[0] = t;
+               }
+            }
+         };
+         threads[i].start();
+      }
+      for (int i = 0; i < threads.length; i++)
+      {
+         threads[i].join();
+      }
+      assertNull(failure[0]);
+      assertEquals(4 * 2000 * 2, parser.getNameCache().getHits() + parser.getNameCache().getMisses());
+   }
+
+   public void testNameCacheThrowsIAE()
+   {
+      try
+      {
+         new QueryStringParser(FastURLDecoder.getUTF8Instance(), -1);
+         fail();
+      }
+      catch (IllegalArgumentException expected)
+      {
+      }
+      try
+      {
+         new QueryStringParser(FastURLDecoder.getUTF8Instance(), (1 << 20) + 1);
+         fail();
+      }
+      catch (IllegalArgumentException expected)
+      {
+      }
+   }
+
+   private static String key(ParameterMap parameters, String name)
+   {
+      for (String key : parameters.keySet())
+      {
+         if (key.equals(name))
+         {
+            return key;
+         }
+      }
+      return null;
+   }
+
+   public void testParseBytes() throws Exception
+   {
+      String[] queryStrings = {"", "f", "f=", "foo=bar", "f=b&f=bar2", "foo=%2", "foo&foo=%2", "=x=y&f=b", "f=b=j",
+         "x=y&foo=bar", "a+b=c%C3%A9&&a+b=%2F", "=&", "foo=%2&foo"};
+      for (int i = 0; i < queryStrings.length; i++)
+      {
+         String queryString = queryStrings[i];
+         byte[] bytes = ("?" + queryString + "#").getBytes("ISO-8859-1");
+         ParameterMap expected = parser.parseQueryString(queryString);
+         assertEquals(queryString, expected, parser.parseQueryString(bytes, 1, bytes.length - 2, FastURLByteDecoder.getUTF8Instance()));
+      }
+   }
+
+   public void testParseLazy() throws Exception
+   {
+      String[] queryStrings = {"", "f", "f=", "foo=bar", "f=b&f=bar2", "foo=%2", "foo&foo=%2", "=x=y&f=b", "f=b=j",
+         "x=y&foo=bar", "a+b=c%C3%A9&&a+b=%2F", "=&", "foo=%2&foo", "&&f&", "%2=x&f=y"};
+      for (int i = 0; i < queryStrings.length; i++)
+      {
+         String queryString = queryStrings[i];
+         ParameterMap expected = parser.parseQueryString(queryString);
+
+         // Compare with the bulk operations
+         assertEquals(queryString, expected, parser.parseQueryString(queryString, true));
+         assertEquals(queryString, expected.size(), parser.parseQueryString(queryString, true).size());
+
+         // Compare with the lookups
+         ParameterMap lazy = parser.parseQueryString(queryString, true);
+         String[] names = {"f", "foo", "x", "a b", "%2", ""};
+         for (int j = 0; j < names.length; j++)
+         {
+            String name = names[j];
+            assertEquals(expected.getValue(name), lazy.getValue(name));
+            assertEquals(expected.containsKey(name), lazy.containsKey(name));
+         }
+         assertEquals(queryString, expected, lazy);
+      }
+   }
+
+   public void testParseLazyDecodesOnRead()
+   {
+      final int[] count = {0};
+      QueryStringParser parser = new QueryStringParser(new AbstractCharEncoder()
+      {
+         protected void safeEncode(char[] chars, int off, int len, CharWriter writer) throws EncodingException
+         {
+            count[0]++;
+            FastURLDecoder.getUTF8Instance().encode(chars, off, len, writer);
+         }
+      });
+      ParameterMap parameters = parser.parseQueryString("a=1&b=2&b=3&c=4", true);
+
+      // Only the names are decoded
+      assertEquals(4, count[0]);
+      assertEquals("2", parameters.getValue("b"));
+      assertEquals(6, count[0]);
+      assertEquals("2", parameters.getValue("b"));
+      assertEquals(6, count[0]);
+
+      // Overwriting a pending parameter
+      parameters.setValue("c", "5");
+      assertEquals("5", parameters.getValue("c"));
+      assertEquals(MapBuilder.create(new ParameterMap()).put("a", new String[]{"1"}).put("b", new String[]{"2", "3"}).put("c", new String[]{"5"}).get(), parameters);
+      assertEquals(8, count[0]);
+
+      //
+      parameters = parser.parseQueryString("a=1&b=2", true);
+      assertEquals(new String[]{"1"}, parameters.remove("a"));
+      assertEquals(null, parameters.getValue("a"));
+      parameters.clear();
+      assertTrue(parameters.isEmpty());
+   }
+
+   public void testParseLazyViews()
+   {
+      ParameterMap parameters = parser.parseQueryString("a=1&b=2", true);
+      Iterator<Map.Entry<String, String[]>> entries = parameters.entrySet().iterator();
+      Iterator<String> names = parameters.keySet().iterator();
+
+      // The views are not modified by the later modifications of the map
+      parameters.setValue("c", "3");
+      parameters.remove("a");
+      int count = 0;
+      while (entries.hasNext())
+      {
+         entries.next();
+         names.next();
+         count++;
+      }
+      assertEquals(2, count);
+      assertEquals(2, parameters.size());
+      assertEquals("3", parameters.getValue("c"));
+      assertEquals(null, parameters.getValue("a"));
+
+      // The views are unmodifiable
+      try
+      {
+         parameters.keySet().iterator().remove();
+         fail();
+      }
+      catch (UnsupportedOperationException expected)
+      {
+      }
+      try
+      {
+         parameters.values().clear();
+         fail();
+      }
+      catch (UnsupportedOperationException expected)
+      {
+      }
+      assertEquals(2, parameters.size());
+   }
+
+   public void testParseLazySerialization() throws Exception
+   {
+      ParameterMap parameters = parser.parseQueryString("a=1&b=2&b=%C3%A9", true);
+      ByteArrayOutputStream baos = new ByteArrayOutputStream();
+      ObjectOutputStream out = new ObjectOutputStream(baos);
+      out.writeObject(parameters);
+      out.close();
+      ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(baos.toByteArray()));
+      ParameterMap copy = (ParameterMap)in.readObject();
+      assertEquals(parser.parseQueryString("a=1&b=2&b=%C3%A9"), copy);
+      copy.setValue("c", "3");
+      assertEquals("3", copy.getValue("c"));
+   }
+
+   private static void assertEquals(String[] expected, String[] actual)
+   {
+      assertTrue(Arrays.equals(expected, actual));
+   }
 }
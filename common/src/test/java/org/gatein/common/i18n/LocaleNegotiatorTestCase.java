@@ -0,0 +1,129 @@
+/******************************************************************************
+ * JBoss, a division of Red Hat                                               *
+ * Copyright 2009, Red Hat Middleware, LLC, and individual                    *
+ * contributors as indicated by the @authors tag. See the                     *
+ * copyright.txt in the distribution for a full listing of                    *
+ * individual contributors.                                                   *
+ *                                                                            *
+ * This is free software; you can redistribute it and/or modify it            *
+ * under the terms of the GNU Lesser General Public License as                *
+ * published by the Free Software Foundation; either version 2.1 of           *
+ * the License, or (at your option) any later version.                        *
+ *                                                                            *
+ * This software is distributed in the hope that it will be useful,           *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of             *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU           *
+ * Lesser General Public License for more details.                            *
+ *                                                                            *
+ * You should have received a copy of the GNU Lesser General Public           *
+ * License along with this software; if not, write to the Free                *
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA         *
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.                   *
+ ******************************************************************************/
+package org.gatein.common.i18n;
+
+import junit.framework.TestCase;
+
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * @author <a href="mailto:agent@local">agent</a>
+ */
+public class LocaleNegotiatorTestCase extends TestCase
+{
+
+   /** . */
+   private final LocaleNegotiator negotiator = new LocaleNegotiator(Arrays.asList(Locale.ENGLISH, Locale.FRANCE,
+      Locale.FRENCH, new Locale("pt", "BR"), Locale.GERMANY), Locale.ENGLISH);
+
+   public void testConstructorThrowsIAE()
+   {
+      try
+      {
+         new LocaleNegotiator(null, Locale.ENGLISH);
+         fail();
+      }
+      catch (IllegalArgumentException expected)
+      {
+      }
+      try
+      {
+         new LocaleNegotiator(Arrays.asList(Locale.ENGLISH, null), Locale.ENGLISH);
+         fail();
+      }
+      catch (IllegalArgumentException expected)
+      {
+      }
+      try
+      {
+         new LocaleNegotiator(Arrays.asList(Locale.ENGLISH), Locale.ENGLISH, 0);
+         fail();
+      }
+      catch (IllegalArgumentException expected)
+      {
+      }
+   }
+
+   public void testExactMatch()
+   {
+      assertEquals(Locale.FRANCE, negotiator.negotiate("fr-FR"));
+      assertEquals(Locale.FRANCE, negotiator.negotiate("FR-fr"));
+      assertEquals(Locale.FRANCE, negotiator.negotiate("fr_FR"));
+      assertEquals(Locale.FRENCH, negotiator.negotiate("fr"));
+      assertEquals(new Locale("pt", "BR"), negotiator.negotiate("pt-BR"));
+   }
+
+   public void testFallback()
+   {
+      assertEquals(Locale.FRENCH, negotiator.negotiate("fr-CA"));
+      assertEquals(Locale.FRANCE, negotiator.negotiate("fr-FR-paris"));
+      assertEquals(Locale.ENGLISH, negotiator.negotiate("en-US"));
+      assertEquals(new Locale("pt", "BR"), negotiator.negotiate("pt-PT"));
+      assertEquals(Locale.GERMANY, negotiator.negotiate("de"));
+      assertEquals(Locale.GERMANY, negotiator.negotiate("de-Latn-AT"));
+   }
+
+   public void testQuality()
+   {
+      assertEquals(Locale.GERMANY, negotiator.negotiate("fr;q=0.5, de-DE;q=0.8, en;q=0.1"));
+      assertEquals(Locale.FRANCE, negotiator.negotiate("es, fr-FR;q=0.9, de;q=0.9"));
+      assertEquals(Locale.GERMANY, negotiator.negotiate("fr;q=0, de;q=0.2"));
+      assertEquals(Locale.FRENCH, negotiator.negotiate("it-IT,it;q=0.9,fr;q=0.8,en-US;q=0.6,en;q=0.4"));
+   }
+
+   public void testDefault()
+   {
+      assertEquals(Locale.ENGLISH, negotiator.negotiate(null));
+      assertEquals(Locale.ENGLISH, negotiator.negotiate(""));
+      assertEquals(Locale.ENGLISH, negotiator.negotiate("es, it"));
+      assertEquals(Locale.ENGLISH, negotiator.negotiate("es, *;q=0.5, fr;q=0.1"));
+      assertEquals(Locale.ENGLISH, negotiator.negotiate("fr;q=0"));
+      LocaleNegotiator noDefault = new LocaleNegotiator(Arrays.asList(Locale.FRENCH), null);
+      assertEquals(null, noDefault.negotiate("es"));
+      assertEquals(null, noDefault.negotiate("es"));
+      assertEquals(Locale.FRENCH, noDefault.negotiate("es, *, fr;q=0.5"));
+   }
+
+   public void testCache()
+   {
+      LocaleNegotiator negotiator = new LocaleNegotiator(Arrays.asList(Locale.FRENCH, Locale.ENGLISH), Locale.ENGLISH, 2);
+      Locale locale = negotiator.negotiate("fr-CA");
+      assertSame(locale, negotiator.negotiate("fr-CA"));
+      assertEquals(Locale.FRENCH, negotiator.negotiate("fr-BE"));
+      assertEquals(Locale.ENGLISH, negotiator.negotiate("en-GB"));
+      assertEquals(Locale.FRENCH, negotiator.negotiate("fr-CA"));
+      negotiator.clearCache();
+      assertEquals(Locale.FRENCH, negotiator.negotiate("fr-CA"));
+   }
+
+   public void testParse()
+   {
+      assertEquals(new Locale("en"), LocaleNegotiator.parse("EN"));
+      assertEquals(new Locale("en", "US"), LocaleNegotiator.parse("en-us"));
+      assertEquals(new Locale("zh", "TW"), LocaleNegotiator.parse("zh-Hant-TW"));
+      assertEquals(new Locale("es", "419"), LocaleNegotiator.parse("es-419"));
+      assertEquals(new Locale("en", "GB", "oed"), LocaleNegotiator.parse("en-GB-oed"));
+      assertEquals(null, LocaleNegotiator.parse("-US"));
+   }
+}
@@ -0,0 +1,194 @@
+/******************************************************************************
+ * JBoss, a division of Red Hat                                               *
+ * Copyright 2009, Red Hat Middleware, LLC, and individual                    *
+ * contributors as indicated by the @authors tag. See the                     *
+ * copyright.txt in the distribution for a full listing of                    *
+ * individual contributors.                                                   *
+ *                                                                            *
+ * This is free software; you can redistribute it and/or modify it            *
+ * under the terms of the GNU Lesser General Public License as                *
+ * published by the Free Software Foundation; either version 2.1 of           *
+ * the License, or (at your option) any later version.                        *
+ *                                                                            *
+ * This software is distributed in the hope that it will be useful,           *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of             *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU           *
+ * Lesser General Public License for more details.                            *
+ *                                                                            *
+ * You should have received a copy of the GNU Lesser General Public           *
+ * License along with this software; if not, write to the Free                *
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA         *
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.                   *
+ ******************************************************************************/
+package org.gatein.common.io;
+
+import junit.framework.TestCase;
+import org.gatein.common.text.EntityEncoder;
+import org.gatein.common.text.FastURLEncoder;
+import org.gatein.common.text.UnsupportedCharsetException;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+/**
+ * @author <a href="mailto:agent@local">agent</a>
+ */
+public class EncodingCharWriterTestCase extends TestCase
+{
+
+   /** . */
+   private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+   /** . */
+   private static final Charset ISO_8859_1 = Charset.forName("ISO-8859-1");
+
+   /** . */
+   private static final String TEXT = "abc \u00E9\u00FF\u0100 \u07FF\u0800 \u4E2D\u6587 \uD83D\uDE00 \uFFFF end";
+
+   public void testUTF8()
+   {
+      assertEncoding(TEXT, UTF_8);
+   }
+
+   public void testISO88591()
+   {
+      assertEncoding(TEXT, ISO_8859_1);
+   }
+
+   public void testUnpairedSurrogates()
+   {
+      for (Charset charset : new Charset[]{UTF_8, ISO_8859_1})
+      {
+         assertEncoding("a\uD83Db", charset);
+         assertEncoding("a\uDE00b", charset);
+         assertEncoding("\uDE00\uD83D", charset);
+         assertEncoding("\uD83D\uD83D\uDE00", charset);
+      }
+   }
+
+   public void testPendingSurrogateOnClose()
+   {
+      ByteArrayOutputStream out = new ByteArrayOutputStream();
+      EncodingCharWriter writer = new EncodingCharWriter(out, UTF_8);
+      writer.append("a\uD83D");
+      writer.flush();
+      assertEquals("a", new String(out.toByteArray(), UTF_8));
+      writer.close();
+      assertEquals("a?", new String(out.toByteArray(), UTF_8));
+   }
+
+   public void testAppendChar()
+   {
+      for (Charset charset : new Charset[]{UTF_8, ISO_8859_1})
+      {
+         ByteArrayOutputStream out = new ByteArrayOutputStream();
+         EncodingCharWriter writer = new EncodingCharWriter(out, charset, 4);
+         for (int i = 0; i < TEXT.length(); i++)
+         {
+            writer.append(TEXT.charAt(i));
+         }
+         writer.close();
+         assertTrue(Arrays.equals(TEXT.getBytes(charset), out.toByteArray()));
+      }
+   }
+
+   public void testChannel()
+   {
+      ByteArrayOutputStream out = new ByteArrayOutputStream();
+      EncodingCharWriter writer = new EncodingCharWriter(Channels.newChannel(out), UTF_8, 5);
+      writer.append(TEXT);
+      writer.close();
+      assertTrue(Arrays.equals(TEXT.getBytes(UTF_8), out.toByteArray()));
+   }
+
+   public void testEncoders()
+   {
+      ByteArrayOutputStream out = new ByteArrayOutputStream();
+      EncodingCharWriter writer = new EncodingCharWriter(out, UTF_8);
+      EntityEncoder.FULL.encode("<\u00E9>", writer);
+      writer.append(' ');
+      FastURLEncoder.getUTF8Instance().encode("a b/\u00E9", writer);
+      writer.flush();
+      assertEquals("&lt;&eacute;&gt; a+b%2F%C3%A9", new String(out.toByteArray(), UTF_8));
+   }
+
+   public void testIOException()
+   {
+      EncodingCharWriter writer = new EncodingCharWriter(new OutputStream()
+      {
+         public void write(int b) throws IOException
+         {
+            throw new IOException();
+         }
+      }, UTF_8, 4);
+      writer.append("abcd");
+      try
+      {
+         writer.append('e');
+         fail();
+      }
+      catch (UndeclaredIOException expected)
+      {
+      }
+   }
+
+   public void testInvalidConstruction()
+   {
+      try
+      {
+         new EncodingCharWriter(new ByteArrayOutputStream(), Charset.forName("UTF-16"));
+         fail();
+      }
+      catch (UnsupportedCharsetException expected)
+      {
+      }
+      try
+      {
+         new EncodingCharWriter(new ByteArrayOutputStream(), UTF_8, 3);
+         fail();
+      }
+      catch (IllegalArgumentException expected)
+      {
+      }
+      try
+      {
+         new EncodingCharWriter((OutputStream)null, UTF_8);
+         fail();
+      }
+      catch (IllegalArgumentException expected)
+      {
+      }
+      try
+      {
+         new EncodingCharWriter(new ByteArrayOutputStream(), null);
+         fail();
+      }
+      catch (IllegalArgumentException expected)
+      {
+      }
+   }
+
+   /**
+    * Encodes the text split at every position and with various buffer sizes and compares with the JDK encoding.
+    */
+   private void assertEncoding(String text, Charset charset)
+   {
+      byte[] expected = text.getBytes(charset);
+      for (int size = 4; size < 12; size++)
+      {
+         for (int split = 0; split <= text.length(); split++)
+         {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            EncodingCharWriter writer = new EncodingCharWriter(out, charset, size);
+            writer.append(text.toCharArray(), 0, split);
+            writer.appendRange(new StringBuilder(text), split, text.length() - split);
+            writer.close();
+            assertTrue(text + " split at " + split + " with buffer " + size, Arrays.equals(expected, out.toByteArray()));
+         }
+      }
+   }
+}
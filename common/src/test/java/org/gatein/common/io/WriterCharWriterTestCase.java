@@ -74,6 +74,16 @@ public class WriterCharWriterTestCase extends TestCase
       assertEquals("abc", s.toString());
    }
 
+   public void testAppend5() throws IOException
+   {
+      StringWriter s = new StringWriter();
+      WriterCharWriter writer = new WriterCharWriter(s);
+      writer.appendRange("abcdef", 1, 3);
+      writer.appendRange(new StringBuilder("ghijkl"), 2, 2);
+      s.close();
+      assertEquals("bcdij", s.toString());
+   }
+
    private Writer failingWriter = new Writer()
    {
       public void write(char[] chars, int i, int i1) throws IOException
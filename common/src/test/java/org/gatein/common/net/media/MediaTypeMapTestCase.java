@@ -499,4 +499,43 @@ public class MediaTypeMapTestCase extends TestCase
    {
       testAddUsingPatternThrowsIAE("/html", v1);
    }
+
+   public void testNegotiate()
+   {
+      MediaTypeMapImpl<String> map = new MediaTypeMapImpl<String>();
+      map.put(TEXT_HTML, v1);
+      map.put("application/xhtml+xml", v2);
+      map.put(IMAGE, v3);
+      MediaType XHTML = MediaType.create("application/xhtml+xml");
+
+      //
+      assertEquals(TEXT_HTML, map.negotiate(null));
+      assertEquals(TEXT_HTML, map.negotiate("*/*"));
+      assertEquals(TEXT_HTML, map.negotiate("text/html,application/xhtml+xml,application/xml;q=0.9,*/*;q=0.8"));
+      assertEquals(XHTML, map.negotiate("application/xhtml+xml,text/html"));
+      assertEquals(XHTML, map.negotiate("text/html;q=0.5,application/*"));
+      assertEquals(XHTML, map.negotiate("TEXT/HTML;q=0, */*"));
+      assertEquals(TEXT_HTML, map.negotiate("text/*;level=1, application/xhtml+xml;q=0.9"));
+      assertEquals(IMAGE_PNG, map.negotiate("image/png, text/*;q=0.9"));
+      assertEquals(TEXT_HTML, map.negotiate("image/*, text/html"));
+      assertEquals(null, map.negotiate("text/plain, audio/*"));
+      assertEquals(null, map.negotiate(""));
+      assertEquals(null, map.negotiate("foo/bar, text, text/, /html, text/html;q=0"));
+      assertEquals(IMAGE_PNG, map.negotiate("image/png;q=0.4, text/html;q=0.3"));
+   }
+
+   public void testNegotiateCacheIsClearedByPut()
+   {
+      MediaTypeMapImpl<String> map = new MediaTypeMapImpl<String>();
+      map.put(TEXT_HTML, v1);
+      assertEquals(null, map.negotiate("text/css"));
+      map.put(TEXT, v2);
+      assertEquals(TEXT_CSS, map.negotiate("text/css"));
+      assertEquals(null, map.negotiate("image/png"));
+      map.put(v3);
+      assertEquals(IMAGE_PNG, map.negotiate("image/png"));
+      assertEquals(TEXT_HTML, map.negotiate("*/*"));
+      map.put(TEXT_JAVASCRIPT, v4);
+      assertEquals(TEXT_JAVASCRIPT, map.negotiate("text/javascript, */*"));
+   }
 }
@@ -0,0 +1,172 @@
+/******************************************************************************
+ * JBoss, a division of Red Hat                                               *
+ * Copyright 2009, Red Hat Middleware, LLC, and individual                    *
+ * contributors as indicated by the @authors tag. See the                     *
+ * copyright.txt in the distribution for a full listing of                    *
+ * individual contributors.                                                   *
+ *                                                                            *
+ * This is free software; you can redistribute it and/or modify it            *
+ * under the terms of the GNU Lesser General Public License as                *
+ * published by the Free Software Foundation; either version 2.1 of           *
+ * the License, or (at your option) any later version.                        *
+ *                                                                            *
+ * This software is distributed in the hope that it will be useful,           *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of             *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU           *
+ * Lesser General Public License for more details.                            *
+ *                                                                            *
+ * You should have received a copy of the GNU Lesser General Public           *
+ * License along with this software; if not, write to the Free                *
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA         *
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.                   *
+ ******************************************************************************/
+package org.gatein.common.text;
+
+import junit.framework.TestCase;
+
+/**
+ * @author <a href="mailto:agent@local">agent</a>
+ */
+public class CharBufferPoolTestCase extends TestCase
+{
+
+   public void testReuse()
+   {
+      CharBufferPool pool = new CharBufferPool(2, 16, 64);
+      CharBufferPool.Lease lease = pool.acquire();
+      assertEquals(16, lease.getCapacity());
+      lease.append("abc");
+      assertEquals("abc", lease.asString(false));
+      char[] array = lease.buffer;
+      lease.release();
+
+      //
+      lease = pool.acquire();
+      assertSame(array, lease.buffer);
+      assertEquals(0, lease.getLength());
+      lease.release();
+   }
+
+   public void testNested()
+   {
+      CharBufferPool pool = new CharBufferPool(2, 16, 64);
+      CharBufferPool.Lease outer = pool.acquire();
+      CharBufferPool.Lease inner = pool.acquire();
+      assertNotSame(outer.buffer, inner.buffer);
+      outer.append("outer");
+      inner.append("inner");
+      assertEquals("inner", inner.asString());
+      assertEquals("outer", outer.asString());
+      inner.release();
+      outer.release();
+   }
+
+   public void testBounded()
+   {
+      CharBufferPool pool = new CharBufferPool(1, 16, 64);
+      CharBufferPool.Lease first = pool.acquire();
+      CharBufferPool.Lease second = pool.acquire();
+      char[] firstArray = first.buffer;
+      char[] secondArray = second.buffer;
+      second.release();
+      first.release();
+
+      // Only the first released array is retained
+      CharBufferPool.Lease lease = pool.acquire();
+      assertSame(secondArray, lease.buffer);
+      assertNotSame(firstArray, pool.acquire().buffer);
+   }
+
+   public void testGrownBufferIsRetained()
+   {
+      CharBufferPool pool = new CharBufferPool(1, 4, 64);
+      CharBufferPool.Lease lease = pool.acquire();
+      lease.append("0123456789");
+      int capacity = lease.getCapacity();
+      assertTrue(capacity > 4);
+      lease.release();
+      assertEquals(capacity, pool.acquire().getCapacity());
+   }
+
+   public void testOversizedBufferIsShrunk()
+   {
+      CharBufferPool pool = new CharBufferPool(1, 4, 64);
+      CharBufferPool.Lease lease = pool.acquire();
+      lease.append(new char[100]);
+      lease.release();
+      assertEquals(4, pool.acquire().getCapacity());
+   }
+
+   public void testPerThread() throws Exception
+   {
+      final CharBufferPool pool = new CharBufferPool(1, 16, 64);
+      CharBufferPool.Lease lease = pool.acquire();
+      char[] array = lease.buffer;
+      lease.release();
+
+      //
+      final char[][] other = new char[1][];
+      Thread thread = new Thread()
+      {
+         public void run()
+         {
+            other[0] = pool.acquire().buffer;
+         }
+      };
+      thread.start();
+      thread.join();
+      assertNotSame(array, other[0]);
+      assertSame(array, pool.acquire().buffer);
+   }
+
+   public void testDoubleRelease()
+   {
+      CharBufferPool.Lease lease = new CharBufferPool(1, 16, 64).acquire();
+      lease.release();
+      try
+      {
+         lease.release();
+         fail();
+      }
+      catch (IllegalStateException expected)
+      {
+      }
+   }
+
+   public void testNoRetention()
+   {
+      CharBufferPool pool = new CharBufferPool(0, 16, 64);
+      CharBufferPool.Lease lease = pool.acquire();
+      char[] array = lease.buffer;
+      lease.release();
+      assertNotSame(array, pool.acquire().buffer);
+   }
+
+   public void testInvalidConstruction()
+   {
+      try
+      {
+         new CharBufferPool(-1, 16, 64);
+         fail();
+      }
+      catch (IllegalArgumentException expected)
+      {
+      }
+      try
+      {
+         new CharBufferPool(1, -1, 64);
+         fail();
+      }
+      catch (IllegalArgumentException expected)
+      {
+      }
+      try
+      {
+         new CharBufferPool(1, 16, 8);
+         fail();
+      }
+      catch (IllegalArgumentException expected)
+      {
+      }
+   }
+}
@@ -82,6 +82,23 @@ public class CharBufferTestCase extends TestCase
       assertEquals("c", buffer.asString());
    }
 
+   public void testCharSequenceAppendWithOffset()
+   {
+      CharBuffer buffer = new CharBuffer(0);
+      buffer.appendRange("abcdef", 1, 3);
+      buffer.appendRange(new StringBuilder("ghijkl"), 2, 2);
+      buffer.appendRange("abc", 3, 0);
+      assertEquals("bcdij", buffer.asString());
+      try
+      {
+         buffer.appendRange("abc", 2, 2);
+         fail();
+      }
+      catch (IllegalArgumentException expected)
+      {
+      }
+   }
+
    public void testAppendCharArrayRobustness()
    {
       CharBuffer buffer = new CharBuffer(0);
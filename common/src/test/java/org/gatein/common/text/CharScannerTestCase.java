@@ -0,0 +1,139 @@
+/******************************************************************************
+ * JBoss, a division of Red Hat                                               *
+ * Copyright 2009, Red Hat Middleware, LLC, and individual                    *
+ * contributors as indicated by the @authors tag. See the                     *
+ * copyright.txt in the distribution for a full listing of                    *
+ * individual contributors.                                                   *
+ *                                                                            *
+ * This is free software; you can redistribute it and/or modify it            *
+ * under the terms of the GNU Lesser General Public License as                *
+ * published by the Free Software Foundation; either version 2.1 of           *
+ * the License, or (at your option) any later version.                        *
+ *                                                                            *
+ * This software is distributed in the hope that it will be useful,           *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of             *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU           *
+ * Lesser General Public License for more details.                            *
+ *                                                                            *
+ * You should have received a copy of the GNU Lesser General Public           *
+ * License along with this software; if not, write to the Free                *
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA         *
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.                   *
+ ******************************************************************************/
+package org.gatein.common.text;
+
+import junit.framework.TestCase;
+
+/**
+ * @author <a href="mailto:agent@local">agent</a>
+ */
+public class CharScannerTestCase extends TestCase
+{
+
+   private final CharScanner scanner = new CharScanner("abcdefghijklmnopqrstuvwxyzABCDEFGHIJKLMNOPQRSTUVWXYZ0123456789");
+
+   public void testSkips()
+   {
+      assertTrue(scanner.skips('a'));
+      assertTrue(scanner.skips('Z'));
+      assertTrue(scanner.skips('0'));
+      assertFalse(scanner.skips('/'));
+      assertFalse(scanner.skips('\u0000'));
+      assertFalse(scanner.skips('\u007F'));
+      assertFalse(scanner.skips('\u00E9'));
+      assertFalse(scanner.skips('\u0100'));
+      assertFalse(scanner.skips('\u4E2D'));
+   }
+
+   public void testScanEveryPosition()
+   {
+      // Put the stop char at each position so that it is found both in the groups of four chars and in the tail
+      for (int length = 0; length < 12; length++)
+      {
+         for (int stop = 0; stop < length; stop++)
+         {
+            for (char c : new char[]{'/', '\u0080', '\u00E9', '\u4E2D', '@', '`', '{', '\u0000'})
+            {
+               char[] chars = new char[length];
+               java.util.Arrays.fill(chars, 'x');
+               chars[stop] = c;
+               assertEquals(stop, scanner.scan(chars, 0, length));
+               assertEquals(stop, scanner.scan(new String(chars), 0, length));
+            }
+         }
+         char[] chars = new char[length];
+         java.util.Arrays.fill(chars, 'x');
+         assertEquals(length, scanner.scan(chars, 0, length));
+         assertEquals(length, scanner.scan(new String(chars), 0, length));
+      }
+   }
+
+   public void testScanRange()
+   {
+      String s = "/abcdefgh/";
+      assertEquals(0, scanner.scan(s, 0, 10));
+      assertEquals(9, scanner.scan(s, 1, 10));
+      assertEquals(6, scanner.scan(s, 1, 6));
+      assertEquals(3, scanner.scan(s, 3, 3));
+      assertEquals(9, scanner.scan(s.toCharArray(), 1, 10));
+      assertEquals(6, scanner.scan(s.toCharArray(), 1, 6));
+   }
+
+   public void testBothHalvesOfTheMask()
+   {
+      CharScanner scanner = new CharScanner(" ~");
+      assertEquals(4, scanner.scan("  ~ !", 0, 5));
+      assertEquals(0, scanner.scan("!  ~ ", 0, 5));
+      assertFalse(scanner.skips('^'));
+      assertFalse(scanner.skips('@'));
+   }
+
+   public void testBooleanArray()
+   {
+      boolean[] skipped = new boolean[0x80];
+      skipped['a'] = true;
+      skipped[0x7F] = true;
+      CharScanner scanner = new CharScanner(skipped);
+      assertEquals(5, scanner.scan("aa\u007Faab", 0, 6));
+      assertEquals(0, scanner.scan("b", 0, 1));
+
+      //
+      assertEquals(0, new CharScanner(new boolean[0]).scan("a", 0, 1));
+   }
+
+   public void testInvalidConstruction()
+   {
+      try
+      {
+         new CharScanner(new boolean[0x81]);
+         fail();
+      }
+      catch (IllegalArgumentException expected)
+      {
+      }
+      try
+      {
+         new CharScanner("a\u00E9");
+         fail();
+      }
+      catch (IllegalArgumentException expected)
+      {
+      }
+      try
+      {
+         new CharScanner((String)null);
+         fail();
+      }
+      catch (IllegalArgumentException expected)
+      {
+      }
+      try
+      {
+         new CharScanner((boolean[])null);
+         fail();
+      }
+      catch (IllegalArgumentException expected)
+      {
+      }
+   }
+}
@@ -25,6 +25,8 @@ package org.gatein.common.text;
 import junit.framework.TestCase;
 import org.gatein.common.text.CharToByteEncoder;
 
+import java.util.Arrays;
+
 /**
  * @author <a href="mailto:julien@jboss.org">Julien Viet</a>
  * @version $Revision: 1.1 $
@@ -58,4 +60,73 @@ public class CharToByteEncoderTestCase extends TestCase
          }
       }
    }
+
+   public void testGenericArraysAreStable()
+   {
+      CharToByteEncoder encoder = new CharToByteEncoder.Generic("UTF8");
+      byte[] a = encoder.encode('a');
+      byte[] e = encoder.encode('\u00E9');
+      assertTrue(Arrays.equals(new byte[]{'a'}, a));
+      assertTrue(Arrays.equals(new byte[]{(byte)0xC3, (byte)0xA9}, e));
+      assertSame(a, encoder.encode('a'));
+   }
+
+   public void testUTF8() throws Exception
+   {
+      CharToByteEncoder encoder = CharToByteEncoder.UTF8.INSTANCE;
+      for (int i = 0; i < 0x10000; i++)
+      {
+         char c = (char)i;
+         byte[] r = encoder.encode(c);
+         if (Character.getType(c) == Character.SURROGATE)
+         {
+            assertEquals(0, r.length);
+         }
+         else
+         {
+            assertTrue("Char " + i, Arrays.equals(String.valueOf(c).getBytes("UTF-8"), r));
+         }
+      }
+   }
+
+   public void testUTF8Bulk() throws Exception
+   {
+      String s = "a\u00E9\u4E2D\uD83D\uDE00\uDBFF\uDFFFz";
+      byte[] expected = s.getBytes("UTF-8");
+      byte[] bytes = new byte[2 + s.length() * 3];
+      int length = CharToByteEncoder.UTF8.INSTANCE.encode(s.toCharArray(), 0, s.length(), bytes, 2);
+      assertEquals(expected.length, length);
+      byte[] actual = new byte[length];
+      System.arraycopy(bytes, 2, actual, 0, length);
+      assertTrue(Arrays.equals(expected, actual));
+
+      //
+      assertEquals(0, CharToByteEncoder.UTF8.INSTANCE.encode(new char[0], 0, 0, new byte[0], 0));
+   }
+
+   public void testUTF8UnpairedSurrogate()
+   {
+      String[] invalids = {"\uD83D", "a\uD83Db", "\uDE00", "\uDE00\uD83D"};
+      for (String invalid : invalids)
+      {
+         try
+         {
+            CharToByteEncoder.UTF8.INSTANCE.encode(invalid.toCharArray(), 0, invalid.length(), new byte[16], 0);
+            fail();
+         }
+         catch (MalformedInputException expected)
+         {
+         }
+      }
+
+      // A pair cut by the range
+      try
+      {
+         CharToByteEncoder.UTF8.INSTANCE.encode("\uD83D\uDE00".toCharArray(), 0, 1, new byte[16], 0);
+         fail();
+      }
+      catch (MalformedInputException expected)
+      {
+      }
+   }
 }
@@ -0,0 +1,420 @@
+/******************************************************************************
+ * JBoss, a division of Red Hat                                               *
+ * Copyright 2009, Red Hat Middleware, LLC, and individual                    *
+ * contributors as indicated by the @authors tag. See the                     *
+ * copyright.txt in the distribution for a full listing of                    *
+ * individual contributors.                                                   *
+ *                                                                            *
+ * This is free software; you can redistribute it and/or modify it            *
+ * under the terms of the GNU Lesser General Public License as                *
+ * published by the Free Software Foundation; either version 2.1 of           *
+ * the License, or (at your option) any later version.                        *
+ *                                                                            *
+ * This software is distributed in the hope that it will be useful,           *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of             *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU           *
+ * Lesser General Public License for more details.                            *
+ *                                                                            *
+ * You should have received a copy of the GNU Lesser General Public           *
+ * License along with this software; if not, write to the Free                *
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA         *
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.                   *
+ ******************************************************************************/
+package org.gatein.common.text;
+
+import junit.framework.TestCase;
+
+import java.io.StringWriter;
+import java.util.Random;
+
+/**
+ * @author <a href="mailto:agent@local">agent</a>
+ */
+public class CompiledTemplateTestCase extends TestCase
+{
+
+   /** . */
+   private static final TextTools.StringReplacementGenerator UPPER = new TextTools.StringReplacementGenerator()
+   {
+      public String getReplacementFor(String match, String prefix, String suffix, boolean matchedPrefixOnly)
+      {
+         return match.toUpperCase();
+      }
+   };
+
+   public void testRender() throws Exception
+   {
+      CompiledTemplate template = CompiledTemplate.compile("a${b}c${de}f", "${", "}", true, false, false);
+      assertEquals("aBcDEf", template.render(UPPER));
+
+      //
+      CharBuffer buffer = new CharBuffer();
+      template.render(UPPER, buffer);
+      assertEquals("aBcDEf", buffer.asString());
+
+      //
+      StringWriter writer = new StringWriter();
+      template.render(UPPER, writer);
+      assertEquals("aBcDEf", writer.toString());
+   }
+
+   public void testKeepBoundaries()
+   {
+      assertEquals("a${B}c", CompiledTemplate.compile("a${b}c", "${", "}", true, true, false).render(UPPER));
+   }
+
+   public void testNoBoundedString()
+   {
+      String s = "abc";
+      assertSame(s, CompiledTemplate.compile(s, "${", "}", true, false, false).render(UPPER));
+
+      // The suffix is required and absent
+      s = "a${b";
+      assertSame(s, CompiledTemplate.compile(s, "${", "}", true, false, false).render(UPPER));
+   }
+
+   public void testCache()
+   {
+      CompiledTemplate template = CompiledTemplate.compile("a${b}c", "${", "}", true, false, false);
+      assertSame(template, CompiledTemplate.compile("a${b}c", "${", "}", true, false, false));
+      assertNotSame(template, CompiledTemplate.compile("a${b}c", "${", "}", true, true, false));
+      assertNotSame(template, CompiledTemplate.compile("a${b}c", "${", ")", true, false, false));
+      assertEquals("aBc", template.render(UPPER));
+      assertEquals("aBc", template.render(UPPER));
+
+      // Long templates are not cached
+      StringBuffer sb = new StringBuffer();
+      while (sb.length() <= 8 * 1024)
+      {
+         sb.append("a${b}c");
+      }
+      String s = sb.toString();
+      assertNotSame(CompiledTemplate.compile(s, "${", "}", true, false, false), CompiledTemplate.compile(s, "${", "}", true, false, false));
+   }
+
+   public void testReplacementIsScanned()
+   {
+      TextTools.StringReplacementGenerator generator = new TextTools.ConstantStringReplacementGenerator("${b}");
+      assertSameAsReference("a${x}c", "${", "}", generator, true, false, false);
+      assertSameAsReference("a${xyz}c", "${", "}", generator, true, false, false);
+      assertSameAsReference("a${xyz}c", "${", "}", generator, true, true, false);
+      generator = new TextTools.ConstantStringReplacementGenerator("PxS");
+      assertSameAsReference("PabcdefS", "P", "S", generator, true, true, false);
+      assertSameAsReference("aPbcdefgS", "P", "S", generator, true, false, false);
+   }
+
+   public void testAdjacentEmptyBoundedStrings()
+   {
+      TextTools.StringReplacementGenerator generator = new TextTools.ConstantStringReplacementGenerator("R");
+      assertEquals("RPS", CompiledTemplate.compile("PSPS", "P", "S", true, false, false).render(generator));
+      assertSameAsReference("PSPS", "P", "S", generator, true, false, false);
+      assertSameAsReference("PSPS", "P", "S", generator, true, true, false);
+      assertEquals("RPS", TextTools.replaceAllInstancesOfBoundedString("PSPS", "P", "S", "R"));
+   }
+
+   public void testSameBoundaries()
+   {
+      TextTools.StringReplacementGenerator generator = new TextTools.ConstantStringReplacementGenerator("B");
+      try
+      {
+         CompiledTemplate.compile("a%%b%%c", "%%", "%%", true, false, false).render(generator);
+         fail();
+      }
+      catch (StringIndexOutOfBoundsException expected)
+      {
+      }
+      assertSameAsReference("a%%b%%c", "%%", "%%", generator, true, false, false);
+   }
+
+   /**
+    * The inputs of <code>org.gatein.common.StringTestCase</code>.
+    */
+   public void testStringTestCaseInputs()
+   {
+      String[][] inputs = {
+         {"PREFIXSUF", "PREFIX", "SUF"},
+         {"aaaaPREFIXbbbbbSUFccccc", "PREFIX", "SUF"},
+         {"aaaPREFIXbbbbSUFF", "PREFIX", "SUFFI"},
+         {"aPbbScccPdSeeePS", "P", "S"},
+         {"PSaPScccPdSeeePS", "P", "S"},
+         {"PREFIXblah", "PREFIX", null},
+         {"PREFIXblah", "PREFIX", "SUF"},
+         {"PREFIX", "PREFIX", null},
+         {"PREFIX", "PREFIX", "SUF"},
+         {"PREFIXblahPREFIXreplacedSUFfoo", "PREFIX", "SUF"},
+         {"<form action='wsrp_rewrite?wsrp-urlType=blockingAction/wsrp_rewrite' id='wsrp_rewrite_portfolioManager'>", "wsrp_rewrite", "/wsrp_rewrite"},
+      };
+      String[] replacements = {"REPLACEMENT", "", "R"};
+      for (int i = 0; i < inputs.length; i++)
+      {
+         for (int flags = 0; flags < 8; flags++)
+         {
+            for (int j = 0; j < replacements.length; j++)
+            {
+               TextTools.StringReplacementGenerator generator = new TextTools.ConstantStringReplacementGenerator(replacements[j]);
+               assertSameAsReference(inputs[i][0], inputs[i][1], inputs[i][2], generator, (flags & 1) != 0, (flags & 2) != 0, (flags & 4) != 0);
+            }
+            assertSameAsReference(inputs[i][0], inputs[i][1], inputs[i][2], UPPER, (flags & 1) != 0, (flags & 2) != 0, (flags & 4) != 0);
+         }
+      }
+   }
+
+   public void testRandomTemplates()
+   {
+      String[] prefixes = {"P", "PS", "aP", "${"};
+      String[] suffixes = {null, "S", "SP", "P", "}", "Sa"};
+      final String[] replacements = {"", "R", "P", "S", "PS", "SaP", "${x}", "aaaaaaaaaaaa"};
+      final Random random = new Random(0);
+      for (int n = 0; n < 20000; n++)
+      {
+         StringBuffer sb = new StringBuffer();
+         for (int i = random.nextInt(30); i > 0; i--)
+         {
+            sb.append("PSa${}".charAt(random.nextInt(6)));
+         }
+         final long seed = random.nextLong();
+         TextTools.StringReplacementGenerator generator = new TextTools.StringReplacementGenerator()
+         {
+            Random replacementRandom = new Random(seed);
+            int count;
+            public String getReplacementFor(String match, String prefix, String suffix, boolean matchedPrefixOnly)
+            {
+               if (++count > 100)
+               {
+                  throw new IllegalStateException();
+               }
+               int index = replacementRandom.nextInt(replacements.length + 1);
+               return index < replacements.length ? replacements[index] : String.valueOf(match.length());
+            }
+         };
+         int flags = random.nextInt(8);
+         assertSameAsReference(sb.toString(), prefixes[random.nextInt(prefixes.length)], suffixes[random.nextInt(suffixes.length)],
+            generator, (flags & 1) != 0, (flags & 2) != 0, (flags & 4) != 0);
+      }
+   }
+
+   public void testInvalidArguments()
+   {
+      try
+      {
+         CompiledTemplate.compile(null, "${", "}", true, false, false);
+         fail();
+      }
+      catch (IllegalArgumentException expected)
+      {
+      }
+      try
+      {
+         CompiledTemplate.compile("a", "", "}", true, false, false);
+         fail();
+      }
+      catch (IllegalArgumentException expected)
+      {
+      }
+      try
+      {
+         CompiledTemplate.compile("a", "${", "}", true, false, false).render((TextTools.StringReplacementGenerator)null);
+         fail();
+      }
+      catch (IllegalArgumentException expected)
+      {
+      }
+   }
+
+   /**
+    * Renders a template with a compiled template and with the reference implementation and checks that the results
+    * or the thrown exceptions are the same, the generator is recreated from its class between the two renderings
+    * when it has a state.
+    */
+   private void assertSameAsReference(String template, String prefix, String suffix, TextTools.StringReplacementGenerator generator,
+                                      boolean replaceIfBoundedStringEmpty, boolean keepBoundaries, boolean suffixIsOptional)
+   {
+      Recorder recorder = new Recorder(generator);
+      String expected = render(null, template, prefix, suffix, recorder, replaceIfBoundedStringEmpty, keepBoundaries, suffixIsOptional);
+      recorder.replay();
+      CompiledTemplate compiled = CompiledTemplate.compile(template, prefix, suffix, replaceIfBoundedStringEmpty, keepBoundaries, suffixIsOptional);
+      String rendered = render(compiled, template, prefix, suffix, recorder, replaceIfBoundedStringEmpty, keepBoundaries, suffixIsOptional);
+      String message = template + " " + prefix + " " + suffix + " " + replaceIfBoundedStringEmpty + " " + keepBoundaries + " " + suffixIsOptional;
+      assertEquals(message, expected, rendered);
+      assertEquals(message, recorder.size, recorder.index);
+   }
+
+   private String render(CompiledTemplate compiled, String template, String prefix, String suffix, TextTools.StringReplacementGenerator generator,
+                         boolean replaceIfBoundedStringEmpty, boolean keepBoundaries, boolean suffixIsOptional)
+   {
+      try
+      {
+         if (compiled == null)
+         {
+            return replaceBoundedString(template, prefix, suffix, generator, replaceIfBoundedStringEmpty, keepBoundaries, suffixIsOptional);
+         }
+         else
+         {
+            return compiled.render(generator);
+         }
+      }
+      catch (RuntimeException e)
+      {
+         return e.getClass().getName();
+      }
+   }
+
+   /** Records the calls made to a generator and replays them, the matches given in the replay are checked. */
+   private static class Recorder implements TextTools.StringReplacementGenerator
+   {
+
+      /** . */
+      private final TextTools.StringReplacementGenerator generator;
+
+      /** . */
+      private String[] calls = new String[16];
+
+      /** . */
+      private Object[] results = new Object[16];
+
+      /** . */
+      private int size;
+
+      /** . */
+      private int index = -1;
+
+      private Recorder(TextTools.StringReplacementGenerator generator)
+      {
+         this.generator = generator;
+      }
+
+      private void replay()
+      {
+         index = 0;
+      }
+
+      public String getReplacementFor(String match, String prefix, String suffix, boolean matchedPrefixOnly)
+      {
+         String call = match + "|" + matchedPrefixOnly;
+         if (index == -1)
+         {
+            if (size == calls.length)
+            {
+               String[] tmp1 = new String[size * 2];
+               System.arraycopy(calls, 0, tmp1, 0, size);
+               calls = tmp1;
+               Object[] tmp2 = new Object[size * 2];
+               System.arraycopy(results, 0, tmp2, 0, size);
+               results = tmp2;
+            }
+            calls[size] = call;
+            try
+            {
+               results[size] = generator.getReplacementFor(match, prefix, suffix, matchedPrefixOnly);
+            }
+            catch (RuntimeException e)
+            {
+               results[size] = e;
+            }
+            Object result = results[size++];
+            if (result instanceof RuntimeException)
+            {
+               throw (RuntimeException)result;
+            }
+            return (String)result;
+         }
+         else
+         {
+            assertTrue(index < size);
+            assertEquals(calls[index], call);
+            Object result = results[index++];
+            if (result instanceof RuntimeException)
+            {
+               throw (RuntimeException)result;
+            }
+            return (String)result;
+         }
+      }
+   }
+
+   /**
+    * The original implementation of {@link TextTools#replaceBoundedString(String, String, String,
+    * TextTools.StringReplacementGenerator, boolean, boolean, boolean)} that edits a <code>StringBuilder</code>.
+    */
+   private static String replaceBoundedString(final String initial, final String prefix, final String suffix, final TextTools.StringReplacementGenerator generator,
+                                              final boolean replaceIfBoundedStringEmpty, final boolean keepBoundaries, final boolean suffixIsOptional)
+   {
+      StringBuilder tmp = new StringBuilder(initial);
+      int prefixIndex = tmp.indexOf(prefix);
+      final int prefixLength = prefix.length();
+      boolean suffixAbsent = suffix == null;
+      int suffixLength = suffixAbsent ? 0 : suffix.length();
+      if (!suffixIsOptional && suffix != null && tmp.indexOf(suffix) == -1)
+      {
+         return initial;
+      }
+      while (prefixIndex != -1)
+      {
+         int suffixIndex;
+         if (suffixAbsent)
+         {
+            String match = tmp.substring(prefixIndex + prefixLength);
+            if (keepBoundaries)
+            {
+               tmp.insert(prefixIndex + prefixLength, generator.getReplacementFor(match, prefix, suffix, true));
+            }
+            else
+            {
+               tmp.delete(prefixIndex, prefixIndex + prefixLength);
+               tmp.insert(prefixIndex, generator.getReplacementFor(match, prefix, suffix, true));
+            }
+            prefixIndex = tmp.indexOf(prefix, prefixIndex + prefixLength);
+         }
+         else
+         {
+            suffixIndex = tmp.indexOf(suffix, prefixIndex);
+            if (suffixIndex == -1)
+            {
+               suffixAbsent = true;
+               continue;
+            }
+            else
+            {
+               if (suffixIsOptional)
+               {
+                  int nextPrefixIndex = tmp.indexOf(prefix, prefixIndex + prefixLength);
+                  if (nextPrefixIndex >= suffixIndex && nextPrefixIndex <= (suffixIndex + suffixLength))
+                  {
+                     nextPrefixIndex = tmp.indexOf(prefix, suffixIndex + suffixLength);
+                  }
+                  if (nextPrefixIndex != -1 && nextPrefixIndex <= suffixIndex)
+                  {
+                     String match = tmp.substring(prefixIndex + prefixLength, nextPrefixIndex);
+                     tmp.delete(prefixIndex, prefixIndex + prefixLength);
+                     String replacement = generator.getReplacementFor(match, prefix, suffix, true);
+                     tmp.insert(prefixIndex, replacement);
+                     prefixIndex = nextPrefixIndex - prefixLength + replacement.length();
+                     continue;
+                  }
+               }
+               if (replaceIfBoundedStringEmpty || suffixIndex != prefixIndex + prefixLength)
+               {
+                  String match = tmp.substring(prefixIndex + prefixLength, suffixIndex);
+                  String replacement = generator.getReplacementFor(match, prefix, suffix, false);
+                  int changeInLength = replacement.length() - match.length();
+                  int nextLookupIndex = prefixIndex + changeInLength;
+                  if (keepBoundaries)
+                  {
+                     tmp.delete(prefixIndex + prefixLength, suffixIndex);
+                     tmp.insert(prefixIndex + prefixLength, replacement);
+                     nextLookupIndex += prefixLength + suffixLength;
+                  }
+                  else
+                  {
+                     tmp.delete(prefixIndex, suffixIndex + suffixLength);
+                     tmp.insert(prefixIndex, replacement);
+                  }
+                  prefixIndex = nextLookupIndex;
+               }
+            }
+            prefixIndex = tmp.indexOf(prefix, prefixIndex + 1);
+         }
+      }
+      return tmp.toString();
+   }
+}
@@ -0,0 +1,120 @@
+/******************************************************************************
+ * JBoss, a division of Red Hat                                               *
+ * Copyright 2009, Red Hat Middleware, LLC, and individual                    *
+ * contributors as indicated by the @authors tag. See the                     *
+ * copyright.txt in the distribution for a full listing of                    *
+ * individual contributors.                                                   *
+ *                                                                            *
+ * This is free software; you can redistribute it and/or modify it            *
+ * under the terms of the GNU Lesser General Public License as                *
+ * published by the Free Software Foundation; either version 2.1 of           *
+ * the License, or (at your option) any later version.                        *
+ *                                                                            *
+ * This software is distributed in the hope that it will be useful,           *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of             *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU           *
+ * Lesser General Public License for more details.                            *
+ *                                                                            *
+ * You should have received a copy of the GNU Lesser General Public           *
+ * License along with this software; if not, write to the Free                *
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA         *
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.                   *
+ ******************************************************************************/
+package org.gatein.common.text;
+
+import junit.framework.TestCase;
+
+/**
+ * @author <a href="mailto:agent@local">agent</a>
+ */
+public class EntityDecoderTestCase extends TestCase
+{
+
+   private final EntityDecoder decoder = EntityDecoder.FULL;
+
+   public void testNamedEntities()
+   {
+      assertEquals("<a href=\"&\">\u00A0\u20AC</a>", decoder.encode("&lt;a href=&quot;&amp;&quot;&gt;&nbsp;&euro;&lt;/a&gt;"));
+      assertEquals("\u00E7a", decoder.encode("&ccedil;a"));
+      assertEquals("\u2660\u2663", decoder.encode("&spades;&clubs;"));
+   }
+
+   public void testNumericEntities()
+   {
+      assertEquals("A", decoder.encode("&#65;"));
+      assertEquals("A", decoder.encode("&#065;"));
+      assertEquals("\u00E9", decoder.encode("&#xE9;"));
+      assertEquals("\u00E9", decoder.encode("&#Xe9;"));
+      assertEquals("\uD83D\uDE00", decoder.encode("&#x1F600;"));
+      assertEquals("\uD83D\uDE00", decoder.encode("&#128512;"));
+   }
+
+   public void testUnchanged()
+   {
+      String s = "no entity here";
+      assertSame(s, decoder.encode(s));
+      String[] unchanged = {"&", "&amp", "&foo;", "&am;", "&#;", "&#x;", "&#xZ;", "&#0;", "&#xD800;", "&#x110000;",
+         "&#99999999999999999999;", "& amp;", "&#65", "a & b", "&&", "&ampx;"};
+      for (int i = 0; i < unchanged.length; i++)
+      {
+         assertEquals(unchanged[i], decoder.encode(unchanged[i]));
+      }
+   }
+
+   public void testInvalidFollowedByEntity()
+   {
+      assertEquals("&&", decoder.encode("&&amp;"));
+      assertEquals("&am<", decoder.encode("&am&lt;"));
+      assertEquals("&#x<", decoder.encode("&#x&lt;"));
+   }
+
+   public void testRoundTrip()
+   {
+      StringBuffer tmp = new StringBuffer();
+      for (int i = 0; i < 0x3000; i++)
+      {
+         tmp.append((char)i);
+      }
+      String s = tmp.toString();
+      assertEquals(s, decoder.encode(EntityEncoder.FULL.encode(s)));
+   }
+
+   public void testStream()
+   {
+      String encoded = "x&lt;&#x1F600;&eacute;&#233;&unknown;&amp;y";
+      String expected = "x<\uD83D\uDE00\u00E9\u00E9&unknown;&y";
+      for (int size = 1; size <= encoded.length(); size++)
+      {
+         CharBuffer buffer = new CharBuffer();
+         EntityDecoder.Stream stream = decoder.newStream(buffer);
+         for (int i = 0; i < encoded.length(); i += size)
+         {
+            char[] chunk = encoded.substring(i, Math.min(encoded.length(), i + size)).toCharArray();
+            stream.append(chunk, 0, chunk.length);
+         }
+         stream.finish();
+         assertEquals(expected, buffer.asString());
+      }
+   }
+
+   public void testStreamFinish()
+   {
+      CharBuffer buffer = new CharBuffer();
+      EntityDecoder.Stream stream = decoder.newStream(buffer);
+      stream.append("a&am");
+      assertEquals("a", buffer.asString(false));
+      stream.finish();
+      assertEquals("a&am", buffer.asString());
+   }
+
+   public void testLongReference()
+   {
+      StringBuffer tmp = new StringBuffer("&#");
+      for (int i = 0; i < 40; i++)
+      {
+         tmp.append('0');
+      }
+      tmp.append("65;");
+      assertEquals(tmp.toString(), decoder.encode(tmp.toString()));
+   }
+}
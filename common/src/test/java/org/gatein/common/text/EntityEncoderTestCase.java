@@ -26,6 +26,10 @@ import junit.framework.TestCase;
 import org.gatein.common.text.CharBuffer;
 import org.gatein.common.text.EntityEncoder;
 
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
 /**
  * @author <a href="mailto:julien@jboss.org">Julien Viet</a>
  * @version $Revision: 630 $
@@ -69,4 +73,107 @@ public class EntityEncoderTestCase extends TestCase
       assertEquals(expected, buffer.asString());
    }
 
+   public void testUnchangedString()
+   {
+      String s = "foo bar";
+      assertSame(s, EntityEncoder.FULL.encode(s));
+      assertEquals("foo&lt;bar", EntityEncoder.FULL.encode("foo<bar"));
+      String cjk = "\u9996\u9875 \u5BFC\u822A \u9875\u9762 \u641C\u7D22";
+      assertSame(cjk, EntityEncoder.FULL.encode(cjk));
+      assertEquals(cjk + "&lt;", EntityEncoder.FULL.encode(cjk + "<"));
+   }
+
+   public void testCharSequenceRange()
+   {
+      CharBuffer buffer = new CharBuffer();
+      AbstractCharEncoder.encode(EntityEncoder.FULL, new StringBuilder("a<b>c&d"), 1, 4, buffer);
+      assertEquals("&lt;b&gt;c", buffer.asString(true));
+      EntityEncoder.FULL.encode("a<b>c&d".toCharArray(), 2, 3, buffer);
+      assertEquals("b&gt;c", buffer.asString(true));
+   }
+
+   public void testBasic()
+   {
+      assertEquals("<a href=\"&\">&nbsp;&euro;</a>", EntityEncoder.BASIC.encode("<a href=\"&\">\u00A0\u20AC</a>"));
+      assertEquals("&lt;a href=&quot;&amp;&quot;&gt;&nbsp;&euro;&lt;/a&gt;", EntityEncoder.FULL.encode("<a href=\"&\">\u00A0\u20AC</a>"));
+      assertNull(EntityEncoder.BASIC.lookup('<'));
+      assertEquals(-1, EntityEncoder.BASIC.reverse("lt"));
+      assertEquals("lt", EntityEncoder.FULL.lookup('<'));
+      assertEquals('<', EntityEncoder.FULL.reverse("lt"));
+
+      // The basic encoder has all the entities but the markup ones
+      Map<String, Character> basic = new HashMap<String, Character>(EntityEncoder.FULL.getEntities());
+      basic.keySet().removeAll(Arrays.asList("quot", "amp", "lt", "gt"));
+      assertEquals(basic, EntityEncoder.BASIC.getEntities());
+   }
+
+   public void testLookupConsistency()
+   {
+      for (int i = 0; i < 0x10000; i++)
+      {
+         char c = (char)i;
+         String entity = EntityEncoder.FULL.lookup(c);
+         CharBuffer buffer = new CharBuffer();
+         EntityEncoder.FULL.encode(c, buffer);
+         if (entity != null)
+         {
+            assertEquals(c, EntityEncoder.FULL.reverse(entity));
+            assertEquals("&" + entity + ";", buffer.asString());
+         }
+         else
+         {
+            assertEquals(String.valueOf(c), buffer.asString());
+         }
+      }
+   }
+
+   public void testScanFallback()
+   {
+      String[] texts = {
+         // Long runs
+         "<p>A paragraph of text long enough to be scanned</p> and more text after the paragraph &amp; the end",
+         // Dense markup
+         "<a href=\"/a\"><b>x</b></a><a href=\"/b\"><b>y</b></a> then a long run of text without any entity",
+         // Non ASCII text
+         "\u00E9t\u00E9 \u00E0 la plage, \u00E7a va <b>tr\u00E8s</b> bien & long run of ASCII text at the end",
+         "\u9996\u9875\u5BFC\u822A<\u9875\u9762>\u641C\u7D22 &\u7528\u6237 then a long run of ASCII text <end>"
+      };
+      for (int i = 0; i < texts.length; i++)
+      {
+         String text = texts[i];
+         StringBuilder expected = new StringBuilder();
+         for (int j = 0; j < text.length(); j++)
+         {
+            String entity = EntityEncoder.FULL.lookup(text.charAt(j));
+            if (entity != null)
+            {
+               expected.append('&').append(entity).append(';');
+            }
+            else
+            {
+               expected.append(text.charAt(j));
+            }
+         }
+         assertEquals(expected.toString(), EntityEncoder.FULL.encode(text));
+         CharBuffer buffer = new CharBuffer();
+         EntityEncoder.FULL.encode(text.toCharArray(), buffer);
+         assertEquals(expected.toString(), buffer.asString(true));
+         EntityEncoder.FULL.encode(new StringBuilder(text), buffer);
+         assertEquals(expected.toString(), buffer.asString(true));
+      }
+   }
+
+   public void testModifiedASCIIEntities()
+   {
+      EntityEncoder encoder = new EntityEncoder()
+      {
+      };
+      assertEquals("a/b&lt;c", encoder.encode("a/b<c"));
+      encoder.put('/', "sol");
+      encoder.remove('<');
+      assertEquals("a&sol;b<c", encoder.encode("a/b<c"));
+      CharBuffer buffer = new CharBuffer();
+      encoder.encode("a/b<c".toCharArray(), buffer);
+      assertEquals("a&sol;b<c", buffer.asString());
+   }
 }
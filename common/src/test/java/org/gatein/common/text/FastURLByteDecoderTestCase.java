@@ -0,0 +1,199 @@
+/******************************************************************************
+ * JBoss, a division of Red Hat                                               *
+ * Copyright 2009, Red Hat Middleware, LLC, and individual                    *
+ * contributors as indicated by the @authors tag. See the                     *
+ * copyright.txt in the distribution for a full listing of                    *
+ * individual contributors.                                                   *
+ *                                                                            *
+ * This is free software; you can redistribute it and/or modify it            *
+ * under the terms of the GNU Lesser General Public License as                *
+ * published by the Free Software Foundation; either version 2.1 of           *
+ * the License, or (at your option) any later version.                        *
+ *                                                                            *
+ * This software is distributed in the hope that it will be useful,           *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of             *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU           *
+ * Lesser General Public License for more details.                            *
+ *                                                                            *
+ * You should have received a copy of the GNU Lesser General Public           *
+ * License along with this software; if not, write to the Free                *
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA         *
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.                   *
+ ******************************************************************************/
+package org.gatein.common.text;
+
+import junit.framework.TestCase;
+
+import java.net.URLEncoder;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+
+/**
+ * @author <a href="mailto:agent@local">agent</a>
+ */
+public class FastURLByteDecoderTestCase extends TestCase
+{
+
+   public void testConstructorThrowsException()
+   {
+      try
+      {
+         new FastURLByteDecoder(null, false);
+         fail();
+      }
+      catch (IllegalArgumentException expected)
+      {
+      }
+      try
+      {
+         new FastURLByteDecoder(Charset.forName("UTF-16"), false);
+         fail();
+      }
+      catch (UnsupportedCharsetException expected)
+      {
+      }
+   }
+
+   public void testDecodeThrowsIAE()
+   {
+      FastURLByteDecoder decoder = FastURLByteDecoder.getUTF8Instance();
+      try
+      {
+         decoder.decode(null, 0, 0);
+         fail();
+      }
+      catch (IllegalArgumentException expected)
+      {
+      }
+      try
+      {
+         decoder.decode(new byte[10], -1, 0);
+         fail();
+      }
+      catch (IllegalArgumentException expected)
+      {
+      }
+      try
+      {
+         decoder.decode(new byte[10], 5, 6);
+         fail();
+      }
+      catch (IllegalArgumentException expected)
+      {
+      }
+      try
+      {
+         decoder.decode(new byte[10], 0, 10, null);
+         fail();
+      }
+      catch (IllegalArgumentException expected)
+      {
+      }
+      try
+      {
+         decoder.decode((ByteBuffer)null);
+         fail();
+      }
+      catch (IllegalArgumentException expected)
+      {
+      }
+   }
+
+   public void testDecodeUTF8() throws Exception
+   {
+      StringBuffer tmp = new StringBuffer();
+      for (int i = 0; i < 0x10000; i++)
+      {
+         if (i < Character.MIN_SURROGATE || i > Character.MAX_SURROGATE)
+         {
+            tmp.append((char)i);
+         }
+      }
+      tmp.append("\uD83D\uDE00");
+      String s = tmp.toString();
+      byte[] bytes = URLEncoder.encode(s, "UTF-8").getBytes("ISO-8859-1");
+      assertEquals(s, FastURLByteDecoder.getUTF8Instance().decode(bytes));
+      assertEquals(s, FastURLByteDecoder.getUTF8StrictInstance().decode(bytes));
+      assertEquals(s, FastURLDecoder.getUTF8Instance().encode(new String(bytes, "ISO-8859-1")));
+   }
+
+   public void testDecodeISO88591() throws Exception
+   {
+      StringBuffer tmp = new StringBuffer();
+      for (int i = 0; i < 0x100; i++)
+      {
+         tmp.append((char)i);
+      }
+      String s = tmp.toString();
+      byte[] bytes = URLEncoder.encode(s, "ISO-8859-1").getBytes("ISO-8859-1");
+      assertEquals(s, FastURLByteDecoder.getISO88591Instance().decode(bytes));
+      assertEquals(s, FastURLByteDecoder.getISO88591StrictInstance().decode(bytes));
+   }
+
+   public void testDecodeRange() throws Exception
+   {
+      byte[] bytes = "a=b+c%C3%A9&d".getBytes("ISO-8859-1");
+      assertEquals("b c\u00E9", FastURLByteDecoder.getUTF8Instance().decode(bytes, 2, 9));
+      CharBuffer buffer = new CharBuffer();
+      FastURLByteDecoder.getUTF8Instance().decode(bytes, 2, 9, buffer);
+      assertEquals("b c\u00E9", buffer.asString());
+   }
+
+   public void testDecodeByteBuffer() throws Exception
+   {
+      ByteBuffer buffer = ByteBuffer.wrap("xa+%C3%A9".getBytes("ISO-8859-1"));
+      buffer.position(1);
+      assertEquals("a \u00E9", FastURLByteDecoder.getUTF8Instance().decode(buffer));
+      assertEquals(buffer.limit(), buffer.position());
+
+      //
+      ByteBuffer direct = ByteBuffer.allocateDirect(9);
+      direct.put("xa+%C3%A9".getBytes("ISO-8859-1"));
+      direct.flip();
+      direct.position(1);
+      assertEquals("a \u00E9", FastURLByteDecoder.getUTF8Instance().decode(direct));
+      assertEquals(direct.limit(), direct.position());
+   }
+
+   public void testRawBytes() throws Exception
+   {
+      byte[] bytes = "a;\u00E9".getBytes("UTF-8");
+      assertEquals("a;\u00E9", FastURLByteDecoder.getUTF8Instance().decode(bytes));
+      bytes = "a;\u00E9".getBytes("ISO-8859-1");
+      assertEquals("a;\u00E9", FastURLByteDecoder.getISO88591Instance().decode(bytes));
+
+      //
+      bytes = "%C3\u00A9".getBytes("ISO-8859-1");
+      assertEquals("\u00E9", FastURLByteDecoder.getUTF8Instance().decode(bytes));
+
+      //
+      String[] inputs = {";", "\u00E9", "%C3\u00A9"};
+      for (int i = 0; i < inputs.length; i++)
+      {
+         try
+         {
+            FastURLByteDecoder.getUTF8StrictInstance().decode(inputs[i].getBytes("ISO-8859-1"));
+            fail();
+         }
+         catch (MalformedInputException expected)
+         {
+         }
+      }
+   }
+
+   public void testMalformedInput() throws Exception
+   {
+      String[] inputs = {"%", "%0", "%0T", "%T0", "%FC", "%C0%AF", "%ED%A0%80", "%C3", "%C3A", "%E4%B8", "%80"};
+      for (int i = 0; i < inputs.length; i++)
+      {
+         try
+         {
+            FastURLByteDecoder.getUTF8Instance().decode(inputs[i].getBytes("ISO-8859-1"));
+            fail("Was expecting a malformed input exception for " + inputs[i]);
+         }
+         catch (MalformedInputException expected)
+         {
+         }
+      }
+   }
+}
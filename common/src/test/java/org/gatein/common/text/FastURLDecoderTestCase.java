@@ -147,6 +147,96 @@ public class FastURLDecoderTestCase extends TestCase
       assertEquals(s, out.asString());
    }
 
+   public void testEncodeFullRange() throws Exception
+   {
+      StringBuffer tmp = new StringBuffer();
+      for (int i = 0; i < 0x10000; i++)
+      {
+         if (i < Character.MIN_SURROGATE || i > Character.MAX_SURROGATE)
+         {
+            tmp.append((char)i);
+         }
+      }
+      String s = tmp.toString();
+      assertEquals(s, FastURLDecoder.getUTF8Instance().encode(URLEncoder.encode(s, "UTF8")));
+      assertEquals(s, FastURLDecoder.getUTF8StrictInstance().encode(URLEncoder.encode(s, "UTF8")));
+   }
+
+   public void testEncodeSupplementaryChars() throws Exception
+   {
+      String s = "a\uD83D\uDE00b\uD800\uDC00\uDBFF\uDFFF";
+      assertEquals(s, FastURLDecoder.getUTF8Instance().encode(URLEncoder.encode(s, "UTF8")));
+      assertEquals("\uD83D\uDE00", FastURLDecoder.getUTF8Instance().encode("%F0%9F%98%80"));
+   }
+
+   public void testEncodeRange()
+   {
+      CharBuffer out = new CharBuffer();
+      FastURLDecoder.getUTF8Instance().encode("a+b%C3%A9c+".toCharArray(), 1, 9, out);
+      assertEquals(" b\u00E9c", out.asString());
+   }
+
+   public void testEncodeInvalidUTF8Sequences()
+   {
+      String[] sequences = {
+         // Overlong forms
+         "%C0%AF", "%C1%BF", "%E0%80%AF", "%F0%80%80%AF",
+         // Surrogates
+         "%ED%A0%80", "%ED%BF%BF",
+         // Out of the unicode range
+         "%F4%90%80%80", "%F5%80%80%80",
+         // Unexpected continuation byte
+         "%80", "%BF",
+         // Truncated sequences
+         "%C3", "%C3A", "%E4%B8", "%E4%B8%", "%F0%9F%98",
+         // Invalid continuation byte
+         "%C3%41", "%E4%C3%AD"
+      };
+      for (int i = 0; i < sequences.length; i++)
+      {
+         String sequence = sequences[i];
+         try
+         {
+            FastURLDecoder.getUTF8Instance().encode(sequence);
+            fail("Was expecting a malformed input exception for " + sequence);
+         }
+         catch (MalformedInputException expected)
+         {
+         }
+         try
+         {
+            FastURLDecoder.getUTF8Instance().encode(sequence.toCharArray(), new CharBuffer());
+            fail("Was expecting a malformed input exception for " + sequence);
+         }
+         catch (MalformedInputException expected)
+         {
+         }
+      }
+   }
+
+   public void testEncodeWithTable() throws Exception
+   {
+      FastURLDecoder decoder = new FastURLDecoder(new CharToByteEncoder.Generic("ISO-8859-1"));
+      StringBuffer tmp = new StringBuffer();
+      for (int i = 0; i < 256; i++)
+      {
+         tmp.append((char)i);
+      }
+      String s = tmp.toString();
+      assertEquals(s, decoder.encode(URLEncoder.encode(s, "ISO-8859-1")));
+      CharBuffer out = new CharBuffer();
+      decoder.encode(URLEncoder.encode(s, "ISO-8859-1").toCharArray(), out);
+      assertEquals(s, out.asString());
+      try
+      {
+         decoder.encode("%4");
+         fail();
+      }
+      catch (MalformedInputException expected)
+      {
+      }
+   }
+
    public void testEncodeMalformedInput()
    {
       testEncodeMalformedInput(FastURLDecoder.getUTF8StrictInstance(), true);
@@ -264,4 +354,46 @@ public class FastURLDecoderTestCase extends TestCase
          assertEquals("\u0100", tmp.asString());
       }
    }
+
+   public void testEncodeUnchangedString()
+   {
+      String s = "abc.-*_XYZ019";
+      assertSame(s, FastURLDecoder.getUTF8Instance().encode(s));
+      assertSame(s, FastURLDecoder.getUTF8StrictInstance().encode(s));
+      s = "a;b/c\u00E9";
+      assertSame(s, FastURLDecoder.getUTF8Instance().encode(s));
+      assertEquals("ab c", FastURLDecoder.getUTF8Instance().encode("ab+c"));
+   }
+
+   public void testEncodeCharSequence()
+   {
+      CharBuffer buffer = new CharBuffer();
+      AbstractCharEncoder.encode(FastURLDecoder.getUTF8Instance(), new StringBuilder("a+b%C3%A9c"), 1, 8, buffer);
+      assertEquals(" b\u00E9", buffer.asString());
+   }
+
+   public void testEncodeChar()
+   {
+      CharBuffer buffer = new CharBuffer();
+      FastURLDecoder.getUTF8Instance().encode('a', buffer);
+      FastURLDecoder.getUTF8Instance().encode('+', buffer);
+      FastURLDecoder.getUTF8Instance().encode(';', buffer);
+      assertEquals("a ;", buffer.asString());
+      try
+      {
+         FastURLDecoder.getUTF8StrictInstance().encode(';', buffer);
+         fail();
+      }
+      catch (MalformedInputException expected)
+      {
+      }
+      try
+      {
+         FastURLDecoder.getUTF8Instance().encode('%', buffer);
+         fail();
+      }
+      catch (MalformedInputException expected)
+      {
+      }
+   }
 }
@@ -27,6 +27,8 @@ import org.gatein.common.text.CharBuffer;
 import org.gatein.common.text.CharEncoder;
 import org.gatein.common.text.FastURLEncoder;
 
+import java.io.StringWriter;
+import java.net.URI;
 import java.net.URLEncoder;
 
 /**
@@ -144,4 +146,222 @@ public class FastURLEncoderTestCase extends TestCase
       String u2 = URLEncoder.encode(s, "UTF8");
       assertEquals(u2, u1);
    }
+
+   public void testEncodeFullRange() throws Exception
+   {
+      FastURLEncoder encoder = FastURLEncoder.getUTF8Instance();
+      StringBuffer tmp = new StringBuffer();
+      for (int i = 0; i < Character.MIN_SURROGATE; i++)
+      {
+         tmp.append((char)i);
+      }
+      for (int i = Character.MAX_SURROGATE + 1; i < 0xE000; i++)
+      {
+         tmp.append((char)i);
+      }
+      for (int i = 0xF900; i <= 0xFFFD; i++)
+      {
+         tmp.append((char)i);
+      }
+      String s = tmp.toString();
+      assertEquals(URLEncoder.encode(s, "UTF8"), encoder.encode(s));
+   }
+
+   public void testEncodeRange() throws Exception
+   {
+      FastURLEncoder encoder = FastURLEncoder.getUTF8Instance();
+      CharBuffer buffer = new CharBuffer();
+      encoder.encode("ab c\u00E9\u4E2Dd".toCharArray(), 2, 4, buffer);
+      assertEquals("+c%C3%A9%E4%B8%AD", buffer.asString());
+   }
+
+   public void testEncodeChar() throws Exception
+   {
+      FastURLEncoder encoder = FastURLEncoder.getUTF8Instance();
+      CharBuffer buffer = new CharBuffer();
+      encoder.encode('a', buffer);
+      encoder.encode('/', buffer);
+      encoder.encode('\u00E9', buffer);
+      encoder.encode('\u4E2D', buffer);
+      assertEquals("a%2F%C3%A9%E4%B8%AD", buffer.asString());
+   }
+
+   public void testEncodeUnmappable() throws Exception
+   {
+      FastURLEncoder encoder = FastURLEncoder.getUTF8Instance();
+      try
+      {
+         encoder.encode('\uD800', new CharBuffer());
+         fail();
+      }
+      catch (MalformedInputException expected)
+      {
+      }
+      try
+      {
+         encoder.encode("a\uFFFF");
+         fail();
+      }
+      catch (MalformedInputException expected)
+      {
+      }
+   }
+
+   public void testEncodeUnchangedString()
+   {
+      String s = "abc.-*_XYZ019";
+      assertSame(s, FastURLEncoder.getUTF8Instance().encode(s));
+   }
+
+   public void testEncodeCharSequence()
+   {
+      CharBuffer buffer = new CharBuffer();
+      AbstractCharEncoder.encode(FastURLEncoder.getUTF8Instance(), new StringBuilder("a/b c\u00E9"), 1, 4, buffer);
+      assertEquals("%2Fb+c", buffer.asString());
+   }
+
+   public void testEncodeCharSequenceWithoutRange()
+   {
+      final CharBuffer buffer = new CharBuffer();
+      CharWriter writer = new CharWriter()
+      {
+         public CharWriter append(char c)
+         {
+            return buffer.append(c);
+         }
+         public CharWriter append(char[] chars, int off, int len)
+         {
+            return buffer.append(chars, off, len);
+         }
+         public CharWriter append(char[] chars)
+         {
+            return buffer.append(chars);
+         }
+         public CharWriter append(CharSequence s)
+         {
+            return buffer.append(s);
+         }
+      };
+      AbstractCharEncoder.encode(FastURLEncoder.getUTF8Instance(), new StringBuilder("a/b c/d"), 1, 5, writer);
+      assertEquals("%2Fb+c%2F", buffer.asString());
+   }
+
+   public void testEncodeSupplementary() throws Exception
+   {
+      FastURLEncoder encoder = FastURLEncoder.getUTF8Instance();
+      String s = "a\uD83D\uDE00b\uDBFF\uDFFF";
+      assertEquals(URLEncoder.encode(s, "UTF8"), encoder.encode(s));
+      CharBuffer buffer = new CharBuffer();
+      encoder.encode(s.toCharArray(), buffer);
+      assertEquals(URLEncoder.encode(s, "UTF8"), buffer.asString());
+      StringWriter writer = new StringWriter();
+      encoder.encode(s, writer);
+      assertEquals(URLEncoder.encode(s, "UTF8"), writer.toString());
+
+      // A pair cut by the range is not valid
+      try
+      {
+         encoder.encode(s.toCharArray(), 0, 2, new CharBuffer());
+         fail();
+      }
+      catch (MalformedInputException expected)
+      {
+      }
+      try
+      {
+         encoder.encode("\uDE00\uD83D");
+         fail();
+      }
+      catch (MalformedInputException expected)
+      {
+      }
+   }
+
+   public void testEncodePrivateUse() throws Exception
+   {
+      StringBuffer tmp = new StringBuffer();
+      for (int i = 0xE000; i < 0xF900; i++)
+      {
+         tmp.append((char)i);
+      }
+      String s = tmp.toString();
+      assertEquals(URLEncoder.encode(s, "UTF8"), FastURLEncoder.getUTF8Instance().encode(s));
+   }
+
+   public void testEncodePath() throws Exception
+   {
+      StringBuffer tmp = new StringBuffer("/");
+      for (char c = 0x20; c < 0x7F; c++)
+      {
+         tmp.append(c);
+      }
+      tmp.append("\u00E9\u4E2D\uD83D\uDE00");
+      String path = tmp.toString();
+      String expected = new URI(null, null, path, null).toASCIIString();
+      assertEquals(expected, FastURLEncoder.getUTF8PathInstance().encode(path));
+      assertEquals("/a%20b/c%25d+e/f:g@h", FastURLEncoder.getUTF8PathInstance().encode("/a b/c%d+e/f:g@h"));
+   }
+
+   public void testEncodeComponents() throws Exception
+   {
+      String s = "a b/c?d&e=f+g#h:i@j~k[l]\u00E9";
+      assertEquals("a%20b%2Fc%3Fd&e=f+g%23h:i@j~k%5Bl%5D%C3%A9", FastURLEncoder.getUTF8PathSegmentInstance().encode(s));
+      assertEquals("a%20b/c?d&e=f+g%23h:i@j~k%5Bl%5D%C3%A9", FastURLEncoder.getUTF8QueryInstance().encode(s));
+      assertEquals("a%20b/c?d%26e%3Df%2Bg%23h:i@j~k%5Bl%5D%C3%A9", FastURLEncoder.getUTF8QueryParameterInstance().encode(s));
+      assertEquals("a%20b/c?d&e=f+g%23h:i@j~k%5Bl%5D%C3%A9", FastURLEncoder.getUTF8FragmentInstance().encode(s));
+      assertEquals("a%20b%2Fc%3Fd&e=f+g%23h:i%40j~k%5Bl%5D%C3%A9", FastURLEncoder.getUTF8UserInfoInstance().encode(s));
+      assertEquals("a+b%2Fc%3Fd%26e%3Df%2Bg%23h%3Ai%40j%7Ek%5Bl%5D%C3%A9", FastURLEncoder.getUTF8Instance().encode(s));
+
+      // Unchanged strings are returned as is
+      String unchanged = "abc-._~!$'()*,;:@/?";
+      assertSame(unchanged, FastURLEncoder.getUTF8QueryParameterInstance().encode(unchanged));
+   }
+
+   public void testCustomEncoder() throws Exception
+   {
+      FastURLEncoder encoder = new FastURLEncoder(CharToByteEncoder.UTF8.INSTANCE, "abc", true);
+      assertEquals("abc+%64%2B%C3%A9", encoder.encode("abc d+\u00E9"));
+      encoder = new FastURLEncoder(CharToByteEncoder.UTF8.INSTANCE, "+", false);
+      assertEquals("+%20%61", encoder.encode("+ a"));
+      encoder = new FastURLEncoder(CharToByteEncoder.UTF8.INSTANCE, "", false);
+      assertEquals("%61%2D", encoder.encode("a-"));
+
+      //
+      String[] invalids = {"%", " ", "\n", "\u007F", "\u00E9"};
+      for (int i = 0; i < invalids.length; i++)
+      {
+         try
+         {
+            new FastURLEncoder(CharToByteEncoder.UTF8.INSTANCE, invalids[i], false);
+            fail();
+         }
+         catch (IllegalArgumentException expected)
+         {
+         }
+      }
+      try
+      {
+         new FastURLEncoder(CharToByteEncoder.UTF8.INSTANCE, "+", true);
+         fail();
+      }
+      catch (IllegalArgumentException expected)
+      {
+      }
+      try
+      {
+         new FastURLEncoder(CharToByteEncoder.UTF8.INSTANCE, null, true);
+         fail();
+      }
+      catch (IllegalArgumentException expected)
+      {
+      }
+      try
+      {
+         new FastURLEncoder(null, "abc", true);
+         fail();
+      }
+      catch (IllegalArgumentException expected)
+      {
+      }
+   }
 }
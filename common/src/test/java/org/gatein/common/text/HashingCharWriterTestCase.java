@@ -0,0 +1,114 @@
+/******************************************************************************
+ * JBoss, a division of Red Hat                                               *
+ * Copyright 2009, Red Hat Middleware, LLC, and individual                    *
+ * contributors as indicated by the @authors tag. See the                     *
+ * copyright.txt in the distribution for a full listing of                    *
+ * individual contributors.                                                   *
+ *                                                                            *
+ * This is free software; you can redistribute it and/or modify it            *
+ * under the terms of the GNU Lesser General Public License as                *
+ * published by the Free Software Foundation; either version 2.1 of           *
+ * the License, or (at your option) any later version.                        *
+ *                                                                            *
+ * This software is distributed in the hope that it will be useful,           *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of             *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU           *
+ * Lesser General Public License for more details.                            *
+ *                                                                            *
+ * You should have received a copy of the GNU Lesser General Public           *
+ * License along with this software; if not, write to the Free                *
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA         *
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.                   *
+ ******************************************************************************/
+package org.gatein.common.text;
+
+import junit.framework.TestCase;
+
+/**
+ * @author <a href="mailto:agent@local">agent</a>
+ */
+public class HashingCharWriterTestCase extends TestCase
+{
+
+   public void testKnownValues()
+   {
+      assertHash(0xCBF29CE484222325L, "");
+      assertHash(0xAF63DC4C8601EC8CL, "a");
+      assertHash(0x85944171F73967E8L, "foobar");
+   }
+
+   public void testAppend()
+   {
+      HashingCharWriter expected = new HashingCharWriter();
+      expected.append("foo=bar&juu");
+      HashingCharWriter writer = new HashingCharWriter();
+      writer.append('f');
+      writer.append("xoo=".toCharArray(), 1, 3);
+      writer.append("bar".toCharArray());
+      writer.appendRange(new StringBuffer("x&juux"), 1, 4);
+      assertEquals(expected.getHash(), writer.getHash());
+      assertEquals(11, writer.getLength());
+      writer.reset();
+      assertEquals(0, writer.getLength());
+      assertEquals(new HashingCharWriter().getHash(), writer.getHash());
+   }
+
+   public void testInvalidArguments()
+   {
+      HashingCharWriter writer = new HashingCharWriter();
+      writer.append("ab");
+      long hash = writer.getHash();
+      assertInvalid(writer, null, 0, 0);
+      assertInvalid(writer, "abc", -1, 2);
+      assertInvalid(writer, "abc", 1, -1);
+      assertInvalid(writer, "abc", 2, 2);
+      try
+      {
+         writer.append((char[])null);
+         fail();
+      }
+      catch (IllegalArgumentException expected)
+      {
+      }
+      try
+      {
+         writer.append((CharSequence)null);
+         fail();
+      }
+      catch (IllegalArgumentException expected)
+      {
+      }
+
+      // The hash is left unchanged
+      assertEquals(hash, writer.getHash());
+      assertEquals(2, writer.getLength());
+   }
+
+   private void assertInvalid(HashingCharWriter writer, String s, int off, int len)
+   {
+      try
+      {
+         writer.append(s != null ? s.toCharArray() : null, off, len);
+         fail();
+      }
+      catch (IllegalArgumentException expected)
+      {
+      }
+      try
+      {
+         writer.appendRange(s, off, len);
+         fail();
+      }
+      catch (IllegalArgumentException expected)
+      {
+      }
+   }
+
+   private void assertHash(long expected, String s)
+   {
+      HashingCharWriter writer = new HashingCharWriter();
+      writer.append(s);
+      assertEquals(expected, writer.getHash());
+      assertEquals(s.length(), writer.getLength());
+   }
+}
@@ -0,0 +1,208 @@
+/******************************************************************************
+ * JBoss, a division of Red Hat                                               *
+ * Copyright 2009, Red Hat Middleware, LLC, and individual                    *
+ * contributors as indicated by the @authors tag. See the                     *
+ * copyright.txt in the distribution for a full listing of                    *
+ * individual contributors.                                                   *
+ *                                                                            *
+ * This is free software; you can redistribute it and/or modify it            *
+ * under the terms of the GNU Lesser General Public License as                *
+ * published by the Free Software Foundation; either version 2.1 of           *
+ * the License, or (at your option) any later version.                        *
+ *                                                                            *
+ * This software is distributed in the hope that it will be useful,           *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of             *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU           *
+ * Lesser General Public License for more details.                            *
+ *                                                                            *
+ * You should have received a copy of the GNU Lesser General Public           *
+ * License along with this software; if not, write to the Free                *
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA         *
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.                   *
+ ******************************************************************************/
+package org.gatein.common.text;
+
+import junit.framework.TestCase;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * @author <a href="mailto:agent@local">agent</a>
+ */
+public class MultiReplacerTestCase extends TestCase
+{
+
+   private static MultiReplacer replacer(String... patternsAndReplacements)
+   {
+      return new MultiReplacer(map(patternsAndReplacements));
+   }
+
+   private static Map<String, String> map(String... patternsAndReplacements)
+   {
+      Map<String, String> map = new HashMap<String, String>();
+      for (int i = 0; i < patternsAndReplacements.length; i += 2)
+      {
+         map.put(patternsAndReplacements[i], patternsAndReplacements[i + 1]);
+      }
+      return map;
+   }
+
+   public void testReplace()
+   {
+      MultiReplacer replacer = replacer("$ns", "portlet_1", "$url", "/portal/page");
+      assertEquals("<a id=\"portlet_1_link\" href=\"/portal/page\">", replacer.replace("<a id=\"$ns_link\" href=\"$url\">"));
+      assertEquals("portlet_1portlet_1", replacer.replace("$ns$ns"));
+   }
+
+   public void testNoMatch()
+   {
+      String s = "no token here";
+      assertSame(s, replacer("$ns", "portlet_1").replace(s));
+      assertSame("", replacer("$ns", "portlet_1").replace(""));
+   }
+
+   public void testLeftmostLongest()
+   {
+      MultiReplacer replacer = replacer("he", "1", "she", "2", "his", "3", "hers", "4");
+      assertEquals("u2rs", replacer.replace("ushers"));
+      assertEquals("3", replacer.replace("his"));
+      assertEquals("t4", replacer.replace("thers"));
+
+      //
+      replacer = replacer("bc", "X", "abcd", "Y");
+      assertEquals("Y", replacer.replace("abcd"));
+      assertEquals("aXe", replacer.replace("abce"));
+
+      //
+      replacer = replacer("a", "1", "ab", "2", "abc", "3");
+      assertEquals("3212", replacer.replace("abcabaab"));
+   }
+
+   public void testReplacementIsNotScanned()
+   {
+      assertEquals("ba", replacer("a", "b", "b", "a").replace("ab"));
+   }
+
+   public void testNonASCII()
+   {
+      MultiReplacer replacer = replacer("\u00E9t\u00E9", "summer", "\u4E2D", "middle");
+      assertEquals("un summer middle", replacer.replace("un \u00E9t\u00E9 \u4E2D"));
+   }
+
+   public void testWriter() throws IOException
+   {
+      StringWriter writer = new StringWriter();
+      replacer("$ns", "portlet_1").replace(new StringBuilder("a$nsb"), writer);
+      assertEquals("aportlet_1b", writer.toString());
+
+      //
+      try
+      {
+         replacer("$ns", "portlet_1").replace("a$nsb", new Writer()
+         {
+            public void write(char[] cbuf, int off, int len) throws IOException
+            {
+               throw new IOException("expected");
+            }
+            public void flush()
+            {
+            }
+            public void close()
+            {
+            }
+         });
+         fail();
+      }
+      catch (IOException expected)
+      {
+         assertEquals("expected", expected.getMessage());
+      }
+   }
+
+   public void testInvalidPatterns()
+   {
+      try
+      {
+         replacer("", "a");
+         fail();
+      }
+      catch (IllegalArgumentException expected)
+      {
+      }
+      try
+      {
+         replacer("a", null);
+         fail();
+      }
+      catch (IllegalArgumentException expected)
+      {
+      }
+      try
+      {
+         new MultiReplacer(null);
+         fail();
+      }
+      catch (IllegalArgumentException expected)
+      {
+      }
+   }
+
+   public void testAgainstNaiveReplacement()
+   {
+      Random random = new Random(0);
+      for (int i = 0; i < 2000; i++)
+      {
+         Map<String, String> map = new HashMap<String, String>();
+         for (int j = random.nextInt(5) + 1; j > 0; j--)
+         {
+            map.put(randomString(random, 1 + random.nextInt(4)), "<" + j + ">");
+         }
+         String s = randomString(random, random.nextInt(30));
+         assertEquals(map + " " + s, naive(map, s), new MultiReplacer(map).replace(s));
+      }
+   }
+
+   private static String randomString(Random random, int length)
+   {
+      StringBuilder builder = new StringBuilder();
+      for (int i = 0; i < length; i++)
+      {
+         builder.append("abc".charAt(random.nextInt(3)));
+      }
+      return builder.toString();
+   }
+
+   /**
+    * Replaces at each position the longest pattern starting there.
+    */
+   private static String naive(Map<String, String> map, String s)
+   {
+      StringBuilder builder = new StringBuilder();
+      for (int i = 0; i < s.length();)
+      {
+         String longest = null;
+         for (String pattern : map.keySet())
+         {
+            if (s.startsWith(pattern, i) && (longest == null || pattern.length() > longest.length()))
+            {
+               longest = pattern;
+            }
+         }
+         if (longest != null)
+         {
+            builder.append(map.get(longest));
+            i += longest.length();
+         }
+         else
+         {
+            builder.append(s.charAt(i++));
+         }
+      }
+      return builder.toString();
+   }
+}
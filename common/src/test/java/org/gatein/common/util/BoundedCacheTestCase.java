@@ -0,0 +1,101 @@
+/******************************************************************************
+ * JBoss, a division of Red Hat                                               *
+ * Copyright 2009, Red Hat Middleware, LLC, and individual                    *
+ * contributors as indicated by the @authors tag. See the                     *
+ * copyright.txt in the distribution for a full listing of                    *
+ * individual contributors.                                                   *
+ *                                                                            *
+ * This is free software; you can redistribute it and/or modify it            *
+ * under the terms of the GNU Lesser General Public License as                *
+ * published by the Free Software Foundation; either version 2.1 of           *
+ * the License, or (at your option) any later version.                        *
+ *                                                                            *
+ * This software is distributed in the hope that it will be useful,           *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of             *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU           *
+ * Lesser General Public License for more details.                            *
+ *                                                                            *
+ * You should have received a copy of the GNU Lesser General Public           *
+ * License along with this software; if not, write to the Free                *
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA         *
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.                   *
+ ******************************************************************************/
+package org.gatein.common.util;
+
+import junit.framework.TestCase;
+
+/**
+ * @author <a href="mailto:agent@local">agent</a>
+ */
+public class BoundedCacheTestCase extends TestCase
+{
+
+   public void testConstructorThrowsIAE()
+   {
+      try
+      {
+         new BoundedCache<String, String>(0);
+         fail();
+      }
+      catch (IllegalArgumentException expected)
+      {
+      }
+   }
+
+   public void testBounded()
+   {
+      BoundedCache<String, String> cache = new BoundedCache<String, String>(2);
+      cache.put("a", "A");
+      cache.put("b", "B");
+      assertEquals("A", cache.get("a"));
+      assertEquals(2, cache.size());
+      cache.put("b", "BB");
+      assertEquals(2, cache.size());
+      assertEquals("BB", cache.get("b"));
+      cache.put("c", "C");
+      assertEquals(2, cache.size());
+      assertEquals(null, cache.get("a"));
+      assertEquals("BB", cache.get("b"));
+      assertEquals("C", cache.get("c"));
+      cache.clear();
+      assertEquals(0, cache.size());
+   }
+
+   public void testLeastRecentlyUsedIsEvicted()
+   {
+      BoundedCache<String, String> cache = new BoundedCache<String, String>(3);
+      cache.put("hot", "HOT");
+      for (int i = 0; i < 100; i++)
+      {
+         // A flow of distinct keys does not evict the entry that is looked up
+         assertEquals("HOT", cache.get("hot"));
+         cache.put("key" + i, "value" + i);
+         assertTrue(cache.size() <= 3);
+      }
+      assertEquals("value99", cache.get("key99"));
+      assertEquals("value98", cache.get("key98"));
+      assertEquals(null, cache.get("key97"));
+      assertEquals("HOT", cache.get("hot"));
+   }
+
+   public void testNullThrowsIAE()
+   {
+      BoundedCache<String, String> cache = new BoundedCache<String, String>(2);
+      try
+      {
+         cache.get(null);
+         fail();
+      }
+      catch (IllegalArgumentException expected)
+      {
+      }
+      try
+      {
+         cache.put("a", null);
+         fail();
+      }
+      catch (IllegalArgumentException expected)
+      {
+      }
+   }
+}